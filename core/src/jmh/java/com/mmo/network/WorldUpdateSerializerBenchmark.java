@@ -0,0 +1,130 @@
+package com.mmo.network;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.FieldSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a world snapshot on the wire, per entity: {@link WorldUpdateSerializer}
+ * against the reflective FieldSerializer Kryo would use for the same classes
+ * if none were registered. Scores are nanoseconds per entity; bytes per entity
+ * are printed once per fork as the state is set up.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WorldUpdateSerializerBenchmark {
+    private static final int ENTITIES = 256;
+
+    /**
+     * full: every field of every entity, as in a first snapshot; moves: only
+     * positions changed, as in most deltas
+     */
+    @Param({"full", "moves"})
+    public String snapshot;
+
+    private Kryo compactKryo;
+    private Kryo reflectiveKryo;
+    private Network.WorldUpdate update;
+    private Output output;
+    private Input input;
+    private byte[] compactBytes;
+    private byte[] reflectiveBytes;
+
+    @Setup
+    public void setUp() {
+        compactKryo = new Kryo();
+        Network.register(compactKryo);
+        reflectiveKryo = new Kryo();
+        reflectiveKryo.register(Network.WorldUpdate.class,
+            new FieldSerializer<>(reflectiveKryo, Network.WorldUpdate.class));
+        reflectiveKryo.register(Network.PlayerUpdate.class,
+            new FieldSerializer<>(reflectiveKryo, Network.PlayerUpdate.class));
+        reflectiveKryo.register(Network.PlayerUpdate[].class);
+        reflectiveKryo.register(long[].class);
+
+        Random random = new Random(42);
+        boolean moves = "moves".equals(snapshot);
+        update = new Network.WorldUpdate();
+        update.sequence = 1000;
+        update.baseline = moves ? 990 : -1;
+        update.players = new Network.PlayerUpdate[ENTITIES];
+        update.playerCount = ENTITIES;
+        update.removed = new long[0];
+        long id = 1;
+        for (int i = 0; i < ENTITIES; i++) {
+            Network.PlayerUpdate player = new Network.PlayerUpdate();
+            id += 1 + random.nextInt(20); // Sorted, as the server sends them
+            player.playerId = id;
+            player.fields = moves ? Network.PlayerUpdate.FIELD_X | Network.PlayerUpdate.FIELD_Y
+                                  : Network.PlayerUpdate.ALL_FIELDS;
+            player.x = random.nextFloat() * WorldUpdateSerializer.WORLD_MAX;
+            player.y = random.nextFloat() * WorldUpdateSerializer.WORLD_MAX;
+            player.maxHealth = 100 + random.nextInt(200);
+            player.health = random.nextInt(player.maxHealth + 1);
+            update.players[i] = player;
+        }
+
+        output = new Output(64 * 1024);
+        input = new Input();
+        compactBytes = encode(compactKryo);
+        reflectiveBytes = encode(reflectiveKryo);
+        System.out.printf("%n%s snapshot of %d entities: %.2f bytes/entity compact, %.2f bytes/entity reflective%n",
+            snapshot, ENTITIES, compactBytes.length / (double) ENTITIES, reflectiveBytes.length / (double) ENTITIES);
+    }
+
+    private byte[] encode(Kryo kryo) {
+        output.clear();
+        kryo.writeObject(output, update);
+        return output.toBytes();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ENTITIES)
+    public int writeCompact() {
+        output.clear();
+        compactKryo.writeObject(output, update);
+        return output.position();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ENTITIES)
+    public int writeReflective() {
+        output.clear();
+        reflectiveKryo.writeObject(output, update);
+        return output.position();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ENTITIES)
+    public Network.WorldUpdate readCompact() {
+        input.setBuffer(compactBytes);
+        return compactKryo.readObject(input, Network.WorldUpdate.class);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ENTITIES)
+    public Network.WorldUpdate readReflective() {
+        input.setBuffer(reflectiveBytes);
+        return reflectiveKryo.readObject(input, Network.WorldUpdate.class);
+    }
+}
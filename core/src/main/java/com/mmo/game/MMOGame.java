@@ -18,7 +18,7 @@ public class MMOGame extends Game {
     public BitmapFont font;
     public Client client;
     
-    private String authToken;
+    private volatile String authToken; // Replaced from the network thread on a zone transfer
     
     @Override
     public void create() {
@@ -64,11 +64,20 @@ public class MMOGame extends Game {
     }
     
     public void connectToServer(String host, int port) {
+        connectToServer(host, port, Network.UDP_PORT);
+    }
+    
+    /**
+     * Connect (or reconnect) to a specific zone server; closes any current connection first
+     */
+    public boolean connectToServer(String host, int tcpPort, int udpPort) {
         try {
-            client.connect(5000, host, port, Network.UDP_PORT);
-            Gdx.app.log("MMOGame", "Connected to server at " + host + ":" + port);
+            client.connect(5000, host, tcpPort, udpPort);
+            Gdx.app.log("MMOGame", "Connected to server at " + host + ":" + tcpPort);
+            return true;
         } catch (Exception e) {
             Gdx.app.error("MMOGame", "Failed to connect to server", e);
+            return false;
         }
     }
 }
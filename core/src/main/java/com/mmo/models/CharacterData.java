@@ -4,20 +4,35 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.LongSupplier;
 
 /**
  * Represents character data stored in the database
  */
 public class CharacterData {
+    // Parts of the character changed since they were last saved
+    public static final int DIRTY_STATS = 1;      // Level, experience, health, mana, attack, defense
+    public static final int DIRTY_POSITION = 2;
+    public static final int DIRTY_EQUIPMENT = 4;
+    // Inventory changes are tracked by the inventory itself
+    
+    private static final AtomicIntegerFieldUpdater<CharacterData> DIRTY =
+        AtomicIntegerFieldUpdater.newUpdater(CharacterData.class, "dirty");
+    
+    private static volatile LongSupplier clock = System::currentTimeMillis; // See setClock()
+    
     private long id;
     private String name;
     private CharacterClass characterClass;
     private int level;
     private int experience;
-    private int health;
+    private int health; // As of healthRegen's settled time; see getHealth()
     private int maxHealth;
-    private int mana;
+    private int mana; // As of manaRegen's settled time; see getMana()
     private int maxMana;
+    private Regeneration healthRegen;
+    private Regeneration manaRegen;
     private int attack;
     private int defense;
     private float x;
@@ -27,6 +42,31 @@ public class CharacterData {
     private long[] abilityCooldowns; // Tracks when each ability can be used next (timestamp)
     private Inventory inventory;
     private Map<EquipmentSlot, Item> equippedItems; // Currently equipped items
+    private transient volatile int dirty; // Not sent or stored; set from any thread
+    private transient volatile ChangeListener listener; // Not sent or stored
+    
+    /**
+     * Told when health, mana, their regeneration or the position may have
+     * changed, on whichever thread changed them
+     */
+    public interface ChangeListener {
+        void changed(CharacterData character);
+    }
+    
+    /**
+     * Read regeneration and cooldowns against this clock instead of the wall
+     * clock; the server passes its tick clock so everything it does agrees on the time
+     */
+    public static void setClock(LongSupplier source) {
+        clock = source;
+    }
+    
+    /**
+     * The time health, mana and cooldowns are read against
+     */
+    public static long now() {
+        return clock.getAsLong();
+    }
     
     public CharacterData() {
         // Default constructor for Kryo
@@ -50,7 +90,9 @@ public class CharacterData {
         this.defense = characterClass.getBaseDefense();
         this.x = 100;
         this.y = 100;
-        this.createdAt = System.currentTimeMillis();
+        this.createdAt = System.currentTimeMillis(); // A date, not on the regeneration clock
+        this.healthRegen = new Regeneration(createdAt);
+        this.manaRegen = new Regeneration(createdAt);
         this.abilities = new ArrayList<>();
         this.abilityCooldowns = new long[4];
         this.inventory = new Inventory();
@@ -95,34 +137,128 @@ public class CharacterData {
     public void setCharacterClass(CharacterClass characterClass) { this.characterClass = characterClass; }
     
     public int getLevel() { return level; }
-    public void setLevel(int level) { this.level = level; }
+    public void setLevel(int level) { this.level = level; markDirty(DIRTY_STATS); }
     
     public int getExperience() { return experience; }
-    public void setExperience(int experience) { this.experience = experience; }
+    public void setExperience(int experience) { this.experience = experience; markDirty(DIRTY_STATS); }
     
-    public int getHealth() { return health; }
-    public void setHealth(int health) { this.health = health; }
+    /**
+     * Current health, including what has regenerated since it was last set; the dead don't regenerate
+     */
+    public int getHealth() {
+        return getHealth(now());
+    }
+    public int getHealth(long now) {
+        return health > 0 ? health + getHealthRegen().regenerated(maxHealth - health, now) : health;
+    }
+    public void setHealth(int health) { settleHealth(); this.health = health; markDirty(DIRTY_STATS); }
     
     public int getMaxHealth() { return maxHealth; }
-    public void setMaxHealth(int maxHealth) { this.maxHealth = maxHealth; }
+    public void setMaxHealth(int maxHealth) { settleHealth(); this.maxHealth = maxHealth; markDirty(DIRTY_STATS); }
     
-    public int getMana() { return mana; }
-    public void setMana(int mana) { this.mana = mana; }
+    /**
+     * Current mana, including what has regenerated since it was last set
+     */
+    public int getMana() {
+        return getMana(now());
+    }
+    public int getMana(long now) {
+        return mana + getManaRegen().regenerated(maxMana - mana, now);
+    }
+    public void setMana(int mana) { settleMana(); this.mana = mana; markDirty(DIRTY_STATS); }
     
     public int getMaxMana() { return maxMana; }
-    public void setMaxMana(int maxMana) { this.maxMana = maxMana; }
+    public void setMaxMana(int maxMana) { settleMana(); this.maxMana = maxMana; markDirty(DIRTY_STATS); }
+    
+    /**
+     * Set the steady regeneration rates, in points per second
+     */
+    public void setRegeneration(float healthPerSecond, float manaPerSecond) {
+        settleHealth();
+        settleMana();
+        healthRegen.setRate(healthPerSecond);
+        manaRegen.setRate(manaPerSecond);
+        notifyChanged();
+    }
+    
+    /**
+     * Regenerate extra health for a while (a potion or buff), replacing any such bonus still running
+     */
+    public void addHealthRegenBonus(float perSecond, long durationMillis) {
+        settleHealth();
+        healthRegen.setBonus(perSecond, durationMillis, now());
+        notifyChanged();
+    }
+    
+    /**
+     * Regenerate extra mana for a while, replacing any such bonus still running
+     */
+    public void addManaRegenBonus(float perSecond, long durationMillis) {
+        settleMana();
+        manaRegen.setBonus(perSecond, durationMillis, now());
+        notifyChanged();
+    }
+    
+    public Regeneration getHealthRegen() {
+        if (healthRegen == null) {
+            healthRegen = new Regeneration(now()); // Saved before regeneration was tracked
+        }
+        return healthRegen;
+    }
+    
+    public Regeneration getManaRegen() {
+        if (manaRegen == null) {
+            manaRegen = new Regeneration(now());
+        }
+        return manaRegen;
+    }
+    
+    /**
+     * Move the server's timestamps (regeneration, cooldowns) onto this
+     * machine's clock, given the server's time when it sent the character,
+     * so health, mana and cooldowns read right whatever the clock skew
+     */
+    public void rebaseClock(long serverTime, long localTime) {
+        long shift = localTime - serverTime;
+        getHealthRegen().shift(shift);
+        getManaRegen().shift(shift);
+        for (int i = 0; i < abilityCooldowns.length; i++) {
+            if (abilityCooldowns[i] != 0) {
+                abilityCooldowns[i] += shift;
+            }
+        }
+    }
+    
+    /**
+     * Fold regenerated health into the stored value, before anything changes it
+     */
+    private void settleHealth() {
+        long now = now();
+        Regeneration regen = getHealthRegen();
+        int points = health > 0 ? regen.regenerated(maxHealth - health, now) : 0;
+        health += points;
+        regen.settle(points, health >= maxHealth || health <= 0, now);
+    }
+    
+    private void settleMana() {
+        long now = now();
+        Regeneration regen = getManaRegen();
+        int points = regen.regenerated(maxMana - mana, now);
+        mana += points;
+        regen.settle(points, mana >= maxMana, now);
+    }
     
     public int getAttack() { return attack; }
-    public void setAttack(int attack) { this.attack = attack; }
+    public void setAttack(int attack) { this.attack = attack; markDirty(DIRTY_STATS); }
     
     public int getDefense() { return defense; }
-    public void setDefense(int defense) { this.defense = defense; }
+    public void setDefense(int defense) { this.defense = defense; markDirty(DIRTY_STATS); }
     
     public float getX() { return x; }
-    public void setX(float x) { this.x = x; }
+    public void setX(float x) { this.x = x; markDirty(DIRTY_POSITION); }
     
     public float getY() { return y; }
-    public void setY(float y) { this.y = y; }
+    public void setY(float y) { this.y = y; markDirty(DIRTY_POSITION); }
     
     public long getCreatedAt() { return createdAt; }
     public void setCreatedAt(long createdAt) { this.createdAt = createdAt; }
@@ -134,10 +270,45 @@ public class CharacterData {
     public void setAbilityCooldowns(long[] abilityCooldowns) { this.abilityCooldowns = abilityCooldowns; }
     
     public Inventory getInventory() { return inventory; }
-    public void setInventory(Inventory inventory) { this.inventory = inventory; }
+    public void setInventory(Inventory inventory) { this.inventory = inventory; inventory.markAllDirty(); }
     
     public Map<EquipmentSlot, Item> getEquippedItems() { return equippedItems; }
-    public void setEquippedItems(Map<EquipmentSlot, Item> equippedItems) { this.equippedItems = equippedItems; }
+    public void setEquippedItems(Map<EquipmentSlot, Item> equippedItems) { this.equippedItems = equippedItems; markDirty(DIRTY_EQUIPMENT); }
+    
+    /**
+     * Record that some parts changed and need saving
+     */
+    public void markDirty(int parts) {
+        // Most setters hit parts that are already dirty; only write when a bit is new
+        int current = dirty;
+        while ((current & parts) != parts && !DIRTY.compareAndSet(this, current, current | parts)) {
+            current = dirty;
+        }
+        if ((parts & (DIRTY_STATS | DIRTY_POSITION)) != 0) {
+            notifyChanged();
+        }
+    }
+    
+    public ChangeListener getChangeListener() { return listener; }
+    public void setChangeListener(ChangeListener listener) { this.listener = listener; }
+    
+    private void notifyChanged() {
+        ChangeListener current = listener;
+        if (current != null) {
+            current.changed(this);
+        }
+    }
+    
+    /**
+     * The parts changed since the last call, clearing them
+     */
+    public int takeDirty() {
+        return DIRTY.getAndSet(this, 0);
+    }
+    
+    public boolean isDirty() {
+        return dirty != 0 || inventory.isDirty();
+    }
     
     /**
      * Get equipped item in a specific slot
@@ -151,12 +322,14 @@ public class CharacterData {
      */
     public void equipItem(EquipmentSlot slot, Item item) {
         equippedItems.put(slot, item);
+        markDirty(DIRTY_EQUIPMENT);
     }
     
     /**
      * Unequip an item from a specific slot
      */
     public Item unequipItem(EquipmentSlot slot) {
+        markDirty(DIRTY_EQUIPMENT);
         return equippedItems.remove(slot);
     }
     
@@ -171,18 +344,32 @@ public class CharacterData {
      * Check if an ability is off cooldown
      */
     public boolean isAbilityReady(int abilityIndex) {
+        return isAbilityReady(abilityIndex, now());
+    }
+    
+    /**
+     * Check if an ability is off cooldown at the given time (server tick clock)
+     */
+    public boolean isAbilityReady(int abilityIndex, long now) {
         if (abilityIndex < 0 || abilityIndex >= abilityCooldowns.length) {
             return false;
         }
-        return System.currentTimeMillis() >= abilityCooldowns[abilityIndex];
+        return now >= abilityCooldowns[abilityIndex];
     }
     
     /**
      * Set cooldown for an ability
      */
     public void setAbilityCooldown(int abilityIndex, int cooldownSeconds) {
+        setAbilityCooldown(abilityIndex, cooldownSeconds, now());
+    }
+    
+    /**
+     * Set cooldown for an ability starting at the given time (server tick clock)
+     */
+    public void setAbilityCooldown(int abilityIndex, int cooldownSeconds, long now) {
         if (abilityIndex >= 0 && abilityIndex < abilityCooldowns.length) {
-            abilityCooldowns[abilityIndex] = System.currentTimeMillis() + (cooldownSeconds * 1000L);
+            abilityCooldowns[abilityIndex] = now + (cooldownSeconds * 1000L);
         }
     }
 }
@@ -13,6 +13,11 @@ public class Inventory {
     private List<InventoryItem> items;
     private int gold;
     
+    // Slots changed since they were last saved, one bit per slot (bit 63 covers slots 63 and up).
+    // Only the thread that owns the inventory writes these; volatile so others can check them.
+    private transient volatile long dirtySlots;
+    private transient volatile boolean dirtyGold; // Gold or capacity
+    
     public Inventory() {
         // Default constructor for Kryo
         this.maxSize = DEFAULT_SIZE;
@@ -36,6 +41,7 @@ public class Inventory {
             for (InventoryItem invItem : items) {
                 if (invItem.getItem().getId() == item.getId() && invItem.canStack(quantity)) {
                     invItem.addQuantity(quantity);
+                    markSlotDirty(invItem.getSlotIndex());
                     return true;
                 }
             }
@@ -49,6 +55,7 @@ public class Inventory {
         // Add new item
         int slotIndex = findNextFreeSlot();
         items.add(new InventoryItem(item, quantity, slotIndex));
+        markSlotDirty(slotIndex);
         return true;
     }
     
@@ -63,6 +70,7 @@ public class Inventory {
             if (invItem.getItem().getId() == itemId) {
                 if (invItem.getQuantity() >= quantity) {
                     if (invItem.removeQuantity(quantity)) {
+                        markSlotDirty(invItem.getSlotIndex());
                         // If quantity is now 0, mark for removal
                         if (invItem.getQuantity() == 0) {
                             itemToRemove = invItem;
@@ -109,6 +117,7 @@ public class Inventory {
         }
         
         // Remove one from stack
+        markSlotDirty(slotIndex);
         return invItem.removeQuantity(1);
     }
     
@@ -154,23 +163,70 @@ public class Inventory {
         
         Item item = invItem.getItem();
         items.remove(invItem);
+        markSlotDirty(slotIndex);
         return item;
     }
     
+    /**
+     * Record that a slot changed and needs saving
+     */
+    public void markSlotDirty(int slotIndex) {
+        dirtySlots |= 1L << Math.min(slotIndex, 63);
+    }
+    
+    /**
+     * The slots changed since the last call, clearing them
+     */
+    public long takeDirtySlots() {
+        long slots = dirtySlots;
+        dirtySlots = 0;
+        return slots;
+    }
+    
+    /**
+     * Whether gold or capacity changed since the last call, clearing it
+     */
+    public boolean takeDirtyGold() {
+        boolean changed = dirtyGold;
+        dirtyGold = false;
+        return changed;
+    }
+    
+    /**
+     * Mark taken slots and gold as changed again, e.g. after their save failed
+     */
+    public void markDirty(long slots, boolean gold) {
+        dirtySlots |= slots;
+        dirtyGold |= gold;
+    }
+    
+    /**
+     * Mark the whole inventory as changed
+     */
+    public void markAllDirty() {
+        dirtySlots = -1L;
+        dirtyGold = true;
+    }
+    
+    public boolean isDirty() {
+        return dirtySlots != 0 || dirtyGold;
+    }
+    
     // Getters and setters
     public int getMaxSize() { return maxSize; }
-    public void setMaxSize(int maxSize) { this.maxSize = maxSize; }
+    public void setMaxSize(int maxSize) { this.maxSize = maxSize; dirtyGold = true; }
     
     public List<InventoryItem> getItems() { return items; }
-    public void setItems(List<InventoryItem> items) { this.items = items; }
+    public void setItems(List<InventoryItem> items) { this.items = items; dirtySlots = -1L; }
     
     public int getGold() { return gold; }
-    public void setGold(int gold) { this.gold = gold; }
+    public void setGold(int gold) { this.gold = gold; dirtyGold = true; }
     
-    public void addGold(int amount) { this.gold += amount; }
+    public void addGold(int amount) { this.gold += amount; dirtyGold = true; }
     public boolean removeGold(int amount) {
         if (gold >= amount) {
             gold -= amount;
+            dirtyGold = true;
             return true;
         }
         return false;
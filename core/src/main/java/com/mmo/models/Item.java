@@ -23,6 +23,9 @@ public class Item {
     // Consumable effects
     private int healthRestore;
     private int manaRestore;
+    private float healthRegen; // Extra points per second for effectSeconds
+    private float manaRegen;
+    private int effectSeconds;
     
     public Item() {
         // Default constructor for Kryo
@@ -85,4 +88,13 @@ public class Item {
     
     public int getManaRestore() { return manaRestore; }
     public void setManaRestore(int manaRestore) { this.manaRestore = manaRestore; }
+    
+    public float getHealthRegen() { return healthRegen; }
+    public void setHealthRegen(float healthRegen) { this.healthRegen = healthRegen; }
+    
+    public float getManaRegen() { return manaRegen; }
+    public void setManaRegen(float manaRegen) { this.manaRegen = manaRegen; }
+    
+    public int getEffectSeconds() { return effectSeconds; }
+    public void setEffectSeconds(int effectSeconds) { this.effectSeconds = effectSeconds; }
 }
@@ -36,6 +36,10 @@ public class ItemDatabase {
         createMaterial(nextId++, "Wood", "Common wooden material", ItemRarity.COMMON, 1);
         createMaterial(nextId++, "Iron Ore", "Raw iron ore", ItemRarity.COMMON, 5);
         createMaterial(nextId++, "Gold Ore", "Raw gold ore", ItemRarity.RARE, 20);
+        
+        // Consumables that work over time (added last so earlier ids stay put)
+        createTonic(nextId++, "Regeneration Tonic", "Restores 5 HP per second for 20 seconds", 5, 0, 20, ItemRarity.UNCOMMON, 30);
+        createTonic(nextId++, "Clarity Tonic", "Restores 3 MP per second for 20 seconds", 0, 3, 20, ItemRarity.UNCOMMON, 30);
     }
     
     private static void createPotion(long id, String name, String description, 
@@ -49,6 +53,18 @@ public class ItemDatabase {
         items.put(id, item);
     }
     
+    private static void createTonic(long id, String name, String description,
+                                    float healthRegen, float manaRegen, int seconds, ItemRarity rarity, int value) {
+        Item item = new Item(id, name, description, ItemType.CONSUMABLE, rarity);
+        item.setValue(value);
+        item.setStackable(true);
+        item.setMaxStack(99);
+        item.setHealthRegen(healthRegen);
+        item.setManaRegen(manaRegen);
+        item.setEffectSeconds(seconds);
+        items.put(id, item);
+    }
+    
     private static void createWeapon(long id, String name, String description, 
                                      int attackBonus, int defenseBonus, ItemRarity rarity, int levelReq, int value) {
         Item item = new Item(id, name, description, ItemType.WEAPON, rarity);
@@ -108,6 +124,9 @@ public class ItemDatabase {
         copy.setDefenseBonus(original.getDefenseBonus());
         copy.setHealthRestore(original.getHealthRestore());
         copy.setManaRestore(original.getManaRestore());
+        copy.setHealthRegen(original.getHealthRegen());
+        copy.setManaRegen(original.getManaRegen());
+        copy.setEffectSeconds(original.getEffectSeconds());
         
         return copy;
     }
@@ -0,0 +1,99 @@
+package com.mmo.models;
+
+/**
+ * Kinds of hostile creatures the server spawns, with their combat stats and behaviour
+ */
+public enum MobType {
+    WOLF("Wolf", "Bite", CharacterClass.ROGUE, 2, 60, 20, 4,
+         140f, 250f, 700f, 60f, 1500, 20),
+
+    BANDIT("Bandit", "Slash", CharacterClass.WARRIOR, 4, 120, 28, 10,
+           110f, 300f, 800f, 70f, 2000, 30),
+
+    SKELETON_ARCHER("Skeleton Archer", "Bone Arrow", CharacterClass.ARCHER, 6, 90, 32, 6,
+                    100f, 400f, 900f, 300f, 2500, 45);
+
+    private final String name;
+    private final String attackName;
+    private final CharacterClass look; // Which class sprite it is drawn with
+    private final int level;
+    private final int maxHealth;
+    private final int attack;
+    private final int defense;
+    private final float speed; // Units per second when chasing
+    private final float aggroRadius; // Notices players this close
+    private final float leashRadius; // Gives up a chase this far from home
+    private final float attackRange;
+    private final int attackCooldown; // ms
+    private final int respawnSeconds;
+
+    MobType(String name, String attackName, CharacterClass look, int level, int maxHealth,
+            int attack, int defense, float speed, float aggroRadius, float leashRadius,
+            float attackRange, int attackCooldown, int respawnSeconds) {
+        this.name = name;
+        this.attackName = attackName;
+        this.look = look;
+        this.level = level;
+        this.maxHealth = maxHealth;
+        this.attack = attack;
+        this.defense = defense;
+        this.speed = speed;
+        this.aggroRadius = aggroRadius;
+        this.leashRadius = leashRadius;
+        this.attackRange = attackRange;
+        this.attackCooldown = attackCooldown;
+        this.respawnSeconds = respawnSeconds;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getAttackName() {
+        return attackName;
+    }
+
+    public CharacterClass getLook() {
+        return look;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getMaxHealth() {
+        return maxHealth;
+    }
+
+    public int getAttack() {
+        return attack;
+    }
+
+    public int getDefense() {
+        return defense;
+    }
+
+    public float getSpeed() {
+        return speed;
+    }
+
+    public float getAggroRadius() {
+        return aggroRadius;
+    }
+
+    public float getLeashRadius() {
+        return leashRadius;
+    }
+
+    public float getAttackRange() {
+        return attackRange;
+    }
+
+    public int getAttackCooldown() {
+        return attackCooldown;
+    }
+
+    public int getRespawnSeconds() {
+        return respawnSeconds;
+    }
+}
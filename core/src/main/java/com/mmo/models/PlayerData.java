@@ -8,7 +8,7 @@ public class PlayerData {
     private String username;
     private CharacterData character;
     private boolean online;
-    private long lastActivity;
+    private volatile long lastActivity; // Updated from the game loop and the player's mailbox
     
     public PlayerData() {
         // Default constructor for Kryo
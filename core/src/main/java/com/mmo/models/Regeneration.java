@@ -0,0 +1,99 @@
+package com.mmo.models;
+
+/**
+ * How a stat (health or mana) refills over time: a steady rate plus an
+ * optional bonus rate that runs out, say from a potion.
+ *
+ * Nothing is applied tick by tick. The stat's stored value holds as of
+ * {@code settledAt}, and whatever has regenerated since is worked out when
+ * the stat is read. Writes settle first, folding the whole points gained into
+ * the stored value while keeping the progress toward the next one.
+ */
+public class Regeneration {
+    private float rate; // Points per second
+    private float bonusRate; // Extra points per second until bonusUntil
+    private long bonusUntil;
+    private long settledAt; // The stored value holds as of this time (ms)
+
+    public Regeneration() {
+        // Default constructor for Kryo
+    }
+
+    public Regeneration(long now) {
+        this.settledAt = now;
+    }
+
+    /**
+     * Whole points regenerated since the value was settled, at most {@code room}
+     */
+    public int regenerated(int room, long now) {
+        if (room <= 0 || now <= settledAt) {
+            return 0;
+        }
+        double bonusMillis = Math.max(0, Math.min(now, bonusUntil) - settledAt);
+        double points = (rate * (double) (now - settledAt) + bonusRate * bonusMillis) / 1000.0;
+        return (int) Math.min(room, (long) points);
+    }
+
+    /**
+     * The value now includes {@code points} more; count the next point from
+     * where those left off, or from now if the value is full or not regenerating
+     */
+    public void settle(int points, boolean full, long now) {
+        if (full || rateAt(now) == 0) {
+            settledAt = now;
+        } else if (points > 0) {
+            settledAt = Math.min(now, settledAt + millisFor(points));
+        }
+    }
+
+    public float getRate() {
+        return rate;
+    }
+
+    /**
+     * Change the steady rate; settle the value first
+     */
+    public void setRate(float rate) {
+        this.rate = rate;
+    }
+
+    /**
+     * Add {@code perSecond} on top of the steady rate for a while, replacing
+     * any bonus still running; settle the value first
+     */
+    public void setBonus(float perSecond, long durationMillis, long now) {
+        bonusRate = perSecond;
+        bonusUntil = now + durationMillis;
+    }
+
+    /**
+     * Points per second right now, bonus included
+     */
+    public float rateAt(long now) {
+        return now < bonusUntil ? rate + bonusRate : rate;
+    }
+
+    /**
+     * Move the timestamps by {@code millis}, onto another machine's clock
+     */
+    public void shift(long millis) {
+        settledAt += millis;
+        if (bonusUntil != 0) {
+            bonusUntil += millis;
+        }
+    }
+
+    /**
+     * Milliseconds from settledAt until {@code points} whole points had been regenerated
+     */
+    private long millisFor(int points) {
+        double needed = points * 1000.0;
+        double bonusMillis = Math.max(0, bonusUntil - settledAt);
+        double fast = rate + bonusRate;
+        if (needed <= fast * bonusMillis) {
+            return (long) (needed / fast);
+        }
+        return (long) (bonusMillis + (needed - fast * bonusMillis) / rate);
+    }
+}
@@ -0,0 +1,106 @@
+package com.mmo.network;
+
+import com.esotericsoftware.kryonet.Connection;
+import com.esotericsoftware.kryonet.Listener;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Routes received messages to typed handlers by their exact class.
+ * The route for a class is resolved once and cached in a {@link ClassValue},
+ * so dispatch costs the same no matter how many message types are registered.
+ * Each route counts its invocations. Add the dispatcher to an endpoint as a listener.
+ */
+public class MessageDispatcher extends Listener {
+    /**
+     * Handles one message type
+     */
+    public interface Handler<T> {
+        void handle(Connection connection, T message);
+    }
+
+    private final Map<Class<?>, Route<?>> routes;
+    private final ClassValue<Route<?>> lookup;
+    private final LongAdder unhandled;
+
+    public MessageDispatcher() {
+        this.routes = new ConcurrentHashMap<>();
+        this.lookup = new ClassValue<Route<?>>() {
+            @Override
+            protected Route<?> computeValue(Class<?> type) {
+                Route<?> route = routes.get(type);
+                return route != null ? route : Route.NONE;
+            }
+        };
+        this.unhandled = new LongAdder();
+    }
+
+    /**
+     * Register the handler for a message type, replacing any previous one
+     */
+    public <T> void register(Class<T> type, Handler<? super T> handler) {
+        routes.put(type, new Route<>(type, handler));
+        lookup.remove(type); // Drop a cached miss or an older route
+    }
+
+    @Override
+    public void received(Connection connection, Object object) {
+        dispatch(connection, object);
+    }
+
+    /**
+     * Invoke the handler registered for the message's class.
+     * Returns false if there is none (e.g. KryoNet keep-alives).
+     */
+    public boolean dispatch(Connection connection, Object message) {
+        Route<?> route = lookup.get(message.getClass());
+        if (route == Route.NONE) {
+            unhandled.increment();
+            return false;
+        }
+        route.invoke(connection, message);
+        return true;
+    }
+
+    public long getCount(Class<?> type) {
+        Route<?> route = routes.get(type);
+        return route != null ? route.count.sum() : 0;
+    }
+
+    public long getUnhandled() {
+        return unhandled.sum();
+    }
+
+    /**
+     * Invocation counts by message name, busiest first
+     */
+    public Map<String, Long> getCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        routes.values().stream()
+            .filter(route -> route.count.sum() > 0)
+            .sorted((a, b) -> Long.compare(b.count.sum(), a.count.sum()))
+            .forEach(route -> counts.put(route.type.getSimpleName(), route.count.sum()));
+        return counts;
+    }
+
+    private static class Route<T> {
+        static final Route<Object> NONE = new Route<>(Object.class, (connection, message) -> { });
+
+        final Class<T> type;
+        final Handler<? super T> handler;
+        final LongAdder count = new LongAdder();
+
+        Route(Class<T> type, Handler<? super T> handler) {
+            this.type = type;
+            this.handler = handler;
+        }
+
+        void invoke(Connection connection, Object message) {
+            count.increment();
+            handler.handle(connection, type.cast(message));
+        }
+    }
+}
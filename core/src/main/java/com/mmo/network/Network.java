@@ -16,13 +16,20 @@ public class Network {
      * Register all network classes for serialization
      */
     public static void register(EndPoint endPoint) {
-        Kryo kryo = endPoint.getKryo();
-        
+        register(endPoint.getKryo());
+    }
+    
+    /**
+     * Register all network classes on a standalone Kryo instance.
+     * Registration order defines the wire ids, so every instance must go through here.
+     */
+    public static void register(Kryo kryo) {
         // Authentication messages
         kryo.register(LoginRequest.class);
         kryo.register(LoginResponse.class);
         kryo.register(RegisterRequest.class);
         kryo.register(RegisterResponse.class);
+        kryo.register(LoginQueued.class);
         
         // Character messages
         kryo.register(CharacterListRequest.class);
@@ -35,8 +42,11 @@ public class Network {
         // Game messages
         kryo.register(PlayerMoveRequest.class);
         kryo.register(PlayerMoveResponse.class);
-        kryo.register(PlayerUpdate.class);
-        kryo.register(WorldUpdate.class);
+        kryo.register(PlayerUpdate.class, new PlayerUpdateSerializer());
+        kryo.register(WorldUpdate.class, new WorldUpdateSerializer());
+        kryo.register(SnapshotAck.class);
+        kryo.register(EntitySpawn.class);
+        kryo.register(EntityDespawn.class);
         kryo.register(ChatMessage.class);
         kryo.register(UseAbilityRequest.class);
         kryo.register(UseAbilityResponse.class);
@@ -59,11 +69,18 @@ public class Network {
         kryo.register(UnequipItemRequest.class);
         kryo.register(UnequipItemResponse.class);
         
+        // Zone messages
+        kryo.register(ZoneRedirect.class);
+        kryo.register(ZoneTransferRequest.class);
+        kryo.register(ZoneTransferResponse.class);
+        
         // Data models
         kryo.register(PlayerData.class);
         kryo.register(CharacterData.class);
+        kryo.register(Regeneration.class);
         kryo.register(CharacterData[].class);
         kryo.register(CharacterClass.class);
+        kryo.register(MobType.class);
         kryo.register(Ability.class);
         kryo.register(CombatAction.class);
         kryo.register(Item.class);
@@ -91,6 +108,11 @@ public class Network {
         public String token;
     }
     
+    // Sent while a login waits for its password check, and again as it moves up
+    public static class LoginQueued {
+        public int position; // 1 is next
+    }
+    
     public static class RegisterRequest {
         public String username;
         public String password;
@@ -133,6 +155,7 @@ public class Network {
         public boolean success;
         public String message;
         public PlayerData playerData;
+        public long serverTime; // Server clock when sent, to re-base the character's timestamps
     }
     
     // Game Messages
@@ -148,17 +171,47 @@ public class Network {
     }
     
     public static class PlayerUpdate {
+        // Field bits for delta snapshots
+        public static final int FIELD_X = 1;
+        public static final int FIELD_Y = 1 << 1;
+        public static final int FIELD_HEALTH = 1 << 2;
+        public static final int FIELD_MAX_HEALTH = 1 << 3;
+        public static final int ALL_FIELDS = (1 << 4) - 1;
+        
+        // Dynamic state only; name, class and level arrive once in EntitySpawn
         public long playerId;
+        public int fields = ALL_FIELDS; // Which fields below are present
         public float x;
         public float y;
-        public String name;
-        public int level;
         public int health;
         public int maxHealth;
     }
     
     public static class WorldUpdate {
-        public PlayerUpdate[] players;
+        public int sequence;
+        public int baseline = -1; // Sequence this update is a delta against, -1 for a full snapshot
+        public PlayerUpdate[] players; // Entities that changed since the baseline
+        public long[] removed; // Entities in the baseline that are no longer visible
+        public int playerCount; // Entries of players in use; the server reuses longer arrays
+        public int removedCount; // Entries of removed in use
+    }
+    
+    public static class SnapshotAck {
+        public int sequence;
+    }
+    
+    // Sent when an entity enters the client's view (or its static data changes)
+    public static class EntitySpawn {
+        public long entityId;
+        public String name;
+        public CharacterClass characterClass;
+        public int level;
+        public MobType mobType; // Null for players
+    }
+    
+    // Sent when an entity leaves the client's view or the world
+    public static class EntityDespawn {
+        public long entityId;
     }
     
     public static class ChatMessage {
@@ -254,6 +307,7 @@ public class Network {
         public boolean success;
         public String message;
         public CharacterData updatedCharacter; // Updated character with new stats
+        public long serverTime; // Server clock when sent, to re-base the character's timestamps
     }
     
     public static class UnequipItemRequest {
@@ -264,5 +318,29 @@ public class Network {
         public boolean success;
         public String message;
         public CharacterData updatedCharacter; // Updated character with new stats
+        public long serverTime; // Server clock when sent, to re-base the character's timestamps
+    }
+    
+    // Zone Messages
+    
+    // Sent when the player has crossed into another zone server's part of the map
+    public static class ZoneRedirect {
+        public String host;
+        public int tcpPort;
+        public int udpPort;
+        public String transferToken;
+    }
+    
+    // First message to the new zone after a redirect
+    public static class ZoneTransferRequest {
+        public String transferToken;
+        public String sessionToken; // Kept if the new zone accepts it
+    }
+    
+    public static class ZoneTransferResponse {
+        public boolean success;
+        public String message;
+        public PlayerData playerData;
+        public String token; // Session token to use on this zone
     }
 }
@@ -0,0 +1,37 @@
+package com.mmo.network;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * Writes only the fields flagged in {@link Network.PlayerUpdate#fields},
+ * so delta snapshots don't pay for unchanged values
+ */
+public class PlayerUpdateSerializer extends Serializer<Network.PlayerUpdate> {
+
+    @Override
+    public void write(Kryo kryo, Output output, Network.PlayerUpdate update) {
+        int fields = update.fields;
+        output.writeVarInt(fields, true);
+        output.writeVarLong(update.playerId, true);
+        if ((fields & Network.PlayerUpdate.FIELD_X) != 0) output.writeFloat(update.x);
+        if ((fields & Network.PlayerUpdate.FIELD_Y) != 0) output.writeFloat(update.y);
+        if ((fields & Network.PlayerUpdate.FIELD_HEALTH) != 0) output.writeVarInt(update.health, true);
+        if ((fields & Network.PlayerUpdate.FIELD_MAX_HEALTH) != 0) output.writeVarInt(update.maxHealth, true);
+    }
+
+    @Override
+    public Network.PlayerUpdate read(Kryo kryo, Input input, Class<Network.PlayerUpdate> type) {
+        Network.PlayerUpdate update = new Network.PlayerUpdate();
+        int fields = input.readVarInt(true);
+        update.fields = fields;
+        update.playerId = input.readVarLong(true);
+        if ((fields & Network.PlayerUpdate.FIELD_X) != 0) update.x = input.readFloat();
+        if ((fields & Network.PlayerUpdate.FIELD_Y) != 0) update.y = input.readFloat();
+        if ((fields & Network.PlayerUpdate.FIELD_HEALTH) != 0) update.health = input.readVarInt(true);
+        if ((fields & Network.PlayerUpdate.FIELD_MAX_HEALTH) != 0) update.maxHealth = input.readVarInt(true);
+        return update;
+    }
+}
@@ -0,0 +1,137 @@
+package com.mmo.network;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Client-side reconstruction of delta-compressed world snapshots.
+ * Keeps a small ring of decoded snapshots so a delta can be applied to
+ * whichever baseline the server chose (the last one we acknowledged).
+ * Each slot's map and entity objects are reused when the ring comes round
+ * to it again, so what a decode returns is overwritten in place then.
+ */
+public class SnapshotDecoder {
+    public static final int HISTORY_SIZE = 32;
+
+    private final Map<Long, Network.PlayerUpdate>[] history;
+    private final int[] historySequences;
+    private int latestSequence = -1;
+
+    @SuppressWarnings("unchecked")
+    public SnapshotDecoder() {
+        history = (Map<Long, Network.PlayerUpdate>[]) new Map<?, ?>[HISTORY_SIZE];
+        historySequences = new int[HISTORY_SIZE];
+        for (int i = 0; i < HISTORY_SIZE; i++) {
+            history[i] = new HashMap<>();
+            historySequences[i] = -1;
+        }
+    }
+
+    /**
+     * Apply an update and return the full set of visible entities,
+     * or null if it is stale or its baseline is no longer known.
+     */
+    public Collection<Network.PlayerUpdate> decode(Network.WorldUpdate update) {
+        if (latestSequence >= 0 && update.sequence - latestSequence <= 0) {
+            return null; // Out of order or duplicate
+        }
+
+        Map<Long, Network.PlayerUpdate> baseline = null;
+        if (update.baseline >= 0) {
+            baseline = find(update.baseline);
+            if (baseline == null) {
+                return null;
+            }
+        }
+
+        // Rebuild the oldest slot in place from the baseline, keeping the entity objects it already has
+        int slot = Math.floorMod(update.sequence, HISTORY_SIZE);
+        Map<Long, Network.PlayerUpdate> state = history[slot];
+        if (state != baseline) {
+            historySequences[slot] = -1;
+            if (baseline == null) {
+                state.clear();
+            } else {
+                Iterator<Long> ids = state.keySet().iterator();
+                while (ids.hasNext()) {
+                    if (!baseline.containsKey(ids.next())) {
+                        ids.remove();
+                    }
+                }
+                for (Network.PlayerUpdate entity : baseline.values()) {
+                    Network.PlayerUpdate target = state.get(entity.playerId);
+                    if (target == null) {
+                        target = new Network.PlayerUpdate();
+                        target.playerId = entity.playerId;
+                        state.put(entity.playerId, target);
+                    }
+                    merge(target, entity);
+                }
+            }
+        }
+
+        if (update.removed != null) {
+            for (long id : update.removed) {
+                state.remove(id);
+            }
+        }
+
+        if (update.players != null) {
+            for (Network.PlayerUpdate delta : update.players) {
+                Network.PlayerUpdate entity = state.get(delta.playerId);
+                if (entity == null) {
+                    entity = new Network.PlayerUpdate();
+                    entity.playerId = delta.playerId;
+                    state.put(delta.playerId, entity);
+                }
+                merge(entity, delta);
+            }
+        }
+
+        historySequences[slot] = update.sequence;
+        latestSequence = update.sequence;
+        return Collections.unmodifiableCollection(state.values());
+    }
+
+    /**
+     * Acknowledgement for the most recently decoded snapshot
+     */
+    public Network.SnapshotAck createAck() {
+        Network.SnapshotAck ack = new Network.SnapshotAck();
+        ack.sequence = latestSequence;
+        return ack;
+    }
+
+    /**
+     * Latest decoded state of one entity, or null if it is not in the newest snapshot
+     */
+    public Network.PlayerUpdate getEntity(long entityId) {
+        Map<Long, Network.PlayerUpdate> latest = latestSequence >= 0 ? find(latestSequence) : null;
+        return latest != null ? latest.get(entityId) : null;
+    }
+
+    public void reset() {
+        for (int i = 0; i < HISTORY_SIZE; i++) {
+            history[i].clear();
+            historySequences[i] = -1;
+        }
+        latestSequence = -1;
+    }
+
+    private Map<Long, Network.PlayerUpdate> find(int sequence) {
+        int slot = Math.floorMod(sequence, HISTORY_SIZE);
+        return historySequences[slot] == sequence ? history[slot] : null;
+    }
+
+    private static void merge(Network.PlayerUpdate target, Network.PlayerUpdate delta) {
+        int fields = delta.fields;
+        if ((fields & Network.PlayerUpdate.FIELD_X) != 0) target.x = delta.x;
+        if ((fields & Network.PlayerUpdate.FIELD_Y) != 0) target.y = delta.y;
+        if ((fields & Network.PlayerUpdate.FIELD_HEALTH) != 0) target.health = delta.health;
+        if ((fields & Network.PlayerUpdate.FIELD_MAX_HEALTH) != 0) target.maxHealth = delta.maxHealth;
+        target.fields = Network.PlayerUpdate.ALL_FIELDS;
+    }
+}
@@ -0,0 +1,291 @@
+package com.mmo.network;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.mmo.world.WorldLayout;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compact wire format for world snapshots.
+ *
+ * In compact mode entity ids are delta-coded varints and every numeric field
+ * is packed into one contiguous bit block per update: positions quantized to
+ * the world bounds, health as a 0-255 ratio of max health. The full-precision
+ * mode writes plain floats and ints per entity and is kept for debugging.
+ * A header flag records the mode, so the reader decodes either.
+ */
+public class WorldUpdateSerializer extends Serializer<Network.WorldUpdate> {
+    public static final float WORLD_MIN = 0f;
+    public static final float WORLD_MAX = Math.max(WorldLayout.WIDTH, WorldLayout.HEIGHT) * WorldLayout.TILE_SIZE; // Both axes
+
+    private static final int FLAG_COMPACT = 1;
+    private static final int FIELD_BITS = 4;
+    private static final int HEALTH_RATIO_BITS = 8;
+    private static final int MAX_HEALTH_BITS = 16;
+    private static final int MAX_POSITION_BITS = 24;
+
+    private static volatile boolean compact = !Boolean.getBoolean("mmo.snapshot.fullPrecision");
+    private static volatile int positionBits = bitsForPrecision(
+        Float.parseFloat(System.getProperty("mmo.snapshot.precision", "0.25")));
+
+    // Encoding statistics (bytes per entity on the wire)
+    private static final LongAdder encodedEntities = new LongAdder();
+    private static final LongAdder encodedBytes = new LongAdder();
+
+    private final PlayerUpdateSerializer fullPrecision = new PlayerUpdateSerializer();
+    private final BitWriter bitWriter = new BitWriter();
+    private final BitReader bitReader = new BitReader();
+
+    /**
+     * Switch between the compact quantized format and the full-precision debug format
+     */
+    public static void setCompact(boolean enabled) {
+        compact = enabled;
+    }
+
+    public static boolean isCompact() {
+        return compact;
+    }
+
+    /**
+     * Set the largest acceptable position error in world units
+     */
+    public static void setPositionPrecision(float precision) {
+        positionBits = bitsForPrecision(precision);
+    }
+
+    public static int getPositionBits() {
+        return positionBits;
+    }
+
+    public static long getEncodedEntities() {
+        return encodedEntities.sum();
+    }
+
+    public static long getEncodedBytes() {
+        return encodedBytes.sum();
+    }
+
+    private static int bitsForPrecision(float precision) {
+        if (precision <= 0) {
+            throw new IllegalArgumentException("Precision must be positive: " + precision);
+        }
+        double steps = (WORLD_MAX - WORLD_MIN) / precision;
+        int bits = 1;
+        while (bits < MAX_POSITION_BITS && ((1L << bits) - 1) < steps) {
+            bits++;
+        }
+        return bits;
+    }
+
+    @Override
+    public void write(Kryo kryo, Output output, Network.WorldUpdate update) {
+        long start = output.total();
+        boolean compactMode = compact;
+        int bits = positionBits;
+
+        output.writeVarInt(compactMode ? FLAG_COMPACT : 0, true);
+        output.writeVarInt(update.sequence, true);
+        output.writeVarInt(update.baseline + 1, true);
+
+        long[] removed = update.removed;
+        int removedCount = update.removedCount;
+        output.writeVarInt(removedCount, true);
+        long previousId = 0;
+        for (int i = 0; i < removedCount; i++) {
+            output.writeVarLong(removed[i] - previousId, false);
+            previousId = removed[i];
+        }
+
+        Network.PlayerUpdate[] players = update.players;
+        int count = update.playerCount;
+        output.writeVarInt(count, true);
+
+        if (!compactMode) {
+            for (int i = 0; i < count; i++) {
+                fullPrecision.write(kryo, output, players[i]);
+            }
+        } else {
+            output.writeVarInt(bits, true);
+            previousId = 0;
+            for (int i = 0; i < count; i++) {
+                output.writeVarLong(players[i].playerId - previousId, false);
+                previousId = players[i].playerId;
+            }
+
+            bitWriter.reset();
+            for (int i = 0; i < count; i++) {
+                Network.PlayerUpdate player = players[i];
+                int fields = player.fields;
+                if ((fields & Network.PlayerUpdate.FIELD_HEALTH) != 0) {
+                    // The ratio is meaningless without the max it is relative to
+                    fields |= Network.PlayerUpdate.FIELD_MAX_HEALTH;
+                }
+                bitWriter.write(fields, FIELD_BITS);
+                if ((fields & Network.PlayerUpdate.FIELD_X) != 0) bitWriter.write(quantize(player.x, bits), bits);
+                if ((fields & Network.PlayerUpdate.FIELD_Y) != 0) bitWriter.write(quantize(player.y, bits), bits);
+                if ((fields & Network.PlayerUpdate.FIELD_HEALTH) != 0) bitWriter.write(healthRatio(player.health, player.maxHealth), HEALTH_RATIO_BITS);
+                if ((fields & Network.PlayerUpdate.FIELD_MAX_HEALTH) != 0) bitWriter.write(clamp(player.maxHealth, MAX_HEALTH_BITS), MAX_HEALTH_BITS);
+            }
+            bitWriter.flushTo(output);
+        }
+
+        if (count > 0) {
+            encodedEntities.add(count);
+            encodedBytes.add(output.total() - start);
+        }
+    }
+
+    @Override
+    public Network.WorldUpdate read(Kryo kryo, Input input, Class<Network.WorldUpdate> type) {
+        Network.WorldUpdate update = new Network.WorldUpdate();
+        boolean compactMode = (input.readVarInt(true) & FLAG_COMPACT) != 0;
+        update.sequence = input.readVarInt(true);
+        update.baseline = input.readVarInt(true) - 1;
+
+        int removedCount = input.readVarInt(true);
+        update.removedCount = removedCount;
+        if (removedCount > 0) {
+            update.removed = new long[removedCount];
+            long previousId = 0;
+            for (int i = 0; i < removedCount; i++) {
+                previousId += input.readVarLong(false);
+                update.removed[i] = previousId;
+            }
+        }
+
+        int count = input.readVarInt(true);
+        update.players = new Network.PlayerUpdate[count];
+        update.playerCount = count;
+
+        if (!compactMode) {
+            for (int i = 0; i < count; i++) {
+                update.players[i] = fullPrecision.read(kryo, input, Network.PlayerUpdate.class);
+            }
+            return update;
+        }
+
+        int bits = input.readVarInt(true);
+        long previousId = 0;
+        for (int i = 0; i < count; i++) {
+            Network.PlayerUpdate player = new Network.PlayerUpdate();
+            previousId += input.readVarLong(false);
+            player.playerId = previousId;
+            update.players[i] = player;
+        }
+
+        bitReader.readFrom(input);
+        for (int i = 0; i < count; i++) {
+            Network.PlayerUpdate player = update.players[i];
+            int fields = bitReader.read(FIELD_BITS);
+            player.fields = fields;
+            if ((fields & Network.PlayerUpdate.FIELD_X) != 0) player.x = dequantize(bitReader.read(bits), bits);
+            if ((fields & Network.PlayerUpdate.FIELD_Y) != 0) player.y = dequantize(bitReader.read(bits), bits);
+            int ratio = (fields & Network.PlayerUpdate.FIELD_HEALTH) != 0 ? bitReader.read(HEALTH_RATIO_BITS) : 0;
+            if ((fields & Network.PlayerUpdate.FIELD_MAX_HEALTH) != 0) player.maxHealth = bitReader.read(MAX_HEALTH_BITS);
+            if ((fields & Network.PlayerUpdate.FIELD_HEALTH) != 0) player.health = Math.round(ratio * player.maxHealth / 255f);
+        }
+        return update;
+    }
+
+    private static int quantize(float value, int bits) {
+        int maxStep = (1 << bits) - 1;
+        float clamped = Math.max(WORLD_MIN, Math.min(WORLD_MAX, value));
+        return Math.round((clamped - WORLD_MIN) / (WORLD_MAX - WORLD_MIN) * maxStep);
+    }
+
+    private static float dequantize(int step, int bits) {
+        int maxStep = (1 << bits) - 1;
+        return WORLD_MIN + step * (WORLD_MAX - WORLD_MIN) / maxStep;
+    }
+
+    private static int healthRatio(int health, int maxHealth) {
+        if (health <= 0 || maxHealth <= 0) {
+            return 0;
+        }
+        // Never round a living entity down to zero
+        return Math.max(1, Math.min(255, Math.round(health * 255f / maxHealth)));
+    }
+
+    private static int clamp(int value, int bits) {
+        return Math.max(0, Math.min((1 << bits) - 1, value));
+    }
+
+    /**
+     * Appends values of arbitrary bit width into a reusable byte array
+     */
+    private static class BitWriter {
+        private byte[] bytes = new byte[256];
+        private int length;
+        private long accumulator;
+        private int accumulated;
+
+        void reset() {
+            length = 0;
+            accumulator = 0;
+            accumulated = 0;
+        }
+
+        void write(int value, int bits) {
+            accumulator = (accumulator << bits) | (value & ((1L << bits) - 1));
+            accumulated += bits;
+            while (accumulated >= 8) {
+                accumulated -= 8;
+                put((byte) (accumulator >>> accumulated));
+            }
+        }
+
+        void flushTo(Output output) {
+            if (accumulated > 0) {
+                put((byte) (accumulator << (8 - accumulated)));
+                accumulated = 0;
+            }
+            output.writeVarInt(length, true);
+            output.writeBytes(bytes, 0, length);
+        }
+
+        private void put(byte value) {
+            if (length == bytes.length) {
+                byte[] grown = new byte[bytes.length * 2];
+                System.arraycopy(bytes, 0, grown, 0, length);
+                bytes = grown;
+            }
+            bytes[length++] = value;
+        }
+    }
+
+    /**
+     * Reads values back out of a bit block written by {@link BitWriter}
+     */
+    private static class BitReader {
+        private byte[] bytes = new byte[256];
+        private int length;
+        private int position;
+        private long accumulator;
+        private int accumulated;
+
+        void readFrom(Input input) {
+            length = input.readVarInt(true);
+            if (bytes.length < length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            input.readBytes(bytes, 0, length);
+            position = 0;
+            accumulator = 0;
+            accumulated = 0;
+        }
+
+        int read(int bits) {
+            while (accumulated < bits) {
+                int next = position < length ? bytes[position++] & 0xFF : 0;
+                accumulator = (accumulator << 8) | next;
+                accumulated += 8;
+            }
+            accumulated -= bits;
+            return (int) ((accumulator >>> accumulated) & ((1L << bits) - 1));
+        }
+    }
+}
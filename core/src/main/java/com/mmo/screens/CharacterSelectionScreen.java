@@ -68,6 +68,7 @@ public class CharacterSelectionScreen implements Screen {
         if (response.success) {
             message = "Character selected!";
             messageColor = Color.GREEN;
+            response.playerData.getCharacter().rebaseClock(response.serverTime, System.currentTimeMillis());
             Gdx.app.postRunnable(() -> {
                 game.setScreen(new GameScreen(game, response.playerData));
                 dispose();
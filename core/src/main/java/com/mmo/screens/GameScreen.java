@@ -9,8 +9,6 @@ import com.badlogic.gdx.graphics.OrthographicCamera;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
 import com.badlogic.gdx.math.Vector2;
-import com.esotericsoftware.kryonet.Connection;
-import com.esotericsoftware.kryonet.Listener;
 import com.mmo.game.MMOGame;
 import com.mmo.graphics.AbilityEffect;
 import com.mmo.graphics.ParticleSystem;
@@ -18,9 +16,15 @@ import com.mmo.graphics.PlayerAnimation;
 import com.mmo.graphics.TextureGenerator;
 import com.mmo.models.Ability;
 import com.mmo.models.PlayerData;
+import com.mmo.network.MessageDispatcher;
 import com.mmo.network.Network;
+import com.mmo.network.SnapshotDecoder;
+import com.mmo.world.CollisionMap;
+import com.mmo.world.WorldLayout;
 import com.mmo.world.WorldRenderer;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -32,6 +36,7 @@ public class GameScreen implements Screen {
     private final PlayerData playerData;
     private final OrthographicCamera camera;
     private final WorldRenderer worldRenderer;
+    private final CollisionMap collisionMap;
     private final ParticleSystem particleSystem;
     private final PlayerAnimation playerAnimation;
     private final Map<Long, PlayerAnimation> otherPlayerAnimations;
@@ -41,7 +46,9 @@ public class GameScreen implements Screen {
     private Texture playerTexture;
     private Map<Long, Texture> otherPlayerTextures;
     
-    private Map<Long, Network.PlayerUpdate> otherPlayers;
+    private Map<Long, Network.PlayerUpdate> otherPlayers; // Dynamic state of spawned entities
+    private Map<Long, Network.EntitySpawn> otherPlayerInfo; // Static data from EntitySpawn
+    private final SnapshotDecoder snapshotDecoder;
     private Vector2 playerPosition;
     private Vector2 playerVelocity;
     private float moveSpeed = 150f;
@@ -70,13 +77,16 @@ public class GameScreen implements Screen {
         camera = new OrthographicCamera();
         camera.setToOrtho(true, Gdx.graphics.getWidth(), Gdx.graphics.getHeight());
         
-        worldRenderer = new WorldRenderer();
+        collisionMap = new CollisionMap(new WorldLayout());
+        worldRenderer = new WorldRenderer(collisionMap);
         particleSystem = new ParticleSystem();
         playerAnimation = new PlayerAnimation();
         otherPlayerAnimations = new HashMap<>();
         otherPlayerTextures = new HashMap<>();
         abilityEffect = new AbilityEffect();
         otherPlayers = new HashMap<>();
+        otherPlayerInfo = new HashMap<>();
+        snapshotDecoder = new SnapshotDecoder();
         
         // Generate player texture based on class
         String className = playerData.getCharacter().getCharacterClass().getName();
@@ -91,56 +101,125 @@ public class GameScreen implements Screen {
     }
     
     private void setupNetworkListener() {
-        game.client.addListener(new Listener() {
-            @Override
-            public void received(Connection connection, Object object) {
-                if (object instanceof Network.WorldUpdate) {
-                    Network.WorldUpdate update = (Network.WorldUpdate) object;
-                    handleWorldUpdate(update);
-                } else if (object instanceof Network.ChatMessage) {
-                    Network.ChatMessage msg = (Network.ChatMessage) object;
-                    addChatMessage(msg.sender + ": " + msg.message);
-                } else if (object instanceof Network.UseAbilityResponse) {
-                    Network.UseAbilityResponse response = (Network.UseAbilityResponse) object;
-                    if (!response.success) {
-                        showCombatFeedback(response.message);
-                    } else {
-                        // Update local character stats
-                        playerData.getCharacter().setMana(response.currentMana);
-                        playerData.getCharacter().setHealth(response.currentHealth);
-                    }
-                } else if (object instanceof Network.CombatEvent) {
-                    Network.CombatEvent event = (Network.CombatEvent) object;
-                    handleCombatEvent(event);
-                } else if (object instanceof Network.PlayerDeath) {
-                    Network.PlayerDeath death = (Network.PlayerDeath) object;
-                    handlePlayerDeath(death);
-                } else if (object instanceof Network.PlayerRespawn) {
-                    Network.PlayerRespawn respawn = (Network.PlayerRespawn) object;
-                    handlePlayerRespawn(respawn);
-                } else if (object instanceof Network.UseItemResponse) {
-                    Network.UseItemResponse response = (Network.UseItemResponse) object;
-                    handleUseItemResponse(response);
-                } else if (object instanceof Network.EquipItemResponse) {
-                    Network.EquipItemResponse response = (Network.EquipItemResponse) object;
-                    handleEquipItemResponse(response);
-                } else if (object instanceof Network.UnequipItemResponse) {
-                    Network.UnequipItemResponse response = (Network.UnequipItemResponse) object;
-                    handleUnequipItemResponse(response);
-                }
+        MessageDispatcher dispatcher = new MessageDispatcher();
+        
+        // Entity state is owned by the render thread (textures are created and disposed there)
+        dispatcher.register(Network.WorldUpdate.class,
+            (connection, update) -> Gdx.app.postRunnable(() -> handleWorldUpdate(update)));
+        dispatcher.register(Network.EntitySpawn.class,
+            (connection, spawn) -> Gdx.app.postRunnable(() -> handleEntitySpawn(spawn)));
+        dispatcher.register(Network.EntityDespawn.class,
+            (connection, despawn) -> Gdx.app.postRunnable(() -> handleEntityDespawn(despawn)));
+        
+        dispatcher.register(Network.ZoneRedirect.class,
+            (connection, redirect) -> Gdx.app.postRunnable(() -> handleZoneRedirect(redirect)));
+        dispatcher.register(Network.ZoneTransferResponse.class, (connection, response) -> {
+            if (response.success) {
+                game.setAuthToken(response.token);
+                addChatMessage(response.message);
+            } else {
+                showCombatFeedback("Zone transfer failed: " + response.message);
+            }
+        });
+        
+        dispatcher.register(Network.ChatMessage.class,
+            (connection, msg) -> addChatMessage(msg.sender + ": " + msg.message));
+        dispatcher.register(Network.UseAbilityResponse.class, (connection, response) -> {
+            if (!response.success) {
+                showCombatFeedback(response.message);
+            } else {
+                // Update local character stats
+                playerData.getCharacter().setMana(response.currentMana);
+                playerData.getCharacter().setHealth(response.currentHealth);
             }
         });
+        dispatcher.register(Network.CombatEvent.class, (connection, event) -> handleCombatEvent(event));
+        dispatcher.register(Network.PlayerDeath.class, (connection, death) -> handlePlayerDeath(death));
+        dispatcher.register(Network.PlayerRespawn.class, (connection, respawn) -> handlePlayerRespawn(respawn));
+        dispatcher.register(Network.PlayerMoveResponse.class,
+            (connection, correction) -> Gdx.app.postRunnable(() -> handleMoveCorrection(correction)));
+        dispatcher.register(Network.UseItemResponse.class, (connection, response) -> handleUseItemResponse(response));
+        dispatcher.register(Network.EquipItemResponse.class, (connection, response) -> handleEquipItemResponse(response));
+        dispatcher.register(Network.UnequipItemResponse.class, (connection, response) -> handleUnequipItemResponse(response));
+        
+        game.client.addListener(dispatcher);
     }
     
     private void handleWorldUpdate(Network.WorldUpdate update) {
-        otherPlayers.clear();
-        if (update.players != null) {
-            for (Network.PlayerUpdate player : update.players) {
-                if (player.playerId != playerData.getPlayerId()) {
-                    otherPlayers.put(player.playerId, player);
-                }
+        Collection<Network.PlayerUpdate> players = snapshotDecoder.decode(update);
+        if (players == null) {
+            return; // Stale, or delta against a snapshot we no longer have
+        }
+        
+        // Let the server know which baseline it can delta against next
+        game.client.sendUDP(snapshotDecoder.createAck());
+        
+        // Only entities we have spawned are tracked; a late snapshot must not
+        // bring back one that has already been despawned
+        for (Network.PlayerUpdate player : players) {
+            if (otherPlayerInfo.containsKey(player.playerId)) {
+                otherPlayers.put(player.playerId, player);
+            }
+        }
+    }
+    
+    private void handleEntitySpawn(Network.EntitySpawn spawn) {
+        if (spawn.entityId == playerData.getPlayerId()) {
+            return;
+        }
+        Network.EntitySpawn previous = otherPlayerInfo.put(spawn.entityId, spawn);
+        if (previous != null && previous.characterClass != spawn.characterClass) {
+            // Appearance changed; regenerate the sprite on next draw
+            Texture texture = otherPlayerTextures.remove(spawn.entityId);
+            if (texture != null) {
+                texture.dispose();
             }
         }
+        
+        // The snapshot carrying its position may already have arrived
+        Network.PlayerUpdate state = snapshotDecoder.getEntity(spawn.entityId);
+        if (state != null) {
+            otherPlayers.put(spawn.entityId, state);
+        }
+    }
+    
+    private void handleEntityDespawn(Network.EntityDespawn despawn) {
+        otherPlayerInfo.remove(despawn.entityId);
+        otherPlayers.remove(despawn.entityId);
+        otherPlayerAnimations.remove(despawn.entityId);
+        Texture texture = otherPlayerTextures.remove(despawn.entityId);
+        if (texture != null) {
+            texture.dispose();
+        }
+        if (selectedTargetId == despawn.entityId) {
+            selectedTargetId = -1;
+        }
+    }
+    
+    private void handleZoneRedirect(Network.ZoneRedirect redirect) {
+        // Entities and snapshot numbering belong to the old zone
+        for (Long entityId : new ArrayList<>(otherPlayerInfo.keySet())) {
+            Network.EntityDespawn despawn = new Network.EntityDespawn();
+            despawn.entityId = entityId;
+            handleEntityDespawn(despawn);
+        }
+        otherPlayers.clear();
+        snapshotDecoder.reset();
+        
+        // KryoNet can't reconnect from its own update thread
+        new Thread(() -> {
+            if (game.connectToServer(redirect.host, redirect.tcpPort, redirect.udpPort)) {
+                Network.ZoneTransferRequest request = new Network.ZoneTransferRequest();
+                request.transferToken = redirect.transferToken;
+                request.sessionToken = game.getAuthToken();
+                game.client.sendTCP(request);
+            }
+        }, "zone-redirect").start();
+    }
+    
+    private String getEntityName(long entityId) {
+        Network.EntitySpawn info = otherPlayerInfo.get(entityId);
+        return info != null ? info.name : "Unknown";
     }
     
     private void addChatMessage(String message) {
@@ -264,6 +343,17 @@ public class GameScreen implements Screen {
         }
     }
     
+    /**
+     * The server refused a move (through a wall, say) and put us back here
+     */
+    private void handleMoveCorrection(Network.PlayerMoveResponse correction) {
+        if (correction.playerId == playerData.getPlayerId()) {
+            playerPosition.set(correction.x, correction.y);
+            playerData.getCharacter().setX(correction.x);
+            playerData.getCharacter().setY(correction.y);
+        }
+    }
+    
     private void handleUseItemResponse(Network.UseItemResponse response) {
         if (response.success) {
             // Update local stats
@@ -295,6 +385,7 @@ public class GameScreen implements Screen {
         if (response.success) {
             // Update local Character with updated stats from server
             if (response.updatedCharacter != null) {
+                response.updatedCharacter.rebaseClock(response.serverTime, System.currentTimeMillis());
                 playerData.setCharacter(response.updatedCharacter);
             }
             showCombatFeedback(response.message);
@@ -309,6 +400,7 @@ public class GameScreen implements Screen {
         if (response.success) {
             // Update local Character with updated stats from server
             if (response.updatedCharacter != null) {
+                response.updatedCharacter.rebaseClock(response.serverTime, System.currentTimeMillis());
                 playerData.setCharacter(response.updatedCharacter);
             }
             showCombatFeedback(response.message);
@@ -399,8 +491,11 @@ public class GameScreen implements Screen {
             playerVelocity.nor().scl(moveSpeed);
         }
         
-        // Update position
-        playerPosition.add(playerVelocity.x * delta, playerVelocity.y * delta);
+        // Update position, stopping at and sliding along buildings and water
+        float previousX = playerPosition.x;
+        float previousY = playerPosition.y;
+        collisionMap.slide(previousX, previousY, playerVelocity.x * delta, playerVelocity.y * delta,
+            CollisionMap.PLAYER_RADIUS, playerPosition);
         
         // Create movement trail particles
         if (playerVelocity.len() > 0 && Math.random() < 0.3) {
@@ -409,7 +504,7 @@ public class GameScreen implements Screen {
         }
         
         // Send position update to server
-        if (playerVelocity.len() > 0) {
+        if (playerPosition.x != previousX || playerPosition.y != previousY) {
             Network.PlayerMoveRequest request = new Network.PlayerMoveRequest();
             request.x = playerPosition.x;
             request.y = playerPosition.y;
@@ -454,7 +549,7 @@ public class GameScreen implements Screen {
             
             if (foundCurrent) {
                 selectedTargetId = player.playerId;
-                addChatMessage("Targeted: " + player.name);
+                addChatMessage("Targeted: " + getEntityName(player.playerId));
                 return;
             }
             
@@ -468,7 +563,7 @@ public class GameScreen implements Screen {
         if (selectedTargetId > 0) {
             Network.PlayerUpdate target = otherPlayers.get(selectedTargetId);
             if (target != null) {
-                addChatMessage("Targeted: " + target.name);
+                addChatMessage("Targeted: " + getEntityName(target.playerId));
             }
         }
     }
@@ -496,7 +591,7 @@ public class GameScreen implements Screen {
         
         if (nearestPlayer != null) {
             selectedTargetId = nearestPlayer.playerId;
-            addChatMessage("Targeted: " + nearestPlayer.name + " (" + (int)minDistance + " units away)");
+            addChatMessage("Targeted: " + getEntityName(nearestPlayer.playerId) + " (" + (int)minDistance + " units away)");
         }
     }
     
@@ -517,7 +612,7 @@ public class GameScreen implements Screen {
             if (selectedTargetId > 0) {
                 Network.PlayerUpdate target = otherPlayers.get(selectedTargetId);
                 if (target != null) {
-                    targetInfo = " on " + target.name;
+                    targetInfo = " on " + getEntityName(target.playerId);
                 }
             }
             
@@ -880,8 +975,8 @@ public class GameScreen implements Screen {
             // Get or create texture for this player
             Texture otherTexture = otherPlayerTextures.get(player.playerId);
             if (otherTexture == null) {
-                // Determine class from player data (default to warrior if not available)
-                String className = "warrior"; // You might want to send class info in PlayerUpdate
+                Network.EntitySpawn info = otherPlayerInfo.get(player.playerId);
+                String className = info.characterClass != null ? info.characterClass.getName() : "warrior";
                 otherTexture = TextureGenerator.generateCharacterSprite(className, 0);
                 otherPlayerTextures.put(player.playerId, otherTexture);
             }
@@ -889,6 +984,8 @@ public class GameScreen implements Screen {
             // Draw selection highlight
             if (player.playerId == selectedTargetId) {
                 game.batch.setColor(1f, 1f, 0f, 0.5f); // Yellow tint for selection
+            } else if (otherPlayerInfo.get(player.playerId).mobType != null) {
+                game.batch.setColor(1f, 0.6f, 0.6f, 1f); // Red tint for hostile creatures
             } else {
                 game.batch.setColor(Color.WHITE);
             }
@@ -918,8 +1015,9 @@ public class GameScreen implements Screen {
         game.font.getData().setScale(0.8f);
         
         for (Network.PlayerUpdate player : otherPlayers.values()) {
-            game.font.setColor(Color.WHITE);
-            game.font.draw(game.batch, player.name + " (Lv" + player.level + ")", 
+            Network.EntitySpawn info = otherPlayerInfo.get(player.playerId);
+            game.font.setColor(info.mobType != null ? Color.SALMON : Color.WHITE);
+            game.font.draw(game.batch, info.name + " (Lv" + info.level + ")", 
                           player.x - 30, player.y + 50);
         }
         
@@ -1135,7 +1233,7 @@ public class GameScreen implements Screen {
             if (target != null) {
                 game.font.setColor(Color.YELLOW);
                 game.font.getData().setScale(1.2f);
-                game.font.draw(game.batch, "Target: " + target.name, uiX, uiY - 230);
+                game.font.draw(game.batch, "Target: " + getEntityName(selectedTargetId), uiX, uiY - 230);
                 
                 // Calculate distance
                 float distance = (float)Math.sqrt(
@@ -6,15 +6,14 @@ import com.badlogic.gdx.Screen;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
-import com.esotericsoftware.kryonet.Connection;
-import com.esotericsoftware.kryonet.Listener;
 import com.mmo.game.MMOGame;
+import com.mmo.network.MessageDispatcher;
 import com.mmo.network.Network;
 
 /**
  * Login screen for existing users
  */
-public class LoginScreen implements Screen {
+public final class LoginScreen implements Screen {
     private final MMOGame game;
     private String username = "";
     private String password = "";
@@ -34,15 +33,13 @@ public class LoginScreen implements Screen {
     }
     
     private void setupNetworkListener() {
-        game.client.addListener(new Listener() {
-            @Override
-            public void received(Connection connection, Object object) {
-                if (object instanceof Network.LoginResponse) {
-                    Network.LoginResponse response = (Network.LoginResponse) object;
-                    handleLoginResponse(response);
-                }
-            }
+        MessageDispatcher dispatcher = new MessageDispatcher();
+        dispatcher.register(Network.LoginResponse.class, (connection, response) -> handleLoginResponse(response));
+        dispatcher.register(Network.LoginQueued.class, (connection, queued) -> {
+            message = "Server busy - number " + queued.position + " in line";
+            messageColor = Color.YELLOW;
         });
+        game.client.addListener(dispatcher);
     }
     
     private void handleLoginResponse(Network.LoginResponse response) {
@@ -0,0 +1,117 @@
+package com.mmo.world;
+
+import java.util.Arrays;
+
+/**
+ * Bounding volume hierarchy over a fixed set of axis-aligned boxes, built
+ * once top-down by splitting each group at the median of its longer side.
+ *
+ * Nodes live in flat arrays with no per-query state, so any number of
+ * threads can query it at once without allocating.
+ */
+class AabbTree {
+    private static final int NONE = -1;
+
+    private final float[] minX;
+    private final float[] minY;
+    private final float[] maxX;
+    private final float[] maxY;
+    private final int[] left; // First child, or NONE for a leaf
+    private final int[] right; // Second child, or for a leaf the box it holds
+    private final int root;
+    private int nodeCount;
+
+    /**
+     * @param boxes four values per box: minX, minY, maxX, maxY
+     */
+    AabbTree(float[] boxes) {
+        int count = boxes.length / 4;
+        int capacity = Math.max(1, count * 2 - 1);
+        this.minX = new float[capacity];
+        this.minY = new float[capacity];
+        this.maxX = new float[capacity];
+        this.maxY = new float[capacity];
+        this.left = new int[capacity];
+        this.right = new int[capacity];
+
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        this.root = count > 0 ? build(boxes, order, 0, count) : NONE;
+    }
+
+    private int build(float[] boxes, Integer[] order, int from, int to) {
+        int node = nodeCount++;
+        float nodeMinX = Float.POSITIVE_INFINITY;
+        float nodeMinY = Float.POSITIVE_INFINITY;
+        float nodeMaxX = Float.NEGATIVE_INFINITY;
+        float nodeMaxY = Float.NEGATIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            int box = order[i] * 4;
+            nodeMinX = Math.min(nodeMinX, boxes[box]);
+            nodeMinY = Math.min(nodeMinY, boxes[box + 1]);
+            nodeMaxX = Math.max(nodeMaxX, boxes[box + 2]);
+            nodeMaxY = Math.max(nodeMaxY, boxes[box + 3]);
+        }
+        minX[node] = nodeMinX;
+        minY[node] = nodeMinY;
+        maxX[node] = nodeMaxX;
+        maxY[node] = nodeMaxY;
+
+        if (to - from == 1) {
+            left[node] = NONE;
+            right[node] = order[from];
+            return node;
+        }
+
+        // Split at the median centre along the longer side
+        int axis = nodeMaxX - nodeMinX >= nodeMaxY - nodeMinY ? 0 : 1;
+        Arrays.sort(order, from, to, (a, b) -> Float.compare(
+            boxes[a * 4 + axis] + boxes[a * 4 + axis + 2], boxes[b * 4 + axis] + boxes[b * 4 + axis + 2]));
+        int middle = (from + to) >>> 1;
+        left[node] = build(boxes, order, from, middle);
+        right[node] = build(boxes, order, middle, to);
+        return node;
+    }
+
+    /**
+     * True if any box touches the query box (edges included)
+     */
+    boolean overlaps(float queryMinX, float queryMinY, float queryMaxX, float queryMaxY) {
+        return root != NONE && overlaps(root, queryMinX, queryMinY, queryMaxX, queryMaxY);
+    }
+
+    private boolean overlaps(int node, float queryMinX, float queryMinY, float queryMaxX, float queryMaxY) {
+        if (minX[node] > queryMaxX || maxX[node] < queryMinX || minY[node] > queryMaxY || maxY[node] < queryMinY) {
+            return false;
+        }
+        if (left[node] == NONE) {
+            return true;
+        }
+        return overlaps(left[node], queryMinX, queryMinY, queryMaxX, queryMaxY) ||
+               overlaps(right[node], queryMinX, queryMinY, queryMaxX, queryMaxY);
+    }
+
+    /**
+     * Earliest fraction of the move (below {@code best}) at which a circle
+     * swept from (x, y) by (dx, dy) touches a box, or {@code best}
+     */
+    float sweep(float x, float y, float dx, float dy, float radius, float best) {
+        return root != NONE ? sweep(root, x, y, dx, dy, radius, best) : best;
+    }
+
+    private float sweep(int node, float x, float y, float dx, float dy, float radius, float best) {
+        float enter = CollisionMap.enterTime(x, y, dx, dy,
+            minX[node] - radius, minY[node] - radius, maxX[node] + radius, maxY[node] + radius);
+        if (enter >= best) {
+            return best; // Missed, or no earlier than a hit already found
+        }
+        if (left[node] == NONE) {
+            return Math.min(best, CollisionMap.sweepBox(x, y, dx, dy, radius,
+                minX[node], minY[node], maxX[node], maxY[node]));
+        }
+        best = sweep(left[node], x, y, dx, dy, radius, best);
+        return sweep(right[node], x, y, dx, dy, radius, best);
+    }
+}
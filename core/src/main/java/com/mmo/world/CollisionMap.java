@@ -0,0 +1,297 @@
+package com.mmo.world;
+
+import com.badlogic.gdx.math.Vector2;
+
+import java.util.List;
+
+/**
+ * What can't be walked through in the {@link WorldLayout}, baked once into
+ * structures that are cheap to query: a bitmap of solid tiles (water, and
+ * everything off the edge of the map), bitmaps of the tiles any building
+ * stands on or comes within a tile of, and an {@link AabbTree} of the
+ * buildings' exact bounds. Most queries are answered from the bitmaps
+ * alone; the tree is consulted only near a building.
+ *
+ * The client draws and moves with the same map the server checks moves
+ * against, so a move the client allows is one the server accepts.
+ * Immutable once built; safe to query from any thread.
+ */
+public class CollisionMap {
+    public static final float PLAYER_RADIUS = 20f; // Around a character's feet, at the centre of its sprite
+    private static final float SKIN = 0.01f; // Gap left after stopping against something
+    private static final float MISS = Float.POSITIVE_INFINITY;
+
+    private final WorldLayout layout;
+    private final int width;
+    private final int height;
+    private final float tileSize;
+    private final long[] solidTiles;
+    private final long[] builtTiles;
+    private final long[] nearBuildingTiles; // Within a tile's length of a building, edges included
+    private final AabbTree buildings;
+
+    public CollisionMap(WorldLayout layout) {
+        this.layout = layout;
+        this.width = WorldLayout.WIDTH;
+        this.height = WorldLayout.HEIGHT;
+        this.tileSize = WorldLayout.TILE_SIZE;
+        this.solidTiles = new long[(width * height + 63) / 64];
+        this.builtTiles = new long[(width * height + 63) / 64];
+        this.nearBuildingTiles = new long[(width * height + 63) / 64];
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (WorldLayout.isWater(x, y)) {
+                    set(solidTiles, y * width + x);
+                }
+            }
+        }
+
+        List<Building> list = layout.getBuildings();
+        float[] boxes = new float[list.size() * 4];
+        for (int i = 0; i < list.size(); i++) {
+            Building building = list.get(i);
+            float right = building.getX() + building.getWidth();
+            float top = building.getY() + building.getHeight();
+            boxes[i * 4] = building.getX();
+            boxes[i * 4 + 1] = building.getY();
+            boxes[i * 4 + 2] = right;
+            boxes[i * 4 + 3] = top;
+            // Every tile the building's area overlaps, not ones it only touches
+            for (int y = tile(building.getY()); y < Math.ceil(top / tileSize); y++) {
+                for (int x = tile(building.getX()); x < Math.ceil(right / tileSize); x++) {
+                    if (x >= 0 && y >= 0 && x < width && y < height) {
+                        set(builtTiles, y * width + x);
+                    }
+                }
+            }
+            for (int y = lowTile(building.getY() - tileSize); y <= tile(top + tileSize); y++) {
+                for (int x = lowTile(building.getX() - tileSize); x <= tile(right + tileSize); x++) {
+                    if (x >= 0 && y >= 0 && x < width && y < height) {
+                        set(nearBuildingTiles, y * width + x);
+                    }
+                }
+            }
+        }
+        this.buildings = new AabbTree(boxes);
+    }
+
+    public WorldLayout getLayout() {
+        return layout;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public float getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * True if nothing on foot can stand anywhere on the tile: water, off the
+     * map, or partly covered by a building
+     */
+    public boolean isTileBlocked(int x, int y) {
+        return isSolid(x, y) || get(builtTiles, y * width + x);
+    }
+
+    /**
+     * True if the point is in water, off the map, or inside a building
+     */
+    public boolean isBlocked(float x, float y) {
+        int tileX = tile(x);
+        int tileY = tile(y);
+        if (isSolid(tileX, tileY)) {
+            return true;
+        }
+        return get(builtTiles, tileY * width + tileX) && buildings.overlaps(x, y, x, y);
+    }
+
+    /**
+     * True if a building comes within {@code margin} of the point on either
+     * axis (edges included); one bit test away from the towns for margins up
+     * to a tile
+     */
+    public boolean isNearBuilding(float x, float y, float margin) {
+        if (margin <= tileSize) {
+            int tileX = tile(x);
+            int tileY = tile(y);
+            if (tileX < 0 || tileY < 0 || tileX >= width || tileY >= height ||
+                !get(nearBuildingTiles, tileY * width + tileX)) {
+                return false;
+            }
+        }
+        return buildings.overlaps(x - margin, y - margin, x + margin, y + margin);
+    }
+
+    /**
+     * Fraction of the way along the segment at which it first enters
+     * something solid, or 1 if it gets there clear
+     */
+    public float raycast(float fromX, float fromY, float toX, float toY) {
+        return sweep(fromX, fromY, toX, toY, 0);
+    }
+
+    /**
+     * Fraction of the way from one position to another at which a circle of
+     * the given radius first touches something solid, or 1 if it gets there
+     * clear. Anything the circle already overlaps at the start is ignored,
+     * so whatever ends up stuck can always walk out.
+     */
+    public float sweep(float fromX, float fromY, float toX, float toY, float radius) {
+        float dx = toX - fromX;
+        float dy = toY - fromY;
+        // Anything leaving the map crosses the ring of tiles just off its edge, so look no further out
+        int startX = Math.max(-1, lowTile(Math.min(fromX, toX) - radius));
+        int startY = Math.max(-1, lowTile(Math.min(fromY, toY) - radius));
+        int endX = Math.min(width, tile(Math.max(fromX, toX) + radius));
+        int endY = Math.min(height, tile(Math.max(fromY, toY) + radius));
+
+        float best = 1f;
+        boolean nearBuilding = false;
+        for (int y = startY; y <= endY; y++) {
+            for (int x = startX; x <= endX; x++) {
+                if (isSolid(x, y)) {
+                    best = Math.min(best, sweepBox(fromX, fromY, dx, dy, radius,
+                        x * tileSize, y * tileSize, (x + 1) * tileSize, (y + 1) * tileSize));
+                } else if (get(builtTiles, y * width + x)) {
+                    nearBuilding = true;
+                }
+            }
+        }
+        return nearBuilding ? buildings.sweep(fromX, fromY, dx, dy, radius, best) : best;
+    }
+
+    /**
+     * Move a circle by (dx, dy), stopping short of anything solid and sliding
+     * along it: the horizontal part of the move first, then the vertical.
+     * Writes the new position to {@code out}.
+     */
+    public void slide(float x, float y, float dx, float dy, float radius, Vector2 out) {
+        if (dx != 0) {
+            x += dx * allowed(sweep(x, y, x + dx, y, radius), Math.abs(dx));
+        }
+        if (dy != 0) {
+            y += dy * allowed(sweep(x, y, x, y + dy, radius), Math.abs(dy));
+        }
+        out.set(x, y);
+    }
+
+    /**
+     * The part of a move of {@code length} to take when contact is at
+     * {@code fraction}, backing off by the skin so it ends just clear
+     */
+    private static float allowed(float fraction, float length) {
+        if (fraction >= 1f) {
+            return 1f;
+        }
+        return Math.max(0f, fraction * length - SKIN) / length;
+    }
+
+    /**
+     * Earliest fraction in [0, 1] at which a circle swept from (x, y) by
+     * (dx, dy) touches the box (rounded by the radius at its corners), or 1.
+     * A box the circle already overlaps is ignored.
+     */
+    static float sweepBox(float x, float y, float dx, float dy, float radius,
+                          float minX, float minY, float maxX, float maxY) {
+        float enter = enterTime(x, y, dx, dy, minX - radius, minY - radius, maxX + radius, maxY + radius);
+        if (enter == MISS) {
+            return 1f;
+        }
+        if (enter < 0) {
+            // Starts within the grown box: either already overlapping, or off one of its rounded corners
+            float offsetX = x - Math.max(minX, Math.min(maxX, x));
+            float offsetY = y - Math.max(minY, Math.min(maxY, y));
+            if (radius == 0 || offsetX * offsetX + offsetY * offsetY < radius * radius) {
+                return 1f;
+            }
+            enter = 0;
+        }
+
+        float hitX = x + dx * enter;
+        float hitY = y + dy * enter;
+        if ((hitX >= minX && hitX <= maxX) || (hitY >= minY && hitY <= maxY)) {
+            return enter; // Against a face
+        }
+
+        // Against a corner: where the circle's centre comes within the radius of it
+        float fromCornerX = x - (hitX < minX ? minX : maxX);
+        float fromCornerY = y - (hitY < minY ? minY : maxY);
+        float a = dx * dx + dy * dy;
+        float b = fromCornerX * dx + fromCornerY * dy;
+        float c = fromCornerX * fromCornerX + fromCornerY * fromCornerY - radius * radius;
+        float discriminant = b * b - a * c;
+        if (a == 0 || discriminant < 0) {
+            return 1f;
+        }
+        float t = (-b - (float) Math.sqrt(discriminant)) / a;
+        return t >= 0 && t <= 1 ? t : 1f;
+    }
+
+    /**
+     * Fraction of the move (x, y) + t * (dx, dy) at which it enters the box,
+     * negative if it starts inside, or MISS if it doesn't reach it within
+     * t in [0, 1]
+     */
+    static float enterTime(float x, float y, float dx, float dy,
+                           float minX, float minY, float maxX, float maxY) {
+        float enter = Float.NEGATIVE_INFINITY;
+        float exit = Float.POSITIVE_INFINITY;
+        if (dx != 0) {
+            float near = (minX - x) / dx;
+            float far = (maxX - x) / dx;
+            enter = Math.max(enter, Math.min(near, far));
+            exit = Math.min(exit, Math.max(near, far));
+        } else if (x < minX || x > maxX) {
+            return MISS;
+        }
+        if (dy != 0) {
+            float near = (minY - y) / dy;
+            float far = (maxY - y) / dy;
+            enter = Math.max(enter, Math.min(near, far));
+            exit = Math.min(exit, Math.max(near, far));
+        } else if (y < minY || y > maxY) {
+            return MISS;
+        }
+        if (enter > exit || exit < 0 || enter > 1) {
+            return MISS;
+        }
+        return enter;
+    }
+
+    /**
+     * Water, or off the map
+     */
+    private boolean isSolid(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return true;
+        }
+        return get(solidTiles, y * width + x);
+    }
+
+    private int tile(float position) {
+        return (int) Math.floor(position / tileSize);
+    }
+
+    /**
+     * The lowest tile a closed range starting here can touch: one back when
+     * it starts exactly on a tile edge
+     */
+    private int lowTile(float position) {
+        return (int) (Math.ceil(position / tileSize) - 1);
+    }
+
+    private static boolean get(long[] bits, int index) {
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    private static void set(long[] bits, int index) {
+        bits[index >>> 6] |= 1L << index;
+    }
+}
@@ -0,0 +1,77 @@
+package com.mmo.world;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The fixed world map, shared by the client, which draws it, and the server,
+ * which routes mobs around it: a grid of tiles with water along the coast
+ * and buildings in the towns. What blocks movement is baked from it into a
+ * {@link CollisionMap}.
+ */
+public class WorldLayout {
+    public static final int TILE_SIZE = 64;
+    public static final int WIDTH = 100; // Tiles
+    public static final int HEIGHT = 100;
+    private static final int COAST_WIDTH = 5; // Tiles from the edge where water can appear
+
+    private final List<Building> buildings;
+
+    public WorldLayout() {
+        this.buildings = new ArrayList<>();
+        createBuildings();
+    }
+
+    private void createBuildings() {
+        // Town area - central buildings
+        buildings.add(new Building("castle", 2500, 2500)); // Central castle
+        buildings.add(new Building("shop", 2200, 2300));
+        buildings.add(new Building("shop", 2800, 2300));
+        buildings.add(new Building("house", 2100, 2150));
+        buildings.add(new Building("house", 2350, 2150));
+        buildings.add(new Building("house", 2600, 2150));
+        buildings.add(new Building("house", 2850, 2150));
+
+        // Village area
+        buildings.add(new Building("house", 1800, 1900));
+        buildings.add(new Building("house", 2000, 1900));
+        buildings.add(new Building("shop", 1900, 2050));
+
+        // Towers at strategic points
+        buildings.add(new Building("tower", 1500, 1500));
+        buildings.add(new Building("tower", 3500, 1500));
+        buildings.add(new Building("tower", 1500, 3500));
+        buildings.add(new Building("tower", 3500, 3500));
+
+        // More houses scattered around
+        buildings.add(new Building("house", 3200, 2700));
+        buildings.add(new Building("house", 3400, 2850));
+        buildings.add(new Building("house", 2900, 2900));
+        buildings.add(new Building("house", 1700, 2600));
+        buildings.add(new Building("house", 1900, 2750));
+    }
+
+    public List<Building> getBuildings() {
+        return Collections.unmodifiableList(buildings);
+    }
+
+    /**
+     * Simple noise for terrain variation; the same on every machine
+     */
+    public static int getTerrainType(int x, int y) {
+        int hash = (x * 374761393 + y * 668265263) & 0x7FFFFFFF;
+        hash = (hash ^ 61) ^ (hash >> 16);
+        hash = hash + (hash << 3);
+        hash = hash ^ (hash >> 4);
+        return hash;
+    }
+
+    public static boolean isCoast(int x, int y) {
+        return x < COAST_WIDTH || y < COAST_WIDTH || x > WIDTH - COAST_WIDTH || y > HEIGHT - COAST_WIDTH;
+    }
+
+    public static boolean isWater(int x, int y) {
+        return isCoast(x, y) && (getTerrainType(x, y) % 5) < 2;
+    }
+}
@@ -11,9 +11,9 @@ import com.mmo.graphics.TextureGenerator;
  * Renders the game world with 3D-style textured graphics (NO GRIDS)
  */
 public class WorldRenderer {
-    private static final int TILE_SIZE = 64;
-    private static final int WORLD_WIDTH = 100;
-    private static final int WORLD_HEIGHT = 100;
+    private static final int TILE_SIZE = WorldLayout.TILE_SIZE;
+    private static final int WORLD_WIDTH = WorldLayout.WIDTH;
+    private static final int WORLD_HEIGHT = WorldLayout.HEIGHT;
     
     // Textures
     private Texture grassTile;
@@ -35,9 +35,11 @@ public class WorldRenderer {
     private Texture castleTexture;
     
     private Array<Building> buildings;
+    private final CollisionMap collisionMap;
     private SpriteBatch batch;
     
-    public WorldRenderer() {
+    public WorldRenderer(CollisionMap collisionMap) {
+        this.collisionMap = collisionMap;
         batch = new SpriteBatch();
         
         // Generate terrain textures
@@ -59,47 +61,16 @@ public class WorldRenderer {
         towerTexture = TextureGenerator.generateBuilding("tower");
         castleTexture = TextureGenerator.generateBuilding("castle");
         
-        // Create buildings in the world
+        // Buildings come from the shared world layout, which the server routes around
         buildings = new Array<>();
-        createWorldBuildings();
-    }
-    
-    private void createWorldBuildings() {
-        // Town area - central buildings
-        buildings.add(new Building("castle", 2500, 2500)); // Central castle
-        buildings.add(new Building("shop", 2200, 2300));
-        buildings.add(new Building("shop", 2800, 2300));
-        buildings.add(new Building("house", 2100, 2150));
-        buildings.add(new Building("house", 2350, 2150));
-        buildings.add(new Building("house", 2600, 2150));
-        buildings.add(new Building("house", 2850, 2150));
-        
-        // Village area
-        buildings.add(new Building("house", 1800, 1900));
-        buildings.add(new Building("house", 2000, 1900));
-        buildings.add(new Building("shop", 1900, 2050));
-        
-        // Towers at strategic points
-        buildings.add(new Building("tower", 1500, 1500));
-        buildings.add(new Building("tower", 3500, 1500));
-        buildings.add(new Building("tower", 1500, 3500));
-        buildings.add(new Building("tower", 3500, 3500));
-        
-        // More houses scattered around
-        buildings.add(new Building("house", 3200, 2700));
-        buildings.add(new Building("house", 3400, 2850));
-        buildings.add(new Building("house", 2900, 2900));
-        buildings.add(new Building("house", 1700, 2600));
-        buildings.add(new Building("house", 1900, 2750));
+        for (Building building : collisionMap.getLayout().getBuildings()) {
+            buildings.add(building);
+        }
     }
     
     // Simple noise for terrain variation
     private int getTerrainType(int x, int y) {
-        int hash = (x * 374761393 + y * 668265263) & 0x7FFFFFFF;
-        hash = (hash ^ 61) ^ (hash >> 16);
-        hash = hash + (hash << 3);
-        hash = hash ^ (hash >> 4);
-        return hash;
+        return WorldLayout.getTerrainType(x, y);
     }
     
     public void render(OrthographicCamera camera) {
@@ -124,12 +95,11 @@ public class WorldRenderer {
                 float tileX = x * TILE_SIZE;
                 float tileY = y * TILE_SIZE;
                 
-                int terrain = getTerrainType(x, y);
                 Texture tileTexture;
                 
                 // Water at edges
-                if (x < 5 || y < 5 || x > WORLD_WIDTH - 5 || y > WORLD_HEIGHT - 5) {
-                    if ((terrain % 5) < 2) {
+                if (WorldLayout.isCoast(x, y)) {
+                    if (WorldLayout.isWater(x, y)) {
                         tileTexture = waterTile;
                     } else {
                         tileTexture = grassTile;
@@ -230,13 +200,7 @@ public class WorldRenderer {
     }
     
     private boolean isPositionOccupiedByBuilding(float x, float y) {
-        for (Building building : buildings) {
-            if (x >= building.getX() - 64 && x <= building.getX() + building.getWidth() + 64 &&
-                y >= building.getY() - 64 && y <= building.getY() + building.getHeight() + 64) {
-                return true;
-            }
-        }
-        return false;
+        return collisionMap.isNearBuilding(x, y, 64);
     }
     
     public void dispose() {
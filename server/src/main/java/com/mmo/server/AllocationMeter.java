@@ -0,0 +1,78 @@
+package com.mmo.server;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Heap bytes allocated by a recurring piece of work, per pass, for catching
+ * garbage on paths that are meant to produce none.
+ *
+ * Uses the JVM's per-thread allocation counters: a thread takes a reading
+ * with {@link #start} before its share of the work and hands it back to
+ * {@link #stop} afterwards, from as many threads as take part. Readings
+ * themselves allocate nothing. On a JVM without the counters every pass
+ * measures zero and the report says so.
+ */
+public class AllocationMeter {
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    private final LongAdder bytes;
+    private final LongAdder passes;
+
+    public AllocationMeter() {
+        this.bytes = new LongAdder();
+        this.passes = new LongAdder();
+    }
+
+    /**
+     * Bytes the calling thread has allocated so far
+     */
+    public long start() {
+        return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    /**
+     * Add what the calling thread allocated since {@code started}
+     */
+    public void stop(long started) {
+        if (THREADS != null) {
+            bytes.add(THREADS.getCurrentThreadAllocatedBytes() - started);
+        }
+    }
+
+    /**
+     * Count one pass of the work; call once, after every thread has stopped
+     */
+    public void endPass() {
+        passes.increment();
+    }
+
+    /**
+     * Bytes per pass since the last report, e.g. "0 bytes/tick over 1200 ticks"; starts a new interval
+     */
+    public String getReport(String pass) {
+        if (THREADS == null) {
+            return "not measured on this JVM";
+        }
+        long count = passes.sumThenReset();
+        long allocated = bytes.sumThenReset();
+        if (count == 0) {
+            return "no " + pass + "s measured";
+        }
+        return (allocated / count) + " bytes/" + pass + " over " + count + " " + pass + "s";
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        try {
+            com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            if (threads.isThreadAllocatedMemorySupported()) {
+                threads.setThreadAllocatedMemoryEnabled(true);
+                return threads;
+            }
+        } catch (ClassCastException | UnsupportedOperationException e) {
+            // Not a HotSpot-style JVM
+        }
+        return null;
+    }
+}
@@ -0,0 +1,284 @@
+package com.mmo.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Fixed-timestep authoritative simulation loop.
+ * All world state is mutated on this single thread. Network threads only
+ * submit inputs, which are drained at the start of the next tick, so the
+ * order of events inside a tick is deterministic.
+ */
+public class GameLoop implements Runnable {
+    /**
+     * Tick phases, executed in declaration order every tick
+     */
+    public enum Phase {
+        DRAIN_INPUTS,
+        SIMULATE,
+        BROADCAST,
+        MAINTENANCE
+    }
+
+    /**
+     * Work registered for a phase
+     */
+    public interface PhaseTask {
+        void run(TickClock clock);
+    }
+
+    private static final int MAX_CATCH_UP_TICKS = 5;
+
+    private final long tickNanos;
+    private final TickClock clock;
+    private final Queue<Runnable> inputQueue;
+    private final List<List<PeriodicTask>> phaseTasks;
+    private final TimerWheel timers; // Loop thread only
+
+    private volatile boolean running;
+    private Thread thread;
+
+    // Tick statistics (written by the loop thread, read by monitoring)
+    private volatile long ticks; // Ticks actually run; skipped ones are counted separately
+    private volatile long overruns;
+    private volatile long skippedTicks;
+    private volatile long maxTickNanos;
+    private volatile long totalTickNanos;
+    private final long[] phaseNanos;
+
+    public GameLoop(int tickIntervalMillis) {
+        this.tickNanos = tickIntervalMillis * 1_000_000L;
+        this.clock = new TickClock();
+        this.inputQueue = new ConcurrentLinkedQueue<>();
+        this.phaseTasks = new ArrayList<>();
+        for (int i = 0; i < Phase.values().length; i++) {
+            phaseTasks.add(new ArrayList<>());
+        }
+        this.timers = new TimerWheel(1024);
+        this.phaseNanos = new long[Phase.values().length];
+    }
+
+    /**
+     * Register a task that runs every tick in the given phase
+     */
+    public void addTask(Phase phase, PhaseTask task) {
+        addTask(phase, 1, task);
+    }
+
+    /**
+     * Register a task that runs every {@code everyTicks} ticks in the given phase
+     */
+    public void addTask(Phase phase, int everyTicks, PhaseTask task) {
+        if (running) {
+            throw new IllegalStateException("Tasks must be registered before the loop starts");
+        }
+        phaseTasks.get(phase.ordinal()).add(new PeriodicTask(Math.max(1, everyTicks), task));
+    }
+
+    /**
+     * Queue work from any thread; it runs on the loop thread during the next DRAIN_INPUTS phase
+     */
+    public void submit(Runnable input) {
+        inputQueue.add(input);
+    }
+
+    /**
+     * Run work after a delay, rounded up to whole ticks. Must be called from the loop thread.
+     * Due tasks run at the start of the SIMULATE phase. Returns a handle for {@link #cancel}.
+     */
+    public long schedule(long delayMillis, Runnable task) {
+        long delayTicks = Math.max(1, (delayMillis * 1_000_000L + tickNanos - 1) / tickNanos);
+        return timers.schedule(clock.getTick() + delayTicks, task);
+    }
+
+    /**
+     * Drop scheduled work that hasn't run yet; false if it already ran. Must be called from the loop thread.
+     */
+    public boolean cancel(long timer) {
+        return timers.cancel(timer);
+    }
+
+    public TickClock getClock() {
+        return clock;
+    }
+
+    public int getTickIntervalMillis() {
+        return (int) (tickNanos / 1_000_000L);
+    }
+
+    public void start() {
+        running = true;
+        thread = new Thread(this, "GameLoop");
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public boolean isLoopThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    @Override
+    public void run() {
+        long tick = 0;
+        long nextTickAt = System.nanoTime();
+
+        while (running) {
+            long now = System.nanoTime();
+            long wait = nextTickAt - now;
+            if (wait > 0) {
+                sleepNanos(wait);
+                continue;
+            }
+
+            // If we fell too far behind, drop the backlog instead of spiralling, but keep
+            // the tick count in step with the wall clock so timers and periodic work stay on time
+            long behind = -wait / tickNanos;
+            if (behind > MAX_CATCH_UP_TICKS) {
+                skippedTicks += behind;
+                nextTickAt += behind * tickNanos;
+                tick += behind;
+            }
+
+            runTick(tick++, now);
+            nextTickAt += tickNanos;
+        }
+    }
+
+    private void runTick(long tick, long startNanos) {
+        clock.advance(tick, startNanos);
+
+        long phaseStart = startNanos;
+        for (Phase phase : Phase.values()) {
+            if (phase == Phase.DRAIN_INPUTS) {
+                drainInputs();
+            } else if (phase == Phase.SIMULATE) {
+                runDueScheduledTasks();
+            }
+
+            for (PeriodicTask periodic : phaseTasks.get(phase.ordinal())) {
+                if (periodic.isDue(tick)) {
+                    try {
+                        periodic.task.run(clock);
+                    } catch (Exception e) {
+                        System.err.println("Tick " + tick + " " + phase + " task failed: " + e.getMessage());
+                        e.printStackTrace();
+                    }
+                }
+            }
+
+            long phaseEnd = System.nanoTime();
+            phaseNanos[phase.ordinal()] += phaseEnd - phaseStart;
+            phaseStart = phaseEnd;
+        }
+
+        long duration = phaseStart - startNanos;
+        ticks++;
+        totalTickNanos += duration;
+        if (duration > maxTickNanos) {
+            maxTickNanos = duration;
+        }
+        if (duration > tickNanos) {
+            overruns++; // Reported with the status; logging each one would flood the log when overloaded
+        }
+    }
+
+    private void drainInputs() {
+        Runnable input;
+        while ((input = inputQueue.poll()) != null) {
+            try {
+                input.run();
+            } catch (Exception e) {
+                System.err.println("Input handler failed: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void runDueScheduledTasks() {
+        timers.advance(clock.getTick(), GameLoop::runScheduledTask);
+    }
+
+    private static void runScheduledTask(Runnable task) {
+        try {
+            task.run();
+        } catch (Exception e) {
+            System.err.println("Scheduled task failed: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private void sleepNanos(long nanos) {
+        try {
+            Thread.sleep(nanos / 1_000_000L, (int) (nanos % 1_000_000L));
+        } catch (InterruptedException e) {
+            // stop() interrupts us; the loop condition handles shutdown
+        }
+    }
+
+    /**
+     * One-line tick timing report for the status console
+     */
+    public String getStatusReport() {
+        long count = ticks;
+        StringBuilder report = new StringBuilder();
+        report.append("Ticks: ").append(count)
+              .append(", avg ").append(String.format("%.2f", count == 0 ? 0.0 : totalTickNanos / (double) count / 1_000_000.0)).append(" ms")
+              .append(", max ").append(String.format("%.2f", maxTickNanos / 1_000_000.0)).append(" ms")
+              .append(", overruns ").append(overruns)
+              .append(", skipped ").append(skippedTicks)
+              .append(", pending inputs ").append(inputQueue.size())
+              .append(", timers ").append(timers.size());
+        if (count > 0) {
+            report.append("\nPhase avg (ms):");
+            for (Phase phase : Phase.values()) {
+                report.append(' ').append(phase.name().toLowerCase()).append('=')
+                      .append(String.format("%.3f", phaseNanos[phase.ordinal()] / (double) count / 1_000_000.0));
+            }
+        }
+        return report.toString();
+    }
+
+    public long getOverruns() {
+        return overruns;
+    }
+
+    public long getMaxTickNanos() {
+        return maxTickNanos;
+    }
+
+    private static class PeriodicTask {
+        final int everyTicks;
+        final PhaseTask task;
+        long dueAt; // Loop thread only
+
+        PeriodicTask(int everyTicks, PhaseTask task) {
+            this.everyTicks = everyTicks;
+            this.task = task;
+        }
+
+        /**
+         * True on every {@code everyTicks}-th tick, or on the first tick after
+         * one that was skipped; then waits for the next multiple
+         */
+        boolean isDue(long tick) {
+            if (tick < dueAt) {
+                return false;
+            }
+            dueAt = tick - tick % everyTicks + everyTicks;
+            return true;
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package com.mmo.server;
 
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.LongArray;
+import com.badlogic.gdx.utils.LongMap;
 import com.esotericsoftware.kryonet.Connection;
 import com.esotericsoftware.kryonet.Listener;
 import com.esotericsoftware.kryonet.Server;
@@ -7,11 +10,50 @@ import com.mmo.models.Ability;
 import com.mmo.models.CharacterClass;
 import com.mmo.models.CharacterData;
 import com.mmo.models.PlayerData;
+import com.mmo.network.MessageDispatcher;
 import com.mmo.network.Network;
+import com.mmo.network.WorldUpdateSerializer;
+import com.mmo.server.auth.LoginQueue;
+import com.mmo.server.auth.PasswordHasher;
+import com.mmo.server.auth.RateLimiter;
+import com.mmo.server.mob.Mob;
+import com.mmo.server.mob.MobManager;
+import com.mmo.server.mob.MobSpawnArea;
+import com.mmo.server.nav.NavigationService;
+import com.mmo.server.net.BroadcastSerialization;
+import com.mmo.server.net.MessageBroadcaster;
+import com.mmo.server.net.PlayerConnection;
+import com.mmo.server.net.SerializedMessage;
+import com.mmo.server.net.SnapshotHistory;
+import com.mmo.server.persistence.AccountRepository;
+import com.mmo.server.persistence.CharacterCache;
+import com.mmo.server.persistence.DataStore;
+import com.mmo.server.persistence.PersistenceStore;
+import com.mmo.server.persistence.SqlStore;
+import com.mmo.server.persistence.WriteBehindCache;
+import com.mmo.server.session.Session;
+import com.mmo.server.session.SessionManager;
+import com.mmo.server.session.TokenSigner;
+import com.mmo.server.world.EntityRegistry;
+import com.mmo.server.world.EntityStateStore;
+import com.mmo.server.world.InterestManager;
+import com.mmo.server.world.Region;
+import com.mmo.server.world.RegionManager;
+import com.mmo.server.world.SpatialGrid;
+import com.mmo.server.zone.ZoneConfig;
+import com.mmo.server.zone.ZoneManager;
+import com.mmo.server.zone.ZoneProtocol;
+import com.mmo.world.CollisionMap;
+import com.mmo.world.WorldLayout;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -19,42 +61,205 @@ import java.util.concurrent.atomic.AtomicLong;
  */
 public class MMOServer {
     private Server server;
-    private Map<String, UserAccount> accounts;
-    private Map<String, String> sessionTokens; // token -> username
-    private Map<Long, CharacterData> characters;
-    private Map<Connection, PlayerData> activePlayers;
+    private AccountRepository accounts;
+    private SessionManager sessions;
+    private PasswordHasher passwordHasher;
+    private LoginQueue loginQueue; // Password checks, off the shared workers
+    private RateLimiter loginThrottle; // Per client address
+    private CharacterCache characters; // Loaded on demand; only in-world characters always stay
+    private EntityRegistry activePlayers; // Owned by the game loop thread
     private AtomicLong characterIdCounter;
     private AtomicLong playerIdCounter;
     
-    private static final int WORLD_UPDATE_INTERVAL = 50; // ms
-    private static final int MANA_REGEN_INTERVAL = 2000; // ms (2 seconds)
-    private static final int MANA_REGEN_AMOUNT = 5; // mana points per tick
-    private Timer worldUpdateTimer;
-    private Timer manaRegenTimer;
+    private static final int TICK_INTERVAL = 50; // ms (20 Hz simulation)
+    private static final float HEALTH_REGEN_PER_SECOND = Float.parseFloat(System.getProperty("mmo.regen.healthPerSecond", "1"));
+    private static final float MANA_REGEN_PER_SECOND = Float.parseFloat(System.getProperty("mmo.regen.manaPerSecond", "2.5"));
+    private static final int MONITOR_INTERVAL = 10000; // ms
+    private static final int RESPAWN_DELAY = 3000; // ms
+    private static final float WORLD_SIZE = WorldLayout.WIDTH * WorldLayout.TILE_SIZE;
+    private static final float GRID_CELL_SIZE = Integer.getInteger("mmo.aoi.cellSize", 256);
+    private static final float INTEREST_RADIUS = Integer.getInteger("mmo.aoi.radius", 900);
+    private static final float INTEREST_HYSTERESIS = Integer.getInteger("mmo.aoi.hysteresis", 150);
+    private static final int WRITE_BUFFER_SIZE = 16384;
+    private static final int OBJECT_BUFFER_SIZE = 8192;
+    private static final int WORKER_THREADS = Integer.getInteger("mmo.workers",
+        Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors())));
+    private static final int MAILBOX_CAPACITY = 256;
+    // World partitioning
+    private static final float REGION_MIN_SIZE = Integer.getInteger("mmo.region.minSize", 400);
+    private static final int REGION_MAX_ENTITIES = Integer.getInteger("mmo.region.maxEntities", 48);
+    private static final int REGION_COST_BUDGET_MICROS = Integer.getInteger("mmo.region.costBudgetMicros", 2000);
+    private static final int REGION_THREADS = Integer.getInteger("mmo.region.threads",
+        Runtime.getRuntime().availableProcessors());
+    private static final int REBALANCE_INTERVAL = 1000;
+    // Spawn areas as TYPE:x,y,radius,count;... each zone spawns the ones centred in its strip
+    private static final String MOB_SPAWNS = System.getProperty("mmo.mob.spawns",
+        "WOLF:1400,900,500,200;WOLF:900,3600,600,250;BANDIT:3200,2400,700,300;" +
+        "BANDIT:4600,4800,600,250;SKELETON_ARCHER:5400,1400,600,250;SKELETON_ARCHER:2400,5400,500,200");
+    private static final int MOB_THREADS = Integer.getInteger("mmo.mob.threads", REGION_THREADS);
+    private static final int FLOW_FIELD_RADIUS = Integer.getInteger("mmo.nav.fieldRadius", 32); // Tiles
+    private static final int MAX_FLOW_FIELDS = Integer.getInteger("mmo.nav.maxFields", 256);
+    private static final int FLOW_FIELD_IDLE = Integer.getInteger("mmo.nav.fieldIdleMillis", 2000);
+    // A little under the client's radius, so a straight line between two positions that skipped a corner still passes
+    private static final float MOVE_CHECK_RADIUS = CollisionMap.PLAYER_RADIUS - 6f;
+    private static final int BORDER_SNAPSHOT_INTERVAL = 100;
+    // Persistence
+    private static final String DATA_DIR = System.getProperty("mmo.data.dir", "data");
+    // log or h2; by default log for a single zone and h2, which several processes can share, across zones
+    private static final String STORAGE_BACKEND = System.getProperty("mmo.persistence.backend");
+    private static final int SQL_POOL_SIZE = Integer.getInteger("mmo.sql.poolSize", 4);
+    private static final long SNAPSHOT_AFTER_BYTES = Long.getLong("mmo.persistence.snapshotBytes", 8L * 1024 * 1024);
+    private static final int FLUSH_INTERVAL = Integer.getInteger("mmo.persistence.flushMillis", 5000);
+    private static final int MAX_FLUSH_BACKLOG = Integer.getInteger("mmo.persistence.maxBacklog", 10000);
+    private static final int CACHED_CHARACTERS = Integer.getInteger("mmo.cache.characters", 10000);
+    private static final int CACHED_ACCOUNTS = Integer.getInteger("mmo.cache.accounts", 10000); // h2 backend only
+    // Sessions
+    private static final long SESSION_TTL = Long.getLong("mmo.session.ttlMillis", 30 * 60 * 1000L);
+    private static final long SESSION_LIFETIME = Long.getLong("mmo.session.lifetimeMillis", 12 * 60 * 60 * 1000L);
+    private static final String SESSION_KEYS = System.getProperty("mmo.session.keys"); // keyId:base64secret,... first signs
+    private static final int SESSIONS_PER_ACCOUNT = Integer.getInteger("mmo.session.maxPerAccount", 3);
+    private static final long IDLE_TIMEOUT = Long.getLong("mmo.session.idleMillis", 15 * 60 * 1000L);
+    private static final int IDLE_CHECK_INTERVAL = 5000;
+    // Authentication
+    private static final int AUTH_THREADS = Integer.getInteger("mmo.auth.threads",
+        Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    private static final int LOGIN_QUEUE_CAPACITY = Integer.getInteger("mmo.auth.queueCapacity", 5000);
+    private static final int HASH_ITERATIONS = Integer.getInteger("mmo.auth.hashIterations", 100000);
+    private static final int LOGIN_BURST_PER_ADDRESS = Integer.getInteger("mmo.auth.burstPerAddress", 10);
+    private static final int LOGINS_PER_MINUTE_PER_ADDRESS = Integer.getInteger("mmo.auth.perMinutePerAddress", 20);
+    private static final int LOGIN_QUEUE_REPORT_INTERVAL = 1000;
+    private static final int THROTTLE_PRUNE_INTERVAL = 60000;
+    private GameLoop gameLoop;
+    private WorkerPool workerPool;
+    private InterestManager interestManager;
+    private MessageBroadcaster broadcaster;
+    private MessageDispatcher dispatcher;
+    private RegionManager regionManager;
+    private ZoneConfig zoneConfig;
+    private ZoneManager zoneManager; // Null when this server owns the whole world
+    private MobManager mobManager;
+    private NavigationService navigation;
+    private CollisionMap collisionMap; // The same one the client moves with
+    private DataStore store;
+    private WriteBehindCache writeBehind; // Saves changes to characters in the world
+    private long idlePlayersReaped; // Game loop thread
+    private long movesRejected; // Game loop thread
+    private LongMap<PendingRespawn> respawnTimers; // Player id -> respawn timer; game loop thread
+    private ThreadLocal<BroadcastScratch> broadcastScratch; // Per region worker
+    private RegionManager.RegionTask broadcastTask; // Built once so the tick doesn't allocate a lambda
+    private int broadcastSequence; // Written before the fan-out, which publishes it to the workers
+    private AllocationMeter broadcastAllocations;
     
     public MMOServer() {
-        server = new Server(16384, 8192);
-        accounts = new ConcurrentHashMap<>();
-        sessionTokens = new ConcurrentHashMap<>();
-        characters = new ConcurrentHashMap<>();
-        activePlayers = new ConcurrentHashMap<>();
-        characterIdCounter = new AtomicLong(1000);
-        playerIdCounter = new AtomicLong(1);
+        this(ZoneConfig.parse(new String[0], WORLD_SIZE));
+    }
+    
+    public MMOServer(ZoneConfig zoneConfig) {
+        this.zoneConfig = zoneConfig;
+        workerPool = new WorkerPool(WORKER_THREADS, MAILBOX_CAPACITY);
+        server = new Server(WRITE_BUFFER_SIZE, OBJECT_BUFFER_SIZE, new BroadcastSerialization()) {
+            @Override
+            protected Connection newConnection() {
+                return new PlayerConnection(workerPool.createMailbox());
+            }
+        };
+        broadcaster = new MessageBroadcaster(OBJECT_BUFFER_SIZE);
+        dispatcher = new MessageDispatcher();
+        broadcastScratch = ThreadLocal.withInitial(BroadcastScratch::new);
+        broadcastTask = this::broadcastRegion;
+        broadcastAllocations = new AllocationMeter();
+        passwordHasher = new PasswordHasher(HASH_ITERATIONS);
+        loginQueue = new LoginQueue(AUTH_THREADS, LOGIN_QUEUE_CAPACITY, LOGIN_QUEUE_REPORT_INTERVAL);
+        loginThrottle = new RateLimiter(LOGIN_BURST_PER_ADDRESS, LOGINS_PER_MINUTE_PER_ADDRESS);
+        activePlayers = new EntityRegistry(64);
+        regionManager = new RegionManager(activePlayers, WORLD_SIZE, WORLD_SIZE,
+            REGION_MIN_SIZE, REGION_MAX_ENTITIES, REGION_COST_BUDGET_MICROS * 1000L, REGION_THREADS);
+        characterIdCounter = new AtomicLong(zoneConfig.getIdBase() + 1000);
+        playerIdCounter = new AtomicLong(zoneConfig.getIdBase() + 1);
+        gameLoop = new GameLoop(TICK_INTERVAL);
+        CharacterData.setClock(gameLoop.getClock()::currentTimeMillis); // Regeneration and cooldowns on tick time
+        sessions = new SessionManager(TokenSigner.fromSpec(SESSION_KEYS), SESSION_TTL, SESSION_LIFETIME,
+            SESSIONS_PER_ACCOUNT, gameLoop);
+        respawnTimers = new LongMap<>();
+        interestManager = new InterestManager(
+            new SpatialGrid<>(WORLD_SIZE, WORLD_SIZE, GRID_CELL_SIZE),
+            INTEREST_RADIUS, INTEREST_RADIUS + INTEREST_HYSTERESIS);
+        
+        if (!zoneConfig.isSingleZone()) {
+            zoneManager = new ZoneManager(zoneConfig, activePlayers, interestManager, gameLoop,
+                INTEREST_RADIUS + INTEREST_HYSTERESIS, new ZoneManager.Listener() {
+                    @Override
+                    public CompletableFuture<Void> leaving(Connection connection, PlayerData player) {
+                        return leaveForHandoff(connection);
+                    }
+                    
+                    @Override
+                    public void handedOff(Connection connection, PlayerData player, ZoneConfig target, String transferToken) {
+                        handOffPlayer(connection, player, target, transferToken);
+                    }
+                    
+                    @Override
+                    public void handoffFailed(Connection connection, PlayerData player) {
+                        returnFromHandoff(connection, player);
+                    }
+                });
+        }
+        collisionMap = new CollisionMap(new WorldLayout());
+        navigation = new NavigationService(collisionMap, FLOW_FIELD_RADIUS, MAX_FLOW_FIELDS,
+            FLOW_FIELD_IDLE / TICK_INTERVAL);
+        mobManager = new MobManager(interestManager, gameLoop, this::handleMobAttack, navigation,
+            WORLD_SIZE, WORLD_SIZE, MOB_THREADS);
+        mobManager.spawn(MobSpawnArea.parse(MOB_SPAWNS), zoneConfig);
         
         Network.register(server);
+        setupMessageHandlers();
         setupListeners();
+        setupGameLoop();
+        loadSavedData();
         createDefaultAccounts();
     }
     
+    private void loadSavedData() {
+        // Zones share one database, so whichever zone a character was last saved in, every zone loads that copy
+        boolean shared = !zoneConfig.isSingleZone();
+        String backend = STORAGE_BACKEND != null ? STORAGE_BACKEND : shared ? "h2" : "log";
+        if (shared && !"h2".equals(backend)) {
+            throw new IllegalStateException("Zones share one store, which needs the h2 backend, not " + backend);
+        }
+        Path directory = shared ? Paths.get(DATA_DIR, "shared") : Paths.get(DATA_DIR, "zone-" + zoneConfig.getZoneId());
+        if ("h2".equals(backend)) {
+            store = new SqlStore(directory, SQL_POOL_SIZE, CACHED_ACCOUNTS);
+        } else {
+            store = new PersistenceStore(directory, SNAPSHOT_AFTER_BYTES);
+        }
+        try {
+            store.open();
+            // Carry on numbering after the characters this zone created
+            characterIdCounter.set(store.getMaxCharacterId(characterIdCounter.get() + 1, zoneConfig.getIdLimit()));
+        } catch (IOException e) {
+            // Starting empty would overwrite every saved player; refuse instead
+            throw new IllegalStateException("Failed to load saved data: " + e.getMessage(), e);
+        }
+        accounts = store;
+        writeBehind = new WriteBehindCache(store, FLUSH_INTERVAL, MAX_FLUSH_BACKLOG);
+        characters = new CharacterCache(store, CACHED_CHARACTERS);
+    }
+    
     private void createDefaultAccounts() {
+        if (findAccount("test") != null) {
+            return;
+        }
+        
         // Create a default test account
-        UserAccount testAccount = new UserAccount("test", "test", "test@test.com");
-        accounts.put("test", testAccount);
+        UserAccount testAccount = new UserAccount("test", passwordHasher.hash("test"), "test@test.com");
         
         // Create a default character for testing
         CharacterData testChar = new CharacterData(1001, "TestWarrior", CharacterClass.WARRIOR);
-        characters.put(1001L, testChar);
-        testAccount.characterIds.add(1001L);
+        testAccount.getCharacterIds().add(1001L);
+        characterIdCounter.accumulateAndGet(testChar.getId(), Math::max); // Never handed out again
+        store.saveCharacter("test", testChar);
+        characters.put(testChar);
+        accounts.createAccount(testAccount);
         
         System.out.println("Created default test account (username: test, password: test)");
     }
@@ -71,55 +276,127 @@ public class MMOServer {
                 System.out.println("Client disconnected: " + connection.getID());
                 handleDisconnect(connection);
             }
-            
-            @Override
-            public void received(Connection connection, Object object) {
-                handleMessage(connection, object);
+        });
+        server.addListener(dispatcher);
+    }
+    
+    private void setupGameLoop() {
+        // Border crossings are settled sequentially before the regions fan out
+        gameLoop.addTask(GameLoop.Phase.SIMULATE, clock -> regionManager.handoff());
+        if (zoneManager != null) {
+            gameLoop.addTask(GameLoop.Phase.SIMULATE, clock -> zoneManager.checkBorders());
+            gameLoop.addTask(GameLoop.Phase.BROADCAST, BORDER_SNAPSHOT_INTERVAL / TICK_INTERVAL,
+                clock -> zoneManager.sendBorderSnapshots());
+        }
+        gameLoop.addTask(GameLoop.Phase.SIMULATE, clock -> mobManager.tick(clock));
+        gameLoop.addTask(GameLoop.Phase.BROADCAST, clock -> broadcastWorldUpdate(clock));
+        gameLoop.addTask(GameLoop.Phase.MAINTENANCE, REBALANCE_INTERVAL / TICK_INTERVAL,
+            clock -> regionManager.rebalance());
+        gameLoop.addTask(GameLoop.Phase.MAINTENANCE, IDLE_CHECK_INTERVAL / TICK_INTERVAL,
+            clock -> reapIdlePlayers());
+        gameLoop.addTask(GameLoop.Phase.MAINTENANCE, THROTTLE_PRUNE_INTERVAL / TICK_INTERVAL,
+            clock -> loginThrottle.prune());
+        gameLoop.addTask(GameLoop.Phase.MAINTENANCE, MONITOR_INTERVAL / TICK_INTERVAL, clock -> {
+            if (clock.getTick() > 0) {
+                printServerStatus();
             }
         });
     }
     
-    private void handleMessage(Connection connection, Object object) {
-        if (object instanceof Network.LoginRequest) {
-            handleLogin(connection, (Network.LoginRequest) object);
-        } else if (object instanceof Network.RegisterRequest) {
-            handleRegister(connection, (Network.RegisterRequest) object);
-        } else if (object instanceof Network.CharacterListRequest) {
-            handleCharacterList(connection, (Network.CharacterListRequest) object);
-        } else if (object instanceof Network.CreateCharacterRequest) {
-            handleCreateCharacter(connection, (Network.CreateCharacterRequest) object);
-        } else if (object instanceof Network.SelectCharacterRequest) {
-            handleSelectCharacter(connection, (Network.SelectCharacterRequest) object);
-        } else if (object instanceof Network.PlayerMoveRequest) {
-            handlePlayerMove(connection, (Network.PlayerMoveRequest) object);
-        } else if (object instanceof Network.ChatMessage) {
-            handleChatMessage(connection, (Network.ChatMessage) object);
-        } else if (object instanceof Network.UseAbilityRequest) {
-            handleUseAbility(connection, (Network.UseAbilityRequest) object);
-        } else if (object instanceof Network.AttackRequest) {
-            handleAttack(connection, (Network.AttackRequest) object);
-        } else if (object instanceof Network.UseItemRequest) {
-            handleUseItem(connection, (Network.UseItemRequest) object);
-        } else if (object instanceof Network.EquipItemRequest) {
-            handleEquipItem(connection, (Network.EquipItemRequest) object);
-        } else if (object instanceof Network.UnequipItemRequest) {
-            handleUnequipItem(connection, (Network.UnequipItemRequest) object);
+    private void setupMessageHandlers() {
+        // Snapshot acks are the most frequent message and only touch the client's history
+        dispatcher.register(Network.SnapshotAck.class, (connection, ack) -> {
+            SnapshotHistory history = ((PlayerConnection) connection).getSnapshotHistory();
+            if (history != null) {
+                history.acknowledge(ack.sequence);
+            }
+        });
+        
+        // Simulation messages are queued and applied on the game loop thread
+        dispatcher.register(Network.PlayerMoveRequest.class,
+            (connection, request) -> gameLoop.submit(() -> handlePlayerMove(connection, request)));
+        dispatcher.register(Network.UseAbilityRequest.class,
+            (connection, request) -> gameLoop.submit(() -> handleUseAbility(connection, request)));
+        dispatcher.register(Network.AttackRequest.class,
+            (connection, request) -> gameLoop.submit(() -> handleAttack(connection, request)));
+        dispatcher.register(Network.ChatMessage.class,
+            (connection, message) -> gameLoop.submit(() -> handleChatMessage(connection, message)));
+        
+        // Everything else runs in the sender's mailbox on the worker pool: in order per
+        // player, in parallel across players, and never on the network thread
+        // Admission is cheap; the password check itself runs on the login queue
+        dispatcher.register(Network.LoginRequest.class, this::handleLogin);
+        dispatcher.register(Network.RegisterRequest.class, this::handleRegister);
+        dispatcher.register(Network.CharacterListRequest.class, inMailbox(this::handleCharacterList));
+        dispatcher.register(Network.CreateCharacterRequest.class, inMailbox(this::handleCreateCharacter));
+        dispatcher.register(Network.SelectCharacterRequest.class, inMailbox(this::handleSelectCharacter));
+        dispatcher.register(Network.UseItemRequest.class, inMailbox(this::handleUseItem));
+        dispatcher.register(Network.EquipItemRequest.class, inMailbox(this::handleEquipItem));
+        dispatcher.register(Network.UnequipItemRequest.class, inMailbox(this::handleUnequipItem));
+        dispatcher.register(Network.ZoneTransferRequest.class, inMailbox(this::handleZoneTransfer));
+    }
+    
+    private <T> MessageDispatcher.Handler<T> inMailbox(MessageDispatcher.Handler<T> handler) {
+        return (connection, message) -> post(connection, () -> handler.handle(connection, message));
+    }
+    
+    /**
+     * The account, or null if there is none or it can't be read right now
+     */
+    private UserAccount findAccount(String username) {
+        try {
+            return accounts.findAccount(username);
+        } catch (IOException e) {
+            System.err.println("Failed to look up account " + username + ": " + e.getMessage());
+            return null;
+        }
+    }
+    
+    private void post(Connection connection, Runnable task) {
+        if (!((PlayerConnection) connection).getMailbox().post(task)) {
+            System.err.println("Mailbox full for connection " + connection.getID() + ", request dropped");
         }
     }
     
     private void handleLogin(Connection connection, Network.LoginRequest request) {
+        String refusal = admitToLoginQueue(connection, () -> authenticate(connection, request));
+        if (refusal != null) {
+            Network.LoginResponse response = new Network.LoginResponse();
+            response.success = false;
+            response.message = refusal;
+            connection.sendTCP(response);
+        }
+    }
+    
+    /**
+     * Check the password (login queue thread)
+     */
+    private void authenticate(Connection connection, Network.LoginRequest request) {
+        UserAccount account = findAccount(request.username);
+        boolean valid = passwordHasher.verify(request.password, account != null ? account.getPassword() : null);
+        if (valid && passwordHasher.needsRehash(account.getPassword())) {
+            // Stored in plain text or with old settings; upgrade now that we know the password
+            account.setPassword(passwordHasher.hash(request.password));
+            accounts.saveAccount(account);
+        }
+        post(connection, () -> completeLogin(connection, request.username, valid));
+    }
+    
+    private void completeLogin(Connection connection, String username, boolean valid) {
         Network.LoginResponse response = new Network.LoginResponse();
         
-        UserAccount account = accounts.get(request.username);
-        if (account != null && account.password.equals(request.password)) {
-            String token = UUID.randomUUID().toString();
-            sessionTokens.put(token, request.username);
+        if (valid) {
+            // Logging in again on the same connection replaces its session
+            PlayerConnection playerConnection = (PlayerConnection) connection;
+            sessions.revoke(playerConnection.getSession());
+            Session session = sessions.open(username);
+            playerConnection.setSession(session);
             
             response.success = true;
             response.message = "Login successful";
-            response.token = token;
+            response.token = session.getToken();
             
-            System.out.println("User logged in: " + request.username);
+            System.out.println("User logged in: " + username);
         } else {
             response.success = false;
             response.message = "Invalid username or password";
@@ -131,37 +408,82 @@ public class MMOServer {
     private void handleRegister(Connection connection, Network.RegisterRequest request) {
         Network.RegisterResponse response = new Network.RegisterResponse();
         
-        if (accounts.containsKey(request.username)) {
-            response.success = false;
-            response.message = "Username already exists";
-        } else if (request.username.length() < 3) {
+        if (request.username.length() < 3) {
             response.success = false;
             response.message = "Username must be at least 3 characters";
         } else if (request.password.length() < 3) {
             response.success = false;
             response.message = "Password must be at least 3 characters";
         } else {
-            UserAccount newAccount = new UserAccount(request.username, request.password, request.email);
-            accounts.put(request.username, newAccount);
-            
-            response.success = true;
-            response.message = "Account created successfully";
-            
-            System.out.println("New account registered: " + request.username);
+            String refusal = admitToLoginQueue(connection, () -> register(connection, request));
+            if (refusal == null) {
+                return;
+            }
+            response.success = false;
+            response.message = refusal;
         }
         
         connection.sendTCP(response);
     }
     
+    /**
+     * Hash the password and store the account (login queue thread)
+     */
+    private void register(Connection connection, Network.RegisterRequest request) {
+        Network.RegisterResponse response = new Network.RegisterResponse();
+        UserAccount newAccount = new UserAccount(request.username, passwordHasher.hash(request.password), request.email);
+        
+        // Confirm once the account is stored
+        accounts.createAccount(newAccount).whenComplete((created, error) -> {
+            if (error != null) {
+                response.success = false;
+                response.message = "Registration failed, please try again";
+            } else if (!created) {
+                response.success = false;
+                response.message = "Username already exists";
+            } else {
+                response.success = true;
+                response.message = "Account created successfully";
+                System.out.println("New account registered: " + request.username);
+            }
+            post(connection, () -> connection.sendTCP(response));
+        });
+    }
+    
+    /**
+     * Queue a password check for the connection, subject to its address's
+     * rate limit; why it was turned away, or null if queued (network thread)
+     */
+    private String admitToLoginQueue(Connection connection, Runnable check) {
+        if (!loginThrottle.tryAcquire(addressOf(connection))) {
+            return "Too many attempts, please wait a minute";
+        }
+        boolean queued = loginQueue.submit(position -> {
+            Network.LoginQueued update = new Network.LoginQueued();
+            update.position = position;
+            connection.sendTCP(update);
+        }, () -> {
+            // A client that gave up waiting isn't worth a hash
+            if (connection.isConnected()) {
+                check.run();
+            }
+        });
+        return queued ? null : "Server busy, please try again shortly";
+    }
+    
+    private static String addressOf(Connection connection) {
+        InetSocketAddress address = connection.getRemoteAddressTCP();
+        return address != null ? address.getAddress().getHostAddress() : "unknown";
+    }
+    
     private void handleCharacterList(Connection connection, Network.CharacterListRequest request) {
         Network.CharacterListResponse response = new Network.CharacterListResponse();
         
-        String username = sessionTokens.get(request.token);
+        String username = sessions.resolve(request.token);
         if (username != null) {
-            UserAccount account = accounts.get(username);
-            if (account != null) {
+            try {
                 List<CharacterData> charList = new ArrayList<>();
-                for (Long charId : account.characterIds) {
+                for (Long charId : store.findCharacterIds(username)) {
                     CharacterData character = characters.get(charId);
                     if (character != null) {
                         charList.add(character);
@@ -172,6 +494,10 @@ public class MMOServer {
                 response.characters = charList.toArray(new CharacterData[0]);
                 
                 System.out.println("Sent character list to " + username + " (" + charList.size() + " characters)");
+            } catch (IOException e) {
+                System.err.println("Failed to list characters for " + username + ": " + e.getMessage());
+                response.success = false;
+                response.characters = new CharacterData[0];
             }
         } else {
             response.success = false;
@@ -184,25 +510,49 @@ public class MMOServer {
     private void handleCreateCharacter(Connection connection, Network.CreateCharacterRequest request) {
         Network.CreateCharacterResponse response = new Network.CreateCharacterResponse();
         
-        String username = sessionTokens.get(request.token);
+        String username = sessions.resolve(request.token);
         if (username != null) {
-            UserAccount account = accounts.get(username);
+            UserAccount account = findAccount(username);
             if (account != null) {
-                if (account.characterIds.size() >= 5) {
+                long charId = 0;
+                CompletableFuture<Void> accountSave = null;
+                // Every session of the account shares it: check, add and serialize under its lock
+                synchronized (account) {
+                    if (account.getCharacterIds().size() < 5) {
+                        charId = characterIdCounter.incrementAndGet();
+                        account.getCharacterIds().add(charId);
+                        accountSave = accounts.saveAccount(account);
+                    }
+                }
+                
+                if (accountSave == null) {
                     response.success = false;
                     response.message = "Maximum 5 characters per account";
                 } else {
-                    long charId = characterIdCounter.incrementAndGet();
-                    CharacterData newCharacter = new CharacterData(charId, request.characterName, request.characterClass);
-                    
-                    characters.put(charId, newCharacter);
-                    account.characterIds.add(charId);
-                    
-                    response.success = true;
-                    response.message = "Character created successfully";
-                    response.character = newCharacter;
-                    
-                    System.out.println("Character created: " + request.characterName + " for user " + username);
+                    long newId = charId;
+                    CharacterData newCharacter = new CharacterData(newId, request.characterName, request.characterClass);
+                    // Confirm once both the character and its owner are on disk
+                    CompletableFuture<Void> characterSave = store.saveCharacter(username, newCharacter);
+                    CompletableFuture.allOf(characterSave, accountSave).whenComplete((ignored, error) -> post(connection, () -> {
+                        if (error != null) {
+                            System.err.println("Failed to create character " + request.characterName + " for user " +
+                                username + ": " + error.getMessage());
+                            synchronized (account) {
+                                account.getCharacterIds().remove(Long.valueOf(newId));
+                                accounts.saveAccount(account);
+                            }
+                            response.success = false;
+                            response.message = "Could not save the new character";
+                        } else {
+                            characters.put(newCharacter);
+                            response.success = true;
+                            response.message = "Character created successfully";
+                            response.character = newCharacter;
+                            System.out.println("Character created: " + request.characterName + " for user " + username);
+                        }
+                        connection.sendTCP(response);
+                    }));
+                    return;
                 }
             }
         } else {
@@ -216,20 +566,27 @@ public class MMOServer {
     private void handleSelectCharacter(Connection connection, Network.SelectCharacterRequest request) {
         Network.SelectCharacterResponse response = new Network.SelectCharacterResponse();
         
-        String username = sessionTokens.get(request.token);
+        String username = sessions.resolve(request.token);
         if (username != null) {
             CharacterData character = characters.get(request.characterId);
             if (character != null) {
                 long playerId = playerIdCounter.incrementAndGet();
                 PlayerData playerData = new PlayerData(playerId, username, character);
-                
-                activePlayers.put(connection, playerData);
+                ((PlayerConnection) connection).setPlayerData(playerData);
                 
                 response.success = true;
                 response.message = "Character selected";
                 response.playerData = playerData;
                 
+                // Join the world at the next tick boundary, and reply with the character as it entered
+                gameLoop.submit(() -> {
+                    enterWorld(connection, playerData);
+                    response.serverTime = gameLoop.getClock().currentTimeMillis();
+                    connection.sendTCP(response);
+                });
+                
                 System.out.println("Player " + username + " entered world as " + character.getName());
+                return;
             } else {
                 response.success = false;
                 response.message = "Character not found";
@@ -242,32 +599,162 @@ public class MMOServer {
         connection.sendTCP(response);
     }
     
+    private void enterWorld(Connection connection, PlayerData playerData) {
+        leaveWorld(connection);
+        if (zoneManager != null) {
+            zoneManager.dropGhost(playerData.getPlayerId());
+        }
+        playerData.getCharacter().setRegeneration(HEALTH_REGEN_PER_SECOND, MANA_REGEN_PER_SECOND);
+        int slot = activePlayers.add(connection, playerData);
+        ((PlayerConnection) connection).setSnapshotHistory(new SnapshotHistory());
+        interestManager.add(playerData);
+        regionManager.add(slot);
+        characters.pin(playerData.getCharacter());
+        writeBehind.track(playerData.getCharacter(), ((PlayerConnection) connection).getMailbox()::post);
+    }
+    
+    private PlayerData leaveWorld(Connection connection) {
+        PlayerData playerData = activePlayers.getByConnection(connection);
+        if (playerData != null) {
+            regionManager.remove(activePlayers.getSlot(playerData.getPlayerId()));
+            activePlayers.remove(connection);
+            interestManager.remove(playerData.getPlayerId());
+            PendingRespawn respawn = respawnTimers.remove(playerData.getPlayerId());
+            if (respawn != null && respawn.timer != 0) {
+                gameLoop.cancel(respawn.timer);
+            }
+            ((PlayerConnection) connection).setSnapshotHistory(null);
+            // Unpin after the final save is queued, so an evicted copy is never older than memory
+            CharacterData character = playerData.getCharacter();
+            writeBehind.untrack(character);
+            if (!((PlayerConnection) connection).getMailbox().post(() -> characters.unpin(character))) {
+                characters.unpin(character);
+            }
+        }
+        return playerData;
+    }
+    
+    /**
+     * Take a player out of the world ahead of a handoff and save it in full.
+     * Item requests already in its mailbox run first, and the stat changes
+     * they hand to the game loop land before the save; after that nothing
+     * touches the character. Completes once the save is on disk, so the
+     * neighbour reads the final state (game loop thread).
+     */
+    private CompletableFuture<Void> leaveForHandoff(Connection connection) {
+        PlayerData playerData = leaveWorld(connection);
+        ((PlayerConnection) connection).setPlayerData(null);
+        CompletableFuture<Void> settled = new CompletableFuture<>();
+        Runnable settle = () -> gameLoop.submit(() -> settled.complete(null));
+        if (!((PlayerConnection) connection).getMailbox().post(settle)) {
+            settle.run();
+        }
+        // Runs on the game loop, queued after the partial save made on leaving
+        return settled.thenCompose(ignored -> store.saveCharacter(playerData.getUsername(), playerData.getCharacter()));
+    }
+    
+    /**
+     * A neighbouring zone has taken over this player: point the client there
+     */
+    private void handOffPlayer(Connection connection, PlayerData playerData, ZoneConfig target, String transferToken) {
+        // The target serves the character from now on; drop this copy after the unpin queued on leaving
+        CharacterData character = playerData.getCharacter();
+        if (!((PlayerConnection) connection).getMailbox().post(() -> characters.forget(character))) {
+            characters.forget(character);
+        }
+        
+        Network.ZoneRedirect redirect = new Network.ZoneRedirect();
+        redirect.host = target.getHost();
+        redirect.tcpPort = target.getTcpPort();
+        redirect.udpPort = target.getUdpPort();
+        redirect.transferToken = transferToken;
+        connection.sendTCP(redirect);
+        
+        System.out.println("Player " + character.getName() + " handed off to zone " + target.getZoneId());
+    }
+    
+    /**
+     * No neighbour took a player that left for a handoff: carry on here, unless it disconnected meanwhile
+     */
+    private void returnFromHandoff(Connection connection, PlayerData playerData) {
+        if (!connection.isConnected()) {
+            return;
+        }
+        ((PlayerConnection) connection).setPlayerData(playerData);
+        enterWorld(connection, playerData);
+        System.out.println("Player " + playerData.getCharacter().getName() + " stays in this zone: handoff failed");
+    }
+    
+    private void handleZoneTransfer(Connection connection, Network.ZoneTransferRequest request) {
+        Network.ZoneTransferResponse response = new Network.ZoneTransferResponse();
+        
+        ZoneProtocol.ZoneHandoff arrival = zoneManager != null ? zoneManager.claimArrival(request.transferToken) : null;
+        // The old zone saved the character before offering it; read that back rather than any copy cached here
+        CharacterData character = arrival != null ? characters.reload(arrival.characterId) : null;
+        if (character != null) {
+            PlayerData playerData = new PlayerData(arrival.playerId, arrival.username, character);
+            // A token signed with a key shared between zones carries over; otherwise start a session here
+            Session session = sessions.find(request.sessionToken);
+            if (session == null || !session.getUsername().equals(playerData.getUsername())) {
+                session = sessions.open(playerData.getUsername());
+            }
+            ((PlayerConnection) connection).setSession(session);
+            ((PlayerConnection) connection).setPlayerData(playerData);
+            gameLoop.submit(() -> enterWorld(connection, playerData));
+            
+            response.success = true;
+            response.message = "Entered zone " + zoneConfig.getZoneId();
+            response.playerData = playerData;
+            response.token = session.getToken();
+            
+            System.out.println("Player " + character.getName() + " arrived from another zone");
+        } else {
+            response.success = false;
+            response.message = "Unknown or expired transfer";
+        }
+        
+        connection.sendTCP(response);
+    }
+    
     private void handlePlayerMove(Connection connection, Network.PlayerMoveRequest request) {
-        PlayerData playerData = activePlayers.get(connection);
+        PlayerData playerData = activePlayers.getByConnection(connection);
         if (playerData != null) {
-            playerData.getCharacter().setX(request.x);
-            playerData.getCharacter().setY(request.y);
             playerData.updateActivity();
+            CharacterData character = playerData.getCharacter();
+            if (!Float.isFinite(request.x) || !Float.isFinite(request.y) ||
+                collisionMap.sweep(character.getX(), character.getY(), request.x, request.y, MOVE_CHECK_RADIUS) < 1f) {
+                // Through a building, into the sea or off the map: stay put and put the client back
+                movesRejected++;
+                Network.PlayerMoveResponse correction = new Network.PlayerMoveResponse();
+                correction.playerId = playerData.getPlayerId();
+                correction.x = character.getX();
+                correction.y = character.getY();
+                connection.sendTCP(correction);
+                return;
+            }
+            character.setX(request.x);
+            character.setY(request.y);
+            interestManager.move(playerData);
         }
     }
     
     private void handleChatMessage(Connection connection, Network.ChatMessage message) {
-        PlayerData playerData = activePlayers.get(connection);
+        PlayerData playerData = activePlayers.getByConnection(connection);
         if (playerData != null) {
+            playerData.updateActivity();
             System.out.println("Chat from " + message.sender + ": " + message.message);
             
             // Broadcast to all connected players
-            for (Connection conn : activePlayers.keySet()) {
-                conn.sendTCP(message);
-            }
+            broadcaster.sendToAllTCP(activePlayers.getConnections(), message);
         }
     }
     
     private void handleUseAbility(Connection connection, Network.UseAbilityRequest request) {
         Network.UseAbilityResponse response = new Network.UseAbilityResponse();
         
-        PlayerData playerData = activePlayers.get(connection);
+        PlayerData playerData = activePlayers.getByConnection(connection);
         if (playerData != null) {
+            playerData.updateActivity();
             CharacterData character = playerData.getCharacter();
             
             // Validate ability index
@@ -280,8 +767,10 @@ public class MMOServer {
             
             Ability ability = character.getAbilities().get(request.abilityIndex);
             
+            long now = gameLoop.getClock().currentTimeMillis();
+            
             // Check cooldown
-            if (!character.isAbilityReady(request.abilityIndex)) {
+            if (!character.isAbilityReady(request.abilityIndex, now)) {
                 response.success = false;
                 response.message = "Ability is on cooldown";
                 response.currentMana = character.getMana();
@@ -300,16 +789,24 @@ public class MMOServer {
                 return;
             }
             
-            // Find target player
+            // Find target player, or failing that a mob
             PlayerData targetPlayer = null;
+            Mob targetMob = null;
             if (request.targetPlayerId > 0) {
-                for (PlayerData pd : activePlayers.values()) {
-                    if (pd.getPlayerId() == request.targetPlayerId) {
-                        targetPlayer = pd;
-                        break;
-                    }
+                targetPlayer = activePlayers.getByPlayerId(request.targetPlayerId);
+                if (targetPlayer == null) {
+                    targetMob = mobManager.getMob(request.targetPlayerId);
+                    targetPlayer = targetMob != null ? targetMob.getEntity() : null;
                 }
             }
+            if (targetPlayer != null && targetPlayer.getCharacter().getHealth() <= 0) {
+                response.success = false;
+                response.message = "Target is already dead";
+                response.currentMana = character.getMana();
+                response.currentHealth = character.getHealth();
+                connection.sendTCP(response);
+                return;
+            }
             
             // Calculate damage/healing
             int damage = ability.getDamage();
@@ -322,18 +819,17 @@ public class MMOServer {
             
             // Apply effects
             character.setMana(character.getMana() - ability.getManaCost());
-            character.setAbilityCooldown(request.abilityIndex, ability.getCooldown());
+            character.setAbilityCooldown(request.abilityIndex, ability.getCooldown(), now);
             
             if (targetPlayer != null) {
                 CharacterData targetChar = targetPlayer.getCharacter();
                 
                 // Check range
-                float distance = (float)Math.sqrt(
-                    Math.pow(character.getX() - targetChar.getX(), 2) + 
-                    Math.pow(character.getY() - targetChar.getY(), 2)
-                );
+                EntityStateStore states = interestManager.getStates();
+                float distanceSquared = states.distanceSquared(states.getRow(playerData.getPlayerId()),
+                    states.getRow(targetPlayer.getPlayerId()));
                 
-                if (distance > ability.getRange()) {
+                if (distanceSquared > ability.getRange() * ability.getRange()) {
                     response.success = false;
                     response.message = "Target out of range";
                     response.currentMana = character.getMana();
@@ -348,8 +844,10 @@ public class MMOServer {
                     targetChar.setHealth(Math.max(0, targetChar.getHealth() - actualDamage));
                     damage = actualDamage;
                     
-                    // Check for death
-                    if (targetChar.getHealth() <= 0) {
+                    // Check for death; a mob also turns on whoever hurt it
+                    if (targetMob != null) {
+                        mobManager.damaged(targetMob, playerData);
+                    } else if (targetChar.getHealth() <= 0) {
                         handlePlayerDeath(targetPlayer, playerData);
                     }
                 } else if (healing > 0) {
@@ -368,11 +866,9 @@ public class MMOServer {
                 combatEvent.isCritical = isCritical;
                 combatEvent.targetHealthAfter = targetChar.getHealth();
                 combatEvent.attackerManaAfter = character.getMana();
-                combatEvent.timestamp = System.currentTimeMillis();
+                combatEvent.timestamp = now;
                 
-                for (Connection conn : activePlayers.keySet()) {
-                    conn.sendTCP(combatEvent);
-                }
+                broadcaster.sendToAllTCP(activePlayers.getConnections(), combatEvent);
                 
                 System.out.println("Combat: " + character.getName() + " used " + ability.getName() + 
                                  " on " + targetChar.getName() + " for " + damage + " damage");
@@ -391,11 +887,9 @@ public class MMOServer {
                 combatEvent.isCritical = false;
                 combatEvent.targetHealthAfter = character.getHealth();
                 combatEvent.attackerManaAfter = character.getMana();
-                combatEvent.timestamp = System.currentTimeMillis();
+                combatEvent.timestamp = now;
                 
-                for (Connection conn : activePlayers.keySet()) {
-                    conn.sendTCP(combatEvent);
-                }
+                broadcaster.sendToAllTCP(activePlayers.getConnections(), combatEvent);
             }
             
             response.success = true;
@@ -413,7 +907,7 @@ public class MMOServer {
     }
     
     private void handleAttack(Connection connection, Network.AttackRequest request) {
-        PlayerData playerData = activePlayers.get(connection);
+        PlayerData playerData = activePlayers.getByConnection(connection);
         if (playerData != null && request.abilityIndex >= 0) {
             Network.UseAbilityRequest abilityRequest = new Network.UseAbilityRequest();
             abilityRequest.abilityIndex = request.abilityIndex;
@@ -423,6 +917,13 @@ public class MMOServer {
     }
     
     private void handlePlayerDeath(PlayerData deadPlayer, PlayerData killer) {
+        // Already dead and waiting to respawn; don't let further hits push the respawn back
+        long playerId = deadPlayer.getPlayerId();
+        PendingRespawn respawn = respawnTimers.get(playerId);
+        if (respawn != null && respawn.timer != 0) {
+            return;
+        }
+        
         // Broadcast death message
         Network.PlayerDeath deathMsg = new Network.PlayerDeath();
         deathMsg.playerId = deadPlayer.getPlayerId();
@@ -430,20 +931,44 @@ public class MMOServer {
         deathMsg.killerId = killer.getPlayerId();
         deathMsg.killerName = killer.getCharacter().getName();
         
-        for (Connection conn : activePlayers.keySet()) {
-            conn.sendTCP(deathMsg);
-        }
+        broadcaster.sendToAllTCP(activePlayers.getConnections(), deathMsg);
         
         System.out.println(deadPlayer.getCharacter().getName() + " was killed by " + killer.getCharacter().getName());
         
-        // Respawn player after 3 seconds
-        Timer respawnTimer = new Timer();
-        respawnTimer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                respawnPlayer(deadPlayer);
-            }
-        }, 3000);
+        // Respawn player after 3 seconds, unless they leave the world first
+        if (respawn == null) {
+            respawn = new PendingRespawn(deadPlayer);
+            respawnTimers.put(playerId, respawn);
+        }
+        respawn.timer = gameLoop.schedule(RESPAWN_DELAY, respawn);
+    }
+    
+    /**
+     * A mob's hit on a player, applied on the game loop thread like an ability
+     */
+    private void handleMobAttack(Mob mob, PlayerData target, long now) {
+        CharacterData targetChar = target.getCharacter();
+        int damage = Math.max(1, mob.getCharacter().getAttack() - targetChar.getDefense() / 2);
+        targetChar.setHealth(Math.max(0, targetChar.getHealth() - damage));
+        if (targetChar.getHealth() <= 0) {
+            handlePlayerDeath(target, mob.getEntity());
+        }
+        
+        Network.CombatEvent combatEvent = new Network.CombatEvent();
+        combatEvent.attackerId = mob.getId();
+        combatEvent.attackerName = mob.getType().getName();
+        combatEvent.targetId = target.getPlayerId();
+        combatEvent.targetName = targetChar.getName();
+        combatEvent.abilityName = mob.getType().getAttackName();
+        combatEvent.damage = damage;
+        combatEvent.targetHealthAfter = targetChar.getHealth();
+        combatEvent.timestamp = now;
+        
+        // Only the victim hears it; with thousands of mobs, telling everyone would swamp every client
+        Connection connection = activePlayers.getConnection(target.getPlayerId());
+        if (connection != null) {
+            connection.sendTCP(combatEvent);
+        }
     }
     
     private void respawnPlayer(PlayerData player) {
@@ -452,6 +977,7 @@ public class MMOServer {
         character.setMana(character.getMaxMana());
         character.setX(100);
         character.setY(100);
+        interestManager.move(player);
         
         // Broadcast respawn
         Network.PlayerRespawn respawnMsg = new Network.PlayerRespawn();
@@ -459,15 +985,19 @@ public class MMOServer {
         respawnMsg.x = 100;
         respawnMsg.y = 100;
         
-        for (Connection conn : activePlayers.keySet()) {
-            conn.sendTCP(respawnMsg);
-        }
+        broadcaster.sendToAllTCP(activePlayers.getConnections(), respawnMsg);
         
         System.out.println(character.getName() + " respawned");
     }
     
+    /*
+     * Item handlers run in the player's mailbox, which owns the inventory and
+     * equipment. Stat changes are handed to the game loop, the only writer of
+     * combat stats, and responses go out once those changes have been applied.
+     */
+    
     private void handleUseItem(Connection connection, Network.UseItemRequest request) {
-        PlayerData playerData = activePlayers.get(connection);
+        PlayerData playerData = ((PlayerConnection) connection).getPlayerData();
         Network.UseItemResponse response = new Network.UseItemResponse();
         
         if (playerData == null) {
@@ -477,6 +1007,7 @@ public class MMOServer {
             return;
         }
         
+        playerData.updateActivity();
         CharacterData character = playerData.getCharacter();
         com.mmo.models.Inventory inventory = character.getInventory();
         com.mmo.models.InventoryItem invItem = inventory.getItemAtSlot(request.slotIndex);
@@ -506,41 +1037,52 @@ public class MMOServer {
             return;
         }
         
-        // Apply item effects
-        int healthRestored = 0;
-        int manaRestored = 0;
-        
-        if (item.getHealthRestore() > 0) {
-            int oldHealth = character.getHealth();
-            int newHealth = Math.min(oldHealth + item.getHealthRestore(), character.getMaxHealth());
-            character.setHealth(newHealth);
-            healthRestored = newHealth - oldHealth;
-        }
-        
-        if (item.getManaRestore() > 0) {
-            int oldMana = character.getMana();
-            int newMana = Math.min(oldMana + item.getManaRestore(), character.getMaxMana());
-            character.setMana(newMana);
-            manaRestored = newMana - oldMana;
-        }
-        
         // If item quantity is 0, remove it
         if (invItem.getQuantity() == 0) {
             inventory.getItems().remove(invItem);
         }
         
-        response.success = true;
-        response.message = "Used " + item.getName();
-        response.healthRestored = healthRestored;
-        response.manaRestored = manaRestored;
-        connection.sendTCP(response);
-        
-        System.out.println(character.getName() + " used " + item.getName() + 
-                          " (HP: +" + healthRestored + ", MP: +" + manaRestored + ")");
+        // Apply item effects
+        gameLoop.submit(() -> {
+            int healthRestored = 0;
+            int manaRestored = 0;
+            
+            if (item.getHealthRestore() > 0) {
+                int oldHealth = character.getHealth();
+                int newHealth = Math.min(oldHealth + item.getHealthRestore(), character.getMaxHealth());
+                character.setHealth(newHealth);
+                healthRestored = newHealth - oldHealth;
+            }
+            
+            if (item.getManaRestore() > 0) {
+                int oldMana = character.getMana();
+                int newMana = Math.min(oldMana + item.getManaRestore(), character.getMaxMana());
+                character.setMana(newMana);
+                manaRestored = newMana - oldMana;
+            }
+            
+            // Effects over time only change the regeneration rate
+            long effectMillis = item.getEffectSeconds() * 1000L;
+            if (item.getHealthRegen() > 0) {
+                character.addHealthRegenBonus(item.getHealthRegen(), effectMillis);
+            }
+            if (item.getManaRegen() > 0) {
+                character.addManaRegenBonus(item.getManaRegen(), effectMillis);
+            }
+            
+            response.success = true;
+            response.message = "Used " + item.getName();
+            response.healthRestored = healthRestored;
+            response.manaRestored = manaRestored;
+            connection.sendTCP(response);
+            
+            System.out.println(character.getName() + " used " + item.getName() + 
+                              " (HP: +" + healthRestored + ", MP: +" + manaRestored + ")");
+        });
     }
     
     private void handleEquipItem(Connection connection, Network.EquipItemRequest request) {
-        PlayerData playerData = activePlayers.get(connection);
+        PlayerData playerData = ((PlayerConnection) connection).getPlayerData();
         Network.EquipItemResponse response = new Network.EquipItemResponse();
         
         if (playerData == null) {
@@ -550,6 +1092,7 @@ public class MMOServer {
             return;
         }
         
+        playerData.updateActivity();
         CharacterData character = playerData.getCharacter();
         com.mmo.models.Inventory inventory = character.getInventory();
         com.mmo.models.InventoryItem invItem = inventory.getItemAtSlot(request.slotIndex);
@@ -581,50 +1124,58 @@ public class MMOServer {
         }
         
         // Check if slot already has an item equipped
+        com.mmo.models.Item previousItem = null;
         if (character.hasEquippedItem(slot)) {
             com.mmo.models.Item equippedItem = character.getEquippedItem(slot);
             
-            // Remove bonuses from previously equipped item
-            removeEquipmentBonuses(character, equippedItem);
-            
             // Unequip and add back to inventory
             character.unequipItem(slot);
             if (!inventory.addItem(equippedItem, 1)) {
                 // If inventory is full, we can't swap
+                character.equipItem(slot, equippedItem);
                 response.success = false;
                 response.message = "Inventory is full. Cannot swap equipment.";
-                // Re-apply the bonuses we removed
-                applyEquipmentBonuses(character, equippedItem);
-                character.equipItem(slot, equippedItem);
                 connection.sendTCP(response);
                 return;
             }
+            previousItem = equippedItem;
         }
         
         // Remove item from inventory and equip it
         com.mmo.models.Item itemToEquip = inventory.removeItemFromSlot(request.slotIndex);
-        if (itemToEquip == null) {
-            response.success = false;
-            response.message = "Failed to remove item from inventory";
-            connection.sendTCP(response);
-            return;
+        if (itemToEquip != null) {
+            character.equipItem(slot, itemToEquip);
         }
         
-        character.equipItem(slot, itemToEquip);
-        
-        // Apply stat bonuses from newly equipped item
-        applyEquipmentBonuses(character, itemToEquip);
-        
-        response.success = true;
-        response.message = "Equipped " + itemToEquip.getName();
-        response.updatedCharacter = character;
-        connection.sendTCP(response);
-        
-        System.out.println(character.getName() + " equipped " + itemToEquip.getName());
+        // Swap stat bonuses on the game loop, then reply from this mailbox
+        com.mmo.models.Item removedItem = previousItem;
+        gameLoop.submit(() -> {
+            if (removedItem != null) {
+                removeEquipmentBonuses(character, removedItem);
+            }
+            if (itemToEquip != null) {
+                applyEquipmentBonuses(character, itemToEquip);
+            }
+            post(connection, () -> {
+                if (itemToEquip == null) {
+                    response.success = false;
+                    response.message = "Failed to remove item from inventory";
+                    connection.sendTCP(response);
+                    return;
+                }
+                response.success = true;
+                response.message = "Equipped " + itemToEquip.getName();
+                response.updatedCharacter = character;
+                response.serverTime = gameLoop.getClock().currentTimeMillis();
+                connection.sendTCP(response);
+                
+                System.out.println(character.getName() + " equipped " + itemToEquip.getName());
+            });
+        });
     }
     
     private void handleUnequipItem(Connection connection, Network.UnequipItemRequest request) {
-        PlayerData playerData = activePlayers.get(connection);
+        PlayerData playerData = ((PlayerConnection) connection).getPlayerData();
         Network.UnequipItemResponse response = new Network.UnequipItemResponse();
         
         if (playerData == null) {
@@ -634,6 +1185,7 @@ public class MMOServer {
             return;
         }
         
+        playerData.updateActivity();
         CharacterData character = playerData.getCharacter();
         com.mmo.models.Inventory inventory = character.getInventory();
         
@@ -656,26 +1208,29 @@ public class MMOServer {
         // Get equipped item and remove it
         com.mmo.models.Item equippedItem = character.unequipItem(request.equipmentSlot);
         
-        // Remove stat bonuses
-        removeEquipmentBonuses(character, equippedItem);
-        
         // Add item back to inventory
         if (!inventory.addItem(equippedItem, 1)) {
             // If adding fails, re-equip the item
             character.equipItem(request.equipmentSlot, equippedItem);
-            applyEquipmentBonuses(character, equippedItem);
             response.success = false;
             response.message = "Failed to add item to inventory";
             connection.sendTCP(response);
             return;
         }
         
-        response.success = true;
-        response.message = "Unequipped " + equippedItem.getName();
-        response.updatedCharacter = character;
-        connection.sendTCP(response);
-        
-        System.out.println(character.getName() + " unequipped " + equippedItem.getName());
+        // Remove stat bonuses on the game loop, then reply from this mailbox
+        gameLoop.submit(() -> {
+            removeEquipmentBonuses(character, equippedItem);
+            post(connection, () -> {
+                response.success = true;
+                response.message = "Unequipped " + equippedItem.getName();
+                response.updatedCharacter = character;
+                response.serverTime = gameLoop.getClock().currentTimeMillis();
+                connection.sendTCP(response);
+                
+                System.out.println(character.getName() + " unequipped " + equippedItem.getName());
+            });
+        });
     }
     
     /**
@@ -705,67 +1260,152 @@ public class MMOServer {
     }
     
     private void handleDisconnect(Connection connection) {
-        PlayerData playerData = activePlayers.remove(connection);
-        if (playerData != null) {
-            System.out.println("Player " + playerData.getCharacter().getName() + " left the world");
-        }
+        sessions.release(((PlayerConnection) connection).getSession());
+        // Leave the world at the next tick boundary, after any inputs already queued
+        gameLoop.submit(() -> {
+            PlayerData playerData = leaveWorld(connection);
+            if (playerData != null) {
+                System.out.println("Player " + playerData.getCharacter().getName() + " left the world");
+            }
+        });
     }
     
-    private void startWorldUpdates() {
-        worldUpdateTimer = new Timer();
-        worldUpdateTimer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                broadcastWorldUpdate();
+    /**
+     * Disconnect players who have sent nothing for the idle timeout, and keep
+     * the sessions of the others alive while they play (game loop thread)
+     */
+    private void reapIdlePlayers() {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < activePlayers.size(); i++) {
+            PlayerData playerData = activePlayers.getPlayer(i);
+            PlayerConnection connection = (PlayerConnection) activePlayers.getConnectionAt(i);
+            if (now - playerData.getLastActivity() > IDLE_TIMEOUT) {
+                System.out.println("Disconnecting idle player " + playerData.getCharacter().getName());
+                idlePlayersReaped++;
+                // Leaving the world is queued by the disconnect listener, so the registry is unchanged here
+                connection.close();
+            } else {
+                sessions.touch(connection.getSession());
             }
-        }, 0, WORLD_UPDATE_INTERVAL);
+        }
     }
     
-    private void broadcastWorldUpdate() {
+    /**
+     * Once the per-thread scratch has grown to the largest views seen, building
+     * and sending snapshots allocates nothing; the allocation meter shows it.
+     */
+    private void broadcastWorldUpdate(TickClock clock) {
         if (activePlayers.isEmpty()) return;
-        
-        Network.WorldUpdate update = new Network.WorldUpdate();
-        List<Network.PlayerUpdate> playerUpdates = new ArrayList<>();
-        
-        for (PlayerData playerData : activePlayers.values()) {
-            Network.PlayerUpdate playerUpdate = new Network.PlayerUpdate();
-            playerUpdate.playerId = playerData.getPlayerId();
-            playerUpdate.x = playerData.getCharacter().getX();
-            playerUpdate.y = playerData.getCharacter().getY();
-            playerUpdate.name = playerData.getCharacter().getName();
-            playerUpdate.level = playerData.getCharacter().getLevel();
-            playerUpdate.health = playerData.getCharacter().getHealth();
-            playerUpdate.maxHealth = playerData.getCharacter().getMaxHealth();
-            playerUpdates.add(playerUpdate);
+        long started = broadcastAllocations.start();
+        // Settle health and mana once for everyone, rather than per observer
+        interestManager.getStates().sync(clock.currentTimeMillis());
+        broadcastSequence = (int) clock.getTick();
+        regionManager.run(broadcastTask);
+        broadcastAllocations.stop(started);
+        broadcastAllocations.endPass();
+    }
+    
+    /**
+     * Send each member of a region only the entities inside its area of interest,
+     * delta-encoded against the last snapshot it acknowledged. Runs on a region worker.
+     */
+    private void broadcastRegion(Region region) {
+        // The game loop thread measures itself, including regions it runs inline
+        boolean worker = ForkJoinTask.inForkJoinPool();
+        long started = worker ? broadcastAllocations.start() : 0;
+        BroadcastScratch scratch = broadcastScratch.get();
+        int sequence = broadcastSequence;
+        for (int i = 0; i < region.size(); i++) {
+            int slot = region.getMember(i);
+            Connection connection = activePlayers.getConnectionBySlot(slot);
+            SnapshotHistory history = ((PlayerConnection) connection).getSnapshotHistory();
+            if (history == null) continue;
+            
+            IntArray visible = interestManager.update(activePlayers.getPlayerBySlot(slot), scratch.view);
+            sendVisibilityChanges(connection, scratch);
+            Network.WorldUpdate update = history.encode(sequence, interestManager.getStates(), visible, scratch.update);
+            
+            if (update.playerCount == 0 && update.removedCount == 0) {
+                // Nothing changed for this client: the bytes are identical for
+                // every client on the same baseline, so encode them once
+                SerializedMessage shared = scratch.findUnchanged(update.baseline);
+                if (shared == null) {
+                    shared = broadcaster.serialize(update);
+                    scratch.addUnchanged(update.baseline, shared);
+                }
+                broadcaster.sendUDP(connection, shared);
+            } else {
+                SerializedMessage serialized = broadcaster.serialize(update);
+                broadcaster.sendUDP(connection, serialized);
+                broadcaster.release(serialized);
+            }
         }
-        
-        update.players = playerUpdates.toArray(new Network.PlayerUpdate[0]);
-        
-        // Broadcast to all players
-        for (Connection connection : activePlayers.keySet()) {
-            connection.sendUDP(update);
+        scratch.release(broadcaster);
+        if (worker) {
+            broadcastAllocations.stop(started);
         }
     }
     
+    /**
+     * Send spawn/despawn events for the view changes found by the last interest update.
+     * Static data (name, class, level) travels only here, so snapshots stay numeric.
+     */
+    private void sendVisibilityChanges(Connection connection, BroadcastScratch scratch) {
+        List<PlayerData> entered = scratch.view.getEntered();
+        for (int i = 0; i < entered.size(); i++) {
+            PlayerData entity = entered.get(i);
+            SerializedMessage spawn = scratch.spawnMessages.get(entity.getPlayerId());
+            if (spawn == null) {
+                spawn = broadcaster.serialize(createEntitySpawn(entity));
+                scratch.spawnMessages.put(entity.getPlayerId(), spawn);
+            }
+            broadcaster.sendTCP(connection, spawn);
+        }
+        LongArray left = scratch.view.getLeft();
+        for (int i = 0; i < left.size; i++) {
+            // Serialized into the connection's buffer before sendTCP returns, so one object serves all
+            scratch.despawn.entityId = left.get(i);
+            connection.sendTCP(scratch.despawn);
+        }
+    }
+    
+    private Network.EntitySpawn createEntitySpawn(PlayerData player) {
+        CharacterData character = player.getCharacter();
+        Network.EntitySpawn spawn = new Network.EntitySpawn();
+        spawn.entityId = player.getPlayerId();
+        spawn.name = character.getName();
+        spawn.characterClass = character.getCharacterClass();
+        spawn.level = character.getLevel();
+        Mob mob = mobManager.getMob(player.getPlayerId());
+        spawn.mobType = mob != null ? mob.getType() : null;
+        return spawn;
+    }
+    
     public void start() {
         try {
-            server.bind(Network.TCP_PORT, Network.UDP_PORT);
+            store.start();
+            writeBehind.start();
+            server.bind(zoneConfig.getTcpPort(), zoneConfig.getUdpPort());
             server.start();
+            if (zoneManager != null) {
+                zoneManager.start();
+            }
             
             System.out.println("==============================================");
             System.out.println("MMO Server Started");
             System.out.println("==============================================");
-            System.out.println("TCP Port: " + Network.TCP_PORT);
-            System.out.println("UDP Port: " + Network.UDP_PORT);
+            System.out.println("TCP Port: " + zoneConfig.getTcpPort());
+            System.out.println("UDP Port: " + zoneConfig.getUdpPort());
+            if (zoneManager != null) {
+                System.out.println("Zone: " + zoneConfig + ", link port " + zoneConfig.getLinkPort());
+            }
             System.out.println("==============================================");
             System.out.println("Monitoring:");
-            System.out.println("- Registered accounts: " + accounts.size());
+            System.out.println("- Registered accounts: " + accounts.getAccountCount());
             System.out.println("- Active players: " + activePlayers.size());
             System.out.println("==============================================");
             
-            startWorldUpdates();
-            startManaRegeneration();
-            startMonitoring();
+            gameLoop.start();
             
         } catch (IOException e) {
             System.err.println("Failed to start server: " + e.getMessage());
@@ -773,26 +1413,53 @@ public class MMOServer {
         }
     }
     
-    private void startMonitoring() {
-        Timer monitorTimer = new Timer();
-        monitorTimer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                printServerStatus();
-            }
-        }, 10000, 10000); // Every 10 seconds
-    }
-    
     private void printServerStatus() {
         System.out.println("\n=== Server Status ===");
         System.out.println("Active Players: " + activePlayers.size());
-        System.out.println("Total Accounts: " + accounts.size());
-        System.out.println("Total Characters: " + characters.size());
-        System.out.println("Active Sessions: " + sessionTokens.size());
+        System.out.println("Total Accounts: " + accounts.getAccountCount());
+        System.out.println("Total Characters: " + store.getCharacterCount());
+        System.out.println(sessions.getStatusReport() + ", " + idlePlayersReaped + " idle players disconnected");
+        System.out.println(loginQueue.getStatusReport());
+        System.out.println("Login throttle: " + loginThrottle.getStatusReport());
+        System.out.println(gameLoop.getStatusReport());
+        System.out.println(workerPool.getStatusReport());
+        System.out.println(store.getStatusReport());
+        System.out.println(writeBehind.getStatusReport());
+        System.out.println(characters.getStatusReport());
+        System.out.println(regionManager.getStatusReport());
+        System.out.println(mobManager.getStatusReport());
+        System.out.println(navigation.getStatusReport());
+        System.out.println("Movement: " + movesRejected + " moves rejected by collision");
+        if (zoneManager != null) {
+            System.out.println(zoneManager.getStatusReport());
+        }
+        
+        long fullSnapshots = 0;
+        long deltaSnapshots = 0;
+        for (int i = 0; i < activePlayers.size(); i++) {
+            SnapshotHistory history = ((PlayerConnection) activePlayers.getConnectionAt(i)).getSnapshotHistory();
+            if (history == null) continue;
+            fullSnapshots += history.getFullSnapshots();
+            deltaSnapshots += history.getDeltaSnapshots();
+        }
+        System.out.println("Snapshots sent: " + deltaSnapshots + " delta, " + fullSnapshots + " full");
+        System.out.println("Broadcast: " + broadcaster.getEncodes() + " encodes, " + 
+                         broadcaster.getDeliveries() + " deliveries, garbage " +
+                         broadcastAllocations.getReport("tick"));
+        System.out.println("Messages received: " + dispatcher.getCounts() + 
+                         ", unhandled " + dispatcher.getUnhandled());
+        long encodedEntities = WorldUpdateSerializer.getEncodedEntities();
+        if (encodedEntities > 0) {
+            System.out.println("Snapshot wire size: " + 
+                             String.format("%.2f", WorldUpdateSerializer.getEncodedBytes() / (double) encodedEntities) + 
+                             " bytes/entity (" + (WorldUpdateSerializer.isCompact() ? 
+                             WorldUpdateSerializer.getPositionBits() + "-bit positions" : "full precision") + ")");
+        }
         
         if (!activePlayers.isEmpty()) {
             System.out.println("\nOnline Players:");
-            for (PlayerData player : activePlayers.values()) {
+            for (int i = 0; i < activePlayers.size(); i++) {
+                PlayerData player = activePlayers.getPlayer(i);
                 System.out.println("  - " + player.getCharacter().getName() + 
                                  " (Level " + player.getCharacter().getLevel() + 
                                  ") at (" + player.getCharacter().getX() + ", " + 
@@ -802,41 +1469,25 @@ public class MMOServer {
         System.out.println("====================\n");
     }
     
-    private void startManaRegeneration() {
-        manaRegenTimer = new Timer();
-        manaRegenTimer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                regenerateMana();
-            }
-        }, MANA_REGEN_INTERVAL, MANA_REGEN_INTERVAL);
-    }
-    
-    private void regenerateMana() {
-        for (PlayerData playerData : activePlayers.values()) {
-            CharacterData character = playerData.getCharacter();
-            int currentMana = character.getMana();
-            int maxMana = character.getMaxMana();
-            
-            if (currentMana < maxMana) {
-                character.setMana(Math.min(maxMana, currentMana + MANA_REGEN_AMOUNT));
-            }
-        }
-    }
-    
     public void stop() {
-        if (worldUpdateTimer != null) {
-            worldUpdateTimer.cancel();
-        }
-        if (manaRegenTimer != null) {
-            manaRegenTimer.cancel();
-        }
+        gameLoop.stop();
         server.stop();
+        workerPool.shutdown();
+        loginQueue.shutdown();
+        regionManager.shutdown();
+        mobManager.shutdown();
+        if (zoneManager != null) {
+            zoneManager.stop();
+        }
+        
+        // The loop has stopped, so the world is ours; save what changed and flush the log
+        writeBehind.stop();
+        store.stop();
         System.out.println("Server stopped");
     }
     
     public static void main(String[] args) {
-        MMOServer server = new MMOServer();
+        MMOServer server = new MMOServer(ZoneConfig.parse(args, WORLD_SIZE));
         server.start();
         
         // Keep server running
@@ -850,25 +1501,74 @@ public class MMOServer {
                 System.exit(0);
                 break;
             } else if (input.equalsIgnoreCase("status")) {
-                server.printServerStatus();
+                // World state belongs to the game loop thread
+                server.gameLoop.submit(server::printServerStatus);
             }
         }
     }
     
-    // User account class
-    private static class UserAccount {
-        String username;
-        String password;
-        String email;
-        List<Long> characterIds;
-        long createdAt;
+    /**
+     * A player's respawn timer, made at its first death and reused for the
+     * rest of its stay in the world, so dying allocates nothing (game loop thread)
+     */
+    private final class PendingRespawn implements Runnable {
+        final PlayerData player;
+        long timer; // Handle while dead, else 0
         
-        UserAccount(String username, String password, String email) {
-            this.username = username;
-            this.password = password;
-            this.email = email;
-            this.characterIds = new ArrayList<>();
-            this.createdAt = System.currentTimeMillis();
+        PendingRespawn(PlayerData player) {
+            this.player = player;
+        }
+        
+        @Override
+        public void run() {
+            timer = 0;
+            respawnPlayer(player);
+        }
+    }
+    
+    /**
+     * Per-thread scratch for building a region's broadcasts
+     */
+    private static class BroadcastScratch {
+        final InterestManager.View view = new InterestManager.View();
+        final Network.WorldUpdate update = new Network.WorldUpdate(); // Refilled for every member
+        final Network.EntityDespawn despawn = new Network.EntityDespawn();
+        final LongMap<SerializedMessage> spawnMessages = new LongMap<>(); // entity -> shared EntitySpawn bytes
+        // Shared bytes of "nothing changed" updates, by baseline; only a few baselines are live at once
+        int[] unchangedBaselines = new int[8];
+        SerializedMessage[] unchangedMessages = new SerializedMessage[8];
+        int unchangedCount;
+        
+        SerializedMessage findUnchanged(int baseline) {
+            for (int i = 0; i < unchangedCount; i++) {
+                if (unchangedBaselines[i] == baseline) {
+                    return unchangedMessages[i];
+                }
+            }
+            return null;
+        }
+        
+        void addUnchanged(int baseline, SerializedMessage shared) {
+            if (unchangedCount == unchangedBaselines.length) {
+                unchangedBaselines = Arrays.copyOf(unchangedBaselines, unchangedCount * 2);
+                unchangedMessages = Arrays.copyOf(unchangedMessages, unchangedCount * 2);
+            }
+            unchangedBaselines[unchangedCount] = baseline;
+            unchangedMessages[unchangedCount++] = shared;
+        }
+        
+        void release(MessageBroadcaster broadcaster) {
+            for (int i = 0; i < unchangedCount; i++) {
+                broadcaster.release(unchangedMessages[i]);
+                unchangedMessages[i] = null;
+            }
+            unchangedCount = 0;
+            if (spawnMessages.notEmpty()) {
+                for (SerializedMessage spawn : spawnMessages.values()) {
+                    broadcaster.release(spawn);
+                }
+                spawnMessages.clear();
+            }
         }
     }
 }
@@ -0,0 +1,45 @@
+package com.mmo.server;
+
+/**
+ * Per-tick cached clock owned by the game loop.
+ * Captured once at the start of every tick so all handlers in the same tick
+ * see the same time, and derived from System.nanoTime so it never runs backwards.
+ */
+public class TickClock {
+    private final long originNanos;
+    private final long originMillis;
+    private long tick;
+    private long nanoTime;
+    private volatile long millis; // Also read off the loop thread, e.g. to stamp replies
+
+    public TickClock() {
+        this.originNanos = System.nanoTime();
+        this.originMillis = System.currentTimeMillis();
+        this.nanoTime = originNanos;
+        this.millis = originMillis;
+    }
+
+    /**
+     * Advance to the next tick, sampling the monotonic clock once
+     */
+    void advance(long tick, long nanoTime) {
+        this.tick = tick;
+        this.nanoTime = nanoTime;
+        this.millis = originMillis + (nanoTime - originNanos) / 1_000_000L;
+    }
+
+    /**
+     * Current tick number (starts at 0)
+     */
+    public long getTick() { return tick; }
+
+    /**
+     * Monotonic nanosecond timestamp sampled at the start of this tick
+     */
+    public long getNanoTime() { return nanoTime; }
+
+    /**
+     * Wall-clock compatible milliseconds for this tick (monotonic, anchored at loop start)
+     */
+    public long currentTimeMillis() { return millis; }
+}
@@ -0,0 +1,196 @@
+package com.mmo.server;
+
+import java.util.Arrays;
+
+/**
+ * Hierarchical timing wheel of tasks due at a given tick.
+ *
+ * Four levels of 64 slots each: the first holds tasks due in the current
+ * 64-tick span, one slot per tick, and each level above holds spans 64
+ * times longer. A task sits at the lowest level whose span it shares with
+ * the current tick, and moves down a level when the wheel reaches its slot,
+ * so scheduling and cancelling are O(1) and a tick only touches the tasks
+ * that are due or moving down. The rare task due more than 2^24 ticks ahead
+ * waits on an overflow list.
+ *
+ * Timers live in parallel arrays reused through a free list, so once the
+ * arrays have grown to the peak number of pending timers nothing is
+ * allocated. A timer is named by a handle that includes a generation count,
+ * so a stale handle to a reused slot can't cancel its new occupant.
+ *
+ * Not thread-safe; the game loop owns it.
+ */
+public class TimerWheel {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+    private static final int NONE = -1;
+    private static final int OVERFLOW = LEVELS * SLOTS; // List index of the overflow list
+
+    private final int[] heads; // First timer per slot, then the overflow list
+    private long nextTick; // Every tick before this has run
+
+    // Timers, indexed by slot in these arrays
+    private long[] dueTicks;
+    private Runnable[] tasks;
+    private int[] next;
+    private int[] previous;
+    private int[] lists; // Which list a pending timer is on
+    private int[] generations;
+    private int free; // Head of the free list, chained through next
+    private int size;
+
+    public TimerWheel(int initialCapacity) {
+        this.heads = new int[OVERFLOW + 1];
+        Arrays.fill(heads, NONE);
+        this.dueTicks = new long[0];
+        this.tasks = new Runnable[0];
+        this.next = new int[0];
+        this.previous = new int[0];
+        this.lists = new int[0];
+        this.generations = new int[0];
+        this.free = NONE;
+        grow(Math.max(16, initialCapacity));
+    }
+
+    /**
+     * Run the task when tick {@code dueTick} is advanced over (the next tick
+     * if that has passed). Returns a handle for {@link #cancel}, never 0.
+     */
+    public long schedule(long dueTick, Runnable task) {
+        if (free == NONE) {
+            grow(dueTicks.length * 2);
+        }
+        int timer = free;
+        free = next[timer];
+        dueTicks[timer] = Math.max(dueTick, nextTick);
+        tasks[timer] = task;
+        place(timer);
+        size++;
+        return (long) generations[timer] << 32 | timer;
+    }
+
+    /**
+     * Drop a pending task; false if it already ran or was cancelled
+     */
+    public boolean cancel(long handle) {
+        int timer = (int) handle;
+        if (handle == 0 || timer < 0 || timer >= generations.length || generations[timer] != (int) (handle >>> 32)) {
+            return false;
+        }
+        unlink(timer);
+        release(timer);
+        return true;
+    }
+
+    /**
+     * Run every task due up to and including {@code tick}, in tick order
+     */
+    public void advance(long tick, TaskRunner runner) {
+        while (nextTick <= tick) {
+            long current = nextTick;
+            if ((current & ((1L << (SLOT_BITS * LEVELS)) - 1)) == 0) {
+                cascade(OVERFLOW);
+            }
+            // Higher levels first, so what comes down can move on to a lower one this same tick
+            for (int level = LEVELS - 1; level > 0; level--) {
+                int shift = SLOT_BITS * level;
+                if ((current & ((1L << shift) - 1)) == 0) {
+                    cascade(level * SLOTS + (int) ((current >>> shift) & (SLOTS - 1)));
+                }
+            }
+
+            // Anything scheduled while these run is due later and lands elsewhere
+            nextTick = current + 1;
+            int slot = (int) (current & (SLOTS - 1));
+            while (heads[slot] != NONE) {
+                int timer = heads[slot];
+                Runnable task = tasks[timer];
+                unlink(timer);
+                release(timer);
+                runner.run(task);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * How tasks are run, so the loop can report failures its own way
+     */
+    public interface TaskRunner {
+        void run(Runnable task);
+    }
+
+    /**
+     * Put a timer on the lowest level whose span it shares with the next tick
+     */
+    private void place(int timer) {
+        long due = dueTicks[timer];
+        long differing = due ^ nextTick;
+        int level = differing == 0 ? 0 : (63 - Long.numberOfLeadingZeros(differing)) / SLOT_BITS;
+        int list = level >= LEVELS ? OVERFLOW : level * SLOTS + (int) ((due >>> (SLOT_BITS * level)) & (SLOTS - 1));
+
+        int head = heads[list];
+        next[timer] = head;
+        previous[timer] = NONE;
+        if (head != NONE) {
+            previous[head] = timer;
+        }
+        heads[list] = timer;
+        lists[timer] = list;
+    }
+
+    /**
+     * Move every timer on a list down to where it belongs now
+     */
+    private void cascade(int list) {
+        int timer = heads[list];
+        heads[list] = NONE;
+        while (timer != NONE) {
+            int following = next[timer];
+            place(timer);
+            timer = following;
+        }
+    }
+
+    private void unlink(int timer) {
+        int list = lists[timer];
+        if (previous[timer] != NONE) {
+            next[previous[timer]] = next[timer];
+        } else {
+            heads[list] = next[timer];
+        }
+        if (next[timer] != NONE) {
+            previous[next[timer]] = previous[timer];
+        }
+    }
+
+    private void release(int timer) {
+        tasks[timer] = null;
+        generations[timer]++;
+        if (generations[timer] == 0) {
+            generations[timer] = 1; // Keep handles non-zero
+        }
+        next[timer] = free;
+        free = timer;
+        size--;
+    }
+
+    private void grow(int capacity) {
+        int old = dueTicks.length;
+        dueTicks = Arrays.copyOf(dueTicks, capacity);
+        tasks = Arrays.copyOf(tasks, capacity);
+        next = Arrays.copyOf(next, capacity);
+        previous = Arrays.copyOf(previous, capacity);
+        lists = Arrays.copyOf(lists, capacity);
+        generations = Arrays.copyOf(generations, capacity);
+        for (int timer = capacity - 1; timer >= old; timer--) {
+            generations[timer] = 1;
+            next[timer] = free;
+            free = timer;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.mmo.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A registered account and the characters it owns.
+ *
+ * One instance is cached and shared by every session of the account, so
+ * read or change the character list (and save the account) while holding
+ * the account's lock.
+ */
+public class UserAccount {
+    private String username;
+    private String password;
+    private String email;
+    private List<Long> characterIds;
+    private long createdAt;
+
+    public UserAccount() {
+        // Default constructor for deserialization
+        characterIds = new ArrayList<>();
+    }
+
+    public UserAccount(String username, String password, String email) {
+        this.username = username;
+        this.password = password;
+        this.email = email;
+        this.characterIds = new ArrayList<>();
+        this.createdAt = System.currentTimeMillis();
+    }
+
+    public UserAccount(String username, String password, String email, long createdAt) {
+        this(username, password, email);
+        this.createdAt = createdAt;
+    }
+
+    public String getUsername() { return username; }
+
+    /**
+     * The stored password hash
+     */
+    public String getPassword() { return password; }
+
+    public void setPassword(String password) { this.password = password; }
+
+    public String getEmail() { return email; }
+
+    public List<Long> getCharacterIds() { return characterIds; }
+
+    public long getCreatedAt() { return createdAt; }
+}
@@ -0,0 +1,111 @@
+package com.mmo.server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed pool of worker threads that runs per-player mailboxes.
+ * Tasks posted to one mailbox run one at a time and in order, on whichever
+ * worker picks the mailbox up, so a player's own state needs no locks.
+ * Different mailboxes run in parallel. The network thread only posts.
+ */
+public class WorkerPool {
+    private static final int BATCH_SIZE = 32; // Tasks per turn before yielding the worker
+
+    private final ExecutorService executor;
+    private final int mailboxCapacity;
+
+    // Statistics
+    private final LongAdder processed;
+    private final LongAdder rejected;
+    private final LongAdder failed;
+
+    public WorkerPool(int threads, int mailboxCapacity) {
+        AtomicInteger threadCount = new AtomicInteger();
+        // Each mailbox has at most one drain queued, so the queue is bounded by the connection count
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "worker-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        this.mailboxCapacity = mailboxCapacity;
+        this.processed = new LongAdder();
+        this.rejected = new LongAdder();
+        this.failed = new LongAdder();
+    }
+
+    public Mailbox createMailbox() {
+        return new Mailbox();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public String getStatusReport() {
+        return "Workers: " + processed.sum() + " tasks, " + rejected.sum() + " rejected, " +
+               failed.sum() + " failed";
+    }
+
+    /**
+     * Ordered task queue for one player
+     */
+    public class Mailbox {
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        /**
+         * Queue a task behind this player's earlier ones.
+         * Returns false if the mailbox is full and the task was dropped.
+         */
+        public boolean post(Runnable task) {
+            if (pending.incrementAndGet() > mailboxCapacity) {
+                pending.decrementAndGet();
+                rejected.increment();
+                return false;
+            }
+            tasks.offer(task);
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this::drain);
+            }
+            return true;
+        }
+
+        public int getPending() {
+            return pending.get();
+        }
+
+        private void drain() {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                Runnable task = tasks.poll();
+                if (task == null) {
+                    break;
+                }
+                pending.decrementAndGet();
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    failed.increment();
+                    System.err.println("Mailbox task failed: " + e);
+                    e.printStackTrace();
+                }
+                processed.increment();
+            }
+
+            scheduled.set(false);
+            // Re-arm if tasks are left over or arrived after the last poll
+            if (!tasks.isEmpty() && scheduled.compareAndSet(false, true)) {
+                executor.execute(this::drain);
+            }
+        }
+    }
+}
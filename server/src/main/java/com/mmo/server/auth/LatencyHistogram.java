@@ -0,0 +1,90 @@
+package com.mmo.server.auth;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts of durations in log-linear buckets, for percentiles without keeping samples.
+ *
+ * Each power of two of microseconds is split into eight buckets, so a
+ * percentile is within an eighth of the true value. Recording is lock-free
+ * and may come from any thread.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts;
+    private final LongAdder count;
+    private final LongAdder totalMicros;
+
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(index(Long.MAX_VALUE) + 1);
+        this.count = new LongAdder();
+        this.totalMicros = new LongAdder();
+    }
+
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts.incrementAndGet(index(micros));
+        count.increment();
+        totalMicros.add(micros);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * The value in microseconds that {@code fraction} of recordings were at or under; 0 with none
+     */
+    public long percentile(double fraction) {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        long target = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return upperBound(i);
+            }
+        }
+        return 0;
+    }
+
+    public double getMeanMillis() {
+        long n = count.sum();
+        return n > 0 ? totalMicros.sum() / 1000.0 / n : 0;
+    }
+
+    /**
+     * p50/p95/p99 in milliseconds, e.g. "1.2/8.4/15.0 ms"
+     */
+    public String getPercentileReport() {
+        if (count.sum() == 0) {
+            return "-";
+        }
+        return String.format("%.1f/%.1f/%.1f ms", percentile(0.50) / 1000.0, percentile(0.95) / 1000.0,
+            percentile(0.99) / 1000.0);
+    }
+
+    private static int index(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
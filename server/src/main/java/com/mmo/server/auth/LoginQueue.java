@@ -0,0 +1,153 @@
+package com.mmo.server.auth;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Logins and registrations waiting for a password check, served first come
+ * first served by a few dedicated threads.
+ *
+ * Password hashing is slow on purpose, so after a restart thousands of
+ * clients may be waiting at once. They wait here instead of on the shared
+ * workers, the queue is bounded so a storm is turned away rather than
+ * piling up, and each waiter is told its place in line as it moves up.
+ * Those updates are sent from a reporter thread of the queue's own, so a
+ * long line never costs the game loop anything.
+ */
+public class LoginQueue {
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService reporter;
+    private final int capacity;
+    private final AtomicInteger peakDepth;
+
+    // Statistics
+    private final LongAdder admitted;
+    private final LongAdder rejected;
+    private final LongAdder failed;
+    private final LatencyHistogram waitTimes;
+    private final LatencyHistogram totalTimes;
+
+    public LoginQueue(int threads, int capacity, long reportIntervalMs) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(capacity), runnable -> {
+                Thread thread = new Thread(runnable, "auth-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        this.reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "auth-queue-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.capacity = capacity;
+        this.peakDepth = new AtomicInteger();
+        this.admitted = new LongAdder();
+        this.rejected = new LongAdder();
+        this.failed = new LongAdder();
+        this.waitTimes = new LatencyHistogram();
+        this.totalTimes = new LatencyHistogram();
+        reporter.scheduleWithFixedDelay(this::reportPositions, reportIntervalMs, reportIntervalMs,
+            TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queue a password check; false if the queue is full. The waiter hears
+     * its position now if it has to wait, and again as it moves up.
+     */
+    public boolean submit(Waiter waiter, Runnable task) {
+        Entry entry = new Entry(waiter, task);
+        try {
+            executor.execute(entry);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            return false;
+        }
+        admitted.increment();
+        int depth = executor.getQueue().size();
+        peakDepth.accumulateAndGet(depth, Math::max);
+        if (depth > 0) {
+            entry.report(depth); // At the back of the line, give or take a concurrent submit
+        }
+        return true;
+    }
+
+    /**
+     * Tell every waiter whose place in line changed since it last heard;
+     * runs on the reporter thread
+     */
+    private void reportPositions() {
+        try {
+            int position = 0;
+            for (Runnable queued : executor.getQueue()) {
+                Entry entry = (Entry) queued;
+                position++;
+                if (entry.reported != position) {
+                    entry.report(position);
+                }
+            }
+        } catch (Exception e) {
+            // Thrown out of a scheduled task it would cancel every later report
+            System.err.println("Login queue report failed: " + e.getMessage());
+        }
+    }
+
+    public int getDepth() {
+        return executor.getQueue().size();
+    }
+
+    public void shutdown() {
+        reporter.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    public String getStatusReport() {
+        return "Login queue: " + getDepth() + "/" + capacity + " waiting (peak " + peakDepth.get() + "), " +
+               admitted.sum() + " admitted, " + rejected.sum() + " turned away, " + failed.sum() +
+               " failed; wait p50/p95/p99 " + waitTimes.getPercentileReport() + ", total " +
+               totalTimes.getPercentileReport();
+    }
+
+    /**
+     * Told its place in line (1 is next)
+     */
+    public interface Waiter {
+        void waiting(int position);
+    }
+
+    private class Entry implements Runnable {
+        final Waiter waiter;
+        final Runnable task;
+        final long queuedAt;
+        volatile int reported; // Last position told, 0 for none
+
+        Entry(Waiter waiter, Runnable task) {
+            this.waiter = waiter;
+            this.task = task;
+            this.queuedAt = System.nanoTime();
+        }
+
+        void report(int position) {
+            reported = position;
+            waiter.waiting(position);
+        }
+
+        @Override
+        public void run() {
+            waitTimes.record(System.nanoTime() - queuedAt);
+            try {
+                task.run();
+            } catch (Exception e) {
+                failed.increment();
+                System.err.println("Login check failed: " + e.getMessage());
+            }
+            totalTimes.record(System.nanoTime() - queuedAt);
+        }
+    }
+}
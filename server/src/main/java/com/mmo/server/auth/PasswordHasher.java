@@ -0,0 +1,92 @@
+package com.mmo.server.auth;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Salted PBKDF2 password hashes, stored as {@code pbkdf2-sha256$iterations$salt$hash}.
+ *
+ * Hashing is slow on purpose (tens of milliseconds), so call this from the
+ * auth pool, never from the network thread or the game loop. Passwords stored
+ * before hashing was introduced are still accepted and report
+ * {@link #needsRehash} so they can be upgraded on the next good login.
+ */
+public final class PasswordHasher {
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String SCHEME = "pbkdf2-sha256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final Base64.Encoder ENCODER = Base64.getEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getDecoder();
+
+    private final int iterations;
+    private final SecureRandom random;
+    private final String missingAccountHash; // Checked when there is no account, so a miss takes as long as a hit
+
+    public PasswordHasher(int iterations) {
+        this.iterations = iterations;
+        this.random = new SecureRandom();
+        this.missingAccountHash = hash("no such account");
+    }
+
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        return SCHEME + "$" + iterations + "$" + ENCODER.encodeToString(salt) + "$" +
+               ENCODER.encodeToString(derive(password, salt, iterations));
+    }
+
+    /**
+     * Whether the password matches the stored hash; a null hash (no account) never matches
+     * but costs the same as a real check
+     */
+    public boolean verify(String password, String stored) {
+        if (password == null) {
+            return false;
+        }
+        if (stored == null) {
+            verify(password, missingAccountHash);
+            return false;
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4 || !parts[0].equals(SCHEME)) {
+            // Stored before passwords were hashed
+            return MessageDigest.isEqual(stored.getBytes(StandardCharsets.UTF_8), password.getBytes(StandardCharsets.UTF_8));
+        }
+        try {
+            byte[] expected = DECODER.decode(parts[3]);
+            byte[] actual = derive(password, DECODER.decode(parts[2]), Integer.parseInt(parts[1]));
+            return MessageDigest.isEqual(expected, actual);
+        } catch (IllegalArgumentException e) {
+            return false; // Corrupt hash
+        }
+    }
+
+    /**
+     * Whether a stored password should be hashed again with the current settings
+     */
+    public boolean needsRehash(String stored) {
+        String[] parts = stored.split("\\$");
+        return parts.length != 4 || !parts[0].equals(SCHEME) || !parts[1].equals(Integer.toString(iterations));
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    private static byte[] derive(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " unavailable", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
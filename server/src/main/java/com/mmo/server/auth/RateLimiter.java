@@ -0,0 +1,78 @@
+package com.mmo.server.auth;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A token bucket per key (a client address): up to {@code burst} attempts at
+ * once, refilled at a steady rate. Keys whose buckets have refilled are
+ * forgotten by {@link #prune}, so memory follows the clients seen recently.
+ */
+public class RateLimiter {
+    private final double burst;
+    private final double tokensPerNano;
+    private final Map<String, Bucket> buckets;
+
+    // Statistics
+    private final LongAdder allowed;
+    private final LongAdder throttled;
+
+    public RateLimiter(int burst, int perMinute) {
+        this.burst = burst;
+        this.tokensPerNano = perMinute / 60e9;
+        this.buckets = new ConcurrentHashMap<>();
+        this.allowed = new LongAdder();
+        this.throttled = new LongAdder();
+    }
+
+    /**
+     * Take one attempt from the key's bucket; false if it is empty
+     */
+    public boolean tryAcquire(String key) {
+        long now = System.nanoTime();
+        Bucket bucket = buckets.computeIfAbsent(key, k -> new Bucket(burst, now));
+        synchronized (bucket) {
+            bucket.refill(now);
+            if (bucket.tokens >= 1) {
+                bucket.tokens--;
+                allowed.increment();
+                return true;
+            }
+        }
+        throttled.increment();
+        return false;
+    }
+
+    /**
+     * Forget keys that have been quiet long enough to be back at a full bucket
+     */
+    public void prune() {
+        long now = System.nanoTime();
+        buckets.values().removeIf(bucket -> {
+            synchronized (bucket) {
+                bucket.refill(now);
+                return bucket.tokens >= burst;
+            }
+        });
+    }
+
+    public String getStatusReport() {
+        return buckets.size() + " addresses, " + allowed.sum() + " allowed, " + throttled.sum() + " throttled";
+    }
+
+    private class Bucket {
+        double tokens;
+        long refilledAt;
+
+        Bucket(double tokens, long now) {
+            this.tokens = tokens;
+            this.refilledAt = now;
+        }
+
+        void refill(long now) {
+            tokens = Math.min(burst, tokens + (now - refilledAt) * tokensPerNano);
+            refilledAt = now;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.mmo.server.mob;
+
+import com.badlogic.gdx.utils.IntArray;
+import com.mmo.models.CharacterData;
+import com.mmo.models.MobType;
+import com.mmo.models.PlayerData;
+
+/**
+ * One creature: the entity the world sees, plus the AI state only the mob
+ * system touches.
+ *
+ * During the parallel think step a mob's fields are written by the one
+ * thread deciding for it, and what it wants done to the world is left in the
+ * intent fields for {@link MobManager} to apply afterwards on the game loop.
+ */
+public class Mob {
+    public enum State {
+        IDLE,   // Wandering near home, watching for players
+        CHASE,  // Running at its target
+        ATTACK, // In range of its target, hitting it when the cooldown allows
+        RETURN, // Leashed: going home, ignoring everyone, healed on arrival
+        DEAD    // Out of the world until it respawns
+    }
+
+    // What the last think step asked for
+    static final int INTENT_MOVE = 1;
+    static final int INTENT_ATTACK = 2;
+    static final int INTENT_RESET = 4; // Back home after a leash; heal to full
+
+    private final PlayerData entity;
+    private final MobType type;
+    final int index; // Position in MobManager's list, which is the order intents apply in
+    final float homeX;
+    final float homeY;
+
+    State state;
+    long targetId; // 0 when it has none
+    long nextAttackAt;
+    long nextWanderAt;
+    float goalX; // Where it is wandering to
+    float goalY;
+    long seed; // Its own random sequence, so choices don't depend on which thread thinks for it
+    final IntArray path; // Waypoint tiles on the way home
+    int pathIndex; // Next waypoint, or -1 to search again
+
+    int intent;
+    float nextX;
+    float nextY;
+
+    Mob(int index, long id, MobType type, float homeX, float homeY) {
+        this.index = index;
+        this.type = type;
+        this.homeX = homeX;
+        this.homeY = homeY;
+        this.seed = id;
+        this.path = new IntArray(16);
+        this.pathIndex = -1;
+
+        CharacterData character = new CharacterData(id, type.getName(), type.getLook());
+        character.setLevel(type.getLevel());
+        character.setMaxHealth(type.getMaxHealth());
+        character.setHealth(type.getMaxHealth());
+        character.setAttack(type.getAttack());
+        character.setDefense(type.getDefense());
+        character.setX(homeX);
+        character.setY(homeY);
+        this.entity = new PlayerData(id, null, character);
+        this.state = State.IDLE;
+        this.goalX = homeX;
+        this.goalY = homeY;
+    }
+
+    public long getId() {
+        return entity.getPlayerId();
+    }
+
+    public PlayerData getEntity() {
+        return entity;
+    }
+
+    public CharacterData getCharacter() {
+        return entity.getCharacter();
+    }
+
+    public MobType getType() {
+        return type;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isAlive() {
+        return state != State.DEAD;
+    }
+
+    /**
+     * Next value in [0, 1) from this mob's own sequence (SplitMix64)
+     */
+    float random() {
+        seed += 0x9E3779B97F4A7C15L;
+        long z = seed;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z ^= z >>> 31;
+        return (z >>> 40) / (float) (1L << 24);
+    }
+}
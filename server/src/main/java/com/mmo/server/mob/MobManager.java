@@ -0,0 +1,579 @@
+package com.mmo.server.mob;
+
+import com.badlogic.gdx.utils.LongMap;
+import com.mmo.models.CharacterData;
+import com.mmo.models.MobType;
+import com.mmo.models.PlayerData;
+import com.mmo.server.GameLoop;
+import com.mmo.server.TickClock;
+import com.mmo.server.nav.FlowField;
+import com.mmo.server.nav.NavGrid;
+import com.mmo.server.nav.NavigationService;
+import com.mmo.server.world.EntityStateStore;
+import com.mmo.server.world.InterestManager;
+import com.mmo.server.world.SpatialGrid;
+import com.mmo.server.zone.ZoneConfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the server's mobs: spawning, the AI state machine and respawning.
+ *
+ * A tick has two steps. Thinking fans out over a fork-join pool in fixed
+ * chunks of the mob list: each mob reads the entity state store and the
+ * spatial grid, which nothing changes while it runs, and writes only its own
+ * fields, leaving any move or attack as an intent. Applying then runs on the
+ * game loop thread in list order, so the world comes out the same however
+ * the chunks were scheduled.
+ *
+ * To the rest of the server a mob is an ordinary entity: its PlayerData is
+ * placed, seen and sent in world updates like a player's, flagged as a mob
+ * in the state store. Mobs belong to the zone their spawn area's centre lies
+ * in and are not mirrored to neighbouring zones.
+ *
+ * Mobs keep to walkable ground. One with a clear line to where it is going
+ * walks straight there; otherwise a chaser follows the shared flow field
+ * toward its target's tile, and a mob going home follows its own path.
+ */
+public class MobManager {
+    /**
+     * Carries out a mob's attack on a player (game loop thread)
+     */
+    public interface CombatHandler {
+        void mobAttack(Mob mob, PlayerData target, long now);
+    }
+
+    private static final int CHUNK_SIZE = 256; // Mobs thought about per fork-join task
+    private static final int AGGRO_SCAN_TICKS = 4; // An idle mob looks for players every this many ticks
+    private static final float WANDER_RADIUS = 120f; // How far from home an idle mob strolls
+    private static final float WANDER_SPEED = 0.35f; // Fraction of chase speed
+    private static final float RETURN_SPEED = 1.5f; // Fraction of chase speed
+    private static final int WANDER_PAUSE_MIN = 2000; // ms
+    private static final int WANDER_PAUSE_MAX = 8000; // ms
+    private static final float PRESENCE_CELL_SIZE = 256f;
+    private static final int HOME_SNAP_RADIUS = 8; // Tiles to look for open ground for a home
+
+    private final InterestManager interestManager;
+    private final EntityStateStore states;
+    private final SpatialGrid<PlayerData> grid;
+    private final GameLoop gameLoop;
+    private final CombatHandler combat;
+    private final NavigationService navigation;
+    private final NavGrid navGrid;
+    private final float worldWidth;
+    private final float worldHeight;
+    private final float tickSeconds;
+    private final ForkJoinPool pool;
+    private final ThreadLocal<List<PlayerData>> nearby; // Grid query results, per thinking thread
+    // Cells of a coarse grid holding at least one possible target, marked each tick, so
+    // idle mobs with nobody around skip the grid query (which mostly finds other mobs)
+    private final boolean[] presence;
+    private final int presenceColumns;
+    private final int presenceRows;
+
+    private final List<Mob> mobs;
+    private final LongMap<Mob> mobsById;
+    private Mob[] mobsArray;
+    private ThinkBatch batches; // Fan-out over mobsArray, reused every tick; null if one chunk covers it
+
+    // Set before each fan-out, which publishes them to the workers
+    private long thinkNow;
+    private long thinkTick;
+
+    // Statistics
+    private long attacks;
+    private long kills;
+    private long respawns;
+    private final LongAdder leashes; // Counted while thinking
+    private long thinkNanos;
+    private long thinkPasses;
+
+    public MobManager(InterestManager interestManager, GameLoop gameLoop, CombatHandler combat,
+                      NavigationService navigation, float worldWidth, float worldHeight, int threads) {
+        this.interestManager = interestManager;
+        this.states = interestManager.getStates();
+        this.grid = interestManager.getGrid();
+        this.gameLoop = gameLoop;
+        this.combat = combat;
+        this.navigation = navigation;
+        this.navGrid = navigation.getGrid();
+        this.worldWidth = worldWidth;
+        this.worldHeight = worldHeight;
+        this.tickSeconds = gameLoop.getTickIntervalMillis() / 1000f;
+        this.pool = new ForkJoinPool(Math.max(1, threads));
+        this.nearby = ThreadLocal.withInitial(ArrayList::new);
+        this.presenceColumns = Math.max(1, (int) Math.ceil(worldWidth / PRESENCE_CELL_SIZE));
+        this.presenceRows = Math.max(1, (int) Math.ceil(worldHeight / PRESENCE_CELL_SIZE));
+        this.presence = new boolean[presenceColumns * presenceRows];
+        this.mobs = new ArrayList<>();
+        this.mobsById = new LongMap<>();
+        this.mobsArray = new Mob[0];
+        this.leashes = new LongAdder();
+    }
+
+    /**
+     * Populate the spawn areas whose centre lies in this zone. Mobs are
+     * numbered from the zone's mob id base and placed at random around each
+     * area's centre, the same way on every start.
+     */
+    public void spawn(List<MobSpawnArea> areas, ZoneConfig zone) {
+        long nextId = zone.getMobIdBase() + mobs.size();
+        SplittableRandom random = new SplittableRandom(zone.getMobIdBase());
+        for (MobSpawnArea area : areas) {
+            if (area.getX() < zone.getMinX() || area.getX() >= zone.getMaxX()) {
+                continue;
+            }
+            for (int i = 0; i < area.getCount(); i++) {
+                double angle = random.nextDouble() * Math.PI * 2;
+                double distance = Math.sqrt(random.nextDouble()) * area.getRadius(); // Even over the circle
+                float x = clamp((float) (area.getX() + Math.cos(angle) * distance), zone.getMinX(), zone.getMaxX() - 1);
+                float y = clamp((float) (area.getY() + Math.sin(angle) * distance), 0, worldHeight - 1);
+                int tile = navGrid.tileAt(x, y);
+                if (!navGrid.isWalkable(tile)) {
+                    // In a building or the sea; move to open ground nearby, or skip it
+                    tile = navGrid.nearestWalkable(tile, HOME_SNAP_RADIUS);
+                    if (tile < 0) {
+                        continue;
+                    }
+                    x = navGrid.centerX(tile);
+                    y = navGrid.centerY(tile);
+                }
+
+                Mob mob = new Mob(mobs.size(), nextId++, area.getType(), x, y);
+                mobs.add(mob);
+                mobsById.put(mob.getId(), mob);
+                interestManager.addMob(mob.getEntity());
+            }
+            System.out.println("Spawned " + area);
+        }
+        mobsArray = mobs.toArray(new Mob[0]);
+        batches = mobsArray.length > CHUNK_SIZE ? new ThinkBatch(0, mobsArray.length) : null;
+    }
+
+    /**
+     * Think for every mob in parallel, then apply what they decided in order.
+     * Runs once per tick on the game loop thread.
+     */
+    public void tick(TickClock clock) {
+        if (mobsArray.length == 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        thinkNow = clock.currentTimeMillis();
+        thinkTick = clock.getTick();
+        navigation.maintain(thinkTick);
+        markPresence();
+        if (batches == null) {
+            thinkChunk(0, mobsArray.length);
+        } else {
+            batches.prepare();
+            pool.invoke(batches);
+        }
+        thinkNanos += System.nanoTime() - start;
+        thinkPasses++;
+
+        for (Mob mob : mobsArray) {
+            apply(mob, thinkNow);
+        }
+    }
+
+    /**
+     * The live mob with this entity id, or null
+     */
+    public Mob getMob(long id) {
+        Mob mob = mobsById.get(id);
+        return mob != null && mob.isAlive() ? mob : null;
+    }
+
+    /**
+     * A player hurt the mob (game loop thread): kill it if that finished it,
+     * otherwise an idle mob turns on its attacker
+     */
+    public void damaged(Mob mob, PlayerData attacker) {
+        if (!mob.isAlive()) {
+            return;
+        }
+        if (mob.getCharacter().getHealth() <= 0) {
+            kill(mob);
+        } else if (mob.state == Mob.State.IDLE) {
+            mob.state = Mob.State.CHASE;
+            mob.targetId = attacker.getPlayerId();
+        }
+    }
+
+    public int size() {
+        return mobsArray.length;
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    public String getStatusReport() {
+        int alive = 0;
+        int fighting = 0;
+        for (Mob mob : mobsArray) {
+            if (mob.isAlive()) {
+                alive++;
+            }
+            if (mob.state == Mob.State.CHASE || mob.state == Mob.State.ATTACK) {
+                fighting++;
+            }
+        }
+        long passes = Math.max(1, thinkPasses);
+        String report = "Mobs: " + alive + "/" + mobsArray.length + " alive, " + fighting + " fighting; " +
+                        attacks + " attacks, " + kills + " killed, " + respawns + " respawned, " +
+                        leashes.sum() + " leashed; think " + (thinkNanos / passes / 1000) + " us/tick over " +
+                        thinkPasses + " ticks (" + pool.getParallelism() + " threads)";
+        thinkNanos = 0;
+        thinkPasses = 0;
+        return report;
+    }
+
+    private void markPresence() {
+        Arrays.fill(presence, false);
+        for (int row = 0; row < states.getRowLimit(); row++) {
+            if (isTarget(row)) {
+                presence[presenceCell(states.getX(row), states.getY(row))] = true;
+            }
+        }
+    }
+
+    /**
+     * True if a marked cell overlaps the square around (x, y)
+     */
+    private boolean anyoneNear(float x, float y, float radius) {
+        int minColumn = presenceColumn(x - radius);
+        int maxColumn = presenceColumn(x + radius);
+        int minRow = presenceRow(y - radius);
+        int maxRow = presenceRow(y + radius);
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                if (presence[row * presenceColumns + column]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private int presenceCell(float x, float y) {
+        return presenceRow(y) * presenceColumns + presenceColumn(x);
+    }
+
+    private int presenceColumn(float x) {
+        return Math.max(0, Math.min(presenceColumns - 1, (int) Math.floor(x / PRESENCE_CELL_SIZE)));
+    }
+
+    private int presenceRow(float y) {
+        return Math.max(0, Math.min(presenceRows - 1, (int) Math.floor(y / PRESENCE_CELL_SIZE)));
+    }
+
+    private void thinkChunk(int from, int to) {
+        List<PlayerData> candidates = nearby.get();
+        for (int i = from; i < to; i++) {
+            Mob mob = mobsArray[i];
+            try {
+                think(mob, candidates);
+            } catch (Exception e) {
+                mob.intent = 0;
+                System.err.println("Mob " + mob.getId() + " failed to think: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Decide this tick's move or attack. Reads shared state, writes only the mob's own fields.
+     */
+    private void think(Mob mob, List<PlayerData> candidates) {
+        mob.intent = 0;
+        MobType type = mob.getType();
+        CharacterData character = mob.getCharacter();
+        float x = character.getX();
+        float y = character.getY();
+        float step = type.getSpeed() * tickSeconds;
+
+        switch (mob.state) {
+            case DEAD:
+                return;
+            case RETURN:
+                if (walkHome(mob, x, y, step * RETURN_SPEED)) {
+                    mob.state = Mob.State.IDLE;
+                    mob.intent |= Mob.INTENT_RESET;
+                }
+                return;
+            case IDLE:
+                // Spread the scans over several ticks; a player won't notice the difference
+                if ((thinkTick + mob.index) % AGGRO_SCAN_TICKS == 0) {
+                    long target = findTarget(mob, x, y, candidates);
+                    if (target != 0) {
+                        mob.state = Mob.State.CHASE;
+                        mob.targetId = target;
+                        break;
+                    }
+                }
+                wander(mob, x, y, step * WANDER_SPEED);
+                return;
+            default:
+                break;
+        }
+
+        // Chasing or attacking
+        int row = states.getRow(mob.targetId);
+        float leash = type.getLeashRadius();
+        if (row == EntityStateStore.NO_ROW || !isTarget(row) ||
+            distanceSquared(x, y, mob.homeX, mob.homeY) > leash * leash) {
+            giveUp(mob);
+            return;
+        }
+
+        float dx = states.getX(row) - x;
+        float dy = states.getY(row) - y;
+        float distanceSquared = dx * dx + dy * dy;
+        float range = type.getAttackRange();
+        if (distanceSquared <= range * range) {
+            mob.state = Mob.State.ATTACK;
+            if (thinkNow >= mob.nextAttackAt) {
+                mob.intent |= Mob.INTENT_ATTACK;
+                mob.nextAttackAt = thinkNow + type.getAttackCooldown();
+            }
+        } else {
+            mob.state = Mob.State.CHASE;
+            if (navGrid.hasLineOfSight(x, y, states.getX(row), states.getY(row))) {
+                // Close in to just inside attack range
+                float distance = (float) Math.sqrt(distanceSquared);
+                float travel = Math.min(step, distance - range * 0.8f);
+                mob.nextX = x + dx / distance * travel;
+                mob.nextY = y + dy / distance * travel;
+                mob.intent |= Mob.INTENT_MOVE;
+            } else {
+                // Around whatever is in the way, on the field everyone chasing this tile shares
+                FlowField field = navigation.getFlowField(states.getX(row), states.getY(row));
+                int next = field != null ? field.getNextTile(navGrid.tileAt(x, y), navGrid.getWidth()) : -1;
+                if (next < 0) {
+                    giveUp(mob); // No way to reach it from here
+                    return;
+                }
+                moveToward(mob, x, y, navGrid.centerX(next), navGrid.centerY(next), step);
+            }
+        }
+    }
+
+    private void giveUp(Mob mob) {
+        mob.state = Mob.State.RETURN;
+        mob.targetId = 0;
+        mob.pathIndex = -1;
+        leashes.increment();
+    }
+
+    /**
+     * Step along the way home, straight if nothing is in the way; true once there
+     */
+    private boolean walkHome(Mob mob, float x, float y, float step) {
+        if (navGrid.hasLineOfSight(x, y, mob.homeX, mob.homeY)) {
+            return moveToward(mob, x, y, mob.homeX, mob.homeY, step);
+        }
+        if (mob.pathIndex < 0 || mob.pathIndex >= mob.path.size) {
+            if (!navigation.findPath(x, y, mob.homeX, mob.homeY, mob.path)) {
+                // Boxed in; better through a wall than stuck forever
+                return moveToward(mob, x, y, mob.homeX, mob.homeY, step);
+            }
+            mob.pathIndex = 0;
+        }
+        int waypoint = mob.path.get(mob.pathIndex);
+        if (moveToward(mob, x, y, navGrid.centerX(waypoint), navGrid.centerY(waypoint), step)) {
+            mob.pathIndex++;
+        }
+        return false;
+    }
+
+    /**
+     * Nearest living player within aggro range, lowest id on a tie; 0 if none
+     */
+    private long findTarget(Mob mob, float x, float y, List<PlayerData> candidates) {
+        float radius = mob.getType().getAggroRadius();
+        if (!anyoneNear(x, y, radius)) {
+            return 0;
+        }
+        candidates.clear();
+        grid.query(x, y, radius, candidates);
+
+        long best = 0;
+        float bestDistance = radius * radius;
+        for (int i = 0; i < candidates.size(); i++) {
+            long id = candidates.get(i).getPlayerId();
+            int row = states.getRow(id);
+            if (row == EntityStateStore.NO_ROW || !isTarget(row)) {
+                continue;
+            }
+            float distance = distanceSquared(x, y, states.getX(row), states.getY(row));
+            if (distance < bestDistance || (distance == bestDistance && best != 0 && id < best)) {
+                best = id;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * A living player owned by this zone; mobs leave mirrored players to the zone that has them
+     */
+    private boolean isTarget(int row) {
+        int flags = states.getFlags(row);
+        return (flags & EntityStateStore.FLAG_ALIVE) != 0 &&
+               (flags & (EntityStateStore.FLAG_MOB | EntityStateStore.FLAG_MIRRORED)) == 0;
+    }
+
+    private void wander(Mob mob, float x, float y, float step) {
+        if (thinkNow >= mob.nextWanderAt) {
+            double angle = mob.random() * Math.PI * 2;
+            float distance = mob.random() * WANDER_RADIUS;
+            float goalX = clamp((float) (mob.homeX + Math.cos(angle) * distance), 0, worldWidth - 1);
+            float goalY = clamp((float) (mob.homeY + Math.sin(angle) * distance), 0, worldHeight - 1);
+            // Only stroll where it can walk straight to; otherwise stay put this time
+            if (navGrid.hasLineOfSight(x, y, goalX, goalY)) {
+                mob.goalX = goalX;
+                mob.goalY = goalY;
+            }
+            mob.nextWanderAt = thinkNow + WANDER_PAUSE_MIN + (long) (mob.random() * (WANDER_PAUSE_MAX - WANDER_PAUSE_MIN));
+        }
+        moveToward(mob, x, y, mob.goalX, mob.goalY, step);
+    }
+
+    /**
+     * Step toward a point, at most {@code step} units; true once there
+     */
+    private static boolean moveToward(Mob mob, float x, float y, float targetX, float targetY, float step) {
+        float dx = targetX - x;
+        float dy = targetY - y;
+        float distanceSquared = dx * dx + dy * dy;
+        if (distanceSquared <= step * step) {
+            if (distanceSquared > 0) {
+                mob.nextX = targetX;
+                mob.nextY = targetY;
+                mob.intent |= Mob.INTENT_MOVE;
+            }
+            return true;
+        }
+        float distance = (float) Math.sqrt(distanceSquared);
+        mob.nextX = x + dx / distance * step;
+        mob.nextY = y + dy / distance * step;
+        mob.intent |= Mob.INTENT_MOVE;
+        return false;
+    }
+
+    /**
+     * Carry out what the mob decided (game loop thread)
+     */
+    private void apply(Mob mob, long now) {
+        int intent = mob.intent;
+        if (intent == 0) {
+            return;
+        }
+        mob.intent = 0;
+        CharacterData character = mob.getCharacter();
+        if ((intent & Mob.INTENT_MOVE) != 0) {
+            character.setX(mob.nextX);
+            character.setY(mob.nextY);
+            interestManager.move(mob.getEntity());
+        }
+        if ((intent & Mob.INTENT_ATTACK) != 0) {
+            // The target may have died earlier this tick
+            int row = states.getRow(mob.targetId);
+            PlayerData target = row != EntityStateStore.NO_ROW ? states.getEntity(row) : null;
+            if (target != null && target.getCharacter().getHealth(now) > 0) {
+                attacks++;
+                combat.mobAttack(mob, target, now);
+            }
+        }
+        if ((intent & Mob.INTENT_RESET) != 0) {
+            character.setHealth(character.getMaxHealth());
+        }
+    }
+
+    private void kill(Mob mob) {
+        mob.state = Mob.State.DEAD;
+        mob.targetId = 0;
+        mob.intent = 0;
+        interestManager.remove(mob.getId());
+        kills++;
+        gameLoop.schedule(mob.getType().getRespawnSeconds() * 1000L, () -> respawn(mob));
+    }
+
+    private void respawn(Mob mob) {
+        CharacterData character = mob.getCharacter();
+        character.setHealth(character.getMaxHealth());
+        character.setX(mob.homeX);
+        character.setY(mob.homeY);
+        mob.state = Mob.State.IDLE;
+        mob.nextAttackAt = 0;
+        mob.nextWanderAt = 0;
+        interestManager.addMob(mob.getEntity());
+        respawns++;
+    }
+
+    private static float distanceSquared(float x1, float y1, float x2, float y2) {
+        float dx = x1 - x2;
+        float dy = y1 - y2;
+        return dx * dx + dy * dy;
+    }
+
+    private static float clamp(float value, float min, float max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * Splits the mob list in halves down to chunks of at most CHUNK_SIZE.
+     * Built once when the mobs are spawned and re-armed every tick, so
+     * fanning out allocates nothing.
+     */
+    private class ThinkBatch extends RecursiveAction {
+        // Never serialized; ForkJoinTask just happens to be Serializable
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final transient ThinkBatch low; // Null on leaves
+        private final transient ThinkBatch high;
+
+        ThinkBatch(int from, int to) {
+            this.from = from;
+            this.to = to;
+            if (to - from > CHUNK_SIZE) {
+                int middle = (from + to) >>> 1;
+                this.low = new ThinkBatch(from, middle);
+                this.high = new ThinkBatch(middle, to);
+            } else {
+                this.low = null;
+                this.high = null;
+            }
+        }
+
+        /**
+         * Reset completion state throughout the tree; call before each invoke
+         */
+        void prepare() {
+            reinitialize();
+            if (low != null) {
+                low.prepare();
+                high.prepare();
+            }
+        }
+
+        @Override
+        protected void compute() {
+            if (low == null) {
+                thinkChunk(from, to);
+                return;
+            }
+            invokeAll(low, high);
+        }
+    }
+}
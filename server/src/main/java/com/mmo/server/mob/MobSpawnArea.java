@@ -0,0 +1,75 @@
+package com.mmo.server.mob;
+
+import com.mmo.models.MobType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A circle of the world kept stocked with one kind of mob.
+ *
+ * Areas are configured as {@code TYPE:x,y,radius,count} separated by
+ * semicolons, e.g. {@code WOLF:1400,900,500,150;BANDIT:3200,3200,700,250}.
+ */
+public class MobSpawnArea {
+    private final MobType type;
+    private final float x;
+    private final float y;
+    private final float radius;
+    private final int count;
+
+    public MobSpawnArea(MobType type, float x, float y, float radius, int count) {
+        this.type = type;
+        this.x = x;
+        this.y = y;
+        this.radius = radius;
+        this.count = count;
+    }
+
+    public static List<MobSpawnArea> parse(String spec) {
+        List<MobSpawnArea> areas = new ArrayList<>();
+        if (spec == null || spec.trim().isEmpty()) {
+            return areas;
+        }
+        for (String area : spec.split(";")) {
+            String[] typeAndShape = area.trim().split(":");
+            String[] shape = typeAndShape.length == 2 ? typeAndShape[1].split(",") : new String[0];
+            if (shape.length != 4) {
+                throw new IllegalArgumentException("Spawn area must be TYPE:x,y,radius,count: " + area);
+            }
+            try {
+                areas.add(new MobSpawnArea(MobType.valueOf(typeAndShape[0].trim().toUpperCase()),
+                    Float.parseFloat(shape[0].trim()), Float.parseFloat(shape[1].trim()),
+                    Float.parseFloat(shape[2].trim()), Integer.parseInt(shape[3].trim())));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Bad spawn area " + area + ": " + e.getMessage(), e);
+            }
+        }
+        return areas;
+    }
+
+    public MobType getType() {
+        return type;
+    }
+
+    public float getX() {
+        return x;
+    }
+
+    public float getY() {
+        return y;
+    }
+
+    public float getRadius() {
+        return radius;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return count + " " + type.getName() + " at (" + (int) x + ", " + (int) y + ") r" + (int) radius;
+    }
+}
@@ -0,0 +1,76 @@
+package com.mmo.server.nav;
+
+import java.util.Arrays;
+
+/**
+ * Which way to step, from every tile within reach, to get to one target
+ * tile by the shortest route. Built once by a Dijkstra search outward from
+ * the target; after that any number of mobs headed the same way look up
+ * their tile instead of searching.
+ *
+ * Read concurrently once built; never changed afterwards. A field built
+ * against an older version of the grid is stale and gets rebuilt.
+ */
+public class FlowField {
+    public static final int NONE = -1; // Unreachable or out of range
+    public static final int ARRIVED = 8; // The target tile itself
+
+    // Directions 0..7 go round the compass, so the opposite of d is (d + 4) & 7
+    static final int[] DX = {1, 1, 0, -1, -1, -1, 0, 1};
+    static final int[] DY = {0, 1, 1, 1, 0, -1, -1, -1};
+
+    private final int target;
+    private final int version; // Grid version it was built against
+    private final byte[] directions;
+    private volatile long lastUsedTick;
+
+    FlowField(int target, int version, int tileCount) {
+        this.target = target;
+        this.version = version;
+        this.directions = new byte[tileCount];
+        Arrays.fill(directions, (byte) NONE);
+    }
+
+    public int getTarget() {
+        return target;
+    }
+
+    int getVersion() {
+        return version;
+    }
+
+    /**
+     * The direction (0..7) of the next tile toward the target, ARRIVED, or NONE
+     */
+    public int getDirection(int tile) {
+        return directions[tile];
+    }
+
+    /**
+     * The tile one step closer to the target, the target itself once there, or -1
+     */
+    public int getNextTile(int tile, int gridWidth) {
+        int direction = directions[tile];
+        if (direction == NONE) {
+            return -1;
+        }
+        if (direction == ARRIVED) {
+            return tile;
+        }
+        return tile + DY[direction] * gridWidth + DX[direction];
+    }
+
+    void setDirection(int tile, int direction) {
+        directions[tile] = (byte) direction;
+    }
+
+    long getLastUsedTick() {
+        return lastUsedTick;
+    }
+
+    void touch(long tick) {
+        if (lastUsedTick != tick) {
+            lastUsedTick = tick;
+        }
+    }
+}
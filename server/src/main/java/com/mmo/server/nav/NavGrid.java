@@ -0,0 +1,198 @@
+package com.mmo.server.nav;
+
+import com.mmo.world.CollisionMap;
+
+import java.util.Arrays;
+
+/**
+ * Which tiles of the world can be walked on, taken from the shared
+ * {@link CollisionMap}, plus conversions between world positions and tiles.
+ * Tiles are numbered row by row: {@code tile = y * width + x}.
+ *
+ * Moves go to the 8 neighbouring tiles, but never diagonally past a blocked
+ * tile, so nothing slips between two buildings that touch at a corner.
+ *
+ * Changed only on the game loop thread; searches on other threads read it
+ * between changes. Every change bumps the version, so cached routes can tell
+ * they are stale.
+ */
+public class NavGrid {
+    private final int width;
+    private final int height;
+    private final float tileSize;
+    private final boolean[] walkable;
+    private volatile int version;
+
+    public NavGrid(CollisionMap collision) {
+        this(collision.getWidth(), collision.getHeight(), collision.getTileSize());
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                walkable[y * width + x] = !collision.isTileBlocked(x, y);
+            }
+        }
+    }
+
+    /**
+     * An open grid, everything walkable
+     */
+    public NavGrid(int width, int height, float tileSize) {
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.walkable = new boolean[width * height];
+        Arrays.fill(walkable, true);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getTileCount() {
+        return width * height;
+    }
+
+    public float getTileSize() {
+        return tileSize;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * The tile containing a world position, clamped onto the grid
+     */
+    public int tileAt(float x, float y) {
+        return tileY(y) * width + tileX(x);
+    }
+
+    public int tileX(float x) {
+        return Math.max(0, Math.min(width - 1, (int) Math.floor(x / tileSize)));
+    }
+
+    public int tileY(float y) {
+        return Math.max(0, Math.min(height - 1, (int) Math.floor(y / tileSize)));
+    }
+
+    public float centerX(int tile) {
+        return (tile % width + 0.5f) * tileSize;
+    }
+
+    public float centerY(int tile) {
+        return (tile / width + 0.5f) * tileSize;
+    }
+
+    public boolean isWalkable(int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height && walkable[y * width + x];
+    }
+
+    public boolean isWalkable(int tile) {
+        return walkable[tile];
+    }
+
+    /**
+     * Block or clear a tile (game loop thread)
+     */
+    public void setWalkable(int x, int y, boolean open) {
+        int tile = y * width + x;
+        if (walkable[tile] != open) {
+            walkable[tile] = open;
+            version++;
+        }
+    }
+
+    /**
+     * True if one step from (x, y) by (dx, dy), each -1, 0 or 1, is allowed
+     */
+    public boolean canStep(int x, int y, int dx, int dy) {
+        if (!isWalkable(x + dx, y + dy)) {
+            return false;
+        }
+        return dx == 0 || dy == 0 || (isWalkable(x + dx, y) && isWalkable(x, y + dy));
+    }
+
+    /**
+     * True if the straight line between two positions crosses only walkable
+     * tiles, and passes corners only between two walkable ones
+     */
+    public boolean hasLineOfSight(float fromX, float fromY, float toX, float toY) {
+        int x = tileX(fromX);
+        int y = tileY(fromY);
+        int endX = tileX(toX);
+        int endY = tileY(toY);
+        if (!isWalkable(x, y)) {
+            return false;
+        }
+
+        // Walk the tiles the line crosses, in order (Amanatides and Woo)
+        float dx = toX - fromX;
+        float dy = toY - fromY;
+        int stepX = dx > 0 ? 1 : dx < 0 ? -1 : 0;
+        int stepY = dy > 0 ? 1 : dy < 0 ? -1 : 0;
+        float deltaX = stepX != 0 ? tileSize / Math.abs(dx) : Float.POSITIVE_INFINITY;
+        float deltaY = stepY != 0 ? tileSize / Math.abs(dy) : Float.POSITIVE_INFINITY;
+        float nextX = stepX > 0 ? ((x + 1) * tileSize - fromX) / dx
+                    : stepX < 0 ? (x * tileSize - fromX) / dx : Float.POSITIVE_INFINITY;
+        float nextY = stepY > 0 ? ((y + 1) * tileSize - fromY) / dy
+                    : stepY < 0 ? (y * tileSize - fromY) / dy : Float.POSITIVE_INFINITY;
+
+        int steps = Math.abs(endX - x) + Math.abs(endY - y);
+        for (int i = 0; i < steps && (x != endX || y != endY); i++) {
+            if (nextX < nextY) {
+                x += stepX;
+                nextX += deltaX;
+            } else if (nextY < nextX) {
+                y += stepY;
+                nextY += deltaY;
+            } else {
+                // Through a corner
+                if (!isWalkable(x + stepX, y) || !isWalkable(x, y + stepY)) {
+                    return false;
+                }
+                x += stepX;
+                y += stepY;
+                nextX += deltaX;
+                nextY += deltaY;
+                i++;
+            }
+            if (!isWalkable(x, y)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The walkable tile nearest to {@code tile} within {@code radius} tiles
+     * (the tile itself if walkable), or -1
+     */
+    public int nearestWalkable(int tile, int radius) {
+        if (walkable[tile]) {
+            return tile;
+        }
+        int centerX = tile % width;
+        int centerY = tile / width;
+        int best = -1;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int ring = 1; ring <= radius && best < 0; ring++) {
+            for (int y = centerY - ring; y <= centerY + ring; y++) {
+                for (int x = centerX - ring; x <= centerX + ring; x++) {
+                    boolean onRing = Math.abs(x - centerX) == ring || Math.abs(y - centerY) == ring;
+                    if (!onRing || !isWalkable(x, y)) {
+                        continue;
+                    }
+                    int distance = (x - centerX) * (x - centerX) + (y - centerY) * (y - centerY);
+                    if (distance < bestDistance) {
+                        best = y * width + x;
+                        bestDistance = distance;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,184 @@
+package com.mmo.server.nav;
+
+import com.badlogic.gdx.utils.IntArray;
+import com.mmo.world.CollisionMap;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Routes across the world's walkable tiles, for anything the server moves.
+ *
+ * Two kinds of answer. {@link #findPath} runs a jump point search for one
+ * traveller going somewhere nobody else is (a mob walking back to its own
+ * home). {@link #getFlowField} answers "which way to X" for a crowd heading
+ * to the same tile (everything chasing one player, or a siege on the
+ * castle): the first request builds a field covering every tile within
+ * reach, and the rest just read it, so 200 chasers cost one search rather
+ * than 200.
+ *
+ * Fields are cached by target tile. A field is dropped when the grid has
+ * changed since it was built, when nobody has asked for it for a while (a
+ * chased player moving on leaves a trail of fields behind), or when the
+ * cache is over its limit, least recently used first. Both calls are safe
+ * from many threads at once; {@link #maintain} and grid changes run on the
+ * game loop thread between parallel phases.
+ */
+public class NavigationService {
+    private static final int MAX_EXPANSIONS = 4096; // Per path search, so a hopeless search gives up
+    private static final int SNAP_RADIUS = 4; // Tiles to look for open ground around a blocked endpoint
+
+    private final NavGrid grid;
+    private final float fieldRadius; // Tile lengths a field reaches out from its target
+    private final int maxFields;
+    private final int fieldIdleTicks;
+    private final AtomicReferenceArray<FlowField> fields; // By target tile
+    private final Object[] buildLocks; // Striped by target tile, so each field is built once
+    private final ThreadLocal<TileSearch> searches;
+    private final IntArray cachedTargets; // Loop thread scratch for maintain()
+    private volatile long currentTick;
+
+    // Statistics
+    private final LongAdder paths;
+    private final LongAdder pathFailures;
+    private final LongAdder fieldBuilds;
+    private final LongAdder fieldHits;
+    private long fieldsExpired;
+    private long fieldsInvalidated;
+
+    public NavigationService(NavGrid grid, float fieldRadius, int maxFields, int fieldIdleTicks) {
+        this.grid = grid;
+        this.fieldRadius = fieldRadius;
+        this.maxFields = maxFields;
+        this.fieldIdleTicks = fieldIdleTicks;
+        this.fields = new AtomicReferenceArray<>(grid.getTileCount());
+        this.buildLocks = new Object[64];
+        for (int i = 0; i < buildLocks.length; i++) {
+            buildLocks[i] = new Object();
+        }
+        this.searches = ThreadLocal.withInitial(() -> new TileSearch(grid));
+        this.cachedTargets = new IntArray();
+        this.paths = new LongAdder();
+        this.pathFailures = new LongAdder();
+        this.fieldBuilds = new LongAdder();
+        this.fieldHits = new LongAdder();
+    }
+
+    public NavigationService(CollisionMap collision, float fieldRadius, int maxFields, int fieldIdleTicks) {
+        this(new NavGrid(collision), fieldRadius, maxFields, fieldIdleTicks);
+    }
+
+    public NavGrid getGrid() {
+        return grid;
+    }
+
+    /**
+     * Waypoints from one position to another as tiles (start excluded, goal
+     * included), each reachable from the one before in a straight line. An
+     * endpoint on a blocked tile is moved to open ground nearby. False if
+     * there is no way.
+     */
+    public boolean findPath(float fromX, float fromY, float toX, float toY, IntArray tiles) {
+        paths.increment();
+        int start = grid.nearestWalkable(grid.tileAt(fromX, fromY), SNAP_RADIUS);
+        int goal = grid.nearestWalkable(grid.tileAt(toX, toY), SNAP_RADIUS);
+        if (start < 0 || goal < 0 || !searches.get().findPath(start, goal, MAX_EXPANSIONS, tiles)) {
+            tiles.clear();
+            pathFailures.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * The shared field toward the tile containing a position, built on first
+     * use; null if that tile can't be stood on
+     */
+    public FlowField getFlowField(float targetX, float targetY) {
+        int target = grid.tileAt(targetX, targetY);
+        if (!grid.isWalkable(target)) {
+            return null;
+        }
+        int version = grid.getVersion();
+        FlowField field = fields.get(target);
+        if (field == null || field.getVersion() != version) {
+            synchronized (buildLocks[target % buildLocks.length]) {
+                field = fields.get(target);
+                if (field == null || field.getVersion() != version) {
+                    field = new FlowField(target, version, grid.getTileCount());
+                    searches.get().fillField(field, fieldRadius);
+                    fields.set(target, field);
+                    fieldBuilds.increment();
+                }
+            }
+        } else {
+            fieldHits.increment();
+        }
+        field.touch(currentTick);
+        return field;
+    }
+
+    /**
+     * Block or clear a tile and drop every cached field (game loop thread)
+     */
+    public void setWalkable(int x, int y, boolean open) {
+        int before = grid.getVersion();
+        grid.setWalkable(x, y, open);
+        if (grid.getVersion() != before) {
+            for (int tile = 0; tile < fields.length(); tile++) {
+                if (fields.get(tile) != null) {
+                    fields.set(tile, null);
+                    fieldsInvalidated++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Age out fields nobody has used lately, then trim the least recently
+     * used down to the limit. Call once per tick on the game loop thread.
+     */
+    public void maintain(long tick) {
+        currentTick = tick;
+        int version = grid.getVersion();
+        cachedTargets.clear();
+        for (int tile = 0; tile < fields.length(); tile++) {
+            FlowField field = fields.get(tile);
+            if (field == null) {
+                continue;
+            }
+            if (field.getVersion() != version) {
+                fields.set(tile, null);
+                fieldsInvalidated++;
+            } else if (tick - field.getLastUsedTick() > fieldIdleTicks) {
+                fields.set(tile, null);
+                fieldsExpired++;
+            } else {
+                cachedTargets.add(tile);
+            }
+        }
+        while (cachedTargets.size > maxFields) {
+            int oldest = 0;
+            for (int i = 1; i < cachedTargets.size; i++) {
+                if (fields.get(cachedTargets.get(i)).getLastUsedTick() <
+                    fields.get(cachedTargets.get(oldest)).getLastUsedTick()) {
+                    oldest = i;
+                }
+            }
+            fields.set(cachedTargets.removeIndex(oldest), null);
+            fieldsExpired++;
+        }
+    }
+
+    public String getStatusReport() {
+        int cached = 0;
+        for (int tile = 0; tile < fields.length(); tile++) {
+            if (fields.get(tile) != null) {
+                cached++;
+            }
+        }
+        return "Navigation: " + cached + "/" + maxFields + " flow fields cached, " + fieldBuilds.sum() +
+               " built, " + fieldHits.sum() + " reused, " + fieldsExpired + " expired, " + fieldsInvalidated +
+               " invalidated; " + paths.sum() + " paths searched, " + pathFailures.sum() + " failed";
+    }
+}
@@ -0,0 +1,342 @@
+package com.mmo.server.nav;
+
+import com.badlogic.gdx.utils.IntArray;
+
+import java.util.Arrays;
+
+/**
+ * Searches over the nav grid: jump point search for one path, and the
+ * Dijkstra fill behind a flow field.
+ *
+ * Holds per-tile arrays sized to the grid and reuses them for every search,
+ * telling this search's entries from older ones by a generation stamp, so
+ * nothing is cleared or allocated per search. Not thread-safe; one per
+ * searching thread.
+ */
+class TileSearch {
+    private static final float DIAGONAL = (float) Math.sqrt(2);
+    private static final int NONE = -1;
+
+    private final NavGrid grid;
+    private final int width;
+    private final float[] cost;
+    private final int[] parent;
+    private final int[] seen; // Generation in which cost and parent were set
+    private final int[] closed; // Generation in which the tile was settled
+    private int generation;
+
+    // Open list: binary min-heap of (key, tile); a tile re-added with a lower key leaves a stale entry behind
+    private float[] keys;
+    private int[] tiles;
+    private int size;
+
+    // Neighbours of the tile being expanded
+    private final int[] neighbourX = new int[8];
+    private final int[] neighbourY = new int[8];
+
+    TileSearch(NavGrid grid) {
+        this.grid = grid;
+        this.width = grid.getWidth();
+        int count = grid.getTileCount();
+        this.cost = new float[count];
+        this.parent = new int[count];
+        this.seen = new int[count];
+        this.closed = new int[count];
+        this.keys = new float[256];
+        this.tiles = new int[256];
+    }
+
+    /**
+     * Shortest path between two walkable tiles as its jump points, start
+     * excluded and goal included; consecutive points are joined by a
+     * straight or diagonal line of walkable tiles. False if there is none
+     * within {@code maxExpansions} expanded tiles.
+     */
+    boolean findPath(int start, int goal, int maxExpansions, IntArray out) {
+        out.clear();
+        if (start == goal) {
+            out.add(goal);
+            return true;
+        }
+        beginSearch();
+        int goalX = goal % width;
+        int goalY = goal / width;
+        reach(start, 0, NONE);
+        push(start, heuristic(start % width, start / width, goalX, goalY));
+
+        int expanded = 0;
+        while (size > 0) {
+            int tile = pop();
+            if (closed[tile] == generation) {
+                continue; // Stale entry
+            }
+            closed[tile] = generation;
+            if (tile == goal) {
+                tracePath(start, goal, out);
+                return true;
+            }
+            if (++expanded > maxExpansions) {
+                return false;
+            }
+
+            int x = tile % width;
+            int y = tile / width;
+            int count = prunedNeighbours(x, y, parent[tile]);
+            for (int i = 0; i < count; i++) {
+                int jumpPoint = jump(neighbourX[i], neighbourY[i], neighbourX[i] - x, neighbourY[i] - y, goalX, goalY);
+                if (jumpPoint == NONE || closed[jumpPoint] == generation) {
+                    continue;
+                }
+                int jumpX = jumpPoint % width;
+                int jumpY = jumpPoint / width;
+                float g = cost[tile] + heuristic(x, y, jumpX, jumpY); // Exact along a straight or diagonal run
+                if (seen[jumpPoint] != generation || g < cost[jumpPoint]) {
+                    reach(jumpPoint, g, tile);
+                    push(jumpPoint, g + heuristic(jumpX, jumpY, goalX, goalY));
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Fill a field with the first step of the shortest route to its target
+     * from every tile no further than {@code maxCost} tile lengths away
+     */
+    void fillField(FlowField field, float maxCost) {
+        beginSearch();
+        int target = field.getTarget();
+        reach(target, 0, NONE);
+        field.setDirection(target, FlowField.ARRIVED);
+        push(target, 0);
+
+        while (size > 0) {
+            int tile = pop();
+            if (closed[tile] == generation) {
+                continue;
+            }
+            closed[tile] = generation;
+            int x = tile % width;
+            int y = tile / width;
+            for (int direction = 0; direction < 8; direction++) {
+                int dx = FlowField.DX[direction];
+                int dy = FlowField.DY[direction];
+                // Steps are allowed or not the same way in both directions
+                if (!grid.canStep(x, y, dx, dy)) {
+                    continue;
+                }
+                int neighbour = tile + dy * width + dx;
+                if (closed[neighbour] == generation) {
+                    continue;
+                }
+                float g = cost[tile] + (dx != 0 && dy != 0 ? DIAGONAL : 1);
+                if (g > maxCost) {
+                    continue;
+                }
+                if (seen[neighbour] != generation || g < cost[neighbour]) {
+                    reach(neighbour, g, tile);
+                    field.setDirection(neighbour, (direction + 4) & 7); // Back the way we came
+                    push(neighbour, g);
+                }
+            }
+        }
+    }
+
+    /**
+     * Neighbours worth trying from (x, y) given where it was reached from:
+     * those a route through the parent couldn't reach as cheaply are pruned
+     */
+    private int prunedNeighbours(int x, int y, int parentTile) {
+        int count = 0;
+        if (parentTile == NONE) {
+            for (int direction = 0; direction < 8; direction++) {
+                int dx = FlowField.DX[direction];
+                int dy = FlowField.DY[direction];
+                if (grid.canStep(x, y, dx, dy)) {
+                    neighbourX[count] = x + dx;
+                    neighbourY[count++] = y + dy;
+                }
+            }
+            return count;
+        }
+
+        int dx = Integer.signum(x - parentTile % width);
+        int dy = Integer.signum(y - parentTile / width);
+        if (dx != 0 && dy != 0) {
+            boolean vertical = grid.isWalkable(x, y + dy);
+            boolean horizontal = grid.isWalkable(x + dx, y);
+            if (vertical) {
+                count = add(count, x, y + dy);
+            }
+            if (horizontal) {
+                count = add(count, x + dx, y);
+            }
+            if (vertical && horizontal && grid.isWalkable(x + dx, y + dy)) {
+                count = add(count, x + dx, y + dy);
+            }
+        } else if (dx != 0) {
+            boolean next = grid.isWalkable(x + dx, y);
+            boolean up = grid.isWalkable(x, y + 1);
+            boolean down = grid.isWalkable(x, y - 1);
+            if (next) {
+                count = add(count, x + dx, y);
+                if (up && grid.isWalkable(x + dx, y + 1)) {
+                    count = add(count, x + dx, y + 1);
+                }
+                if (down && grid.isWalkable(x + dx, y - 1)) {
+                    count = add(count, x + dx, y - 1);
+                }
+            }
+            if (up) {
+                count = add(count, x, y + 1);
+            }
+            if (down) {
+                count = add(count, x, y - 1);
+            }
+        } else {
+            boolean next = grid.isWalkable(x, y + dy);
+            boolean right = grid.isWalkable(x + 1, y);
+            boolean left = grid.isWalkable(x - 1, y);
+            if (next) {
+                count = add(count, x, y + dy);
+                if (right && grid.isWalkable(x + 1, y + dy)) {
+                    count = add(count, x + 1, y + dy);
+                }
+                if (left && grid.isWalkable(x - 1, y + dy)) {
+                    count = add(count, x - 1, y + dy);
+                }
+            }
+            if (right) {
+                count = add(count, x + 1, y);
+            }
+            if (left) {
+                count = add(count, x - 1, y);
+            }
+        }
+        return count;
+    }
+
+    private int add(int count, int x, int y) {
+        neighbourX[count] = x;
+        neighbourY[count] = y;
+        return count + 1;
+    }
+
+    /**
+     * Run from (x, y), which was stepped onto in direction (dx, dy), until
+     * something makes it worth stopping: the goal, a forced neighbour, or for
+     * a diagonal run a jump point along either of its straight components.
+     * Returns that tile, or NONE if the run hits a wall first.
+     */
+    private int jump(int x, int y, int dx, int dy, int goalX, int goalY) {
+        while (true) {
+            if (!grid.isWalkable(x, y)) {
+                return NONE;
+            }
+            if (x == goalX && y == goalY) {
+                return y * width + x;
+            }
+            if (dx != 0 && dy != 0) {
+                if (jump(x + dx, y, dx, 0, goalX, goalY) != NONE || jump(x, y + dy, 0, dy, goalX, goalY) != NONE) {
+                    return y * width + x;
+                }
+            } else if (dx != 0) {
+                if ((grid.isWalkable(x, y - 1) && !grid.isWalkable(x - dx, y - 1)) ||
+                    (grid.isWalkable(x, y + 1) && !grid.isWalkable(x - dx, y + 1))) {
+                    return y * width + x;
+                }
+            } else {
+                if ((grid.isWalkable(x - 1, y) && !grid.isWalkable(x - 1, y - dy)) ||
+                    (grid.isWalkable(x + 1, y) && !grid.isWalkable(x + 1, y - dy))) {
+                    return y * width + x;
+                }
+            }
+            // Carry on only if the next step is allowed, not cutting a corner on a diagonal
+            if (!grid.isWalkable(x + dx, y) || !grid.isWalkable(x, y + dy)) {
+                return NONE;
+            }
+            x += dx;
+            y += dy;
+        }
+    }
+
+    private void tracePath(int start, int goal, IntArray out) {
+        for (int tile = goal; tile != start; tile = parent[tile]) {
+            out.add(tile);
+        }
+        out.reverse();
+    }
+
+    /**
+     * Octile distance: diagonal steps cost sqrt(2), straight steps 1
+     */
+    private static float heuristic(int x, int y, int goalX, int goalY) {
+        int dx = Math.abs(goalX - x);
+        int dy = Math.abs(goalY - y);
+        return Math.max(dx, dy) + (DIAGONAL - 1) * Math.min(dx, dy);
+    }
+
+    private void beginSearch() {
+        size = 0;
+        generation++;
+        if (generation == 0) {
+            // Wrapped: old stamps could now look current
+            Arrays.fill(seen, 0);
+            Arrays.fill(closed, 0);
+            generation = 1;
+        }
+    }
+
+    private void reach(int tile, float g, int from) {
+        seen[tile] = generation;
+        cost[tile] = g;
+        parent[tile] = from;
+    }
+
+    private void push(int tile, float key) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            tiles = Arrays.copyOf(tiles, size * 2);
+        }
+        int index = size++;
+        while (index > 0) {
+            int up = (index - 1) >>> 1;
+            if (keys[up] <= key) {
+                break;
+            }
+            keys[index] = keys[up];
+            tiles[index] = tiles[up];
+            index = up;
+        }
+        keys[index] = key;
+        tiles[index] = tile;
+    }
+
+    private int pop() {
+        int top = tiles[0];
+        size--;
+        if (size > 0) {
+            float key = keys[size];
+            int tile = tiles[size];
+            int index = 0;
+            while (true) {
+                int child = index * 2 + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && keys[child + 1] < keys[child]) {
+                    child++;
+                }
+                if (keys[child] >= key) {
+                    break;
+                }
+                keys[index] = keys[child];
+                tiles[index] = tiles[child];
+                index = child;
+            }
+            keys[index] = key;
+            tiles[index] = tile;
+        }
+        return top;
+    }
+}
@@ -0,0 +1,23 @@
+package com.mmo.server.net;
+
+import com.esotericsoftware.kryonet.Connection;
+import com.esotericsoftware.kryonet.KryoSerialization;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Server serialization that passes pre-encoded {@link SerializedMessage}s
+ * straight through. Everything else is serialized by Kryo as usual.
+ */
+public class BroadcastSerialization extends KryoSerialization {
+
+    @Override
+    public void write(Connection connection, ByteBuffer buffer, Object object) {
+        if (object instanceof SerializedMessage) {
+            // Already encoded with identical registrations; no Kryo, no shared lock
+            ((SerializedMessage) object).writeTo(buffer);
+            return;
+        }
+        super.write(connection, buffer, object);
+    }
+}
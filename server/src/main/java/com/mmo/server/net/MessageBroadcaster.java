@@ -0,0 +1,111 @@
+package com.mmo.server.net;
+
+import com.esotericsoftware.kryonet.Connection;
+import com.esotericsoftware.kryonet.KryoSerialization;
+import com.mmo.network.Network;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Serialize-once fan-out for messages sent to many connections.
+ * A message is encoded a single time into a pooled buffer and the same bytes
+ * are written to every recipient. Each calling thread has its own encoder and
+ * buffer pool, so broadcasts never contend on the endpoint's shared
+ * serialization lock and recycling a buffer allocates nothing.
+ */
+public class MessageBroadcaster {
+    private final int bufferSize;
+    private final ThreadLocal<ArrayDeque<SerializedMessage>> pools;
+    private final ThreadLocal<KryoSerialization> encoders;
+
+    // Statistics
+    private final LongAdder encodes;
+    private final LongAdder deliveries;
+
+    public MessageBroadcaster(int bufferSize) {
+        this.bufferSize = bufferSize;
+        this.pools = ThreadLocal.withInitial(ArrayDeque::new);
+        this.encoders = ThreadLocal.withInitial(() -> {
+            // Same constructor + registration path as the server endpoint, so class ids match
+            KryoSerialization serialization = new BroadcastSerialization();
+            Network.register(serialization.getKryo());
+            return serialization;
+        });
+        this.encodes = new LongAdder();
+        this.deliveries = new LongAdder();
+    }
+
+    /**
+     * Encode a message once. The caller must {@link #release} it after sending.
+     */
+    public SerializedMessage serialize(Object message) {
+        SerializedMessage serialized = pools.get().poll();
+        if (serialized == null) {
+            serialized = new SerializedMessage(bufferSize);
+        }
+        serialized.buffer.clear();
+        encoders.get().write(null, serialized.buffer, message);
+        serialized.length = serialized.buffer.position();
+        encodes.increment();
+        return serialized;
+    }
+
+    public void release(SerializedMessage serialized) {
+        pools.get().push(serialized);
+    }
+
+    /**
+     * Send the same message reliably to every recipient
+     */
+    public void sendToAllTCP(Iterable<Connection> recipients, Object message) {
+        SerializedMessage serialized = serialize(message);
+        try {
+            for (Connection connection : recipients) {
+                connection.sendTCP(serialized);
+                deliveries.increment();
+            }
+        } finally {
+            release(serialized);
+        }
+    }
+
+    /**
+     * Send the same message unreliably to every recipient
+     */
+    public void sendToAllUDP(Iterable<Connection> recipients, Object message) {
+        SerializedMessage serialized = serialize(message);
+        try {
+            for (Connection connection : recipients) {
+                connection.sendUDP(serialized);
+                deliveries.increment();
+            }
+        } finally {
+            release(serialized);
+        }
+    }
+
+    /**
+     * Send already-encoded bytes reliably to a single recipient
+     */
+    public void sendTCP(Connection connection, SerializedMessage serialized) {
+        connection.sendTCP(serialized);
+        deliveries.increment();
+    }
+
+    /**
+     * Send already-encoded bytes to a single recipient
+     */
+    public void sendUDP(Connection connection, SerializedMessage serialized) {
+        connection.sendUDP(serialized);
+        deliveries.increment();
+    }
+
+    public long getEncodes() {
+        return encodes.sum();
+    }
+
+    public long getDeliveries() {
+        return deliveries.sum();
+    }
+}
@@ -0,0 +1,58 @@
+package com.mmo.server.net;
+
+import com.esotericsoftware.kryonet.Connection;
+import com.mmo.models.PlayerData;
+import com.mmo.server.WorkerPool;
+import com.mmo.server.session.Session;
+
+/**
+ * Server-side connection that carries its own per-client state,
+ * so the network thread can reach it without a shared map lookup
+ */
+public class PlayerConnection extends Connection {
+    private final WorkerPool.Mailbox mailbox;
+    private volatile SnapshotHistory snapshotHistory;
+    private volatile PlayerData playerData;
+    private volatile Session session;
+
+    public PlayerConnection(WorkerPool.Mailbox mailbox) {
+        this.mailbox = mailbox;
+    }
+
+    /**
+     * Serialized queue for this client's non-simulation requests
+     */
+    public WorkerPool.Mailbox getMailbox() {
+        return mailbox;
+    }
+
+    public SnapshotHistory getSnapshotHistory() {
+        return snapshotHistory;
+    }
+
+    public void setSnapshotHistory(SnapshotHistory snapshotHistory) {
+        this.snapshotHistory = snapshotHistory;
+    }
+
+    /**
+     * The player selected on this connection, or null before character selection
+     */
+    public PlayerData getPlayerData() {
+        return playerData;
+    }
+
+    public void setPlayerData(PlayerData playerData) {
+        this.playerData = playerData;
+    }
+
+    /**
+     * The session logged in on this connection, or null before login
+     */
+    public Session getSession() {
+        return session;
+    }
+
+    public void setSession(Session session) {
+        this.session = session;
+    }
+}
@@ -0,0 +1,26 @@
+package com.mmo.server.net;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A message that has already been encoded to wire bytes (class id + payload).
+ * {@link BroadcastSerialization} copies these bytes verbatim into each
+ * recipient's write buffer instead of running Kryo again.
+ * Instances are pooled by {@link MessageBroadcaster}; don't keep references after release.
+ */
+public class SerializedMessage {
+    final ByteBuffer buffer;
+    int length;
+
+    SerializedMessage(int capacity) {
+        this.buffer = ByteBuffer.allocate(capacity);
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    void writeTo(ByteBuffer target) {
+        target.put(buffer.array(), 0, length);
+    }
+}
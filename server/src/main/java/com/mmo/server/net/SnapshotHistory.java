@@ -0,0 +1,252 @@
+package com.mmo.server.net;
+
+import com.badlogic.gdx.utils.IntArray;
+import com.mmo.network.Network;
+import com.mmo.server.world.EntityStateStore;
+
+import java.util.Arrays;
+
+/**
+ * Per-client ring of recently sent world snapshots.
+ * Each new snapshot is encoded as a delta against the newest snapshot the
+ * client has acknowledged. If the client has not acknowledged anything recent
+ * enough (packet loss, fresh join) a full snapshot is sent instead.
+ * Encoding runs on the region worker that owns the client (one at a time per
+ * client); acknowledgements arrive from the network thread.
+ */
+public class SnapshotHistory {
+    public static final int HISTORY_SIZE = 32;
+
+    private final Snapshot[] ring;
+    private int capacity = 16; // Shared by every snapshot in the ring
+    private int lastSequence = -1;
+    private volatile int ackedSequence = -1;
+
+    // Statistics
+    private long fullSnapshots;
+    private long deltaSnapshots;
+
+    public SnapshotHistory() {
+        ring = new Snapshot[HISTORY_SIZE];
+        for (int i = 0; i < HISTORY_SIZE; i++) {
+            ring[i] = new Snapshot();
+        }
+    }
+
+    /**
+     * Record a client acknowledgement (network thread)
+     */
+    public void acknowledge(int sequence) {
+        int acked = ackedSequence;
+        if (sequence - lastSequence <= 0 && (acked < 0 || sequence - acked > 0)) {
+            ackedSequence = sequence;
+        }
+    }
+
+    /**
+     * Build the next update for this client from the state rows of the entities it can currently see.
+     * Sequences must increase; the server uses the tick number so every client
+     * shares the same numbering.
+     *
+     * The update is written into {@code update}, whose arrays and player
+     * entries are reused and only grow, so a caller that keeps one per thread
+     * allocates nothing once they have reached the largest view seen.
+     */
+    public Network.WorldUpdate encode(int sequence, EntityStateStore states, IntArray visible,
+                                      Network.WorldUpdate update) {
+        lastSequence = sequence;
+        Snapshot baseline = findBaseline(sequence);
+
+        Snapshot current = ring[Math.floorMod(sequence, HISTORY_SIZE)];
+        if (visible.size > capacity) {
+            // Leave headroom and size the whole ring alike, so a view that
+            // grows a little doesn't make every snapshot grow one at a time
+            capacity = visible.size + visible.size / 2;
+        }
+        current.capture(sequence, states, visible, capacity);
+
+        update.sequence = sequence;
+        update.baseline = baseline != null ? baseline.sequence : -1;
+        update.playerCount = 0;
+        update.removedCount = 0;
+        int baselineIndex = 0;
+
+        for (int i = 0; i < current.count; i++) {
+            long id = current.ids[i];
+            int fields = Network.PlayerUpdate.ALL_FIELDS;
+
+            if (baseline != null) {
+                // Both snapshots are sorted by id, so walk them together
+                while (baselineIndex < baseline.count && baseline.ids[baselineIndex] < id) {
+                    addRemoved(update, baseline.ids[baselineIndex++]);
+                }
+                if (baselineIndex < baseline.count && baseline.ids[baselineIndex] == id) {
+                    fields = current.diff(i, baseline, baselineIndex);
+                    baselineIndex++;
+                }
+            }
+
+            if (fields != 0) {
+                current.copyTo(i, fields, nextPlayer(update));
+            }
+        }
+
+        if (baseline != null) {
+            while (baselineIndex < baseline.count) {
+                addRemoved(update, baseline.ids[baselineIndex++]);
+            }
+        }
+
+        if (baseline != null) {
+            deltaSnapshots++;
+        } else {
+            fullSnapshots++;
+        }
+        return update;
+    }
+
+    public long getFullSnapshots() {
+        return fullSnapshots;
+    }
+
+    public long getDeltaSnapshots() {
+        return deltaSnapshots;
+    }
+
+    private Snapshot findBaseline(int sequence) {
+        int acked = ackedSequence;
+        if (acked < 0 || sequence - acked >= HISTORY_SIZE) {
+            return null;
+        }
+        Snapshot snapshot = ring[Math.floorMod(acked, HISTORY_SIZE)];
+        return snapshot.sequence == acked ? snapshot : null;
+    }
+
+    private static Network.PlayerUpdate nextPlayer(Network.WorldUpdate update) {
+        Network.PlayerUpdate[] players = update.players;
+        int index = update.playerCount++;
+        if (players == null || index == players.length) {
+            players = Arrays.copyOf(players == null ? new Network.PlayerUpdate[0] : players, Math.max(16, index * 2));
+            update.players = players;
+        }
+        if (players[index] == null) {
+            players[index] = new Network.PlayerUpdate();
+        }
+        return players[index];
+    }
+
+    private static void addRemoved(Network.WorldUpdate update, long id) {
+        if (update.removed == null || update.removedCount == update.removed.length) {
+            update.removed = update.removed == null ? new long[16] : Arrays.copyOf(update.removed, update.removedCount * 2);
+        }
+        update.removed[update.removedCount++] = id;
+    }
+
+    /**
+     * Field values for every entity in one sent snapshot, sorted by id.
+     * Arrays are reused across ring laps and only grow, to the ring's shared capacity.
+     */
+    private static class Snapshot {
+        int sequence = -1;
+        int count;
+        long[] ids = new long[16];
+        float[] x = new float[16];
+        float[] y = new float[16];
+        int[] health = new int[16];
+        int[] maxHealth = new int[16];
+
+        void capture(int sequence, EntityStateStore states, IntArray rows, int capacity) {
+            this.sequence = sequence;
+            this.count = rows.size;
+            ensureCapacity(capacity);
+            for (int i = 0; i < count; i++) {
+                int row = rows.get(i);
+                ids[i] = states.getId(row);
+                x[i] = states.getX(row);
+                y[i] = states.getY(row);
+                health[i] = states.getHealth(row);
+                maxHealth[i] = states.getMaxHealth(row);
+            }
+            sort(0, count - 1);
+        }
+
+        int diff(int index, Snapshot baseline, int baselineIndex) {
+            int fields = 0;
+            if (x[index] != baseline.x[baselineIndex]) fields |= Network.PlayerUpdate.FIELD_X;
+            if (y[index] != baseline.y[baselineIndex]) fields |= Network.PlayerUpdate.FIELD_Y;
+            if (health[index] != baseline.health[baselineIndex]) fields |= Network.PlayerUpdate.FIELD_HEALTH;
+            if (maxHealth[index] != baseline.maxHealth[baselineIndex]) fields |= Network.PlayerUpdate.FIELD_MAX_HEALTH;
+            return fields;
+        }
+
+        void copyTo(int index, int fields, Network.PlayerUpdate update) {
+            update.playerId = ids[index];
+            update.fields = fields;
+            update.x = x[index];
+            update.y = y[index];
+            update.health = health[index];
+            update.maxHealth = maxHealth[index];
+        }
+
+        /**
+         * Sort rows {@code from}..{@code to} by id in place, moving every column
+         * together: quicksort down to short runs, then insertion sort
+         */
+        private void sort(int from, int to) {
+            while (to - from > 16) {
+                long pivot = medianOfThree(from, (from + to) >>> 1, to);
+                int i = from;
+                int j = to;
+                while (i <= j) {
+                    while (ids[i] < pivot) i++;
+                    while (ids[j] > pivot) j--;
+                    if (i <= j) {
+                        swap(i++, j--);
+                    }
+                }
+                // Recurse into the smaller side and loop on the larger, so the stack stays shallow
+                if (j - from < to - i) {
+                    sort(from, j);
+                    from = i;
+                } else {
+                    sort(i, to);
+                    to = j;
+                }
+            }
+            for (int i = from + 1; i <= to; i++) {
+                for (int j = i; j > from && ids[j - 1] > ids[j]; j--) {
+                    swap(j - 1, j);
+                }
+            }
+        }
+
+        private long medianOfThree(int a, int b, int c) {
+            long first = ids[a];
+            long second = ids[b];
+            long third = ids[c];
+            if (first < second) {
+                return second < third ? second : Math.max(first, third);
+            }
+            return first < third ? first : Math.max(second, third);
+        }
+
+        private void swap(int a, int b) {
+            long id = ids[a]; ids[a] = ids[b]; ids[b] = id;
+            float value = x[a]; x[a] = x[b]; x[b] = value;
+            value = y[a]; y[a] = y[b]; y[b] = value;
+            int points = health[a]; health[a] = health[b]; health[b] = points;
+            points = maxHealth[a]; maxHealth[a] = maxHealth[b]; maxHealth[b] = points;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (ids.length >= capacity) {
+                return;
+            }
+            ids = Arrays.copyOf(ids, capacity);
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            health = Arrays.copyOf(health, capacity);
+            maxHealth = Arrays.copyOf(maxHealth, capacity);
+        }
+    }
+}
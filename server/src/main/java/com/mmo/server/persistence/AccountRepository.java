@@ -0,0 +1,28 @@
+package com.mmo.server.persistence;
+
+import com.mmo.server.UserAccount;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Where accounts are kept. Lookups may block on storage, so call them from a worker.
+ */
+public interface AccountRepository {
+    /**
+     * The account, or null if there is none by that name
+     */
+    UserAccount findAccount(String username) throws IOException;
+
+    /**
+     * Store a new account; completes with false if the name is already taken
+     */
+    CompletableFuture<Boolean> createAccount(UserAccount account);
+
+    /**
+     * Queue the account's current state; completes when it is stored
+     */
+    CompletableFuture<Void> saveAccount(UserAccount account);
+
+    int getAccountCount();
+}
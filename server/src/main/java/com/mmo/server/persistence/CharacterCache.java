@@ -0,0 +1,184 @@
+package com.mmo.server.persistence;
+
+import com.mmo.models.CharacterData;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Characters in memory, loaded from the store on first use.
+ *
+ * Characters in the world are pinned and always stay. The rest are kept in
+ * least-recently-used order up to {@code capacity}; past that the oldest is
+ * dropped and read back from disk if asked for again. Memory therefore
+ * depends on how many players are around, not on how many characters exist.
+ *
+ * Only saved characters may be dropped: callers save a character before
+ * putting it here, and leave the world's final save queued before unpinning.
+ */
+public class CharacterCache {
+    private final CharacterRepository store;
+    private final int capacity;
+    private final LinkedHashMap<Long, CharacterData> recent; // Access order; guarded by this
+    private final Map<Long, Pinned> pinned; // Guarded by this
+
+    // Statistics
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+    private final LongAdder loadNanos;
+    private final LongAdder loadFailures;
+
+    public CharacterCache(CharacterRepository store, int capacity) {
+        this.store = store;
+        this.capacity = capacity;
+        this.recent = new LinkedHashMap<Long, CharacterData>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CharacterData> eldest) {
+                if (size() > CharacterCache.this.capacity) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.pinned = new HashMap<>();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+        this.loadNanos = new LongAdder();
+        this.loadFailures = new LongAdder();
+    }
+
+    /**
+     * The character, loading it from disk if it isn't in memory; null if there is no such character.
+     * A load blocks on the disk, so call this from a worker, not the game loop.
+     */
+    public CharacterData get(long characterId) {
+        CharacterData character = find(characterId);
+        if (character != null) {
+            hits.increment();
+            return character;
+        }
+        misses.increment();
+
+        // Load outside the lock so one slow read doesn't hold up everyone else
+        long startTime = System.nanoTime();
+        CharacterData loaded;
+        try {
+            loaded = store.loadCharacter(characterId);
+        } catch (IOException e) {
+            loadFailures.increment();
+            System.err.println("Failed to load character " + characterId + ": " + e.getMessage());
+            return null;
+        }
+        loadNanos.add(System.nanoTime() - startTime);
+        if (loaded == null) {
+            return null;
+        }
+
+        synchronized (this) {
+            // Someone else may have loaded or created it meanwhile; theirs wins
+            CharacterData existing = find(characterId);
+            if (existing != null) {
+                return existing;
+            }
+            recent.put(characterId, loaded);
+            return loaded;
+        }
+    }
+
+    /**
+     * The character as last saved, read back from the store unless it is
+     * pinned here; used when another zone has just handed it over
+     */
+    public CharacterData reload(long characterId) {
+        synchronized (this) {
+            if (!pinned.containsKey(characterId)) {
+                recent.remove(characterId);
+            }
+        }
+        return get(characterId);
+    }
+
+    /**
+     * Add a character that has just been created (and saved)
+     */
+    public synchronized void put(CharacterData character) {
+        Pinned pin = pinned.get(character.getId());
+        if (pin != null) {
+            pin.character = character;
+        } else {
+            recent.put(character.getId(), character);
+        }
+    }
+
+    /**
+     * Keep the character in memory until it is unpinned as often as pinned
+     */
+    public synchronized void pin(CharacterData character) {
+        Pinned pin = pinned.get(character.getId());
+        if (pin == null) {
+            recent.remove(character.getId());
+            pin = new Pinned();
+            pinned.put(character.getId(), pin);
+        }
+        pin.character = character;
+        pin.count++;
+    }
+
+    /**
+     * Let the character be evicted again once nothing holds it
+     */
+    public synchronized void unpin(CharacterData character) {
+        Pinned pin = pinned.get(character.getId());
+        if (pin != null && --pin.count == 0) {
+            pinned.remove(character.getId());
+            recent.put(character.getId(), pin.character);
+        }
+    }
+
+    /**
+     * Drop the character unless it is pinned, so the next lookup reads it
+     * back from the store; used when another zone takes the character over
+     */
+    public synchronized void forget(CharacterData character) {
+        if (!pinned.containsKey(character.getId())) {
+            recent.remove(character.getId());
+        }
+    }
+
+    public synchronized int size() {
+        return recent.size() + pinned.size();
+    }
+
+    public String getStatusReport() {
+        int cached;
+        int pinnedCount;
+        synchronized (this) {
+            cached = recent.size();
+            pinnedCount = pinned.size();
+        }
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long lookups = hitCount + missCount;
+        return "Character cache: " + pinnedCount + " pinned, " + cached + "/" + capacity + " cached, " +
+               (lookups > 0 ? String.format("%.1f%% hits", hitCount * 100.0 / lookups) : "- hits") + " (" +
+               hitCount + "/" + lookups + "), " + evictions.sum() + " evictions, " +
+               (missCount > 0 ? String.format("%.2f ms", loadNanos.sum() / 1_000_000.0 / missCount) : "-") +
+               " per load, " + loadFailures.sum() + " load failures";
+    }
+
+    private synchronized CharacterData find(long characterId) {
+        Pinned pin = pinned.get(characterId);
+        return pin != null ? pin.character : recent.get(characterId);
+    }
+
+    private static class Pinned {
+        CharacterData character;
+        int count;
+    }
+}
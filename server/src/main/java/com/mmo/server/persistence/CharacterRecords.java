@@ -0,0 +1,250 @@
+package com.mmo.server.persistence;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.mmo.models.CharacterData;
+import com.mmo.models.EquipmentSlot;
+import com.mmo.models.Inventory;
+import com.mmo.models.InventoryItem;
+import com.mmo.models.Item;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Splits a character into separately saved parts, so a change writes only the
+ * part it touched: a full record when the character is created or arrives,
+ * then stats, position, equipment, gold and single inventory slots on top.
+ * The character id is the key; inventory slots use "id/slot".
+ */
+class CharacterRecords {
+    private static final Type EQUIPMENT_TYPE = new TypeToken<Map<EquipmentSlot, Item>>() {}.getType();
+
+    private final Gson gson;
+
+    CharacterRecords(Gson gson) {
+        this.gson = gson;
+    }
+
+    static boolean isCharacterRecord(LogRecord record) {
+        byte type = record.getType();
+        return type == LogRecord.CHARACTER || (type >= LogRecord.CHARACTER_STATS && type <= LogRecord.INVENTORY_SLOT);
+    }
+
+    static String characterKey(LogRecord record) {
+        String key = record.getKey();
+        int separator = key.indexOf('/');
+        return separator < 0 ? key : key.substring(0, separator);
+    }
+
+    LogRecord full(CharacterData character) {
+        return new LogRecord(LogRecord.CHARACTER, Long.toString(character.getId()), gson.toJson(character));
+    }
+
+    /**
+     * Records for the given dirty parts and inventory slots
+     */
+    void changes(CharacterData character, int parts, long slots, boolean gold, List<LogRecord> out) {
+        String key = Long.toString(character.getId());
+        if ((parts & CharacterData.DIRTY_STATS) != 0) {
+            out.add(new LogRecord(LogRecord.CHARACTER_STATS, key, gson.toJson(new Stats(character))));
+        }
+        if ((parts & CharacterData.DIRTY_POSITION) != 0) {
+            out.add(new LogRecord(LogRecord.CHARACTER_POSITION, key, gson.toJson(new Position(character))));
+        }
+        if ((parts & CharacterData.DIRTY_EQUIPMENT) != 0) {
+            out.add(new LogRecord(LogRecord.CHARACTER_EQUIPMENT, key,
+                gson.toJson(character.getEquippedItems(), EQUIPMENT_TYPE)));
+        }
+
+        Inventory inventory = character.getInventory();
+        if (gold) {
+            out.add(new LogRecord(LogRecord.INVENTORY_GOLD, key, gson.toJson(new Gold(inventory))));
+        }
+        for (int slot = 0; slots != 0 && slot < inventory.getMaxSize(); slot++) {
+            long bit = 1L << Math.min(slot, 63);
+            if ((slots & bit) != 0) {
+                // An empty slot is stored as null, so recovery knows to clear it
+                out.add(new LogRecord(LogRecord.INVENTORY_SLOT, key + "/" + slot,
+                    gson.toJson(inventory.getItemAtSlot(slot))));
+                if (slot < 63) {
+                    slots &= ~bit;
+                }
+            }
+        }
+    }
+
+    /**
+     * Rebuild a character from its latest full record and the parts saved since, in {@link Entry#refs} order
+     */
+    CharacterData decode(List<LogRecord> records) {
+        CharacterData character = gson.fromJson(records.get(0).getJson(), CharacterData.class);
+        Inventory inventory = character.getInventory();
+        for (LogRecord record : records.subList(1, records.size())) {
+            switch (record.getType()) {
+                case LogRecord.CHARACTER_STATS:
+                    gson.fromJson(record.getJson(), Stats.class).applyTo(character);
+                    break;
+                case LogRecord.CHARACTER_POSITION:
+                    gson.fromJson(record.getJson(), Position.class).applyTo(character);
+                    break;
+                case LogRecord.CHARACTER_EQUIPMENT:
+                    Map<EquipmentSlot, Item> equipment = gson.fromJson(record.getJson(), EQUIPMENT_TYPE);
+                    character.setEquippedItems(equipment);
+                    break;
+                case LogRecord.INVENTORY_GOLD:
+                    gson.fromJson(record.getJson(), Gold.class).applyTo(inventory);
+                    break;
+                case LogRecord.INVENTORY_SLOT:
+                    int slotIndex = slotOf(record.getKey());
+                    inventory.getItems().removeIf(item -> item.getSlotIndex() == slotIndex);
+                    InventoryItem item = gson.fromJson(record.getJson(), InventoryItem.class);
+                    if (item != null) {
+                        inventory.getItems().add(item);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        // Freshly loaded, so nothing is unsaved
+        character.takeDirty();
+        inventory.takeDirtySlots();
+        inventory.takeDirtyGold();
+        return character;
+    }
+
+    private static int slotOf(String key) {
+        return Integer.parseInt(key.substring(key.indexOf('/') + 1));
+    }
+
+    /**
+     * Where the latest record of each part of one character lives.
+     * Updated by whichever thread saves the character, read by loaders and the writer.
+     */
+    static class Entry {
+        private RecordRef full;
+        private RecordRef stats;
+        private RecordRef position;
+        private RecordRef equipment;
+        private RecordRef gold;
+        private final TreeMap<Integer, RecordRef> slots = new TreeMap<>();
+
+        synchronized void apply(byte type, String key, RecordRef ref) {
+            switch (type) {
+                case LogRecord.CHARACTER:
+                    // A full record supersedes every part saved before it
+                    full = ref;
+                    stats = null;
+                    position = null;
+                    equipment = null;
+                    gold = null;
+                    slots.clear();
+                    break;
+                case LogRecord.CHARACTER_STATS: stats = ref; break;
+                case LogRecord.CHARACTER_POSITION: position = ref; break;
+                case LogRecord.CHARACTER_EQUIPMENT: equipment = ref; break;
+                case LogRecord.INVENTORY_GOLD: gold = ref; break;
+                case LogRecord.INVENTORY_SLOT: slots.put(slotOf(key), ref); break;
+                default: break;
+            }
+        }
+
+        /**
+         * The full record followed by the parts on top of it; empty if there is no full record
+         */
+        synchronized List<RecordRef> refs() {
+            List<RecordRef> refs = new ArrayList<>();
+            if (full == null) {
+                return refs; // Parts without a character; nothing to apply them to
+            }
+            refs.add(full);
+            for (RecordRef part : new RecordRef[] {stats, position, equipment, gold}) {
+                if (part != null) {
+                    refs.add(part);
+                }
+            }
+            refs.addAll(slots.values());
+            return refs;
+        }
+    }
+
+    private static class Stats {
+        int level;
+        int experience;
+        int health;
+        int maxHealth;
+        int mana;
+        int maxMana;
+        int attack;
+        int defense;
+
+        Stats() {
+            // For Gson
+        }
+
+        Stats(CharacterData character) {
+            level = character.getLevel();
+            experience = character.getExperience();
+            health = character.getHealth();
+            maxHealth = character.getMaxHealth();
+            mana = character.getMana();
+            maxMana = character.getMaxMana();
+            attack = character.getAttack();
+            defense = character.getDefense();
+        }
+
+        void applyTo(CharacterData character) {
+            character.setLevel(level);
+            character.setExperience(experience);
+            character.setHealth(health);
+            character.setMaxHealth(maxHealth);
+            character.setMana(mana);
+            character.setMaxMana(maxMana);
+            character.setAttack(attack);
+            character.setDefense(defense);
+        }
+    }
+
+    private static class Position {
+        float x;
+        float y;
+
+        Position() {
+            // For Gson
+        }
+
+        Position(CharacterData character) {
+            x = character.getX();
+            y = character.getY();
+        }
+
+        void applyTo(CharacterData character) {
+            character.setX(x);
+            character.setY(y);
+        }
+    }
+
+    private static class Gold {
+        int gold;
+        int maxSize;
+
+        Gold() {
+            // For Gson
+        }
+
+        Gold(Inventory inventory) {
+            gold = inventory.getGold();
+            maxSize = inventory.getMaxSize();
+        }
+
+        void applyTo(Inventory inventory) {
+            inventory.setGold(gold);
+            inventory.setMaxSize(maxSize);
+        }
+    }
+}
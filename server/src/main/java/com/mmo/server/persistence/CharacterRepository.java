@@ -0,0 +1,46 @@
+package com.mmo.server.persistence;
+
+import com.mmo.models.CharacterData;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Where characters are kept. Loads may block on storage, so call them from a
+ * worker; saves serialize on the calling thread and are written in the background.
+ */
+public interface CharacterRepository {
+    /**
+     * The character as last saved, or null if there is no such character
+     */
+    CharacterData loadCharacter(long characterId) throws IOException;
+
+    /**
+     * Ids of the characters owned by an account, oldest first
+     */
+    List<Long> findCharacterIds(String username) throws IOException;
+
+    /**
+     * Queue the character's full state; completes when it is stored.
+     * The calling thread must own the character.
+     */
+    CompletableFuture<Void> saveCharacter(String username, CharacterData character);
+
+    /**
+     * Queue only the changed parts of a character saved before; completes when they are stored.
+     * The calling thread must own the inventory and equipment.
+     *
+     * @param parts {@code CharacterData.DIRTY_*} flags
+     * @param slots changed inventory slots, as from {@code Inventory.takeDirtySlots}
+     * @param gold whether gold or inventory capacity changed
+     */
+    CompletableFuture<Void> saveCharacterChanges(CharacterData character, int parts, long slots, boolean gold);
+
+    /**
+     * Highest character id in {@code [fromId, toId)}, or {@code fromId - 1} if there is none
+     */
+    long getMaxCharacterId(long fromId, long toId) throws IOException;
+
+    int getCharacterCount();
+}
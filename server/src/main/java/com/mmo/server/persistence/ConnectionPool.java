@@ -0,0 +1,124 @@
+package com.mmo.server.persistence;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed set of JDBC connections shared by the threads that read.
+ * A borrower waits for a free connection rather than opening another, so
+ * the database never sees more than {@code size} readers from this server.
+ */
+class ConnectionPool {
+    private static final long BORROW_TIMEOUT_MILLIS = 5000;
+    private static final int VALIDATE_TIMEOUT_SECONDS = 2;
+
+    private final String url;
+    private final BlockingQueue<Connection> idle;
+    private final List<Connection> all; // Guarded by this
+    private volatile boolean closed;
+
+    // Statistics
+    private final LongAdder borrows;
+    private final LongAdder waits;
+    private final LongAdder replaced;
+
+    ConnectionPool(String url, int size) throws SQLException {
+        this.url = url;
+        this.idle = new ArrayBlockingQueue<>(size);
+        this.all = new ArrayList<>(size);
+        this.borrows = new LongAdder();
+        this.waits = new LongAdder();
+        this.replaced = new LongAdder();
+        for (int i = 0; i < size; i++) {
+            Connection connection = open();
+            all.add(connection);
+            idle.add(connection);
+        }
+    }
+
+    /**
+     * Take a connection, waiting for one to come back if all are in use.
+     * Hand it back with {@link #release}.
+     */
+    Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        borrows.increment();
+        Connection connection = idle.poll();
+        if (connection == null) {
+            waits.increment();
+            try {
+                connection = idle.poll(BORROW_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted waiting for a connection");
+            }
+            if (connection == null) {
+                throw new SQLException("No connection free after " + BORROW_TIMEOUT_MILLIS + " ms");
+            }
+        }
+        if (!connection.isValid(VALIDATE_TIMEOUT_SECONDS)) {
+            connection = replace(connection);
+        }
+        return connection;
+    }
+
+    void release(Connection connection) {
+        if (closed) {
+            close(connection);
+        } else {
+            idle.add(connection);
+        }
+    }
+
+    synchronized void close() {
+        closed = true;
+        for (Connection connection : all) {
+            close(connection);
+        }
+        all.clear();
+        idle.clear();
+    }
+
+    String getStatusReport() {
+        return all.size() + " connections, " + idle.size() + " idle, " + borrows.sum() + " borrows, " +
+               waits.sum() + " waited, " + replaced.sum() + " replaced";
+    }
+
+    private synchronized Connection replace(Connection broken) throws SQLException {
+        close(broken);
+        all.remove(broken);
+        Connection connection;
+        try {
+            connection = open();
+        } catch (SQLException e) {
+            // Keep the pool at full size; the next borrower tries again
+            idle.add(broken);
+            all.add(broken);
+            throw e;
+        }
+        all.add(connection);
+        replaced.increment();
+        return connection;
+    }
+
+    private Connection open() throws SQLException {
+        return DriverManager.getConnection(url);
+    }
+
+    private static void close(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // Already unusable
+        }
+    }
+}
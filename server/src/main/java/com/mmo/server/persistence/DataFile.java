@@ -0,0 +1,68 @@
+package com.mmo.server.persistence;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An open log segment or snapshot. Records are read from it with positional
+ * reads, so any number of threads can load from it while the writer appends.
+ */
+class DataFile {
+    private final Path path;
+    private final FileChannel channel;
+    private long size; // Writer thread
+
+    private DataFile(Path path, FileChannel channel, long size) {
+        this.path = path;
+        this.channel = channel;
+        this.size = size;
+    }
+
+    static DataFile create(Path path) throws IOException {
+        return new DataFile(path, FileChannel.open(path, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE), 0);
+    }
+
+    static DataFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        return new DataFile(path, channel, channel.size());
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    FileChannel getChannel() {
+        return channel;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    void grow(long bytes) {
+        size += bytes;
+    }
+
+    /**
+     * The record starting at {@code offset}
+     */
+    LogRecord read(long offset) throws IOException {
+        return RecordReader.readAt(channel, offset);
+    }
+
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close " + path.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return path.getFileName().toString();
+    }
+}
@@ -0,0 +1,25 @@
+package com.mmo.server.persistence;
+
+import java.io.IOException;
+
+/**
+ * A storage backend holding both accounts and characters
+ */
+public interface DataStore extends AccountRepository, CharacterRepository {
+    /**
+     * Load or connect to the stored data. Call once, before {@link #start}.
+     */
+    void open() throws IOException;
+
+    /**
+     * Start writing saves in the background
+     */
+    void start();
+
+    /**
+     * Write everything still queued and release the storage
+     */
+    void stop();
+
+    String getStatusReport();
+}
@@ -0,0 +1,49 @@
+package com.mmo.server.persistence;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One keyed entry in the write-ahead log or a snapshot. The payload is the
+ * full new value (JSON), so the latest record for a key is the current state.
+ */
+public class LogRecord {
+    public static final byte ACCOUNT = 1;
+    public static final byte CHARACTER = 2;
+    public static final byte SNAPSHOT_HEADER = 3; // First record of a snapshot; key = first live log segment
+    // Parts of a character saved since its last full record (see CharacterRecords)
+    public static final byte CHARACTER_STATS = 4;
+    public static final byte CHARACTER_POSITION = 5;
+    public static final byte CHARACTER_EQUIPMENT = 6;
+    public static final byte INVENTORY_GOLD = 7;
+    public static final byte INVENTORY_SLOT = 8;
+
+    private final byte type;
+    private final String key;
+    private final byte[] payload;
+
+    public LogRecord(byte type, String key, byte[] payload) {
+        this.type = type;
+        this.key = key;
+        this.payload = payload;
+    }
+
+    public LogRecord(byte type, String key, String json) {
+        this(type, key, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public String getJson() {
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,567 @@
+package com.mmo.server.persistence;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.InstanceCreator;
+import com.google.gson.reflect.TypeToken;
+import com.mmo.models.CharacterData;
+import com.mmo.models.EquipmentSlot;
+import com.mmo.models.Item;
+import com.mmo.server.UserAccount;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Durable storage for accounts and characters in an append-only log; the default backend.
+ *
+ * Every save is appended to a checksummed write-ahead log by a single writer
+ * thread. Callers only serialize the value and enqueue it, so they never wait
+ * on the disk; the returned future completes once the record has been synced.
+ * The writer takes everything queued at once and syncs it with one fsync
+ * (group commit), so the sync cost is shared by however many saves piled up.
+ *
+ * Characters are saved in parts (see {@link CharacterRecords}), so a change
+ * only writes the part it touched.
+ *
+ * Values are not kept in memory. An index maps each key to where its latest
+ * record lives: the queued record until the writer has written it, then a file
+ * and offset. Characters are read back from there on demand.
+ *
+ * Once enough log has been written the writer starts a new log segment, copies
+ * the latest record of every key into a compacted snapshot and deletes the
+ * segments the snapshot covers. Recovery reads the snapshot and the remaining
+ * segments once to rebuild the index, and decodes only the accounts.
+ */
+public class PersistenceStore implements DataStore {
+    private static final String SNAPSHOT_FILE = "snapshot.dat";
+    private static final String SNAPSHOT_TEMP_FILE = "snapshot.tmp";
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int BATCH_LIMIT = 4096;
+    private static final int SNAPSHOT_CHUNK = 1024 * 1024; // Bytes buffered between writes while compacting
+    private static final int LOAD_ATTEMPTS = 3;
+
+    private final Path directory;
+    private final long compactAfterBytes;
+    private final Gson gson;
+    private final CharacterRecords characterRecords;
+    private final LinkedBlockingQueue<Pending> queue;
+    private final Object appendLock; // Keeps index order the same as log order
+    private volatile boolean accepting;
+    private Thread writerThread;
+
+    private final Map<String, UserAccount> accounts; // Decoded once at startup, then kept
+
+    // Index; updated by saving threads, read by loaders and the writer
+    private final Map<String, RecordRef> accountRefs;
+    private final Map<String, CharacterRecords.Entry> characterEntries;
+
+    // Writer thread (recovery runs before it starts)
+    private final RecordWriter writer;
+    private final List<Pending> batch;
+    private final List<Integer> batchOffsets;
+    private final TreeMap<Long, DataFile> segments; // Live segments by number; the last is appended to
+    private DataFile snapshot;
+    private long bytesSinceSnapshot;
+    private long snapshotBytes;
+
+    // Statistics (written by the writer thread)
+    private volatile long recordsWritten;
+    private volatile long batchesWritten;
+    private volatile long syncNanos;
+    private volatile long snapshotsWritten;
+    private volatile long failures;
+
+    public PersistenceStore(Path directory, long compactAfterBytes) {
+        this.directory = directory;
+        this.compactAfterBytes = compactAfterBytes;
+        this.gson = createGson();
+        this.characterRecords = new CharacterRecords(gson);
+        this.queue = new LinkedBlockingQueue<>();
+        this.appendLock = new Object();
+        this.accounts = new ConcurrentHashMap<>();
+        this.accountRefs = new ConcurrentHashMap<>();
+        this.characterEntries = new ConcurrentHashMap<>();
+        this.writer = new RecordWriter();
+        this.batch = new ArrayList<>();
+        this.batchOffsets = new ArrayList<>();
+        this.segments = new TreeMap<>();
+        this.accepting = true;
+    }
+
+    /**
+     * Index the latest snapshot and the log after it and load the accounts
+     */
+    @Override
+    public void open() throws IOException {
+        long startTime = System.nanoTime();
+        Files.createDirectories(directory);
+        Files.deleteIfExists(directory.resolve(SNAPSHOT_TEMP_FILE));
+
+        long firstLiveSegment = 0;
+        int snapshotRecords = 0;
+        Path snapshotPath = directory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshotPath)) {
+            // Snapshots are synced before being renamed into place, so any damage here is real
+            RecordReader reader = new RecordReader(snapshotPath);
+            snapshot = DataFile.open(snapshotPath);
+            LogRecord header = reader.next();
+            if (header == null || header.getType() != LogRecord.SNAPSHOT_HEADER) {
+                throw new IOException("Snapshot " + snapshotPath + " has no header");
+            }
+            firstLiveSegment = Long.parseLong(header.getKey());
+            snapshotBytes = reader.getLength();
+            for (LogRecord record = reader.next(); record != null; record = reader.next()) {
+                index(record, new RecordRef(snapshot, reader.getRecordStart()));
+                snapshotRecords++;
+            }
+            if (reader.isDamaged()) {
+                throw new IOException("Snapshot " + snapshotPath + " is damaged at byte " + reader.getValidLength());
+            }
+        }
+
+        int logRecords = 0;
+        long nextSegment = firstLiveSegment;
+        TreeMap<Long, Path> segmentPaths = listSegments();
+        for (Map.Entry<Long, Path> entry : segmentPaths.entrySet()) {
+            if (entry.getKey() < firstLiveSegment) {
+                Files.delete(entry.getValue()); // Left behind by a crash during compaction
+                continue;
+            }
+            RecordReader reader = new RecordReader(entry.getValue());
+            DataFile file = DataFile.open(entry.getValue());
+            for (LogRecord record = reader.next(); record != null; record = reader.next()) {
+                index(record, new RecordRef(file, reader.getRecordStart()));
+                logRecords++;
+            }
+            bytesSinceSnapshot += reader.getValidLength();
+            if (reader.isDamaged()) {
+                discardTail(reader, entry.getKey().equals(segmentPaths.lastKey()));
+            }
+            segments.put(entry.getKey(), file);
+            nextSegment = entry.getKey() + 1;
+        }
+
+        for (RecordRef ref : accountRefs.values()) {
+            UserAccount account = gson.fromJson(ref.read().getJson(), UserAccount.class);
+            accounts.put(account.getUsername(), account);
+        }
+
+        // Always append to a fresh segment, never after a possibly torn tail
+        openSegment(nextSegment);
+
+        System.out.println("Recovered " + accounts.size() + " accounts and indexed " +
+                         characterEntries.size() + " characters from " + snapshotRecords +
+                         " snapshot + " + logRecords + " log records in " +
+                         (System.nanoTime() - startTime) / 1_000_000 + " ms");
+    }
+
+    @Override
+    public void start() {
+        writerThread = new Thread(this::writeLoop, "persistence-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Write everything still queued, take a final snapshot and close the files
+     */
+    @Override
+    public void stop() {
+        synchronized (appendLock) {
+            accepting = false;
+            queue.add(Pending.STOP);
+        }
+        if (writerThread != null) {
+            try {
+                writerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public UserAccount findAccount(String username) {
+        return accounts.get(username);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> createAccount(UserAccount account) {
+        if (accounts.putIfAbsent(account.getUsername(), account) != null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return saveAccount(account).thenApply(ignored -> true);
+    }
+
+    /**
+     * Queue the account's current state; completes when it is on disk.
+     * Serializes on the calling thread, which must own the account.
+     */
+    @Override
+    public CompletableFuture<Void> saveAccount(UserAccount account) {
+        return append(new LogRecord(LogRecord.ACCOUNT, account.getUsername(), gson.toJson(account)));
+    }
+
+    /**
+     * Queue the character's current state; completes when it is on disk.
+     * Serializes on the calling thread, which must own the character.
+     * The owner isn't stored here; the account record lists its characters.
+     */
+    @Override
+    public CompletableFuture<Void> saveCharacter(String username, CharacterData character) {
+        return append(characterRecords.full(character));
+    }
+    
+    @Override
+    public CompletableFuture<Void> saveCharacterChanges(CharacterData character, int parts, long slots, boolean gold) {
+        List<LogRecord> records = new ArrayList<>();
+        characterRecords.changes(character, parts, slots, gold, records);
+        // The log is written in order, so the last record being synced means all of them are
+        CompletableFuture<Void> last = CompletableFuture.completedFuture(null);
+        for (LogRecord record : records) {
+            last = append(record);
+        }
+        return last;
+    }
+
+    /**
+     * Read a character back from disk, or from the queue if its latest save isn't written yet
+     */
+    @Override
+    public CharacterData loadCharacter(long characterId) throws IOException {
+        CharacterRecords.Entry entry = characterEntries.get(Long.toString(characterId));
+        if (entry == null) {
+            return null;
+        }
+        for (int attempt = 1; ; attempt++) {
+            List<RecordRef> refs = entry.refs();
+            if (refs.isEmpty()) {
+                return null;
+            }
+            try {
+                List<LogRecord> records = new ArrayList<>(refs.size());
+                for (RecordRef ref : refs) {
+                    records.add(ref.read());
+                }
+                return characterRecords.decode(records);
+            } catch (ClosedChannelException e) {
+                // Compaction retired the file mid-read; the index already points at the copy
+                if (attempt == LOAD_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    @Override
+    public List<Long> findCharacterIds(String username) {
+        UserAccount account = accounts.get(username);
+        if (account == null) {
+            return new ArrayList<>();
+        }
+        synchronized (account) {
+            return new ArrayList<>(account.getCharacterIds());
+        }
+    }
+
+    @Override
+    public long getMaxCharacterId(long fromId, long toId) {
+        long max = fromId - 1;
+        for (String key : characterEntries.keySet()) {
+            long id = Long.parseLong(key);
+            if (id >= fromId && id < toId && id > max) {
+                max = id;
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public int getAccountCount() {
+        return accounts.size();
+    }
+
+    @Override
+    public int getCharacterCount() {
+        return characterEntries.size();
+    }
+
+    public int getQueued() {
+        return queue.size();
+    }
+
+    @Override
+    public String getStatusReport() {
+        long batches = batchesWritten;
+        return "Persistence: " + recordsWritten + " records in " + batches + " syncs (" +
+               (batches > 0 ? String.format("%.1f records, %.2f ms", recordsWritten / (double) batches,
+                                            syncNanos / 1_000_000.0 / batches) : "-") +
+               " per sync), " + accountRefs.size() + " accounts and " + characterEntries.size() +
+               " characters indexed, " + snapshotsWritten + " snapshots, " + queue.size() + " queued, " +
+               failures + " failures";
+    }
+
+    private CompletableFuture<Void> append(LogRecord record) {
+        RecordRef ref = new RecordRef(record);
+        Pending pending = new Pending(record, ref);
+        synchronized (appendLock) {
+            if (!accepting) {
+                pending.future.completeExceptionally(new IOException("Persistence store is stopped"));
+                return pending.future;
+            }
+            index(record, ref);
+            queue.add(pending);
+        }
+        return pending.future;
+    }
+
+    private void writeLoop() {
+        while (true) {
+            batch.clear();
+            batchOffsets.clear();
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, BATCH_LIMIT - 1);
+
+            boolean stopping = false;
+            int records = 0;
+            for (Pending pending : batch) {
+                if (pending == Pending.STOP) {
+                    stopping = true;
+                    batchOffsets.add(-1);
+                } else {
+                    batchOffsets.add(writer.add(pending.record));
+                    records++;
+                }
+            }
+
+            DataFile segment = segments.lastEntry().getValue();
+            try {
+                if (records > 0) {
+                    long startTime = System.nanoTime();
+                    long base = segment.getSize();
+                    long bytes = writer.flush(segment.getChannel());
+                    segment.grow(bytes);
+                    segment.getChannel().force(false);
+                    syncNanos += System.nanoTime() - startTime;
+                    recordsWritten += records;
+                    batchesWritten++;
+                    bytesSinceSnapshot += bytes;
+                    for (int i = 0; i < batch.size(); i++) {
+                        Pending pending = batch.get(i);
+                        if (pending != Pending.STOP) {
+                            pending.ref.written(segment, base + batchOffsets.get(i));
+                        }
+                    }
+                }
+                for (Pending pending : batch) {
+                    pending.future.complete(null);
+                }
+            } catch (IOException e) {
+                // The records stay in memory; continue in a new segment and snapshot them soon
+                failures++;
+                System.err.println("Failed to write log: " + e.getMessage());
+                for (Pending pending : batch) {
+                    pending.future.completeExceptionally(e);
+                }
+                writer.reset();
+                bytesSinceSnapshot = compactAfterBytes;
+                try {
+                    openSegment(segments.lastKey() + 1);
+                } catch (IOException retry) {
+                    System.err.println("Failed to start log segment: " + retry.getMessage());
+                }
+            }
+
+            // Waiting for as much log as the snapshot holds keeps rewrites to at most 2x the log
+            if (stopping || bytesSinceSnapshot >= Math.max(compactAfterBytes, snapshotBytes)) {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    failures++;
+                    writer.reset();
+                    System.err.println("Failed to write snapshot: " + e.getMessage());
+                }
+            }
+            if (stopping) {
+                closeFiles();
+                return;
+            }
+        }
+    }
+
+    private void index(LogRecord record, RecordRef ref) {
+        if (record.getType() == LogRecord.ACCOUNT) {
+            accountRefs.put(record.getKey(), ref);
+        } else if (CharacterRecords.isCharacterRecord(record)) {
+            characterEntries.computeIfAbsent(CharacterRecords.characterKey(record), key -> new CharacterRecords.Entry())
+                .apply(record.getType(), record.getKey(), ref);
+        }
+    }
+
+    /**
+     * Start a new segment, copy the latest record of every key into a snapshot
+     * and retire the files the snapshot covers
+     */
+    private void compact() throws IOException {
+        long firstLiveSegment = segments.lastKey() + 1;
+        openSegment(firstLiveSegment);
+
+        Path temp = directory.resolve(SNAPSHOT_TEMP_FILE);
+        DataFile next = DataFile.create(temp);
+        List<RecordRef> copied = new ArrayList<>();
+        List<Long> offsets = new ArrayList<>();
+        try {
+            writer.writeHeader(next.getChannel());
+            next.grow(RecordWriter.HEADER_SIZE);
+            writer.add(new LogRecord(LogRecord.SNAPSHOT_HEADER, Long.toString(firstLiveSegment), new byte[0]));
+            for (RecordRef ref : accountRefs.values()) {
+                copy(ref, next, copied, offsets);
+            }
+            for (CharacterRecords.Entry entry : characterEntries.values()) {
+                for (RecordRef ref : entry.refs()) {
+                    copy(ref, next, copied, offsets);
+                }
+            }
+            next.grow(writer.flush(next.getChannel()));
+            next.getChannel().force(true);
+            Files.move(temp, directory.resolve(SNAPSHOT_FILE),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            next.close();
+            throw e;
+        }
+        syncDirectory();
+
+        // Point the index at the copies before the old files go away
+        for (int i = 0; i < copied.size(); i++) {
+            copied.get(i).written(next, offsets.get(i));
+        }
+        if (snapshot != null) {
+            snapshot.close();
+        }
+        snapshot = next;
+        snapshotBytes = next.getSize();
+        while (segments.firstKey() < firstLiveSegment) {
+            DataFile retired = segments.pollFirstEntry().getValue();
+            retired.close();
+            Files.delete(retired.getPath());
+        }
+        bytesSinceSnapshot = 0;
+        snapshotsWritten++;
+    }
+
+    private void copy(RecordRef ref, DataFile target, List<RecordRef> copied, List<Long> offsets) throws IOException {
+        long offset = target.getSize() + writer.buffered();
+        writer.add(ref.read());
+        copied.add(ref);
+        offsets.add(offset);
+        if (writer.buffered() >= SNAPSHOT_CHUNK) {
+            target.grow(writer.flush(target.getChannel()));
+        }
+    }
+
+    private void openSegment(long number) throws IOException {
+        DataFile segment = DataFile.create(directory.resolve(segmentName(number)));
+        writer.writeHeader(segment.getChannel());
+        segment.grow(RecordWriter.HEADER_SIZE);
+        segment.getChannel().force(true);
+        syncDirectory();
+        segments.put(number, segment);
+    }
+
+    private void closeFiles() {
+        for (DataFile segment : segments.values()) {
+            segment.close();
+        }
+        segments.clear();
+        if (snapshot != null) {
+            snapshot.close();
+            snapshot = null;
+        }
+    }
+
+    private void discardTail(RecordReader reader, boolean lastSegment) throws IOException {
+        int discarded = reader.getLength() - reader.getValidLength();
+        if (lastSegment) {
+            // The write in progress when the server stopped
+            try (FileChannel channel = FileChannel.open(reader.getPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(reader.getValidLength());
+            }
+            System.out.println("Discarded " + discarded + " bytes of incomplete log in " + reader.getPath().getFileName());
+        } else {
+            System.err.println("Log segment " + reader.getPath().getFileName() + " is damaged at byte " +
+                             reader.getValidLength() + "; " + discarded + " bytes skipped");
+        }
+    }
+
+    private void syncDirectory() {
+        // Makes file creation and renames durable; not supported on every platform
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Best effort
+        }
+    }
+
+    private TreeMap<Long, Path> listSegments() throws IOException {
+        TreeMap<Long, Path> found = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                try {
+                    found.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                        name.length() - SEGMENT_SUFFIX.length())), path);
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        return found;
+    }
+
+    private static String segmentName(long number) {
+        return String.format("%s%010d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX);
+    }
+
+    static Gson createGson() {
+        // Kryo only has HashMap registered, so equipment must not come back as Gson's own map type
+        return new GsonBuilder()
+            .registerTypeAdapter(new TypeToken<Map<EquipmentSlot, Item>>() {}.getType(),
+                (InstanceCreator<Map<EquipmentSlot, Item>>) type -> new HashMap<>())
+            .create();
+    }
+
+    private static class Pending {
+        static final Pending STOP = new Pending(null, null);
+
+        final LogRecord record;
+        final RecordRef ref;
+        final CompletableFuture<Void> future;
+
+        Pending(LogRecord record, RecordRef ref) {
+            this.record = record;
+            this.ref = ref;
+            this.future = new CompletableFuture<>();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.mmo.server.persistence;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Reads the records written by {@link RecordWriter}, stopping at the first
+ * record that is cut short or fails its checksum
+ */
+class RecordReader {
+    private final Path path;
+    private final ByteBuffer data;
+    private final CRC32 crc;
+    private int validLength;
+    private int recordStart;
+    private boolean damaged;
+
+    RecordReader(Path path) throws IOException {
+        this.path = path;
+        this.data = ByteBuffer.wrap(Files.readAllBytes(path));
+        this.crc = new CRC32();
+        if (data.remaining() < RecordWriter.HEADER_SIZE ||
+            data.getInt() != RecordWriter.MAGIC || data.getInt() != RecordWriter.VERSION) {
+            // A file created just before a crash may not even have its header
+            damaged = data.capacity() > 0;
+            data.position(data.limit());
+        } else {
+            validLength = data.position();
+        }
+    }
+
+    /**
+     * The next intact record, or null at the end of the file or the first damaged record
+     */
+    LogRecord next() {
+        if (data.remaining() == 0) {
+            return null;
+        }
+        if (data.remaining() < 8) {
+            return stop();
+        }
+        int start = data.position();
+        int bodyLength = data.getInt();
+        int checksum = data.getInt();
+        if (bodyLength < 3 || bodyLength > RecordWriter.MAX_BODY_SIZE || bodyLength > data.remaining()) {
+            return stop();
+        }
+
+        ByteBuffer body = data.duplicate();
+        body.limit(data.position() + bodyLength);
+        crc.reset();
+        crc.update(body.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            return stop();
+        }
+        data.position(data.position() + bodyLength);
+
+        LogRecord record = decode(body);
+        if (record == null) {
+            return stop();
+        }
+        recordStart = start;
+        validLength = data.position();
+        return record;
+    }
+
+    /**
+     * Read one record at a known offset, as recorded when it was written or recovered
+     */
+    static LogRecord readAt(FileChannel channel, long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(8);
+        readFully(channel, header, offset);
+        int bodyLength = header.getInt();
+        int checksum = header.getInt();
+        if (bodyLength < 3 || bodyLength > RecordWriter.MAX_BODY_SIZE) {
+            throw new IOException("Bad record length " + bodyLength + " at offset " + offset);
+        }
+
+        ByteBuffer body = ByteBuffer.allocate(bodyLength);
+        readFully(channel, body, offset + 8);
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        LogRecord record = (int) crc.getValue() == checksum ? decode(body) : null;
+        if (record == null) {
+            throw new IOException("Damaged record at offset " + offset);
+        }
+        return record;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Record at offset " + offset + " runs past the end of the file");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static LogRecord decode(ByteBuffer body) {
+        byte type = body.get();
+        int keyLength = body.getShort() & 0xFFFF;
+        if (keyLength > body.remaining()) {
+            return null;
+        }
+        byte[] key = new byte[keyLength];
+        body.get(key);
+        byte[] payload = new byte[body.remaining()];
+        body.get(payload);
+        return new LogRecord(type, new String(key, StandardCharsets.UTF_8), payload);
+    }
+
+    /**
+     * True if reading stopped at a damaged record rather than the end of the file
+     */
+    boolean isDamaged() {
+        return damaged;
+    }
+
+    /**
+     * Offset of the record last returned by {@link #next}
+     */
+    int getRecordStart() {
+        return recordStart;
+    }
+
+    /**
+     * Bytes up to the end of the last intact record
+     */
+    int getValidLength() {
+        return validLength;
+    }
+
+    int getLength() {
+        return data.capacity();
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    private LogRecord stop() {
+        damaged = true;
+        data.position(data.limit());
+        return null;
+    }
+}
@@ -0,0 +1,49 @@
+package com.mmo.server.persistence;
+
+import java.io.IOException;
+
+/**
+ * Where the latest value of a key lives: in memory until the writer has put
+ * it in the log, then at a file offset. The store keeps one per key instead
+ * of the values themselves, so its memory use doesn't grow with their size.
+ */
+class RecordRef {
+    private volatile LogRecord pending;
+    private volatile Location location;
+
+    RecordRef(LogRecord pending) {
+        this.pending = pending;
+    }
+
+    RecordRef(DataFile file, long offset) {
+        this.location = new Location(file, offset);
+    }
+
+    /**
+     * Note where the record was written and let go of the in-memory copy (writer thread)
+     */
+    void written(DataFile file, long offset) {
+        location = new Location(file, offset);
+        pending = null;
+    }
+
+    LogRecord read() throws IOException {
+        LogRecord record = pending;
+        if (record != null) {
+            return record;
+        }
+        // Written before pending was cleared, so always set here
+        Location current = location;
+        return current.file.read(current.offset);
+    }
+
+    private static class Location {
+        final DataFile file;
+        final long offset;
+
+        Location(DataFile file, long offset) {
+            this.file = file;
+            this.offset = offset;
+        }
+    }
+}
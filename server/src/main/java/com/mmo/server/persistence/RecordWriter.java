@@ -0,0 +1,100 @@
+package com.mmo.server.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Frames records for the log and snapshot files.
+ *
+ * File:   magic (int), version (int), records...
+ * Record: body length (int), CRC32 of body (int), body
+ * Body:   type (byte), key length (short), key (UTF-8), payload
+ *
+ * A crash mid-write leaves a short or mismatching last record, which
+ * {@link RecordReader} detects and recovery discards.
+ */
+class RecordWriter {
+    static final int MAGIC = 0x4D4D4F4C; // "MMOL"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int MAX_BODY_SIZE = 16 * 1024 * 1024;
+
+    private final CRC32 crc;
+    private ByteBuffer buffer;
+
+    RecordWriter() {
+        this.crc = new CRC32();
+        this.buffer = ByteBuffer.allocateDirect(64 * 1024);
+    }
+
+    void writeHeader(FileChannel channel) throws IOException {
+        buffer.clear();
+        buffer.putInt(MAGIC).putInt(VERSION).flip();
+        drain(channel);
+    }
+
+    /**
+     * Append a record to the buffer and return its offset in the buffer;
+     * call {@link #flush} to write them out
+     */
+    int add(LogRecord record) {
+        byte[] key = record.getKey().getBytes(StandardCharsets.UTF_8);
+        int bodyLength = 1 + 2 + key.length + record.getPayload().length;
+        ensureRemaining(8 + bodyLength);
+
+        int start = buffer.position();
+        buffer.position(start + 8);
+        buffer.put(record.getType()).putShort((short) key.length).put(key).put(record.getPayload());
+
+        ByteBuffer body = buffer.duplicate();
+        body.position(start + 8).limit(start + 8 + bodyLength);
+        crc.reset();
+        crc.update(body);
+        buffer.putInt(start, bodyLength);
+        buffer.putInt(start + 4, (int) crc.getValue());
+        return start;
+    }
+
+    /**
+     * Bytes added since the last flush
+     */
+    int buffered() {
+        return buffer.position();
+    }
+
+    /**
+     * Write everything added since the last flush; returns the byte count
+     */
+    long flush(FileChannel channel) throws IOException {
+        buffer.flip();
+        long bytes = buffer.remaining();
+        drain(channel);
+        return bytes;
+    }
+
+    /**
+     * Drop anything added or left over from a failed write
+     */
+    void reset() {
+        buffer.clear();
+    }
+
+    private void drain(FileChannel channel) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void ensureRemaining(int bytes) {
+        if (buffer.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+    }
+}
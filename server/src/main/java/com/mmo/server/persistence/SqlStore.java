@@ -0,0 +1,702 @@
+package com.mmo.server.persistence;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.mmo.models.Ability;
+import com.mmo.models.CharacterClass;
+import com.mmo.models.CharacterData;
+import com.mmo.models.EquipmentSlot;
+import com.mmo.models.Inventory;
+import com.mmo.models.InventoryItem;
+import com.mmo.models.Item;
+import com.mmo.server.UserAccount;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Accounts and characters in an embedded H2 database, one table row per
+ * account, character and inventory slot.
+ *
+ * The database runs inside the server process but is opened with
+ * AUTO_SERVER, so tools can connect to the same file while the server runs:
+ * {@code jdbc:h2:file:<data dir>/mmo;AUTO_SERVER=TRUE}.
+ *
+ * Saves bind their values on the calling thread and are queued. A single
+ * writer thread takes everything queued at once, keeps only the latest row
+ * per key, and runs each statement kind as one JDBC batch in a single
+ * transaction. Reads use a small connection pool. A character or account is
+ * never read while a save of it is still queued, so a load always sees the
+ * latest save. The writer also recounts accounts and characters after any
+ * commit that may have added one, so the counts never cost a query.
+ */
+public class SqlStore implements DataStore {
+    private static final int BATCH_LIMIT = 4096;
+    private static final Type EQUIPMENT_TYPE = new TypeToken<Map<EquipmentSlot, Item>>() {}.getType();
+    private static final Type ABILITIES_TYPE = new TypeToken<ArrayList<Ability>>() {}.getType();
+
+    private static final String[] SCHEMA = {
+        "CREATE TABLE IF NOT EXISTS accounts (" +
+            "username VARCHAR(64) PRIMARY KEY, password VARCHAR(255) NOT NULL, email VARCHAR(255), " +
+            "created_at BIGINT NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS characters (" +
+            "id BIGINT PRIMARY KEY, username VARCHAR(64) NOT NULL, name VARCHAR(64) NOT NULL, " +
+            "character_class VARCHAR(32) NOT NULL, level INT, experience INT, health INT, max_health INT, " +
+            "mana INT, max_mana INT, attack INT, defense INT, x REAL, y REAL, gold INT, inventory_size INT, " +
+            "created_at BIGINT, equipment VARCHAR, abilities VARCHAR, ability_cooldowns VARCHAR)",
+        "CREATE INDEX IF NOT EXISTS characters_by_username ON characters (username)",
+        "CREATE TABLE IF NOT EXISTS inventory_slots (" +
+            "character_id BIGINT NOT NULL, slot INT NOT NULL, item_name VARCHAR(64), quantity INT, " +
+            "item VARCHAR NOT NULL, PRIMARY KEY (character_id, slot))"
+    };
+
+    // Row kinds, in the order a batch runs them
+    private static final int ACCOUNT = 0;
+    private static final int CHARACTER = 1;
+    private static final int CLEAR_SLOTS = 2;
+    private static final int STATS = 3;
+    private static final int POSITION = 4;
+    private static final int EQUIPMENT = 5;
+    private static final int GOLD = 6;
+    private static final int SLOT = 7;
+    private static final int DELETE_SLOT = 8; // A SLOT row without an item
+    private static final String[] WRITE_SQL = {
+        "MERGE INTO accounts (username, password, email, created_at) KEY (username) VALUES (?, ?, ?, ?)",
+        "MERGE INTO characters (id, username, name, character_class, level, experience, health, max_health, " +
+            "mana, max_mana, attack, defense, x, y, gold, inventory_size, created_at, equipment, abilities, " +
+            "ability_cooldowns) KEY (id) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+        "DELETE FROM inventory_slots WHERE character_id = ?",
+        "UPDATE characters SET level = ?, experience = ?, health = ?, max_health = ?, mana = ?, max_mana = ?, " +
+            "attack = ?, defense = ? WHERE id = ?",
+        "UPDATE characters SET x = ?, y = ? WHERE id = ?",
+        "UPDATE characters SET equipment = ? WHERE id = ?",
+        "UPDATE characters SET gold = ?, inventory_size = ? WHERE id = ?",
+        "MERGE INTO inventory_slots (character_id, slot, item_name, quantity, item) KEY (character_id, slot) " +
+            "VALUES (?, ?, ?, ?, ?)",
+        "DELETE FROM inventory_slots WHERE character_id = ? AND slot = ?"
+    };
+    private static final String SELECT_ACCOUNT =
+        "SELECT username, password, email, created_at FROM accounts WHERE username = ?";
+    private static final String SELECT_CHARACTER_IDS = "SELECT id FROM characters WHERE username = ? ORDER BY id";
+    private static final String SELECT_CHARACTER =
+        "SELECT name, character_class, level, experience, health, max_health, mana, max_mana, attack, defense, " +
+        "x, y, gold, inventory_size, created_at, equipment, abilities, ability_cooldowns FROM characters WHERE id = ?";
+    private static final String SELECT_SLOTS = "SELECT item FROM inventory_slots WHERE character_id = ? ORDER BY slot";
+    private static final String SELECT_MAX_ID = "SELECT MAX(id) FROM characters WHERE id >= ? AND id < ?";
+
+    private final Path directory;
+    private final int poolSize;
+    private final Gson gson;
+    private final LinkedBlockingQueue<Save> queue;
+    private final Object appendLock; // Keeps lastWrites in queue order
+    private final int cachedAccounts;
+    private final LinkedHashMap<String, UserAccount> accounts; // Recently looked up, in access order; guarded by itself
+    private final Map<Long, CompletableFuture<Void>> lastWrites; // Latest queued save per character
+    private final Map<String, CompletableFuture<Void>> lastAccountWrites; // Latest queued save per account
+    private volatile boolean accepting;
+    private String url;
+    private ConnectionPool pool;
+    private Thread writerThread;
+
+    // Writer thread
+    private Connection writeConnection;
+    private PreparedStatement[] statements;
+    private final List<Save> batch;
+
+    // Statistics (written by the writer thread)
+    private volatile long savesWritten;
+    private volatile long rowsWritten;
+    private volatile long rowsCoalesced;
+    private volatile long commits;
+    private volatile long commitNanos;
+    private volatile long failures;
+    private volatile int accountCount;
+    private volatile int characterCount;
+
+    public SqlStore(Path directory, int poolSize, int cachedAccounts) {
+        this.directory = directory;
+        this.poolSize = poolSize;
+        this.gson = PersistenceStore.createGson();
+        this.queue = new LinkedBlockingQueue<>();
+        this.appendLock = new Object();
+        this.cachedAccounts = cachedAccounts;
+        this.accounts = new LinkedHashMap<String, UserAccount>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, UserAccount> eldest) {
+                return size() > SqlStore.this.cachedAccounts;
+            }
+        };
+        this.lastWrites = new ConcurrentHashMap<>();
+        this.lastAccountWrites = new ConcurrentHashMap<>();
+        this.batch = new ArrayList<>();
+        this.accepting = true;
+    }
+
+    /**
+     * Open (or create) the database and its tables
+     */
+    @Override
+    public void open() throws IOException {
+        Files.createDirectories(directory);
+        url = "jdbc:h2:file:" + directory.toAbsolutePath().resolve("mmo") + ";AUTO_SERVER=TRUE";
+        try {
+            writeConnection = DriverManager.getConnection(url);
+            try (Statement statement = writeConnection.createStatement()) {
+                for (String sql : SCHEMA) {
+                    statement.execute(sql);
+                }
+            }
+            prepareWrites();
+            recount();
+            pool = new ConnectionPool(url, poolSize);
+        } catch (SQLException e) {
+            throw new IOException("Failed to open database " + url + ": " + e.getMessage(), e);
+        }
+        System.out.println("Opened database " + url + " (" + getAccountCount() + " accounts, " +
+                         getCharacterCount() + " characters)");
+    }
+
+    @Override
+    public void start() {
+        writerThread = new Thread(this::writeLoop, "sql-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @Override
+    public void stop() {
+        synchronized (appendLock) {
+            accepting = false;
+            queue.add(Save.STOP);
+        }
+        if (writerThread != null) {
+            try {
+                writerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Override
+    public UserAccount findAccount(String username) throws IOException {
+        UserAccount account;
+        synchronized (accounts) {
+            account = accounts.get(username);
+        }
+        if (account != null) {
+            return account;
+        }
+        awaitWrites(lastAccountWrites.get(username));
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            try (PreparedStatement select = connection.prepareStatement(SELECT_ACCOUNT)) {
+                select.setString(1, username);
+                try (ResultSet row = select.executeQuery()) {
+                    if (!row.next()) {
+                        return null;
+                    }
+                    account = new UserAccount(row.getString(1), row.getString(2), row.getString(3), row.getLong(4));
+                }
+            }
+            account.getCharacterIds().addAll(queryCharacterIds(connection, username));
+        } catch (SQLException e) {
+            throw new IOException("Failed to load account " + username + ": " + e.getMessage(), e);
+        } finally {
+            release(connection);
+        }
+        synchronized (accounts) {
+            UserAccount existing = accounts.putIfAbsent(username, account);
+            return existing != null ? existing : account;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Boolean> createAccount(UserAccount account) {
+        try {
+            if (findAccount(account.getUsername()) != null) {
+                return CompletableFuture.completedFuture(false);
+            }
+            synchronized (accounts) {
+                // Kept here until the save is queued, so a second registration of the name sees it
+                if (accounts.putIfAbsent(account.getUsername(), account) != null) {
+                    return CompletableFuture.completedFuture(false);
+                }
+                return saveAccount(account).thenApply(ignored -> true);
+            }
+        } catch (IOException e) {
+            CompletableFuture<Boolean> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAccount(UserAccount account) {
+        Save save = new Save(-1, account.getUsername());
+        save.rows.add(new Row(ACCOUNT, -1, account.getUsername(), new Object[] {
+            account.getUsername(), account.getPassword(), account.getEmail(), account.getCreatedAt()
+        }));
+        return append(save);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveCharacter(String username, CharacterData character) {
+        long id = character.getId();
+        Inventory inventory = character.getInventory();
+        Save save = new Save(id);
+        save.rows.add(new Row(CHARACTER, id, null, new Object[] {
+            id, username, character.getName(), character.getCharacterClass().name(),
+            character.getLevel(), character.getExperience(), character.getHealth(), character.getMaxHealth(),
+            character.getMana(), character.getMaxMana(), character.getAttack(), character.getDefense(),
+            character.getX(), character.getY(), inventory.getGold(), inventory.getMaxSize(),
+            character.getCreatedAt(), gson.toJson(character.getEquippedItems(), EQUIPMENT_TYPE),
+            gson.toJson(character.getAbilities(), ABILITIES_TYPE), gson.toJson(character.getAbilityCooldowns())
+        }));
+        save.rows.add(new Row(CLEAR_SLOTS, id, null, new Object[] {id}));
+        for (InventoryItem item : inventory.getItems()) {
+            save.rows.add(slotRow(id, item.getSlotIndex(), item));
+        }
+        return append(save);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveCharacterChanges(CharacterData character, int parts, long slots, boolean gold) {
+        long id = character.getId();
+        Save save = new Save(id);
+        if ((parts & CharacterData.DIRTY_STATS) != 0) {
+            save.rows.add(new Row(STATS, id, null, new Object[] {
+                character.getLevel(), character.getExperience(), character.getHealth(), character.getMaxHealth(),
+                character.getMana(), character.getMaxMana(), character.getAttack(), character.getDefense(), id
+            }));
+        }
+        if ((parts & CharacterData.DIRTY_POSITION) != 0) {
+            save.rows.add(new Row(POSITION, id, null, new Object[] {character.getX(), character.getY(), id}));
+        }
+        if ((parts & CharacterData.DIRTY_EQUIPMENT) != 0) {
+            save.rows.add(new Row(EQUIPMENT, id, null, new Object[] {
+                gson.toJson(character.getEquippedItems(), EQUIPMENT_TYPE), id
+            }));
+        }
+
+        Inventory inventory = character.getInventory();
+        if (gold) {
+            save.rows.add(new Row(GOLD, id, null, new Object[] {inventory.getGold(), inventory.getMaxSize(), id}));
+        }
+        for (int slot = 0; slots != 0 && slot < inventory.getMaxSize(); slot++) {
+            long bit = 1L << Math.min(slot, 63);
+            if ((slots & bit) != 0) {
+                save.rows.add(slotRow(id, slot, inventory.getItemAtSlot(slot)));
+                if (slot < 63) {
+                    slots &= ~bit;
+                }
+            }
+        }
+        if (save.rows.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return append(save);
+    }
+
+    @Override
+    public CharacterData loadCharacter(long characterId) throws IOException {
+        awaitWrites(lastWrites.get(characterId));
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            CharacterData character = new CharacterData();
+            Inventory inventory = new Inventory();
+            try (PreparedStatement select = connection.prepareStatement(SELECT_CHARACTER)) {
+                select.setLong(1, characterId);
+                try (ResultSet row = select.executeQuery()) {
+                    if (!row.next()) {
+                        return null;
+                    }
+                    character.setId(characterId);
+                    character.setName(row.getString(1));
+                    character.setCharacterClass(CharacterClass.valueOf(row.getString(2)));
+                    character.setLevel(row.getInt(3));
+                    character.setExperience(row.getInt(4));
+                    character.setHealth(row.getInt(5));
+                    character.setMaxHealth(row.getInt(6));
+                    character.setMana(row.getInt(7));
+                    character.setMaxMana(row.getInt(8));
+                    character.setAttack(row.getInt(9));
+                    character.setDefense(row.getInt(10));
+                    character.setX(row.getFloat(11));
+                    character.setY(row.getFloat(12));
+                    inventory.setGold(row.getInt(13));
+                    inventory.setMaxSize(row.getInt(14));
+                    character.setCreatedAt(row.getLong(15));
+                    Map<EquipmentSlot, Item> equipment = gson.fromJson(row.getString(16), EQUIPMENT_TYPE);
+                    character.setEquippedItems(equipment);
+                    List<Ability> abilities = gson.fromJson(row.getString(17), ABILITIES_TYPE);
+                    character.setAbilities(abilities);
+                    character.setAbilityCooldowns(gson.fromJson(row.getString(18), long[].class));
+                }
+            }
+            try (PreparedStatement select = connection.prepareStatement(SELECT_SLOTS)) {
+                select.setLong(1, characterId);
+                try (ResultSet row = select.executeQuery()) {
+                    while (row.next()) {
+                        inventory.getItems().add(gson.fromJson(row.getString(1), InventoryItem.class));
+                    }
+                }
+            }
+            character.setInventory(inventory);
+
+            // Freshly loaded, so nothing is unsaved
+            character.takeDirty();
+            inventory.takeDirtySlots();
+            inventory.takeDirtyGold();
+            return character;
+        } catch (SQLException e) {
+            throw new IOException("Failed to load character " + characterId + ": " + e.getMessage(), e);
+        } finally {
+            release(connection);
+        }
+    }
+
+    @Override
+    public List<Long> findCharacterIds(String username) throws IOException {
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            return queryCharacterIds(connection, username);
+        } catch (SQLException e) {
+            throw new IOException("Failed to list characters of " + username + ": " + e.getMessage(), e);
+        } finally {
+            release(connection);
+        }
+    }
+
+    @Override
+    public long getMaxCharacterId(long fromId, long toId) throws IOException {
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            try (PreparedStatement select = connection.prepareStatement(SELECT_MAX_ID)) {
+                select.setLong(1, fromId);
+                select.setLong(2, toId);
+                try (ResultSet row = select.executeQuery()) {
+                    row.next();
+                    long max = row.getLong(1);
+                    return row.wasNull() ? fromId - 1 : max;
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to find the highest character id: " + e.getMessage(), e);
+        } finally {
+            release(connection);
+        }
+    }
+
+    @Override
+    public int getAccountCount() {
+        return accountCount;
+    }
+
+    @Override
+    public int getCharacterCount() {
+        return characterCount;
+    }
+
+    @Override
+    public String getStatusReport() {
+        long commitCount = commits;
+        return "SQL store: " + savesWritten + " saves as " + rowsWritten + " rows in " + commitCount + " commits (" +
+               (commitCount > 0 ? String.format("%.1f rows, %.2f ms", rowsWritten / (double) commitCount,
+                                                commitNanos / 1_000_000.0 / commitCount) : "-") +
+               " per commit), " + rowsCoalesced + " rows coalesced, " + queue.size() + " queued, " +
+               failures + " failures; pool: " + (pool != null ? pool.getStatusReport() : "closed");
+    }
+
+    private CompletableFuture<Void> append(Save save) {
+        synchronized (appendLock) {
+            if (!accepting) {
+                save.future.completeExceptionally(new IOException("SQL store is stopped"));
+                return save.future;
+            }
+            if (save.characterId >= 0) {
+                lastWrites.put(save.characterId, save.future);
+            } else if (save.username != null) {
+                lastAccountWrites.put(save.username, save.future);
+            }
+            queue.add(save);
+        }
+        return save.future;
+    }
+
+    /**
+     * Wait for the latest queued save of a character or account, if any
+     */
+    private void awaitWrites(CompletableFuture<Void> pending) {
+        if (pending != null) {
+            try {
+                pending.join();
+            } catch (RuntimeException e) {
+                // Failed writes are reported by the writer; read what did get stored
+            }
+        }
+    }
+
+    private void writeLoop() {
+        Map<String, Row> latest = new LinkedHashMap<>();
+        Map<Long, List<String>> keysByCharacter = new HashMap<>(); // Keys in latest of each character's rows
+        List<List<Row>> byKind = new ArrayList<>();
+        for (int kind = 0; kind < WRITE_SQL.length; kind++) {
+            byKind.add(new ArrayList<>());
+        }
+        while (true) {
+            batch.clear();
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, BATCH_LIMIT - 1);
+
+            // Keep the latest row per key; a full save replaces every earlier row of its character
+            boolean stopping = false;
+            boolean added = false; // A new account or character may have been written
+            int rows = 0;
+            latest.clear();
+            keysByCharacter.clear();
+            for (Save save : batch) {
+                if (save == Save.STOP) {
+                    stopping = true;
+                    continue;
+                }
+                for (Row row : save.rows) {
+                    String key = row.kind + ":" + row.key;
+                    if (row.characterId >= 0) {
+                        List<String> keys = keysByCharacter.computeIfAbsent(row.characterId, id -> new ArrayList<>());
+                        if (row.kind == CHARACTER) {
+                            for (String earlier : keys) {
+                                latest.remove(earlier);
+                            }
+                            keys.clear();
+                        }
+                        keys.add(key);
+                    }
+                    added |= row.kind == ACCOUNT || row.kind == CHARACTER;
+                    latest.put(key, row);
+                    rows++;
+                }
+            }
+            for (List<Row> kind : byKind) {
+                kind.clear();
+            }
+            for (Row row : latest.values()) {
+                byKind.get(row.kind == SLOT && row.params.length == 2 ? DELETE_SLOT : row.kind).add(row);
+            }
+
+            try {
+                if (!latest.isEmpty()) {
+                    long startTime = System.nanoTime();
+                    for (int kind = 0; kind < byKind.size(); kind++) {
+                        executeBatch(statements[kind], byKind.get(kind));
+                    }
+                    writeConnection.commit();
+                    commitNanos += System.nanoTime() - startTime;
+                    commits++;
+                    rowsWritten += latest.size();
+                    rowsCoalesced += rows - latest.size();
+                    if (added) {
+                        recount();
+                    }
+                }
+                int saves = 0;
+                for (Save save : batch) {
+                    if (save != Save.STOP) {
+                        saves++;
+                    }
+                }
+                savesWritten += saves;
+                complete(null);
+            } catch (SQLException e) {
+                failures++;
+                System.err.println("Failed to write to database: " + e.getMessage());
+                rollback();
+                complete(e);
+            }
+
+            if (stopping) {
+                closeWrites();
+                return;
+            }
+        }
+    }
+
+    private void executeBatch(PreparedStatement statement, List<Row> rows) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        for (Row row : rows) {
+            for (int i = 0; i < row.params.length; i++) {
+                statement.setObject(i + 1, row.params[i]);
+            }
+            statement.addBatch();
+        }
+        statement.executeBatch();
+    }
+
+    private void complete(SQLException error) {
+        for (Save save : batch) {
+            if (save == Save.STOP) {
+                continue;
+            }
+            if (error == null) {
+                save.future.complete(null);
+            } else {
+                save.future.completeExceptionally(new IOException(error.getMessage(), error));
+            }
+            if (save.characterId >= 0) {
+                lastWrites.remove(save.characterId, save.future);
+            } else if (save.username != null) {
+                lastAccountWrites.remove(save.username, save.future);
+            }
+        }
+    }
+
+    private void rollback() {
+        try {
+            for (PreparedStatement statement : statements) {
+                statement.clearBatch();
+            }
+            writeConnection.rollback();
+        } catch (SQLException e) {
+            // The connection itself is broken; start over with a new one
+            closeWrites();
+            try {
+                writeConnection = DriverManager.getConnection(url);
+                prepareWrites();
+            } catch (SQLException retry) {
+                System.err.println("Failed to reconnect to database: " + retry.getMessage());
+            }
+        }
+    }
+
+    private void prepareWrites() throws SQLException {
+        writeConnection.setAutoCommit(false);
+        statements = new PreparedStatement[WRITE_SQL.length];
+        for (int kind = 0; kind < WRITE_SQL.length; kind++) {
+            statements[kind] = writeConnection.prepareStatement(WRITE_SQL[kind]);
+        }
+    }
+
+    private void closeWrites() {
+        try {
+            writeConnection.close(); // Closes its statements too
+        } catch (SQLException e) {
+            System.err.println("Failed to close database connection: " + e.getMessage());
+        }
+    }
+
+    private Row slotRow(long characterId, int slot, InventoryItem item) {
+        String key = characterId + "/" + slot;
+        if (item == null) {
+            return new Row(SLOT, characterId, key, new Object[] {characterId, slot});
+        }
+        return new Row(SLOT, characterId, key, new Object[] {
+            characterId, slot, item.getItem().getName(), item.getQuantity(), gson.toJson(item)
+        });
+    }
+
+    private List<Long> queryCharacterIds(Connection connection, String username) throws SQLException {
+        List<Long> ids = new ArrayList<>();
+        try (PreparedStatement select = connection.prepareStatement(SELECT_CHARACTER_IDS)) {
+            select.setString(1, username);
+            try (ResultSet row = select.executeQuery()) {
+                while (row.next()) {
+                    ids.add(row.getLong(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Refresh the account and character counts; on the writer thread (or
+     * before it starts), over the write connection
+     */
+    private void recount() {
+        try {
+            accountCount = count("accounts");
+            characterCount = count("characters");
+        } catch (SQLException e) {
+            System.err.println("Failed to count accounts and characters: " + e.getMessage());
+        }
+    }
+
+    private int count(String table) throws SQLException {
+        try (Statement statement = writeConnection.createStatement();
+             ResultSet row = statement.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            row.next();
+            return row.getInt(1);
+        }
+    }
+
+    private void release(Connection connection) {
+        if (connection != null) {
+            pool.release(connection);
+        }
+    }
+
+    /**
+     * One save: rows that are committed together
+     */
+    private static class Save {
+        static final Save STOP = new Save(-1, null);
+
+        final long characterId; // -1 for accounts
+        final String username; // The account saved, or null
+        final List<Row> rows;
+        final CompletableFuture<Void> future;
+
+        Save(long characterId) {
+            this(characterId, null);
+        }
+
+        Save(long characterId, String username) {
+            this.characterId = characterId;
+            this.username = username;
+            this.rows = new ArrayList<>();
+            this.future = new CompletableFuture<>();
+        }
+    }
+
+    private static class Row {
+        final int kind;
+        final long characterId;
+        final String key; // Identifies the row within its kind
+        final Object[] params;
+
+        Row(int kind, long characterId, String key, Object[] params) {
+            this.kind = kind;
+            this.characterId = characterId;
+            this.key = key != null ? key : Long.toString(characterId);
+            this.params = params;
+        }
+    }
+}
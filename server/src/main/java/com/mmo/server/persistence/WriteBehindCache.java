@@ -0,0 +1,172 @@
+package com.mmo.server.persistence;
+
+import com.mmo.models.CharacterData;
+import com.mmo.models.Inventory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Saves in-world characters behind the game's back.
+ *
+ * Gameplay only sets dirty bits (setters on {@link CharacterData}, slot bits
+ * on {@link Inventory}). Every flush interval a background thread looks for
+ * dirty characters and has each one's owner capture the changed parts, so
+ * inventory and equipment are read by the thread that writes them. However
+ * often a part changed in between, it is written once per flush.
+ *
+ * At most {@code maxBacklog} captures may be waiting for the disk. Beyond that
+ * flushes are skipped; the dirty bits keep accumulating and are written, still
+ * coalesced, once the store catches up.
+ */
+public class WriteBehindCache {
+    /**
+     * Runs a task on the thread that owns a character's inventory; false if it can't take it now
+     */
+    public interface Owner {
+        boolean post(Runnable task);
+    }
+
+    private final CharacterRepository store;
+    private final long flushIntervalMillis;
+    private final int maxBacklog;
+    private final Map<Long, Tracked> tracked;
+    private final AtomicInteger backlog; // Captures queued but not yet on disk
+    private final ScheduledExecutorService flusher;
+
+    // Statistics
+    private final LongAdder flushes;
+    private final LongAdder captures;
+    private final LongAdder failedSaves;
+    private final LongAdder deferredFlushes;
+
+    public WriteBehindCache(CharacterRepository store, long flushIntervalMillis, int maxBacklog) {
+        this.store = store;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.maxBacklog = maxBacklog;
+        this.tracked = new ConcurrentHashMap<>();
+        this.backlog = new AtomicInteger();
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flushes = new LongAdder();
+        this.captures = new LongAdder();
+        this.failedSaves = new LongAdder();
+        this.deferredFlushes = new LongAdder();
+    }
+
+    public void start() {
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop flushing and save whatever is still dirty from the calling thread.
+     * Call once gameplay has stopped, before stopping the store.
+     */
+    public void stop() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Tracked character : tracked.values()) {
+            character.capture();
+        }
+        tracked.clear();
+    }
+
+    /**
+     * Start saving changes to a character that has already been saved in full
+     */
+    public void track(CharacterData character, Owner owner) {
+        tracked.put(character.getId(), new Tracked(character, owner));
+    }
+
+    /**
+     * Save the character's last changes and stop watching it
+     */
+    public void untrack(CharacterData character) {
+        Tracked removed = tracked.remove(character.getId());
+        if (removed != null && !removed.owner.post(removed::capture)) {
+            System.err.println("Could not save " + character.getName() + " on leaving: owner is full");
+        }
+    }
+
+    public String getStatusReport() {
+        return "Write-behind: " + tracked.size() + " tracked, " + flushes.sum() + " flushes, " +
+               captures.sum() + " captures, " + backlog.get() + " pending, " +
+               failedSaves.sum() + " failed, " +
+               deferredFlushes.sum() + " deferred";
+    }
+
+    private void flush() {
+        if (backlog.get() >= maxBacklog) {
+            deferredFlushes.increment();
+            return;
+        }
+        flushes.increment();
+        for (Tracked character : tracked.values()) {
+            if (character.character.isDirty() && character.scheduled.compareAndSet(false, true)) {
+                if (!character.owner.post(character::capture)) {
+                    character.scheduled.set(false); // Try again next flush
+                }
+            }
+        }
+    }
+
+    private class Tracked {
+        final CharacterData character;
+        final Owner owner;
+        final AtomicBoolean scheduled; // A capture is waiting to run on the owner
+
+        Tracked(CharacterData character, Owner owner) {
+            this.character = character;
+            this.owner = owner;
+            this.scheduled = new AtomicBoolean();
+        }
+
+        /**
+         * Take the dirty bits and queue the changed parts (owner thread)
+         */
+        void capture() {
+            scheduled.set(false);
+            Inventory inventory = character.getInventory();
+            int parts = character.takeDirty();
+            long slots = inventory.takeDirtySlots();
+            boolean gold = inventory.takeDirtyGold();
+            if (parts == 0 && slots == 0 && !gold) {
+                return;
+            }
+            captures.increment();
+            backlog.incrementAndGet();
+            store.saveCharacterChanges(character, parts, slots, gold)
+                 .whenComplete((ignored, error) -> {
+                     backlog.decrementAndGet();
+                     if (error != null) {
+                         failedSaves.increment();
+                         System.err.println("Could not save " + character.getName() + ", retrying: " + error.getMessage());
+                         if (!owner.post(() -> restore(parts, slots, gold))) {
+                             restore(parts, slots, gold);
+                         }
+                     }
+                 });
+        }
+
+        /**
+         * Mark the parts of a failed save dirty again so the next flush retries them
+         */
+        void restore(int parts, long slots, boolean gold) {
+            character.markDirty(parts);
+            character.getInventory().markDirty(slots, gold);
+        }
+    }
+}
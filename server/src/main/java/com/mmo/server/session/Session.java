@@ -0,0 +1,68 @@
+package com.mmo.server.session;
+
+import java.util.UUID;
+
+/**
+ * A logged-in client: the signed token it holds and the account behind it.
+ * Lives until its token expires, it goes idle, or it is revoked by a newer
+ * session of the same account.
+ */
+public class Session {
+    private final String token;
+    private final UUID id;
+    private final String username;
+    private final long createdAt;
+    private final long expiresAt; // When the token stops verifying
+    private volatile long lastUsed; // Written on every use, from any thread
+    private volatile boolean revoked; // Written under the SessionManager's lock
+
+    // Guarded by the SessionManager
+    Runnable due; // Its deadline timer's task, made once
+    Session olderOfAccount;
+    Session newerOfAccount;
+
+    Session(String token, UUID id, String username, long expiresAt, long now) {
+        this.token = token;
+        this.id = id;
+        this.username = username;
+        this.createdAt = now;
+        this.expiresAt = expiresAt;
+        this.lastUsed = now;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public long getLastUsed() {
+        return lastUsed;
+    }
+
+    public boolean isRevoked() {
+        return revoked;
+    }
+
+    void touch(long now) {
+        lastUsed = now;
+    }
+
+    void revoke() {
+        revoked = true;
+    }
+}
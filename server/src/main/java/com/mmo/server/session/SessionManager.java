@@ -0,0 +1,291 @@
+package com.mmo.server.session;
+
+import com.mmo.server.GameLoop;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Login sessions: which token belongs to which account, and for how long.
+ *
+ * Tokens are signed by a {@link TokenSigner}, so a token is checked by its
+ * signature and expiry alone and one issued by another server sharing the
+ * keys is accepted as well; the first use here adopts it. What is tracked
+ * locally is only what a signature can't say: when the session was last
+ * used, how many sessions each account has, and which sessions were revoked.
+ *
+ * A session is revoked when it has gone unused for the time-to-live, when
+ * its account logs in past the per-account cap (the oldest goes), or when
+ * its connection logs in again. Revocation only holds on this server, and
+ * is remembered until the token would have expired anyway.
+ *
+ * Deadlines are timers on the game loop's timing wheel, so idle sessions
+ * cost nothing until due. A session has one timer at a time, scheduled from
+ * the loop thread and never cancelled: when it fires, the session's state
+ * then decides whether it is forgotten, revoked or given a later deadline.
+ * Using a session therefore doesn't touch the wheel.
+ *
+ * Lookups are lock-free and may come from any thread.
+ */
+public class SessionManager {
+    private final TokenSigner signer;
+    private final long ttlMillis;
+    private final long lifetimeMillis;
+    private final int maxPerAccount;
+    private final Map<UUID, Session> byId; // Live and revoked
+    private final Map<String, AccountSessions> byAccount; // Live only; guarded by this
+    private final GameLoop gameLoop;
+    private int revokedCount; // Guarded by this
+
+    // Statistics
+    private final LongAdder created;
+    private final LongAdder adopted;
+    private final LongAdder expired;
+    private final LongAdder evicted;
+    private final LongAdder rejected;
+
+    public SessionManager(TokenSigner signer, long ttlMillis, long lifetimeMillis, int maxPerAccount, GameLoop gameLoop) {
+        this.signer = signer;
+        this.ttlMillis = ttlMillis;
+        this.lifetimeMillis = lifetimeMillis;
+        this.maxPerAccount = maxPerAccount;
+        this.byId = new ConcurrentHashMap<>();
+        this.byAccount = new HashMap<>();
+        this.gameLoop = gameLoop;
+        this.created = new LongAdder();
+        this.adopted = new LongAdder();
+        this.expired = new LongAdder();
+        this.evicted = new LongAdder();
+        this.rejected = new LongAdder();
+    }
+
+    public TokenSigner getSigner() {
+        return signer;
+    }
+
+    /**
+     * Start a session for the account under a newly signed token
+     */
+    public Session open(String username) {
+        long now = System.currentTimeMillis();
+        UUID id = UUID.randomUUID();
+        long expiresAt = now + lifetimeMillis;
+        String token = signer.issue(username, id, expiresAt);
+        Session session = new Session(token, id, username, expiresAt, now);
+        synchronized (this) {
+            track(session, now);
+        }
+        created.increment();
+        return session;
+    }
+
+    /**
+     * The live session a token stands for, or null; counts as a use of the session
+     */
+    public Session find(String token) {
+        long now = System.currentTimeMillis();
+        TokenSigner.Claims claims = signer.verify(token, now);
+        if (claims == null) {
+            if (token != null) {
+                rejected.increment();
+            }
+            return null;
+        }
+        Session session = byId.get(claims.getSessionId());
+        if (session == null) {
+            session = adopt(token, claims, now);
+        }
+        if (session.isRevoked() || now - session.getLastUsed() > ttlMillis) {
+            rejected.increment();
+            return null; // Idle ones are revoked at the next sweep
+        }
+        session.touch(now);
+        return session;
+    }
+
+    /**
+     * The account a live token belongs to, or null; counts as a use of the session
+     */
+    public String resolve(String token) {
+        Session session = find(token);
+        return session != null ? session.getUsername() : null;
+    }
+
+    /**
+     * Keep a session alive that is in use without presenting its token (a player in the world)
+     */
+    public void touch(Session session) {
+        if (session != null) {
+            session.touch(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Refuse the session's token on this server from now on
+     */
+    public synchronized void revoke(Session session) {
+        if (session != null && !session.isRevoked() && byId.get(session.getId()) == session) {
+            revokeLocked(session);
+        }
+    }
+
+    /**
+     * Stop tracking a session whose connection closed. Its token stays valid
+     * and is adopted again if it comes back before going idle.
+     */
+    public synchronized void release(Session session) {
+        if (session != null && !session.isRevoked() && byId.remove(session.getId(), session)) {
+            untrack(session);
+        }
+    }
+
+    /**
+     * Sessions tracked here and not revoked
+     */
+    public synchronized int size() {
+        return byId.size() - revokedCount;
+    }
+
+    public String getStatusReport() {
+        int accounts;
+        int revoked;
+        synchronized (this) {
+            accounts = byAccount.size();
+            revoked = revokedCount;
+        }
+        return "Sessions: " + (byId.size() - revoked) + " live for " + accounts + " accounts, " + revoked +
+               " revoked, " + created.sum() + " created, " + adopted.sum() + " adopted, " + expired.sum() +
+               " expired, " + evicted.sum() + " evicted, " + rejected.sum() + " rejected, signing with key " +
+               signer.getSigningKeyId();
+    }
+
+    /**
+     * Start tracking a token issued elsewhere (another server, or here before its connection closed)
+     */
+    private synchronized Session adopt(String token, TokenSigner.Claims claims, long now) {
+        Session session = byId.get(claims.getSessionId());
+        if (session == null) {
+            session = new Session(token, claims.getSessionId(), claims.getUsername(), claims.getExpiresAt(), now);
+            track(session, now);
+            adopted.increment();
+        }
+        return session;
+    }
+
+    private void track(Session session, long now) {
+        byId.put(session.getId(), session);
+        AccountSessions account = byAccount.computeIfAbsent(session.getUsername(), name -> new AccountSessions());
+        account.add(session);
+        while (account.count > maxPerAccount) {
+            revokeLocked(account.oldest);
+            evicted.increment();
+        }
+        session.due = () -> due(session);
+        gameLoop.submit(() -> schedule(session, deadlineOf(session)));
+    }
+
+    /**
+     * A session's timer fired: forget, revoke or reschedule it by what has happened since (loop thread)
+     */
+    private synchronized void due(Session session) {
+        long now = System.currentTimeMillis();
+        if (byId.get(session.getId()) != session) {
+            return; // Released; nothing to remember
+        }
+        if (session.getExpiresAt() <= now) {
+            // The token no longer verifies, so nothing needs remembering
+            byId.remove(session.getId());
+            if (session.isRevoked()) {
+                revokedCount--;
+            } else {
+                untrack(session);
+                expired.increment();
+            }
+        } else if (session.isRevoked()) {
+            schedule(session, session.getExpiresAt());
+        } else if (session.getLastUsed() + ttlMillis > now) {
+            schedule(session, deadlineOf(session)); // Used since it was scheduled
+        } else {
+            revokeLocked(session);
+            expired.increment();
+            schedule(session, session.getExpiresAt());
+        }
+    }
+
+    /**
+     * Loop thread only
+     */
+    private void schedule(Session session, long deadline) {
+        gameLoop.schedule(Math.max(0, deadline - System.currentTimeMillis()), session.due);
+    }
+
+    /**
+     * Keep the session, marked revoked, until its token expires; its pending
+     * timer finds it revoked and waits for the expiry
+     */
+    private void revokeLocked(Session session) {
+        untrack(session);
+        session.revoke();
+        revokedCount++;
+    }
+
+    private long deadlineOf(Session session) {
+        return Math.min(session.getLastUsed() + ttlMillis, session.getExpiresAt());
+    }
+
+    /**
+     * Take the session off its account's list
+     */
+    private void untrack(Session session) {
+        AccountSessions account = byAccount.get(session.getUsername());
+        if (account != null && account.remove(session)) {
+            if (account.count == 0) {
+                byAccount.remove(session.getUsername());
+            }
+        }
+    }
+
+    /**
+     * An account's live sessions, oldest first
+     */
+    private static class AccountSessions {
+        Session oldest;
+        Session newest;
+        int count;
+
+        void add(Session session) {
+            session.olderOfAccount = newest;
+            session.newerOfAccount = null;
+            if (newest != null) {
+                newest.newerOfAccount = session;
+            } else {
+                oldest = session;
+            }
+            newest = session;
+            count++;
+        }
+
+        boolean remove(Session session) {
+            if (session != oldest && session.olderOfAccount == null) {
+                return false; // Not on this list (already removed)
+            }
+            if (session.olderOfAccount != null) {
+                session.olderOfAccount.newerOfAccount = session.newerOfAccount;
+            } else {
+                oldest = session.newerOfAccount;
+            }
+            if (session.newerOfAccount != null) {
+                session.newerOfAccount.olderOfAccount = session.olderOfAccount;
+            } else {
+                newest = session.olderOfAccount;
+            }
+            session.olderOfAccount = null;
+            session.newerOfAccount = null;
+            count--;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.mmo.server.session;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Issues and checks signed session tokens.
+ *
+ * A token is {@code keyId.payload.signature}: the payload carries the
+ * account, the session id and the expiry, and the signature is an
+ * HMAC-SHA256 of the first two parts under the named key. Any process that
+ * holds the key can check a token on its own, without asking whoever issued it.
+ *
+ * Several keys may be known at once, which is how keys are rotated: add the
+ * new key everywhere, start signing with it, and retire the old one once the
+ * tokens it signed have expired. Checking is thread-safe; each thread keeps
+ * its own initialised {@link Mac} per key.
+ */
+public class TokenSigner {
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final byte VERSION = 1;
+    private static final int KEY_BYTES = 32;
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final Map<String, SecretKeySpec> keys;
+    private volatile String signingKeyId;
+    private final ThreadLocal<Map<SecretKeySpec, Mac>> macs;
+
+    public TokenSigner() {
+        this.keys = new ConcurrentHashMap<>();
+        this.macs = ThreadLocal.withInitial(HashMap::new);
+    }
+
+    /**
+     * Keys from a spec of {@code keyId:base64secret} pairs separated by commas; the first one signs.
+     * With no spec a random key is made up, which only this process can check.
+     */
+    public static TokenSigner fromSpec(String spec) {
+        TokenSigner signer = new TokenSigner();
+        if (spec == null || spec.trim().isEmpty()) {
+            byte[] secret = new byte[KEY_BYTES];
+            new SecureRandom().nextBytes(secret);
+            signer.addKey("local", secret);
+            signer.useKey("local");
+            System.out.println("No session keys configured; tokens will only be valid on this server");
+            return signer;
+        }
+        for (String entry : spec.split(",")) {
+            int colon = entry.indexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Session key must be keyId:base64secret, got: " + entry.trim());
+            }
+            String keyId = entry.substring(0, colon).trim();
+            signer.addKey(keyId, Base64.getDecoder().decode(entry.substring(colon + 1).trim()));
+            if (signer.signingKeyId == null) {
+                signer.useKey(keyId);
+            }
+        }
+        return signer;
+    }
+
+    /**
+     * Accept tokens signed with this key (replacing any key of the same id)
+     */
+    public void addKey(String keyId, byte[] secret) {
+        if (keyId.isEmpty() || keyId.indexOf('.') >= 0) {
+            throw new IllegalArgumentException("Bad session key id: " + keyId);
+        }
+        if (secret.length < 16) {
+            throw new IllegalArgumentException("Session key " + keyId + " is shorter than 16 bytes");
+        }
+        keys.put(keyId, new SecretKeySpec(secret, ALGORITHM));
+    }
+
+    /**
+     * Sign new tokens with a key already added
+     */
+    public void useKey(String keyId) {
+        if (!keys.containsKey(keyId)) {
+            throw new IllegalArgumentException("Unknown session key: " + keyId);
+        }
+        signingKeyId = keyId;
+    }
+
+    /**
+     * Stop accepting tokens signed with this key; the signing key can't be removed
+     */
+    public void removeKey(String keyId) {
+        if (keyId.equals(signingKeyId)) {
+            throw new IllegalArgumentException("Session key " + keyId + " is still signing");
+        }
+        keys.remove(keyId);
+    }
+
+    public String getSigningKeyId() {
+        return signingKeyId;
+    }
+
+    public String issue(String username, UUID sessionId, long expiresAt) {
+        byte[] name = username.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(1 + 8 + 16 + name.length);
+        payload.put(VERSION);
+        payload.putLong(expiresAt);
+        payload.putLong(sessionId.getMostSignificantBits());
+        payload.putLong(sessionId.getLeastSignificantBits());
+        payload.put(name);
+
+        String keyId = signingKeyId;
+        String signed = keyId + "." + ENCODER.encodeToString(payload.array());
+        return signed + "." + ENCODER.encodeToString(sign(keys.get(keyId), signed));
+    }
+
+    /**
+     * What a token says, or null if it is malformed, signed with an unknown key, forged or expired
+     */
+    public Claims verify(String token, long now) {
+        if (token == null) {
+            return null;
+        }
+        int firstDot = token.indexOf('.');
+        int lastDot = token.lastIndexOf('.');
+        if (firstDot <= 0 || lastDot == firstDot) {
+            return null;
+        }
+        String keyId = token.substring(0, firstDot);
+        SecretKeySpec key = keys.get(keyId);
+        if (key == null) {
+            return null;
+        }
+
+        byte[] payload;
+        byte[] signature;
+        try {
+            payload = DECODER.decode(token.substring(firstDot + 1, lastDot));
+            signature = DECODER.decode(token.substring(lastDot + 1));
+        } catch (IllegalArgumentException e) {
+            return null; // Not base64
+        }
+        byte[] expected = sign(key, token.substring(0, lastDot));
+        if (!MessageDigest.isEqual(expected, signature)) {
+            return null;
+        }
+
+        // Signed by us, so the layout can be trusted
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        if (payload.length < 1 + 8 + 16 || buffer.get() != VERSION) {
+            return null;
+        }
+        long expiresAt = buffer.getLong();
+        if (expiresAt <= now) {
+            return null;
+        }
+        UUID sessionId = new UUID(buffer.getLong(), buffer.getLong());
+        String username = new String(payload, buffer.position(), buffer.remaining(), StandardCharsets.UTF_8);
+        return new Claims(keyId, username, sessionId, expiresAt);
+    }
+
+    private byte[] sign(SecretKeySpec key, String signed) {
+        Map<SecretKeySpec, Mac> cached = macs.get();
+        Mac mac = cached.get(key);
+        if (mac == null) {
+            try {
+                mac = Mac.getInstance(ALGORITHM);
+                mac.init(key);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(ALGORITHM + " unavailable", e);
+            }
+            if (cached.size() >= 8) {
+                cached.clear(); // Only rotated-out keys pile up here
+            }
+            cached.put(key, mac);
+        }
+        return mac.doFinal(signed.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * The contents of a token whose signature checked out
+     */
+    public static class Claims {
+        private final String keyId;
+        private final String username;
+        private final UUID sessionId;
+        private final long expiresAt;
+
+        Claims(String keyId, String username, UUID sessionId, long expiresAt) {
+            this.keyId = keyId;
+            this.username = username;
+            this.sessionId = sessionId;
+            this.expiresAt = expiresAt;
+        }
+
+        public String getKeyId() {
+            return keyId;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public UUID getSessionId() {
+            return sessionId;
+        }
+
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.mmo.server.world;
+
+import com.badlogic.gdx.utils.IntIntMap;
+import com.esotericsoftware.kryonet.Connection;
+import com.mmo.models.PlayerData;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Dense index of the players in the world.
+ * Each player gets a compact integer slot that stays fixed while it is in the
+ * world and is reused after it leaves. Lookups by player id and by connection id
+ * go through primitive maps; the players themselves are kept packed in
+ * {@code [0, size)} so per-tick loops walk plain arrays.
+ * Not thread-safe: owned by the game loop thread.
+ */
+public class EntityRegistry {
+    public static final int NO_SLOT = -1;
+
+    private final LongIntMap slotsByPlayerId;
+    private final IntIntMap slotsByConnectionId;
+
+    // Packed, in no particular order
+    private PlayerData[] players;
+    private Connection[] connections;
+    private int[] slots;
+    private int size;
+
+    // Indexed by slot
+    private int[] packedIndex;
+    private int[] freeSlots;
+    private int freeCount;
+    private int slotCount;
+
+    private final List<Connection> connectionView;
+
+    public EntityRegistry(int initialCapacity) {
+        int capacity = Math.max(4, initialCapacity);
+        slotsByPlayerId = new LongIntMap(capacity);
+        slotsByConnectionId = new IntIntMap(capacity);
+        players = new PlayerData[capacity];
+        connections = new Connection[capacity];
+        slots = new int[capacity];
+        packedIndex = new int[capacity];
+        freeSlots = new int[capacity];
+        connectionView = new AbstractList<Connection>() {
+            @Override
+            public Connection get(int index) {
+                return connections[index];
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Add a player and return its slot. A connection holds at most one player;
+     * adding a second one for the same connection replaces the first.
+     */
+    public int add(Connection connection, PlayerData player) {
+        remove(connection);
+
+        int slot = freeCount > 0 ? freeSlots[--freeCount] : slotCount++;
+        ensureCapacity(Math.max(size + 1, slotCount));
+
+        players[size] = player;
+        connections[size] = connection;
+        slots[size] = slot;
+        packedIndex[slot] = size;
+        size++;
+
+        slotsByPlayerId.put(player.getPlayerId(), slot);
+        slotsByConnectionId.put(connection.getID(), slot);
+        return slot;
+    }
+
+    /**
+     * Remove the player owned by a connection, if any
+     */
+    public PlayerData remove(Connection connection) {
+        int slot = slotsByConnectionId.get(connection.getID(), NO_SLOT);
+        return slot == NO_SLOT ? null : removeSlot(slot);
+    }
+
+    public PlayerData getByConnection(Connection connection) {
+        int slot = slotsByConnectionId.get(connection.getID(), NO_SLOT);
+        return slot == NO_SLOT ? null : players[packedIndex[slot]];
+    }
+
+    public PlayerData getByPlayerId(long playerId) {
+        int slot = slotsByPlayerId.get(playerId, NO_SLOT);
+        return slot == NO_SLOT ? null : players[packedIndex[slot]];
+    }
+
+    public Connection getConnection(long playerId) {
+        int slot = slotsByPlayerId.get(playerId, NO_SLOT);
+        return slot == NO_SLOT ? null : connections[packedIndex[slot]];
+    }
+
+    public int getSlot(long playerId) {
+        return slotsByPlayerId.get(playerId, NO_SLOT);
+    }
+
+    public PlayerData getPlayerBySlot(int slot) {
+        return players[packedIndex[slot]];
+    }
+
+    public Connection getConnectionBySlot(int slot) {
+        return connections[packedIndex[slot]];
+    }
+
+    /**
+     * Upper bound (exclusive) of the slots handed out so far, for slot-indexed side arrays
+     */
+    public int getSlotCapacity() {
+        return slotCount;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Player at a packed index in {@code [0, size)}. Indices shift on removal; slots don't.
+     */
+    public PlayerData getPlayer(int index) {
+        return players[index];
+    }
+
+    public Connection getConnectionAt(int index) {
+        return connections[index];
+    }
+
+    public int getSlotAt(int index) {
+        return slots[index];
+    }
+
+    /**
+     * Live view of every connection in the world, for broadcasts
+     */
+    public List<Connection> getConnections() {
+        return connectionView;
+    }
+
+    private PlayerData removeSlot(int slot) {
+        int index = packedIndex[slot];
+        PlayerData removed = players[index];
+        slotsByPlayerId.remove(removed.getPlayerId(), NO_SLOT);
+        slotsByConnectionId.remove(connections[index].getID(), NO_SLOT);
+
+        // Move the last packed entry into the hole
+        int last = --size;
+        if (index != last) {
+            players[index] = players[last];
+            connections[index] = connections[last];
+            slots[index] = slots[last];
+            packedIndex[slots[index]] = index;
+        }
+        players[last] = null;
+        connections[last] = null;
+
+        freeSlots[freeCount++] = slot;
+        return removed;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= players.length) {
+            return;
+        }
+        int grown = Math.max(capacity, players.length * 2);
+        players = Arrays.copyOf(players, grown);
+        connections = Arrays.copyOf(connections, grown);
+        slots = Arrays.copyOf(slots, grown);
+        packedIndex = Arrays.copyOf(packedIndex, grown);
+        freeSlots = Arrays.copyOf(freeSlots, grown);
+    }
+}
@@ -0,0 +1,276 @@
+package com.mmo.server.world;
+
+import com.badlogic.gdx.utils.IntArray;
+import com.mmo.models.CharacterData;
+import com.mmo.models.PlayerData;
+
+import java.util.Arrays;
+
+/**
+ * The state every tick reads for every entity in the world (position, health,
+ * mana, flags) in parallel primitive arrays indexed by row, so the hot loops
+ * scan arrays instead of following PlayerData to CharacterData to a getter.
+ *
+ * {@link CharacterData} stays the source of truth: it is what the client sees
+ * and what gets saved. Each row listens to its character, and a change to
+ * health, mana, regeneration or position queues the row, from whatever
+ * thread made it. {@link #sync} then gathers only the queued rows, plus
+ * those still regenerating, whose health and mana move with time alone; a
+ * row at full health and mana costs nothing per tick. Positions are also
+ * written through as entities move so range checks within the tick see them.
+ *
+ * A row stays with its entity until the entity leaves, and freed rows are
+ * reused. Written on the game loop thread; region workers may read it while
+ * the loop waits for them.
+ */
+public class EntityStateStore {
+    public static final int NO_ROW = -1;
+
+    public static final int FLAG_ACTIVE = 1; // The row holds an entity
+    public static final int FLAG_ALIVE = 2;
+    public static final int FLAG_MIRRORED = 4; // Owned by a neighbouring zone
+    public static final int FLAG_MOB = 8; // Run by the server's AI rather than a client
+
+    private final LongIntMap rows; // Entity id -> row
+    private final IntArray freeRows;
+    private int rowLimit; // Every row in use is below this
+
+    private final Object changeLock;
+    private IntArray changedRows; // Queued since the last sync; guarded by changeLock
+    private IntArray syncingRows; // Swapped with changedRows by sync
+    private final IntArray regeneratingRows; // May still be regenerating; gathered every sync
+    private boolean[] inRegenerating; // The row is in regeneratingRows
+    private Watcher[] watchers;
+
+    private PlayerData[] entities;
+    private long[] ids;
+    private float[] x;
+    private float[] y;
+    private int[] health;
+    private int[] maxHealth;
+    private int[] mana;
+    private int[] flags;
+
+    public EntityStateStore(int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        this.rows = new LongIntMap(capacity);
+        this.freeRows = new IntArray();
+        this.changeLock = new Object();
+        this.changedRows = new IntArray();
+        this.syncingRows = new IntArray();
+        this.regeneratingRows = new IntArray();
+        this.inRegenerating = new boolean[capacity];
+        this.watchers = new Watcher[capacity];
+        this.entities = new PlayerData[capacity];
+        this.ids = new long[capacity];
+        this.x = new float[capacity];
+        this.y = new float[capacity];
+        this.health = new int[capacity];
+        this.maxHealth = new int[capacity];
+        this.mana = new int[capacity];
+        this.flags = new int[capacity];
+    }
+
+    /**
+     * Give an entity a row filled from its character; returns the row.
+     * {@code kind} is 0 for a player here, or FLAG_MIRRORED or FLAG_MOB.
+     */
+    public int add(PlayerData entity, int kind) {
+        int row = rows.get(entity.getPlayerId(), NO_ROW);
+        if (row == NO_ROW) {
+            row = freeRows.size > 0 ? freeRows.pop() : rowLimit++;
+            ensureCapacity(row + 1);
+            rows.put(entity.getPlayerId(), row);
+        }
+        CharacterData character = entity.getCharacter();
+        if (entities[row] != null && entities[row].getCharacter() != character) {
+            detach(row); // Replaced by a new copy of the same entity
+        }
+        if (watchers[row] == null) {
+            watchers[row] = new Watcher(row);
+        }
+        character.setChangeListener(watchers[row]);
+        entities[row] = entity;
+        ids[row] = entity.getPlayerId();
+        flags[row] = FLAG_ACTIVE | kind;
+        gather(row, CharacterData.now());
+        return row;
+    }
+
+    public void remove(long id) {
+        int row = rows.remove(id, NO_ROW);
+        if (row == NO_ROW) {
+            return;
+        }
+        detach(row);
+        watchers[row] = null;
+        entities[row] = null;
+        flags[row] = 0;
+        freeRows.add(row);
+    }
+
+    public int getRow(long id) {
+        return rows.get(id, NO_ROW);
+    }
+
+    public void setPosition(int row, float x, float y) {
+        this.x[row] = x;
+        this.y[row] = y;
+    }
+
+    /**
+     * Refresh the rows whose characters changed or are regenerating, as of
+     * {@code now}; once per tick
+     */
+    public void sync(long now) {
+        IntArray changed;
+        synchronized (changeLock) {
+            changed = changedRows;
+            changedRows = syncingRows;
+            syncingRows = changed;
+        }
+        for (int i = 0; i < changed.size; i++) {
+            int row = changed.items[i];
+            Watcher watcher = watchers[row];
+            if (watcher != null) {
+                watcher.queued = false; // Before gathering, so a change made meanwhile queues it again
+                gather(row, now);
+            }
+        }
+        changed.clear();
+
+        int kept = 0;
+        for (int i = 0; i < regeneratingRows.size; i++) {
+            int row = regeneratingRows.items[i];
+            if ((flags[row] & FLAG_ACTIVE) != 0 && gather(row, now)) {
+                regeneratingRows.items[kept++] = row;
+            } else {
+                inRegenerating[row] = false;
+            }
+        }
+        regeneratingRows.size = kept;
+    }
+
+    /**
+     * Rows in use are all below this, so a scan runs from 0 to here and skips inactive rows
+     */
+    public int getRowLimit() {
+        return rowLimit;
+    }
+
+    public int size() {
+        return rows.size();
+    }
+
+    public PlayerData getEntity(int row) {
+        return entities[row];
+    }
+
+    public long getId(int row) {
+        return ids[row];
+    }
+
+    public float getX(int row) {
+        return x[row];
+    }
+
+    public float getY(int row) {
+        return y[row];
+    }
+
+    public int getHealth(int row) {
+        return health[row];
+    }
+
+    public int getMaxHealth(int row) {
+        return maxHealth[row];
+    }
+
+    public int getMana(int row) {
+        return mana[row];
+    }
+
+    public int getFlags(int row) {
+        return flags[row];
+    }
+
+    public float distanceSquared(int first, int second) {
+        float dx = x[first] - x[second];
+        float dy = y[first] - y[second];
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Copy the row from its character; true if health or mana is still
+     * regenerating, in which case the row is gathered every sync until it stops
+     */
+    private boolean gather(int row, long now) {
+        CharacterData character = entities[row].getCharacter();
+        x[row] = character.getX();
+        y[row] = character.getY();
+        int currentHealth = character.getHealth(now);
+        int currentMana = character.getMana(now);
+        health[row] = currentHealth;
+        maxHealth[row] = character.getMaxHealth();
+        mana[row] = currentMana;
+        flags[row] = currentHealth > 0 ? flags[row] | FLAG_ALIVE : flags[row] & ~FLAG_ALIVE;
+
+        boolean regenerating =
+            (currentHealth > 0 && currentHealth < maxHealth[row] && character.getHealthRegen().rateAt(now) > 0) ||
+            (currentMana < character.getMaxMana() && character.getManaRegen().rateAt(now) > 0);
+        if (regenerating && !inRegenerating[row]) {
+            inRegenerating[row] = true;
+            regeneratingRows.add(row);
+        }
+        return regenerating;
+    }
+
+    /**
+     * Stop listening to the row's character, unless it has moved on to another store
+     */
+    private void detach(int row) {
+        CharacterData character = entities[row].getCharacter();
+        if (character.getChangeListener() == watchers[row]) {
+            character.setChangeListener(null);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (ids.length >= capacity) {
+            return;
+        }
+        int size = Math.max(capacity, ids.length * 2);
+        entities = Arrays.copyOf(entities, size);
+        ids = Arrays.copyOf(ids, size);
+        x = Arrays.copyOf(x, size);
+        y = Arrays.copyOf(y, size);
+        health = Arrays.copyOf(health, size);
+        maxHealth = Arrays.copyOf(maxHealth, size);
+        mana = Arrays.copyOf(mana, size);
+        flags = Arrays.copyOf(flags, size);
+        inRegenerating = Arrays.copyOf(inRegenerating, size);
+        watchers = Arrays.copyOf(watchers, size);
+    }
+
+    /**
+     * Queues its row when the character changes; at most once per sync
+     */
+    private class Watcher implements CharacterData.ChangeListener {
+        final int row;
+        volatile boolean queued;
+
+        Watcher(int row) {
+            this.row = row;
+        }
+
+        @Override
+        public void changed(CharacterData character) {
+            if (!queued) {
+                queued = true;
+                synchronized (changeLock) {
+                    changedRows.add(row);
+                }
+            }
+        }
+    }
+}
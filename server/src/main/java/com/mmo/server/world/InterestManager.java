@@ -0,0 +1,218 @@
+package com.mmo.server.world;
+
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.LongArray;
+import com.badlogic.gdx.utils.LongMap;
+import com.mmo.models.CharacterData;
+import com.mmo.models.PlayerData;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Area-of-interest filtering on top of the spatial grid.
+ * An entity becomes visible to an observer inside the enter radius and only
+ * stops being visible once it is beyond the (larger) leave radius, so players
+ * walking along the edge of someone's view don't flicker in and out.
+ * Players are added, moved and removed on the game loop thread. Observers may be
+ * updated concurrently as long as each observer is updated by one thread at a
+ * time and each thread uses its own {@link View}.
+ *
+ * Everything placed here also gets a row in the {@link EntityStateStore},
+ * which views are reported in and distance checks read from.
+ */
+public class InterestManager {
+    private final SpatialGrid<PlayerData> grid;
+    private final float enterRadius;
+    private final float leaveRadius;
+    private final LongMap<ObserverState> observers;
+    private final EntityStateStore states;
+
+    public InterestManager(SpatialGrid<PlayerData> grid, float enterRadius, float leaveRadius) {
+        if (leaveRadius < enterRadius) {
+            throw new IllegalArgumentException("Leave radius must not be smaller than enter radius");
+        }
+        this.grid = grid;
+        this.enterRadius = enterRadius;
+        this.leaveRadius = leaveRadius;
+        this.observers = new LongMap<>();
+        this.states = new EntityStateStore(64);
+    }
+
+    public SpatialGrid<PlayerData> getGrid() {
+        return grid;
+    }
+
+    public EntityStateStore getStates() {
+        return states;
+    }
+
+    /**
+     * Place a player in the world (as both an entity and an observer)
+     */
+    public void add(PlayerData player) {
+        CharacterData character = player.getCharacter();
+        grid.insert(player.getPlayerId(), player, character.getX(), character.getY());
+        states.add(player, 0);
+        observers.put(player.getPlayerId(), new ObserverState());
+    }
+
+    /**
+     * Place an entity that can be seen but doesn't observe (e.g. one mirrored from another zone)
+     */
+    public void addEntity(PlayerData entity) {
+        addEntity(entity, EntityStateStore.FLAG_MIRRORED);
+    }
+
+    /**
+     * Place a server-controlled creature; seen like any other entity, observes nothing
+     */
+    public void addMob(PlayerData mob) {
+        addEntity(mob, EntityStateStore.FLAG_MOB);
+    }
+
+    /**
+     * Incrementally update a player's grid position
+     */
+    public void move(PlayerData player) {
+        float x = player.getCharacter().getX();
+        float y = player.getCharacter().getY();
+        grid.move(player.getPlayerId(), x, y);
+        int row = states.getRow(player.getPlayerId());
+        if (row != EntityStateStore.NO_ROW) {
+            states.setPosition(row, x, y);
+        }
+    }
+
+    /**
+     * Remove a player from the world; other observers see it leave on their next update
+     */
+    public void remove(long playerId) {
+        grid.remove(playerId);
+        states.remove(playerId);
+        observers.remove(playerId);
+    }
+
+    /**
+     * Recompute what {@code observer} can see this tick into {@code view}.
+     * Returns the state rows of the visible entities, excluding the observer
+     * itself; the array belongs to the view.
+     */
+    public IntArray update(PlayerData observer, View view) {
+        List<PlayerData> candidates = view.candidates;
+        IntArray visible = view.visible;
+        visible.clear();
+        view.entered.clear();
+        view.left.clear();
+        ObserverState state = observers.get(observer.getPlayerId());
+        int observerRow = states.getRow(observer.getPlayerId());
+        if (state == null || observerRow == EntityStateStore.NO_ROW) {
+            return visible;
+        }
+
+        float x = states.getX(observerRow);
+        float y = states.getY(observerRow);
+        float enterSquared = enterRadius * enterRadius;
+
+        candidates.clear();
+        grid.query(x, y, leaveRadius, candidates);
+
+        IdSet previous = state.visible;
+        IdSet next = state.spare;
+        next.clear();
+
+        for (int i = 0; i < candidates.size(); i++) {
+            PlayerData entity = candidates.get(i);
+            long id = entity.getPlayerId();
+            int row = states.getRow(id);
+            if (row == observerRow || row == EntityStateStore.NO_ROW) {
+                continue;
+            }
+            boolean wasVisible = previous.contains(id);
+            if (!wasVisible && states.distanceSquared(observerRow, row) > enterSquared) {
+                continue;
+            }
+            next.add(id);
+            visible.add(row);
+            if (!wasVisible) {
+                view.entered.add(entity);
+            }
+        }
+
+        for (int i = 0; i < previous.count; i++) {
+            long id = previous.ids[i];
+            if (!next.contains(id)) {
+                view.left.add(id);
+            }
+        }
+
+        state.spare = previous;
+        state.visible = next;
+        return visible;
+    }
+
+    private void addEntity(PlayerData entity, int kind) {
+        CharacterData character = entity.getCharacter();
+        grid.insert(entity.getPlayerId(), entity, character.getX(), character.getY());
+        states.add(entity, kind);
+    }
+
+    /**
+     * Scratch space and results for {@link #update}; one per updating thread
+     */
+    public static class View {
+        private final List<PlayerData> candidates = new ArrayList<>();
+        private final IntArray visible = new IntArray();
+        private final List<PlayerData> entered = new ArrayList<>();
+        private final LongArray left = new LongArray();
+
+        /**
+         * Entities that came into view during the last update
+         */
+        public List<PlayerData> getEntered() {
+            return entered;
+        }
+
+        /**
+         * Ids of entities that went out of view (or out of the world) during the last update
+         */
+        public LongArray getLeft() {
+            return left;
+        }
+    }
+
+    private static class ObserverState {
+        IdSet visible = new IdSet();
+        IdSet spare = new IdSet();
+    }
+
+    /**
+     * Ids seen by one observer, as a list to walk and a map to look up, with
+     * no boxing; reused every tick and only grows
+     */
+    private static class IdSet {
+        final LongIntMap lookup = new LongIntMap(16);
+        long[] ids = new long[16];
+        int count;
+
+        boolean contains(long id) {
+            return lookup.get(id, 0) != 0;
+        }
+
+        void add(long id) {
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+            }
+            ids[count++] = id;
+            lookup.put(id, 1);
+        }
+
+        void clear() {
+            if (count > 0) {
+                lookup.clear();
+                count = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.mmo.server.world;
+
+import com.badlogic.gdx.utils.IntArray;
+
+/**
+ * One rectangular partition of the world and the entities inside it.
+ * A region's tick runs on a single worker; members are entity registry slots.
+ */
+public class Region {
+    private final int id;
+    private final float minX;
+    private final float minY;
+    private final float maxX;
+    private final float maxY;
+    final IntArray members;
+
+    // Tick cost, accumulated between rebalances
+    long costNanos;
+    long averageCostNanos;
+
+    Region(int id, float minX, float minY, float maxX, float maxY) {
+        this.id = id;
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.members = new IntArray(false, 16);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int size() {
+        return members.size;
+    }
+
+    /**
+     * Registry slot of the member at {@code index} in {@code [0, size)}
+     */
+    public int getMember(int index) {
+        return members.get(index);
+    }
+
+    public long getAverageCostNanos() {
+        return averageCostNanos;
+    }
+
+    public float getMinX() {
+        return minX;
+    }
+
+    public float getMinY() {
+        return minY;
+    }
+
+    public float getMaxX() {
+        return maxX;
+    }
+
+    public float getMaxY() {
+        return maxY;
+    }
+
+    float width() {
+        return maxX - minX;
+    }
+
+    float height() {
+        return maxY - minY;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + id + " [" + (int) minX + "," + (int) minY + " - " + (int) maxX + "," + (int) maxY + "] " +
+               members.size + " entities, " + String.format("%.3f", averageCostNanos / 1_000_000.0) + " ms";
+    }
+}
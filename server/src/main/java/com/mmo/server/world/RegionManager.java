@@ -0,0 +1,484 @@
+package com.mmo.server.world;
+
+import com.badlogic.gdx.utils.IntArray;
+import com.mmo.models.CharacterData;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Splits the world into regions that tick in parallel.
+ * Regions are the leaves of a k-d tree over the world bounds. A crowded or
+ * expensive region is split at the median of its entities along its longer
+ * side; two sibling regions that have both gone quiet are merged back.
+ *
+ * Every entity belongs to exactly one region, the one containing its position.
+ * Entities that crossed a border are handed off in {@link #handoff()}, a
+ * sequential step run between parallel phases, in player id order so the
+ * result doesn't depend on thread timing. Structure changes, membership and
+ * handoff happen on the game loop thread; only {@link #run} fans out.
+ */
+public class RegionManager {
+    /**
+     * Work done for one region on a worker thread
+     */
+    public interface RegionTask {
+        void run(Region region);
+    }
+
+    private final EntityRegistry registry;
+    private final float minRegionSize;
+    private final int maxEntities;
+    private final long costBudgetNanos;
+    private final ForkJoinPool pool;
+
+    private final Node root;
+    private final List<Region> regions; // Leaves, in tree order
+    private Region[] regionsArray;
+    private RegionBatch batches; // Fan-out over regionsArray, reused every run
+    private Region[] regionBySlot;
+    private int[] memberIndexBySlot;
+    private int nextRegionId;
+    private int ticksSinceRebalance;
+
+    private final IntArray migrants;
+
+    // Statistics
+    private long splits;
+    private long merges;
+    private long handoffs;
+
+    public RegionManager(EntityRegistry registry, float worldWidth, float worldHeight,
+                         float minRegionSize, int maxEntities, long costBudgetNanos, int threads) {
+        this.registry = registry;
+        this.minRegionSize = minRegionSize;
+        this.maxEntities = maxEntities;
+        this.costBudgetNanos = costBudgetNanos;
+        this.pool = new ForkJoinPool(Math.max(1, threads));
+        this.root = new Node(new Region(nextRegionId++, 0, 0, worldWidth, worldHeight));
+        this.regions = new ArrayList<>();
+        this.regionBySlot = new Region[64];
+        this.memberIndexBySlot = new int[64];
+        this.migrants = new IntArray();
+        collectRegions();
+    }
+
+    /**
+     * Place a newly registered entity in the region containing it
+     */
+    public void add(int slot) {
+        ensureSlotCapacity(slot + 1);
+        CharacterData character = registry.getPlayerBySlot(slot).getCharacter();
+        addMember(locate(character.getX(), character.getY()).region, slot);
+    }
+
+    /**
+     * Drop an entity; call before it is removed from the registry
+     */
+    public void remove(int slot) {
+        if (slot < regionBySlot.length && regionBySlot[slot] != null) {
+            removeMember(slot);
+        }
+    }
+
+    public List<Region> getRegions() {
+        return regions;
+    }
+
+    public Region getRegion(int slot) {
+        return slot < regionBySlot.length ? regionBySlot[slot] : null;
+    }
+
+    /**
+     * Run a task for every region, in parallel, and wait for all of them.
+     * A task must only write state owned by its region's members.
+     *
+     * Waits by parking until the tree signals it is done rather than joining
+     * it: a thread outside the pool that blocks in a join allocates a wait
+     * node every time.
+     */
+    public void run(RegionTask task) {
+        if (regionsArray.length == 1) {
+            runRegion(task, regionsArray[0]);
+            return;
+        }
+        RegionBatch root = batches;
+        root.prepare(task);
+        root.waiter = Thread.currentThread();
+        pool.execute(root);
+        while (!root.finished) {
+            LockSupport.park(this);
+        }
+        // Signalled just before the root is marked done; let that land before it is re-armed
+        while (!root.isDone()) {
+            Thread.onSpinWait();
+        }
+        if (root.isCompletedAbnormally()) {
+            throw new IllegalStateException("Region task failed", root.getException());
+        }
+    }
+
+    /**
+     * Move entities that crossed a border into their new region. Runs once per tick.
+     */
+    public void handoff() {
+        ticksSinceRebalance++;
+        migrants.clear();
+        for (Region region : regions) {
+            IntArray members = region.members;
+            for (int i = 0; i < members.size; i++) {
+                int slot = members.get(i);
+                CharacterData character = registry.getPlayerBySlot(slot).getCharacter();
+                if (locate(character.getX(), character.getY()).region != region) {
+                    migrants.add(slot);
+                }
+            }
+        }
+        if (migrants.size == 0) {
+            return;
+        }
+
+        sortByPlayerId(migrants);
+        for (int i = 0; i < migrants.size; i++) {
+            int slot = migrants.get(i);
+            CharacterData character = registry.getPlayerBySlot(slot).getCharacter();
+            removeMember(slot);
+            addMember(locate(character.getX(), character.getY()).region, slot);
+            handoffs++;
+        }
+    }
+
+    /**
+     * Split overloaded regions and merge idle siblings, using the tick cost
+     * measured since the previous call
+     */
+    public void rebalance() {
+        int ticks = Math.max(1, ticksSinceRebalance);
+        for (Region region : regions) {
+            region.averageCostNanos = region.costNanos / ticks;
+            region.costNanos = 0;
+        }
+        ticksSinceRebalance = 0;
+
+        boolean changed = rebalance(root);
+        if (changed) {
+            collectRegions();
+        }
+    }
+
+    public long getSplits() {
+        return splits;
+    }
+
+    public long getMerges() {
+        return merges;
+    }
+
+    public long getHandoffs() {
+        return handoffs;
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    public String getStatusReport() {
+        StringBuilder report = new StringBuilder();
+        report.append("Regions: ").append(regions.size())
+              .append(" (").append(splits).append(" splits, ").append(merges).append(" merges, ")
+              .append(handoffs).append(" handoffs, ").append(pool.getParallelism()).append(" threads)");
+        for (Region region : regions) {
+            if (region.size() > 0) {
+                report.append("\n  ").append(region);
+            }
+        }
+        return report.toString();
+    }
+
+    private boolean rebalance(Node node) {
+        if (node.isLeaf()) {
+            return shouldSplit(node.region) && split(node);
+        }
+        boolean changed = rebalance(node.low) | rebalance(node.high);
+        if (node.low.isLeaf() && node.high.isLeaf() && shouldMerge(node.low.region, node.high.region)) {
+            merge(node);
+            changed = true;
+        }
+        return changed;
+    }
+
+    private boolean shouldSplit(Region region) {
+        if (region.size() < 2) {
+            return false;
+        }
+        return region.size() > maxEntities || region.averageCostNanos > costBudgetNanos;
+    }
+
+    private boolean shouldMerge(Region low, Region high) {
+        // Well below the split thresholds, so a region doesn't split and merge back every pass
+        return low.size() + high.size() <= maxEntities / 2 &&
+               low.averageCostNanos + high.averageCostNanos <= costBudgetNanos / 2;
+    }
+
+    private boolean split(Node node) {
+        Region region = node.region;
+        boolean splitX = region.width() >= region.height();
+        float position = splitPosition(region, splitX);
+        if (Float.isNaN(position)) {
+            splitX = !splitX;
+            position = splitPosition(region, splitX);
+            if (Float.isNaN(position)) {
+                return false; // Already as small as regions get
+            }
+        }
+
+        node.splitX = splitX;
+        node.split = position;
+        node.low = new Node(splitX
+            ? new Region(nextRegionId++, region.getMinX(), region.getMinY(), position, region.getMaxY())
+            : new Region(nextRegionId++, region.getMinX(), region.getMinY(), region.getMaxX(), position));
+        node.high = new Node(splitX
+            ? new Region(nextRegionId++, position, region.getMinY(), region.getMaxX(), region.getMaxY())
+            : new Region(nextRegionId++, region.getMinX(), position, region.getMaxX(), region.getMaxY()));
+        node.region = null;
+
+        // Halve the measured cost between the children so they don't split again straight away
+        node.low.region.averageCostNanos = region.averageCostNanos / 2;
+        node.high.region.averageCostNanos = region.averageCostNanos / 2;
+        redistribute(region, node);
+        splits++;
+        return true;
+    }
+
+    /**
+     * Median member coordinate along one axis, kept far enough from the edges
+     * that both halves stay at least the minimum size. NaN if the region is too small.
+     */
+    private float splitPosition(Region region, boolean splitX) {
+        float min = splitX ? region.getMinX() : region.getMinY();
+        float max = splitX ? region.getMaxX() : region.getMaxY();
+        if (max - min < minRegionSize * 2) {
+            return Float.NaN;
+        }
+        float[] coordinates = new float[region.size()];
+        for (int i = 0; i < coordinates.length; i++) {
+            CharacterData character = registry.getPlayerBySlot(region.getMember(i)).getCharacter();
+            coordinates[i] = splitX ? character.getX() : character.getY();
+        }
+        Arrays.sort(coordinates);
+        float median = coordinates[coordinates.length / 2];
+        return Math.max(min + minRegionSize, Math.min(max - minRegionSize, median));
+    }
+
+    private void merge(Node node) {
+        Region low = node.low.region;
+        Region high = node.high.region;
+        Region merged = new Region(nextRegionId++,
+            Math.min(low.getMinX(), high.getMinX()), Math.min(low.getMinY(), high.getMinY()),
+            Math.max(low.getMaxX(), high.getMaxX()), Math.max(low.getMaxY(), high.getMaxY()));
+        merged.averageCostNanos = low.averageCostNanos + high.averageCostNanos;
+        node.region = merged;
+        node.low = null;
+        node.high = null;
+        redistribute(low, node);
+        redistribute(high, node);
+        merges++;
+    }
+
+    /**
+     * Move every member of a retired region to wherever it now belongs under {@code node}
+     */
+    private void redistribute(Region retired, Node node) {
+        IntArray members = new IntArray(retired.members);
+        for (int i = 0; i < members.size; i++) {
+            int slot = members.get(i);
+            CharacterData character = registry.getPlayerBySlot(slot).getCharacter();
+            removeMember(slot);
+            addMember(locate(node, character.getX(), character.getY()).region, slot);
+        }
+    }
+
+    private Node locate(float x, float y) {
+        return locate(root, x, y);
+    }
+
+    private static Node locate(Node node, float x, float y) {
+        while (!node.isLeaf()) {
+            float value = node.splitX ? x : y;
+            node = value < node.split ? node.low : node.high;
+        }
+        return node;
+    }
+
+    private void addMember(Region region, int slot) {
+        regionBySlot[slot] = region;
+        memberIndexBySlot[slot] = region.members.size;
+        region.members.add(slot);
+    }
+
+    private void removeMember(int slot) {
+        Region region = regionBySlot[slot];
+        IntArray members = region.members;
+        int index = memberIndexBySlot[slot];
+        int last = members.size - 1;
+        if (index != last) {
+            int moved = members.get(last);
+            members.set(index, moved);
+            memberIndexBySlot[moved] = index;
+        }
+        members.size = last;
+        regionBySlot[slot] = null;
+    }
+
+    private void sortByPlayerId(IntArray slots) {
+        // Few entities cross a border per tick; insertion sort is plenty
+        for (int i = 1; i < slots.size; i++) {
+            int slot = slots.get(i);
+            long id = registry.getPlayerBySlot(slot).getPlayerId();
+            int j = i - 1;
+            while (j >= 0 && registry.getPlayerBySlot(slots.get(j)).getPlayerId() > id) {
+                slots.set(j + 1, slots.get(j));
+                j--;
+            }
+            slots.set(j + 1, slot);
+        }
+    }
+
+    private void collectRegions() {
+        regions.clear();
+        collectRegions(root);
+        regionsArray = regions.toArray(new Region[0]);
+        batches = regionsArray.length > 1 ? RegionBatch.build(null, regionsArray, 0, regionsArray.length) : null;
+    }
+
+    private void collectRegions(Node node) {
+        if (node.isLeaf()) {
+            regions.add(node.region);
+        } else {
+            collectRegions(node.low);
+            collectRegions(node.high);
+        }
+    }
+
+    private void ensureSlotCapacity(int capacity) {
+        if (regionBySlot.length < capacity) {
+            int size = Math.max(capacity, regionBySlot.length * 2);
+            regionBySlot = Arrays.copyOf(regionBySlot, size);
+            memberIndexBySlot = Arrays.copyOf(memberIndexBySlot, size);
+        }
+    }
+
+    private static void runRegion(RegionTask task, Region region) {
+        long start = System.nanoTime();
+        try {
+            task.run(region);
+        } catch (Exception e) {
+            System.err.println("Region " + region.getId() + " task failed: " + e.getMessage());
+            e.printStackTrace();
+        }
+        region.costNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * K-d tree node; leaves own a region
+     */
+    private static class Node {
+        Region region;
+        boolean splitX;
+        float split;
+        Node low;
+        Node high;
+
+        Node(Region region) {
+            this.region = region;
+        }
+
+        boolean isLeaf() {
+            return region != null;
+        }
+    }
+
+    /**
+     * Splits the region list in halves until each task runs a single region.
+     * The tree is built once per region layout and re-armed for every run,
+     * so fanning out allocates nothing. Halves report back by counting down
+     * rather than being joined, since a worker that joins a half someone
+     * else stole parks on a freshly allocated wait node.
+     */
+    private static class RegionBatch extends CountedCompleter<Void> {
+        // Never serialized; ForkJoinTask just happens to be Serializable
+        private static final long serialVersionUID = 1L;
+
+        private final transient Region region; // Set on leaves
+        private transient RegionBatch low;
+        private transient RegionBatch high;
+        private transient RegionTask task;
+        private transient volatile Thread waiter; // Set on the root by run()
+        private transient volatile boolean finished;
+
+        private RegionBatch(RegionBatch parent, Region region) {
+            super(parent);
+            this.region = region;
+        }
+
+        static RegionBatch build(RegionBatch parent, Region[] regions, int from, int to) {
+            if (to - from == 1) {
+                return new RegionBatch(parent, regions[from]);
+            }
+            RegionBatch batch = new RegionBatch(parent, null);
+            int middle = (from + to) >>> 1;
+            batch.low = build(batch, regions, from, middle);
+            batch.high = build(batch, regions, middle, to);
+            return batch;
+        }
+
+        /**
+         * Set the task and reset completion state throughout the tree; call before each run
+         */
+        void prepare(RegionTask task) {
+            this.task = task;
+            this.waiter = null;
+            this.finished = false;
+            reinitialize();
+            if (region == null) {
+                low.prepare(task);
+                high.prepare(task);
+            }
+        }
+
+        @Override
+        public void compute() {
+            if (region != null) {
+                runRegion(task, region);
+                tryComplete();
+                return;
+            }
+            setPendingCount(1);
+            high.fork();
+            low.compute();
+        }
+
+        @Override
+        public void onCompletion(CountedCompleter<?> caller) {
+            signal();
+        }
+
+        @Override
+        public boolean onExceptionalCompletion(Throwable ex, CountedCompleter<?> caller) {
+            signal();
+            return true;
+        }
+
+        private void signal() {
+            Thread waiting = waiter;
+            if (waiting != null) {
+                finished = true;
+                LockSupport.unpark(waiting);
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.mmo.server.world;
+
+import com.badlogic.gdx.utils.LongMap;
+
+import java.util.List;
+
+/**
+ * Uniform spatial hash grid over the world bounds.
+ * Entities are bucketed by position; moving within a cell is O(1) and
+ * crossing a cell border is an O(1) swap-remove plus append.
+ * Positions outside the world are clamped into the edge cells.
+ * Not thread-safe: owned by the game loop thread.
+ */
+public class SpatialGrid<T> {
+    private final float cellSize;
+    private final int columns;
+    private final int rows;
+    private final Entry<T>[][] cells;
+    private final int[] cellCounts;
+    private final LongMap<Entry<T>> entries; // Unboxed, so moving an entity allocates nothing
+
+    @SuppressWarnings("unchecked")
+    public SpatialGrid(float worldWidth, float worldHeight, float cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+        }
+        this.cellSize = cellSize;
+        this.columns = Math.max(1, (int) Math.ceil(worldWidth / cellSize));
+        this.rows = Math.max(1, (int) Math.ceil(worldHeight / cellSize));
+        this.cells = (Entry<T>[][]) new Entry<?>[columns * rows][];
+        this.cellCounts = new int[columns * rows];
+        this.entries = new LongMap<>();
+    }
+
+    /**
+     * Add an entity, or move it if it is already present
+     */
+    public void insert(long id, T value, float x, float y) {
+        Entry<T> entry = entries.get(id);
+        if (entry != null) {
+            entry.value = value;
+            move(id, x, y);
+            return;
+        }
+        entry = new Entry<>(id, value);
+        entry.x = x;
+        entry.y = y;
+        entries.put(id, entry);
+        addToCell(entry, cellIndex(x, y));
+    }
+
+    /**
+     * Update an entity position, re-bucketing only when it crosses a cell border
+     */
+    public void move(long id, float x, float y) {
+        Entry<T> entry = entries.get(id);
+        if (entry == null) {
+            return;
+        }
+        entry.x = x;
+        entry.y = y;
+        int cell = cellIndex(x, y);
+        if (cell != entry.cell) {
+            removeFromCell(entry);
+            addToCell(entry, cell);
+        }
+    }
+
+    public void remove(long id) {
+        Entry<T> entry = entries.remove(id);
+        if (entry != null) {
+            removeFromCell(entry);
+        }
+    }
+
+    public boolean contains(long id) {
+        return entries.containsKey(id);
+    }
+
+    public int size() {
+        return entries.size;
+    }
+
+    /**
+     * Collect all entities within {@code radius} of (x, y) into {@code out}
+     */
+    public void query(float x, float y, float radius, List<T> out) {
+        int minColumn = clampColumn((int) Math.floor((x - radius) / cellSize));
+        int maxColumn = clampColumn((int) Math.floor((x + radius) / cellSize));
+        int minRow = clampRow((int) Math.floor((y - radius) / cellSize));
+        int maxRow = clampRow((int) Math.floor((y + radius) / cellSize));
+        float radiusSquared = radius * radius;
+
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                int cell = row * columns + column;
+                Entry<T>[] bucket = cells[cell];
+                int count = cellCounts[cell];
+                for (int i = 0; i < count; i++) {
+                    Entry<T> entry = bucket[i];
+                    float dx = entry.x - x;
+                    float dy = entry.y - y;
+                    if (dx * dx + dy * dy <= radiusSquared) {
+                        out.add(entry.value);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Squared distance between two tracked entities, or -1 if either is missing
+     */
+    public float distanceSquared(long firstId, long secondId) {
+        Entry<T> first = entries.get(firstId);
+        Entry<T> second = entries.get(secondId);
+        if (first == null || second == null) {
+            return -1;
+        }
+        float dx = first.x - second.x;
+        float dy = first.y - second.y;
+        return dx * dx + dy * dy;
+    }
+
+    private int cellIndex(float x, float y) {
+        int column = clampColumn((int) Math.floor(x / cellSize));
+        int row = clampRow((int) Math.floor(y / cellSize));
+        return row * columns + column;
+    }
+
+    private int clampColumn(int column) {
+        return Math.max(0, Math.min(columns - 1, column));
+    }
+
+    private int clampRow(int row) {
+        return Math.max(0, Math.min(rows - 1, row));
+    }
+
+    private void addToCell(Entry<T> entry, int cell) {
+        Entry<T>[] bucket = cells[cell];
+        int count = cellCounts[cell];
+        if (bucket == null) {
+            bucket = newBucket(8);
+            cells[cell] = bucket;
+        } else if (count == bucket.length) {
+            Entry<T>[] grown = newBucket(count * 2);
+            System.arraycopy(bucket, 0, grown, 0, count);
+            bucket = grown;
+            cells[cell] = bucket;
+        }
+        bucket[count] = entry;
+        entry.cell = cell;
+        entry.slot = count;
+        cellCounts[cell] = count + 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Entry<T>[] newBucket(int size) {
+        return (Entry<T>[]) new Entry<?>[size];
+    }
+
+    private void removeFromCell(Entry<T> entry) {
+        Entry<T>[] bucket = cells[entry.cell];
+        int last = --cellCounts[entry.cell];
+        Entry<T> moved = bucket[last];
+        bucket[entry.slot] = moved;
+        moved.slot = entry.slot;
+        bucket[last] = null;
+    }
+
+    private static class Entry<T> {
+        final long id;
+        T value;
+        float x;
+        float y;
+        int cell;
+        int slot;
+
+        Entry(long id, T value) {
+            this.id = id;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.mmo.server.zone;
+
+import com.mmo.network.Network;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Which part of the world this server process owns, and how to reach its neighbours.
+ * The world is cut into equal vertical strips, one per zone. Ports follow a fixed
+ * scheme so several zones can run side by side on one host:
+ * zone N listens for clients on TCP_PORT + 10N / UDP_PORT + 10N and for other
+ * zones on LINK_PORT + N.
+ *
+ * Arguments: {@code --zone <id> --zones <count> [--host <address>]}.
+ * Without them the server runs as the only zone on the standard ports.
+ */
+public class ZoneConfig {
+    public static final int LINK_PORT = 55100;
+    private static final int PORT_STRIDE = 10;
+
+    // Player and character ids are allocated per zone, so they must not overlap
+    private static final long ID_STRIDE = 1L << 40;
+
+    private final int zoneId;
+    private final int zoneCount;
+    private final String host;
+    private final float minX;
+    private final float maxX;
+    private final List<ZoneConfig> neighbours;
+
+    private ZoneConfig(int zoneId, int zoneCount, String host, float worldWidth) {
+        this.zoneId = zoneId;
+        this.zoneCount = zoneCount;
+        this.host = host;
+        float stripWidth = worldWidth / zoneCount;
+        this.minX = zoneId * stripWidth;
+        this.maxX = zoneId == zoneCount - 1 ? worldWidth : (zoneId + 1) * stripWidth;
+        this.neighbours = new ArrayList<>();
+    }
+
+    public static ZoneConfig parse(String[] args, float worldWidth) {
+        int zoneId = 0;
+        int zoneCount = 1;
+        String host = "localhost";
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--zone": zoneId = Integer.parseInt(args[i + 1]); break;
+                case "--zones": zoneCount = Integer.parseInt(args[i + 1]); break;
+                case "--host": host = args[i + 1]; break;
+                default: throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+        if (zoneCount < 1 || zoneId < 0 || zoneId >= zoneCount) {
+            throw new IllegalArgumentException("Zone " + zoneId + " is not in 0.." + (zoneCount - 1));
+        }
+
+        ZoneConfig config = new ZoneConfig(zoneId, zoneCount, host, worldWidth);
+        // All zones share a host in this scheme; a deployment would read neighbour addresses from config
+        if (zoneId > 0) {
+            config.neighbours.add(new ZoneConfig(zoneId - 1, zoneCount, host, worldWidth));
+        }
+        if (zoneId < zoneCount - 1) {
+            config.neighbours.add(new ZoneConfig(zoneId + 1, zoneCount, host, worldWidth));
+        }
+        return config;
+    }
+
+    public int getZoneId() {
+        return zoneId;
+    }
+
+    public boolean isSingleZone() {
+        return zoneCount == 1;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getTcpPort() {
+        return Network.TCP_PORT + zoneId * PORT_STRIDE;
+    }
+
+    public int getUdpPort() {
+        return Network.UDP_PORT + zoneId * PORT_STRIDE;
+    }
+
+    public int getLinkPort() {
+        return LINK_PORT + zoneId;
+    }
+
+    public float getMinX() {
+        return minX;
+    }
+
+    public float getMaxX() {
+        return maxX;
+    }
+
+    /**
+     * First id this zone hands out for new players and characters
+     */
+    public long getIdBase() {
+        return zoneId * ID_STRIDE;
+    }
+
+    /**
+     * First id past the ones this zone hands out
+     */
+    public long getIdLimit() {
+        return getIdBase() + ID_STRIDE;
+    }
+
+    /**
+     * First entity id for this zone's mobs, in the upper half of its range so
+     * player ids counting up from the base never reach it
+     */
+    public long getMobIdBase() {
+        return getIdBase() + ID_STRIDE / 2;
+    }
+
+    /**
+     * True if {@code id} was handed out by this zone rather than arriving with a player from another
+     */
+    public boolean isLocalId(long id) {
+        return id >= getIdBase() && id < getIdLimit();
+    }
+
+    public List<ZoneConfig> getNeighbours() {
+        return Collections.unmodifiableList(neighbours);
+    }
+
+    /**
+     * The neighbour owning {@code x}, or null if it is inside this zone (or off the map)
+     */
+    public ZoneConfig getNeighbourFor(float x) {
+        for (ZoneConfig neighbour : neighbours) {
+            if (x >= neighbour.minX && x < neighbour.maxX) {
+                return neighbour;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "zone " + zoneId + "/" + zoneCount + " [x " + (int) minX + " - " + (int) maxX + ")";
+    }
+}
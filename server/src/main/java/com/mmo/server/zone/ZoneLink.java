@@ -0,0 +1,116 @@
+package com.mmo.server.zone;
+
+import com.esotericsoftware.kryonet.Client;
+import com.esotericsoftware.kryonet.Connection;
+import com.esotericsoftware.kryonet.Listener;
+import com.esotericsoftware.kryonet.Server;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * TCP links to the neighbouring zones.
+ * Each zone accepts links on its own link port and dials out to every
+ * neighbour's; messages are sent on the outgoing link and received on the
+ * incoming one. Dropped links are redialled in the background, so zones can be
+ * started in any order.
+ */
+public class ZoneLink {
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int CONNECT_TIMEOUT = 2000;
+    private static final long REDIAL_INTERVAL = 2000;
+
+    /**
+     * Receives messages from neighbouring zones (on the link's network thread)
+     */
+    public interface Handler {
+        void received(Object message);
+    }
+
+    private final ZoneConfig config;
+    private final Server server;
+    private final Map<Integer, Client> outgoing;
+    private volatile boolean running;
+    private Thread dialer;
+
+    public ZoneLink(ZoneConfig config, Handler handler) {
+        this.config = config;
+        this.server = new Server(BUFFER_SIZE, BUFFER_SIZE);
+        ZoneProtocol.register(server);
+        server.addListener(new Listener() {
+            @Override
+            public void received(Connection connection, Object object) {
+                handler.received(object);
+            }
+        });
+        this.outgoing = new HashMap<>();
+        for (ZoneConfig neighbour : config.getNeighbours()) {
+            Client client = new Client(BUFFER_SIZE, BUFFER_SIZE);
+            ZoneProtocol.register(client);
+            outgoing.put(neighbour.getZoneId(), client);
+        }
+    }
+
+    public void start() throws IOException {
+        server.bind(config.getLinkPort());
+        server.start();
+        for (Client client : outgoing.values()) {
+            client.start();
+        }
+
+        running = true;
+        dialer = new Thread(this::redial, "zone-link");
+        dialer.setDaemon(true);
+        dialer.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (dialer != null) {
+            dialer.interrupt();
+        }
+        for (Client client : outgoing.values()) {
+            client.stop();
+        }
+        server.stop();
+    }
+
+    public boolean isConnected(int zoneId) {
+        Client client = outgoing.get(zoneId);
+        return client != null && client.isConnected();
+    }
+
+    /**
+     * Send to a neighbour; returns false if the link is down
+     */
+    public boolean send(int zoneId, Object message) {
+        Client client = outgoing.get(zoneId);
+        if (client == null || !client.isConnected()) {
+            return false;
+        }
+        client.sendTCP(message);
+        return true;
+    }
+
+    private void redial() {
+        while (running) {
+            for (ZoneConfig neighbour : config.getNeighbours()) {
+                Client client = outgoing.get(neighbour.getZoneId());
+                if (!client.isConnected()) {
+                    try {
+                        client.connect(CONNECT_TIMEOUT, neighbour.getHost(), neighbour.getLinkPort());
+                        System.out.println("Linked to " + neighbour);
+                    } catch (IOException e) {
+                        // Neighbour not up yet; try again next round
+                    }
+                }
+            }
+            try {
+                Thread.sleep(REDIAL_INTERVAL);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
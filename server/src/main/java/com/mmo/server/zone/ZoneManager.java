@@ -0,0 +1,410 @@
+package com.mmo.server.zone;
+
+import com.esotericsoftware.kryonet.Connection;
+import com.mmo.models.CharacterClass;
+import com.mmo.models.CharacterData;
+import com.mmo.models.PlayerData;
+import com.mmo.server.GameLoop;
+import com.mmo.server.world.EntityRegistry;
+import com.mmo.server.world.InterestManager;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cross-zone play for one zone server.
+ *
+ * Handoff: a player that walks past this zone's border (plus a small margin, so
+ * players on the line don't bounce) first leaves this world and has its final
+ * state saved to the store all zones share. Only then is it offered to the
+ * neighbour that owns the new position under a transfer token; the neighbour
+ * reads the character back from the store when the client arrives. Unanswered offers are resent under the same
+ * token, and only an answer carrying that token counts. Once the neighbour has
+ * accepted and parked the player, the client is redirected and presents the
+ * token there to resume; if no neighbour takes it, the player re-enters here.
+ *
+ * Border snapshots: each zone periodically sends its neighbours the entities
+ * within view range of the shared border. The receiver mirrors them as
+ * read-only ghosts in its interest grid, so players see across the border.
+ *
+ * World state is only touched on the game loop thread; link messages are
+ * queued onto it.
+ */
+public class ZoneManager {
+    private static final float HANDOFF_MARGIN = 32f;
+    private static final long HANDOFF_RETRY_MILLIS = 2000;
+    private static final int HANDOFF_ATTEMPTS = 3;
+    private static final long ARRIVAL_TIMEOUT_MILLIS = 30000;
+    private static final long GHOST_TIMEOUT_MILLIS = 2000;
+
+    /**
+     * Moves players in and out of the world around a handoff (game loop thread)
+     */
+    public interface Listener {
+        /**
+         * Take the player out of the world; completes once its final state is in the shared store
+         */
+        CompletableFuture<Void> leaving(Connection connection, PlayerData player);
+
+        /**
+         * A neighbour has parked the player under the token; send the client there
+         */
+        void handedOff(Connection connection, PlayerData player, ZoneConfig target, String transferToken);
+
+        /**
+         * No neighbour took the player; put it back in this world
+         */
+        void handoffFailed(Connection connection, PlayerData player);
+    }
+
+    private final ZoneConfig config;
+    private final EntityRegistry registry;
+    private final InterestManager interestManager;
+    private final GameLoop gameLoop;
+    private final float borderRange;
+    private final Listener listener;
+    private final ZoneLink link;
+
+    // Game loop thread
+    private final Map<Long, Handoff> handoffsInFlight; // playerId -> out of the world, waiting for the neighbour
+    private final Map<Long, Long> retryAfter; // playerId -> when a player no one took may be offered again
+    private final List<PlayerData> crossing;
+    private final Map<Integer, Map<Long, PlayerData>> ghosts; // source zone -> mirrored entities
+    private final Map<Integer, Long> lastBorderSnapshot; // source zone -> received at
+    private final Set<Long> seen;
+
+    // Players handed to us and waiting for their client to reconnect
+    private final Map<String, Arrival> arrivals;
+
+    // Statistics
+    private long handoffsOut;
+    private long handoffsIn;
+    private long handoffsFailed;
+
+    public ZoneManager(ZoneConfig config, EntityRegistry registry, InterestManager interestManager,
+                       GameLoop gameLoop, float borderRange, Listener listener) {
+        this.config = config;
+        this.registry = registry;
+        this.interestManager = interestManager;
+        this.gameLoop = gameLoop;
+        this.borderRange = borderRange;
+        this.listener = listener;
+        this.link = new ZoneLink(config, this::received);
+        this.handoffsInFlight = new HashMap<>();
+        this.retryAfter = new HashMap<>();
+        this.crossing = new ArrayList<>();
+        this.ghosts = new HashMap<>();
+        this.lastBorderSnapshot = new HashMap<>();
+        this.seen = new HashSet<>();
+        this.arrivals = new ConcurrentHashMap<>();
+    }
+
+    public void start() throws IOException {
+        link.start();
+    }
+
+    public void stop() {
+        link.stop();
+    }
+
+    public ZoneConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Take players that have left this zone out of the world and offer them to
+     * the neighbour that owns their position; resend offers nobody answered
+     */
+    public void checkBorders() {
+        long now = gameLoop.getClock().currentTimeMillis();
+        for (int i = 0; i < registry.size(); i++) {
+            PlayerData player = registry.getPlayer(i);
+            float x = player.getCharacter().getX();
+            if (x >= config.getMinX() - HANDOFF_MARGIN && x < config.getMaxX() + HANDOFF_MARGIN) {
+                continue;
+            }
+            Long after = retryAfter.get(player.getPlayerId());
+            if (config.getNeighbourFor(x) != null && (after == null || now >= after)) {
+                crossing.add(player);
+            }
+        }
+
+        // Leaving changes the registry, so not while walking it
+        for (PlayerData player : crossing) {
+            Connection connection = registry.getConnection(player.getPlayerId());
+            Handoff handoff = new Handoff(UUID.randomUUID().toString(), connection, player,
+                config.getNeighbourFor(player.getCharacter().getX()));
+            handoffsInFlight.put(player.getPlayerId(), handoff);
+            listener.leaving(connection, player).whenComplete((ignored, error) -> gameLoop.submit(() -> {
+                if (handoffsInFlight.get(player.getPlayerId()) != handoff) {
+                    return;
+                }
+                if (error != null) {
+                    System.err.println("Handoff of " + player.getCharacter().getName() + " failed: " + error.getMessage());
+                    handoffsInFlight.remove(player.getPlayerId());
+                    fail(handoff);
+                    return;
+                }
+                offer(handoff);
+            }));
+        }
+        crossing.clear();
+
+        for (Iterator<Handoff> it = handoffsInFlight.values().iterator(); it.hasNext(); ) {
+            Handoff handoff = it.next();
+            if (handoff.attempts == 0 || now - handoff.sentAt < HANDOFF_RETRY_MILLIS) {
+                continue; // Still leaving, or waiting for an answer
+            }
+            if (handoff.attempts < HANDOFF_ATTEMPTS) {
+                offer(handoff);
+            } else {
+                it.remove();
+                fail(handoff);
+            }
+        }
+
+        for (Iterator<Long> it = retryAfter.values().iterator(); it.hasNext(); ) {
+            if (now >= it.next()) {
+                it.remove();
+            }
+        }
+        long wallTime = System.currentTimeMillis(); // Arrivals are stamped on the link thread
+        arrivals.values().removeIf(arrival -> wallTime > arrival.expiresAt);
+    }
+
+    /**
+     * Tell each neighbour which of our entities are close enough to its border to be seen
+     */
+    public void sendBorderSnapshots() {
+        for (ZoneConfig neighbour : config.getNeighbours()) {
+            float edge = neighbour.getMinX() < config.getMinX() ? config.getMinX() : config.getMaxX();
+            List<PlayerData> near = new ArrayList<>();
+            for (int i = 0; i < registry.size(); i++) {
+                PlayerData player = registry.getPlayer(i);
+                if (Math.abs(player.getCharacter().getX() - edge) <= borderRange) {
+                    near.add(player);
+                }
+            }
+
+            // Sent even when empty, so the neighbour drops ghosts that walked away
+            ZoneProtocol.BorderSnapshot snapshot = new ZoneProtocol.BorderSnapshot();
+            int count = near.size();
+            snapshot.sourceZone = config.getZoneId();
+            snapshot.ids = new long[count];
+            snapshot.x = new float[count];
+            snapshot.y = new float[count];
+            snapshot.health = new int[count];
+            snapshot.maxHealth = new int[count];
+            snapshot.level = new int[count];
+            snapshot.names = new String[count];
+            snapshot.classes = new CharacterClass[count];
+            for (int i = 0; i < count; i++) {
+                CharacterData character = near.get(i).getCharacter();
+                snapshot.ids[i] = near.get(i).getPlayerId();
+                snapshot.x[i] = character.getX();
+                snapshot.y[i] = character.getY();
+                snapshot.health[i] = character.getHealth();
+                snapshot.maxHealth[i] = character.getMaxHealth();
+                snapshot.level[i] = character.getLevel();
+                snapshot.names[i] = character.getName();
+                snapshot.classes[i] = character.getCharacterClass();
+            }
+            link.send(neighbour.getZoneId(), snapshot);
+        }
+
+        // Forget ghosts from a neighbour that has gone quiet
+        long now = gameLoop.getClock().currentTimeMillis();
+        for (Iterator<Map.Entry<Integer, Long>> it = lastBorderSnapshot.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Integer, Long> entry = it.next();
+            if (now - entry.getValue() > GHOST_TIMEOUT_MILLIS) {
+                clearGhosts(entry.getKey());
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Remove a mirrored copy of a player that is about to enter this world for real
+     */
+    public void dropGhost(long playerId) {
+        for (Map<Long, PlayerData> zoneGhosts : ghosts.values()) {
+            if (zoneGhosts.remove(playerId) != null) {
+                interestManager.remove(playerId);
+            }
+        }
+    }
+
+    /**
+     * Take the offer parked under a transfer token, or null if unknown or expired (any thread)
+     */
+    public ZoneProtocol.ZoneHandoff claimArrival(String transferToken) {
+        Arrival arrival = transferToken != null ? arrivals.remove(transferToken) : null;
+        return arrival != null ? arrival.handoff : null;
+    }
+
+    public String getStatusReport() {
+        int ghostCount = 0;
+        for (Map<Long, PlayerData> zoneGhosts : ghosts.values()) {
+            ghostCount += zoneGhosts.size();
+        }
+        StringBuilder links = new StringBuilder();
+        for (ZoneConfig neighbour : config.getNeighbours()) {
+            links.append(" ").append(neighbour.getZoneId())
+                 .append(link.isConnected(neighbour.getZoneId()) ? "=up" : "=down");
+        }
+        return "Zone: " + config + ", links" + links + ", handoffs " + handoffsOut + " out / " +
+               handoffsIn + " in / " + handoffsFailed + " failed, " + handoffsInFlight.size() + " leaving, " +
+               arrivals.size() + " arriving, " + ghostCount + " ghosts";
+    }
+
+    private void received(Object message) {
+        if (message instanceof ZoneProtocol.ZoneHandoff) {
+            acceptHandoff((ZoneProtocol.ZoneHandoff) message);
+        } else if (message instanceof ZoneProtocol.ZoneHandoffAck) {
+            ZoneProtocol.ZoneHandoffAck ack = (ZoneProtocol.ZoneHandoffAck) message;
+            gameLoop.submit(() -> completeHandoff(ack));
+        } else if (message instanceof ZoneProtocol.BorderSnapshot) {
+            ZoneProtocol.BorderSnapshot snapshot = (ZoneProtocol.BorderSnapshot) message;
+            gameLoop.submit(() -> applyBorderSnapshot(snapshot));
+        }
+    }
+
+    /**
+     * Park an incoming player until its client reconnects (link thread)
+     */
+    private void acceptHandoff(ZoneProtocol.ZoneHandoff handoff) {
+        Arrival arrival = new Arrival(handoff, System.currentTimeMillis() + ARRIVAL_TIMEOUT_MILLIS);
+        // A resent offer carries the same token; keep the first
+        if (arrivals.putIfAbsent(handoff.transferToken, arrival) == null) {
+            handoffsIn++;
+        }
+
+        ZoneProtocol.ZoneHandoffAck ack = new ZoneProtocol.ZoneHandoffAck();
+        ack.sourceZone = config.getZoneId();
+        ack.transferToken = handoff.transferToken;
+        ack.playerId = handoff.playerId;
+        ack.accepted = true;
+        link.send(handoff.sourceZone, ack);
+    }
+
+    /**
+     * Send (or resend) the offer for a player that has left the world
+     */
+    private void offer(Handoff handoff) {
+        ZoneProtocol.ZoneHandoff message = new ZoneProtocol.ZoneHandoff();
+        message.sourceZone = config.getZoneId();
+        message.transferToken = handoff.token;
+        message.playerId = handoff.player.getPlayerId();
+        message.username = handoff.player.getUsername();
+        message.characterId = handoff.player.getCharacter().getId();
+        handoff.attempts++;
+        handoff.sentAt = gameLoop.getClock().currentTimeMillis();
+        link.send(handoff.target.getZoneId(), message); // An offer that can't be sent is retried like an unanswered one
+    }
+
+    private void completeHandoff(ZoneProtocol.ZoneHandoffAck ack) {
+        Handoff handoff = handoffsInFlight.get(ack.playerId);
+        if (handoff == null || !handoff.token.equals(ack.transferToken) || handoff.target.getZoneId() != ack.sourceZone) {
+            return; // An answer to an offer we have given up on
+        }
+        handoffsInFlight.remove(ack.playerId);
+        if (ack.accepted) {
+            handoffsOut++;
+            listener.handedOff(handoff.connection, handoff.player, handoff.target, handoff.token);
+        } else {
+            fail(handoff);
+        }
+    }
+
+    private void fail(Handoff handoff) {
+        handoffsFailed++;
+        retryAfter.put(handoff.player.getPlayerId(), gameLoop.getClock().currentTimeMillis() + HANDOFF_RETRY_MILLIS);
+        listener.handoffFailed(handoff.connection, handoff.player);
+    }
+
+    private void applyBorderSnapshot(ZoneProtocol.BorderSnapshot snapshot) {
+        lastBorderSnapshot.put(snapshot.sourceZone, gameLoop.getClock().currentTimeMillis());
+        Map<Long, PlayerData> zoneGhosts = ghosts.computeIfAbsent(snapshot.sourceZone, zone -> new HashMap<>());
+
+        seen.clear();
+        for (int i = 0; i < snapshot.ids.length; i++) {
+            long id = snapshot.ids[i];
+            if (registry.getSlot(id) != EntityRegistry.NO_SLOT) {
+                continue; // Already handed to us; the real player wins
+            }
+            seen.add(id);
+
+            PlayerData ghost = zoneGhosts.get(id);
+            boolean isNew = ghost == null;
+            if (isNew) {
+                ghost = new PlayerData(id, null, new CharacterData());
+                zoneGhosts.put(id, ghost);
+            }
+            CharacterData character = ghost.getCharacter();
+            character.setName(snapshot.names[i]);
+            character.setCharacterClass(snapshot.classes[i]);
+            character.setLevel(snapshot.level[i]);
+            character.setX(snapshot.x[i]);
+            character.setY(snapshot.y[i]);
+            character.setHealth(snapshot.health[i]);
+            character.setMaxHealth(snapshot.maxHealth[i]);
+            if (isNew) {
+                interestManager.addEntity(ghost);
+            } else {
+                interestManager.move(ghost);
+            }
+        }
+
+        for (Iterator<Long> it = zoneGhosts.keySet().iterator(); it.hasNext(); ) {
+            long id = it.next();
+            if (!seen.contains(id)) {
+                interestManager.remove(id);
+                it.remove();
+            }
+        }
+    }
+
+    private void clearGhosts(int zoneId) {
+        Map<Long, PlayerData> zoneGhosts = ghosts.remove(zoneId);
+        if (zoneGhosts != null) {
+            for (Long id : zoneGhosts.keySet()) {
+                interestManager.remove(id);
+            }
+        }
+    }
+
+    private static class Handoff {
+        final String token;
+        final Connection connection;
+        final PlayerData player;
+        final ZoneConfig target;
+        int attempts; // Offers sent so far; none while the player is still leaving
+        long sentAt;
+
+        Handoff(String token, Connection connection, PlayerData player, ZoneConfig target) {
+            this.token = token;
+            this.connection = connection;
+            this.player = player;
+            this.target = target;
+        }
+    }
+
+    private static class Arrival {
+        final ZoneProtocol.ZoneHandoff handoff;
+        final long expiresAt;
+
+        Arrival(ZoneProtocol.ZoneHandoff handoff, long expiresAt) {
+            this.handoff = handoff;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
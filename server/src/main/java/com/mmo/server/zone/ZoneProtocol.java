@@ -0,0 +1,53 @@
+package com.mmo.server.zone;
+
+import com.esotericsoftware.kryonet.EndPoint;
+import com.mmo.models.CharacterClass;
+import com.mmo.network.Network;
+
+/**
+ * Messages exchanged between neighbouring zone servers
+ */
+public class ZoneProtocol {
+
+    /**
+     * Register the client protocol (for the model classes) followed by the zone messages
+     */
+    public static void register(EndPoint endPoint) {
+        Network.register(endPoint.getKryo());
+        endPoint.getKryo().register(ZoneHandoff.class);
+        endPoint.getKryo().register(ZoneHandoffAck.class);
+        endPoint.getKryo().register(BorderSnapshot.class);
+        endPoint.getKryo().register(int[].class);
+        endPoint.getKryo().register(float[].class);
+        endPoint.getKryo().register(CharacterClass[].class);
+    }
+
+    // A player crossing into the receiving zone; its character is already in the shared store
+    public static class ZoneHandoff {
+        public int sourceZone;
+        public String transferToken;
+        public long playerId;
+        public String username;
+        public long characterId;
+    }
+
+    public static class ZoneHandoffAck {
+        public int sourceZone;
+        public String transferToken;
+        public long playerId;
+        public boolean accepted;
+    }
+
+    // Entities near the shared border, so players on the other side can see them
+    public static class BorderSnapshot {
+        public int sourceZone;
+        public long[] ids;
+        public float[] x;
+        public float[] y;
+        public int[] health;
+        public int[] maxHealth;
+        public int[] level;
+        public String[] names;
+        public CharacterClass[] classes;
+    }
+}
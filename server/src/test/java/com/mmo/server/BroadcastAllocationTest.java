@@ -0,0 +1,176 @@
+package com.mmo.server;
+
+import com.badlogic.gdx.utils.IntArray;
+import com.esotericsoftware.kryonet.Connection;
+import com.mmo.models.CharacterClass;
+import com.mmo.models.CharacterData;
+import com.mmo.models.PlayerData;
+import com.mmo.network.Network;
+import com.mmo.server.net.MessageBroadcaster;
+import com.mmo.server.net.SerializedMessage;
+import com.mmo.server.net.SnapshotHistory;
+import com.mmo.server.world.EntityRegistry;
+import com.mmo.server.world.EntityStateStore;
+import com.mmo.server.world.InterestManager;
+import com.mmo.server.world.Region;
+import com.mmo.server.world.RegionManager;
+import com.mmo.server.world.SpatialGrid;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * The broadcast phase of a tick (state sync, interest update, snapshot
+ * encoding and serialization, fanned out over the region workers) must not
+ * allocate once it has warmed up, on the game loop thread or on any worker.
+ */
+class BroadcastAllocationTest {
+    private static final float WORLD_SIZE = 6400f;
+    private static final int COLUMNS = 20;
+    private static final int ROWS = 15;
+    private static final float SPACING = 150f;
+    private static final int WARMUP_TICKS = 2000;
+    private static final int MEASURED_TICKS = 200;
+
+    private final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private EntityRegistry registry;
+    private RegionManager regionManager;
+    private InterestManager interestManager;
+    private MessageBroadcaster broadcaster;
+    private SnapshotHistory[] histories;
+    private PlayerData[] players;
+    private ThreadLocal<Scratch> scratch;
+    private Set<Long> workerIds; // Filled while warming up
+    private volatile boolean warming;
+    private RegionManager.RegionTask broadcastTask;
+    private int sequence;
+
+    @BeforeEach
+    void setUp() {
+        assumeTrue(threads.isThreadAllocatedMemorySupported(), "No per-thread allocation counters on this JVM");
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        registry = new EntityRegistry(64);
+        regionManager = new RegionManager(registry, WORLD_SIZE, WORLD_SIZE, 400, 16, Long.MAX_VALUE, 4);
+        interestManager = new InterestManager(new SpatialGrid<>(WORLD_SIZE, WORLD_SIZE, 256), 900, 1050);
+        broadcaster = new MessageBroadcaster(8192);
+        scratch = ThreadLocal.withInitial(Scratch::new);
+        workerIds = ConcurrentHashMap.newKeySet();
+        broadcastTask = this::broadcastRegion;
+
+        players = new PlayerData[COLUMNS * ROWS];
+        histories = new SnapshotHistory[players.length];
+        for (int i = 0; i < players.length; i++) {
+            CharacterData character = new CharacterData(i + 1, "Player" + i, CharacterClass.WARRIOR);
+            character.setX(200 + (i % COLUMNS) * SPACING);
+            character.setY(200 + (i / COLUMNS) * SPACING);
+            PlayerData player = new PlayerData(i + 1, "user" + i, character);
+            int slot = registry.add(new TestConnection(i + 1), player);
+            histories[slot] = new SnapshotHistory();
+            players[i] = player;
+            interestManager.add(player);
+            regionManager.add(slot);
+        }
+        // Split the crowd into regions, so the broadcast fans out over the pool
+        for (int i = 0; i < 8; i++) {
+            regionManager.rebalance();
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (regionManager != null) {
+            regionManager.shutdown();
+        }
+    }
+
+    @Test
+    void broadcastAllocatesNothingOnceWarm() {
+        assertTrue(regionManager.getRegions().size() > 1, "Expected the world to be split into several regions");
+        warming = true;
+        for (int i = 0; i < WARMUP_TICKS; i++) {
+            tick();
+        }
+        warming = false;
+        assertTrue(!workerIds.isEmpty(), "Expected regions to run on the pool's workers");
+
+        long[] workers = workerIds.stream().mapToLong(Long::longValue).toArray();
+        long loopBytes = 0;
+        long workerBytes = 0;
+        for (int i = 0; i < MEASURED_TICKS; i++) {
+            long[] workersBefore = threads.getThreadAllocatedBytes(workers);
+            long before = threads.getCurrentThreadAllocatedBytes();
+            tick();
+            loopBytes += threads.getCurrentThreadAllocatedBytes() - before;
+            long[] workersAfter = threads.getThreadAllocatedBytes(workers);
+            for (int w = 0; w < workers.length; w++) {
+                workerBytes += workersAfter[w] - workersBefore[w];
+            }
+        }
+
+        assertEquals(0, loopBytes / MEASURED_TICKS, "Bytes per tick allocated on the game loop thread");
+        assertEquals(0, workerBytes / MEASURED_TICKS, "Bytes per tick allocated on region workers");
+    }
+
+    /**
+     * What the server does each tick for the broadcast: everyone shuffles a
+     * little, then state is synced and snapshots are encoded per region
+     */
+    private void tick() {
+        sequence++;
+        float step = (sequence & 1) == 0 ? 3f : -3f;
+        for (PlayerData player : players) {
+            CharacterData character = player.getCharacter();
+            character.setX(character.getX() + step);
+            interestManager.move(player);
+        }
+        regionManager.handoff();
+        interestManager.getStates().sync(System.currentTimeMillis());
+        regionManager.run(broadcastTask);
+    }
+
+    private void broadcastRegion(Region region) {
+        if (warming) {
+            workerIds.add(Thread.currentThread().threadId());
+        }
+        Scratch local = scratch.get();
+        EntityStateStore states = interestManager.getStates();
+        for (int i = 0; i < region.size(); i++) {
+            int slot = region.getMember(i);
+            SnapshotHistory history = histories[slot];
+            IntArray visible = interestManager.update(registry.getPlayerBySlot(slot), local.view);
+            Network.WorldUpdate update = history.encode(sequence, states, visible, local.update);
+            SerializedMessage serialized = broadcaster.serialize(update);
+            broadcaster.release(serialized);
+            history.acknowledge(sequence); // The client got it, so the next one is a delta
+        }
+    }
+
+    private static class Scratch {
+        final InterestManager.View view = new InterestManager.View();
+        final Network.WorldUpdate update = new Network.WorldUpdate();
+    }
+
+    private static class TestConnection extends Connection {
+        private final int id;
+
+        TestConnection(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int getID() {
+            return id;
+        }
+    }
+}
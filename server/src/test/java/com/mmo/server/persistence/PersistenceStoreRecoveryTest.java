@@ -0,0 +1,200 @@
+package com.mmo.server.persistence;
+
+import com.mmo.models.CharacterClass;
+import com.mmo.models.CharacterData;
+import com.mmo.server.UserAccount;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Reopening the log after a crash: a torn or corrupt last record is cut off,
+ * compaction only retires segments once the snapshot covering them is in
+ * place, and segments a snapshot already covers are never replayed over it.
+ *
+ * A "crash" here is a store that is never stopped, so its final compaction
+ * doesn't run; everything it acknowledged has been synced.
+ */
+class PersistenceStoreRecoveryTest {
+    private static final long NEVER_COMPACT = Long.MAX_VALUE;
+
+    @TempDir
+    Path directory;
+
+    private final List<PersistenceStore> crashed = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        // Nothing is queued, so this only closes the files
+        for (PersistenceStore store : crashed) {
+            store.stop();
+        }
+    }
+
+    @Test
+    void tornTailIsTruncatedOnReopen() throws Exception {
+        PersistenceStore store = open(NEVER_COMPACT);
+        save(store, account("alice", "v1"));
+        await(store.saveCharacter("alice", character(1, 100f)));
+        crash(store);
+
+        Path segment = segment(0);
+        long intact = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.APPEND)) {
+            // A record header promising more body than made it to disk
+            channel.write(ByteBuffer.allocate(20).putInt(0, 500).putInt(4, 0x12345678));
+        }
+
+        PersistenceStore reopened = open(NEVER_COMPACT);
+        assertEquals("v1", reopened.findAccount("alice").getPassword());
+        assertEquals(100f, reopened.loadCharacter(1).getX());
+        assertEquals(intact, Files.size(segment), "torn tail truncated");
+        assertTrue(Files.exists(segment(1)), "appends go to a fresh segment");
+        crash(reopened);
+    }
+
+    @Test
+    void checksumMismatchDropsTheDamagedRecord() throws Exception {
+        PersistenceStore store = open(NEVER_COMPACT);
+        save(store, account("alice", "v1"));
+        long firstRecordEnd = Files.size(segment(0));
+        save(store, account("alice", "v2"));
+        crash(store);
+
+        // Flip the last payload byte of the second record, leaving its length intact
+        Path segment = segment(0);
+        long size = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, size - 1);
+            last.put(0, (byte) (last.get(0) ^ 0x55));
+            channel.write(last.flip(), size - 1);
+        }
+
+        PersistenceStore reopened = open(NEVER_COMPACT);
+        assertEquals("v1", reopened.findAccount("alice").getPassword(), "the damaged save is not replayed");
+        assertEquals(firstRecordEnd, Files.size(segment));
+        crash(reopened);
+    }
+
+    @Test
+    void compactionRetiresOnlySegmentsTheSnapshotCovers() throws Exception {
+        PersistenceStore store = open(1); // Every write compacts
+        save(store, account("alice", "v1"));
+        await(store.saveCharacter("alice", character(1, 100f)));
+        CharacterData moved = character(1, 250f);
+        await(store.saveCharacterChanges(moved, CharacterData.DIRTY_POSITION, 0, false));
+        crash(store);
+
+        assertFalse(Files.exists(directory.resolve("snapshot.tmp")));
+        long firstLive = snapshotFirstLiveSegment();
+        List<Long> live = segmentNumbers();
+        assertFalse(live.isEmpty(), "the snapshot's first live segment exists");
+        assertEquals(firstLive, (long) live.get(0), "every older segment was deleted");
+
+        PersistenceStore reopened = open(NEVER_COMPACT);
+        assertEquals("v1", reopened.findAccount("alice").getPassword());
+        assertEquals(250f, reopened.loadCharacter(1).getX(), "the partial save survives compaction");
+
+        // A later save in the live log wins over the snapshot's copy
+        save(reopened, account("alice", "v2"));
+        crash(reopened);
+        PersistenceStore again = open(NEVER_COMPACT);
+        assertEquals("v2", again.findAccount("alice").getPassword());
+        crash(again);
+    }
+
+    @Test
+    void segmentsBeforeTheSnapshotAreDeletedOnReopen() throws Exception {
+        PersistenceStore store = open(NEVER_COMPACT);
+        save(store, account("alice", "v1"));
+        crash(store);
+        Path stale = directory.resolve("stale.log");
+        Files.copy(segment(0), stale);
+
+        PersistenceStore reopened = open(NEVER_COMPACT);
+        save(reopened, account("alice", "v2"));
+        reopened.stop(); // Compacts: the snapshot covers every segment so far
+
+        // A crash between renaming the snapshot in and deleting what it covers
+        long firstLive = snapshotFirstLiveSegment();
+        assertTrue(firstLive > 0);
+        Files.move(stale, segment(0), StandardCopyOption.REPLACE_EXISTING);
+        Files.write(directory.resolve("snapshot.tmp"), new byte[] {1, 2, 3});
+
+        PersistenceStore recovered = open(NEVER_COMPACT);
+        assertEquals("v2", recovered.findAccount("alice").getPassword(), "the old segment is not replayed");
+        assertFalse(Files.exists(segment(0)));
+        assertFalse(Files.exists(directory.resolve("snapshot.tmp")));
+        crash(recovered);
+    }
+
+    private PersistenceStore open(long compactAfterBytes) throws IOException {
+        PersistenceStore store = new PersistenceStore(directory, compactAfterBytes);
+        store.open();
+        store.start();
+        return store;
+    }
+
+    private void crash(PersistenceStore store) {
+        crashed.add(store);
+    }
+
+    private static void save(PersistenceStore store, UserAccount account) throws Exception {
+        await(store.saveAccount(account));
+    }
+
+    private static void await(CompletableFuture<Void> future) throws Exception {
+        future.get(10, TimeUnit.SECONDS);
+    }
+
+    private static UserAccount account(String username, String password) {
+        return new UserAccount(username, password, username + "@example.com", 0);
+    }
+
+    private static CharacterData character(long id, float x) {
+        CharacterData character = new CharacterData(id, "Hero" + id, CharacterClass.WARRIOR);
+        character.setX(x);
+        return character;
+    }
+
+    private Path segment(long number) {
+        return directory.resolve(String.format("wal-%010d.log", number));
+    }
+
+    private List<Long> segmentNumbers() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                .filter(name -> name.startsWith("wal-") && name.endsWith(".log"))
+                .map(name -> Long.parseLong(name.substring(4, name.length() - 4)))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    private long snapshotFirstLiveSegment() throws IOException {
+        LogRecord header = new RecordReader(directory.resolve("snapshot.dat")).next();
+        assertNotNull(header, "snapshot has a header");
+        assertEquals(LogRecord.SNAPSHOT_HEADER, header.getType());
+        return Long.parseLong(header.getKey());
+    }
+}